@@ -0,0 +1,372 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.juggler.alert.AlertException;
+import icecube.daq.juggler.alert.Alerter;
+import icecube.daq.juggler.alert.IAlertQueue;
+import icecube.daq.payload.impl.UTCTime;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Push alerts to an alert queue from background threads so a slow alert
+ * consumer never holds up the analysis.
+ *
+ * Each variable is always sent from the same "lane" (a single thread), so
+ * messages for a variable stay in order while different variables are
+ * sent concurrently.  If too many messages are waiting, the caller waits
+ * for room (for as long as the delivery service was told to wait) and
+ * the message is dropped if there is still no room.  Failed sends are
+ * retried a few times.  Latency, retry and drop counts are kept for each
+ * variable.
+ */
+class AlertDelivery
+{
+    private static final Logger LOG = Logger.getLogger(AlertDelivery.class);
+
+    /** Default number of sending threads */
+    static final int DEFAULT_LANES = 4;
+    /** Default maximum number of queued and in-progress messages */
+    static final int DEFAULT_MAX_IN_FLIGHT = 256;
+    /** Default number of times a message is sent before it is dropped */
+    static final int DEFAULT_MAX_ATTEMPTS = 3;
+    /** Default wait for room (drop at once rather than stall the caller) */
+    static final long DEFAULT_WAIT_MILLIS = 0L;
+    /** Wait as long as necessary for room to queue a message */
+    static final long WAIT_FOREVER = -1L;
+
+    /** Time to wait before the first retry (doubled for each retry) */
+    private static final long RETRY_MILLIS = 10L;
+    /** Maximum time to wait for queued messages to be sent */
+    private static final long DRAIN_SECONDS = 30L;
+
+    private String name;
+    private ExecutorService[] lanes;
+    private int maxInFlight;
+    private int maxAttempts;
+    private long waitMillis;
+
+    /** Limits the number of queued and in-progress messages */
+    private Semaphore inFlight;
+
+    /** Per-variable statistics */
+    private ConcurrentHashMap<String, VarStats> stats =
+        new ConcurrentHashMap<String, VarStats>();
+
+    /**
+     * Create an alert delivery service with the default settings
+     *
+     * @param name name used for threads and log messages
+     */
+    AlertDelivery(String name)
+    {
+        this(name, DEFAULT_LANES, DEFAULT_MAX_IN_FLIGHT,
+             DEFAULT_MAX_ATTEMPTS, DEFAULT_WAIT_MILLIS);
+    }
+
+    /**
+     * Create an alert delivery service
+     *
+     * @param name name used for threads and log messages
+     * @param numLanes number of sending threads
+     * @param maxInFlight maximum number of queued and in-progress messages
+     * @param maxAttempts number of times a message is sent before it is
+     *                    dropped
+     * @param waitMillis number of milliseconds <tt>send()</tt> waits for
+     *                   room before dropping a message (0 to never wait,
+     *                   <tt>WAIT_FOREVER</tt> to never drop a message)
+     */
+    AlertDelivery(String name, int numLanes, int maxInFlight,
+                  int maxAttempts, long waitMillis)
+    {
+        if (numLanes < 1 || maxInFlight < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("Bad alert delivery" +
+                                               " settings (lanes " +
+                                               numLanes + ", in-flight " +
+                                               maxInFlight + ", attempts " +
+                                               maxAttempts + ")");
+        }
+
+        this.name = name;
+        this.maxInFlight = maxInFlight;
+        this.maxAttempts = maxAttempts;
+        this.waitMillis = waitMillis;
+
+        inFlight = new Semaphore(maxInFlight);
+
+        lanes = new ExecutorService[numLanes];
+        for (int i = 0; i < numLanes; i++) {
+            final String thrdName = name + "Alerts#" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thrd = new Thread(r, thrdName);
+                        thrd.setDaemon(true);
+                        return thrd;
+                    }
+                });
+        }
+    }
+
+    /**
+     * Wait for all queued messages to be sent
+     *
+     * @return <tt>false</tt> if messages were still waiting after the
+     *         timeout
+     */
+    boolean drain()
+    {
+        try {
+            if (!inFlight.tryAcquire(maxInFlight, DRAIN_SECONDS,
+                                     TimeUnit.SECONDS))
+            {
+                LOG.error("Timed out waiting for " + name + " alerts (" +
+                          getNumInFlight() + " still queued)");
+                return false;
+            }
+        } catch (InterruptedException ie) {
+            LOG.error("Interrupted while waiting for " + name + " alerts");
+            return false;
+        }
+
+        inFlight.release(maxInFlight);
+        return true;
+    }
+
+    /**
+     * Find the statistics for a variable, creating them if necessary
+     */
+    private VarStats findStats(String varname)
+    {
+        VarStats vs = stats.get(varname);
+        if (vs == null) {
+            VarStats newStats = new VarStats();
+            vs = stats.putIfAbsent(varname, newStats);
+            if (vs == null) {
+                vs = newStats;
+            }
+        }
+
+        return vs;
+    }
+
+    /**
+     * Get the number of messages which were dropped
+     *
+     * @return number of dropped messages
+     */
+    long getNumDropped()
+    {
+        long total = 0;
+        for (VarStats vs : stats.values()) {
+            total += vs.dropped.get();
+        }
+
+        return total;
+    }
+
+    /**
+     * Get the number of messages which are queued or being sent
+     *
+     * @return number of messages
+     */
+    int getNumInFlight()
+    {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Get the statistics for all variables which have been sent
+     *
+     * @return map of variable names to statistics
+     */
+    Map<String, VarStats> getStatistics()
+    {
+        return stats;
+    }
+
+    /**
+     * Push a message to the alert queue, retrying if necessary
+     */
+    private void push(IAlertQueue alertQueue, String varname,
+                      Alerter.Priority prio, long utcTime,
+                      Map<String, Object> value, VarStats vs, long queued)
+    {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                alertQueue.push(varname, prio, new UTCTime(utcTime), value);
+                vs.sent(System.nanoTime() - queued);
+                return;
+            } catch (AlertException ae) {
+                if (attempt >= maxAttempts || alertQueue.isStopped()) {
+                    LOG.error("Cannot send " + varname, ae);
+                    break;
+                }
+            } catch (Throwable thr) {
+                // this is not going to get better, so don't retry
+                LOG.error("Cannot send " + varname + " value " + value, thr);
+                break;
+            }
+
+            vs.retries.incrementAndGet();
+            try {
+                Thread.sleep(RETRY_MILLIS << (attempt - 1));
+            } catch (InterruptedException ie) {
+                break;
+            }
+        }
+
+        vs.dropped.incrementAndGet();
+    }
+
+    /**
+     * Wait for room to queue another message
+     *
+     * @return <tt>false</tt> if there is no room
+     */
+    private boolean reserve()
+    {
+        try {
+            if (waitMillis < 0L) {
+                inFlight.acquire();
+                return true;
+            } else if (waitMillis == 0L) {
+                return inFlight.tryAcquire();
+            }
+
+            return inFlight.tryAcquire(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Queue a message to be sent.  If too many messages are already
+     * waiting, this waits for room and drops the message if none is found.
+     *
+     * @param alertQueue queue which will receive the message
+     * @param varname variable name
+     * @param prio priority
+     * @param utcTime message time (in DAQ ticks)
+     * @param value message values (must not be changed after this call)
+     *
+     * @return <tt>false</tt> if the message was dropped
+     */
+    boolean send(final IAlertQueue alertQueue, final String varname,
+                 final Alerter.Priority prio, final long utcTime,
+                 final Map<String, Object> value)
+    {
+        final VarStats vs = findStats(varname);
+
+        if (!reserve()) {
+            vs.dropped.incrementAndGet();
+            return false;
+        }
+
+        final long queued = System.nanoTime();
+        final int lane = (varname.hashCode() & 0x7fffffff) % lanes.length;
+        try {
+            lanes[lane].execute(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            push(alertQueue, varname, prio, utcTime, value,
+                                 vs, queued);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }
+                });
+        } catch (RejectedExecutionException ree) {
+            inFlight.release();
+            vs.dropped.incrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Stop all sending threads after the queued messages have been sent
+     */
+    void shutdown()
+    {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AlertDelivery[" + name + ", " + lanes.length + " lanes, " +
+            getNumInFlight() + " in flight]";
+    }
+
+    /**
+     * Delivery statistics for one variable
+     */
+    static class VarStats
+    {
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicLong totalLatency = new AtomicLong();
+        final AtomicLong maxLatency = new AtomicLong();
+
+        /**
+         * Get the average time from queuing to delivery
+         *
+         * @return average latency in nanoseconds
+         */
+        long getAverageLatency()
+        {
+            final long num = sent.get();
+            if (num == 0) {
+                return 0L;
+            }
+
+            return totalLatency.get() / num;
+        }
+
+        /**
+         * Record a successful send
+         *
+         * @param latency nanoseconds from queuing to delivery
+         */
+        void sent(long latency)
+        {
+            sent.incrementAndGet();
+            totalLatency.addAndGet(latency);
+
+            long prev = maxLatency.get();
+            while (latency > prev &&
+                   !maxLatency.compareAndSet(prev, latency))
+            {
+                prev = maxLatency.get();
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("sent %d, retried %d, dropped %d," +
+                                 " latency avg %.3f max %.3f ms", sent.get(),
+                                 retries.get(), dropped.get(),
+                                 (double) getAverageLatency() / 1000000.0,
+                                 (double) maxLatency.get() / 1000000.0);
+        }
+    }
+}
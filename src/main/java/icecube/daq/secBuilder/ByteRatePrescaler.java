@@ -0,0 +1,63 @@
+package icecube.daq.secBuilder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Token bucket which limits a stream to a maximum number of bytes per
+ * second of detector time.  The bucket holds at most one second's worth
+ * of bytes, so bursts are bounded as well.
+ */
+class ByteRatePrescaler
+    implements PrescalePolicy
+{
+    /** Number of DAQ ticks (0.1 ns) in a second */
+    private static final double TICKS_PER_SECOND = 1.0E10;
+
+    private long maxBytesPerSecond;
+    private double tokens;
+    private long lastTime = Long.MIN_VALUE;
+
+    /**
+     * Create a byte-rate prescaler
+     *
+     * @param maxBytesPerSecond maximum number of bytes written per second
+     */
+    ByteRatePrescaler(long maxBytesPerSecond)
+    {
+        if (maxBytesPerSecond <= 0L) {
+            throw new IllegalArgumentException("Bad maximum byte rate " +
+                                               maxBytesPerSecond);
+        }
+
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.tokens = maxBytesPerSecond;
+    }
+
+    @Override
+    public boolean accept(ByteBuffer buf, long utcTime)
+    {
+        if (lastTime == Long.MIN_VALUE) {
+            lastTime = utcTime;
+        } else if (utcTime > lastTime) {
+            // refill the bucket; late payloads don't add any tokens
+            final double secs = (utcTime - lastTime) / TICKS_PER_SECOND;
+            tokens = Math.min(maxBytesPerSecond,
+                              tokens + secs * maxBytesPerSecond);
+            lastTime = utcTime;
+        }
+
+        final int len = buf.getInt(0);
+        if (tokens < len) {
+            return false;
+        }
+
+        tokens -= len;
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ByteRate[" + maxBytesPerSecond + " bytes/sec]";
+    }
+}
@@ -0,0 +1,363 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.payload.IPayload;
+import icecube.daq.splicer.SplicedAnalysis;
+import icecube.daq.splicer.Splicer;
+import icecube.daq.splicer.SplicerException;
+import icecube.daq.splicer.SplicerListener;
+import icecube.daq.splicer.StrandTail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Splicer wrapper which counts the payloads, bytes and latest payload time
+ * pushed into each strand, so a single slow hub can be found.
+ *
+ * Counters for all strands are kept in one array, with each strand's
+ * counters in their own cache line.  Each strand is only written by the
+ * thread which feeds it, so counters are updated without locking.
+ */
+class CountingSplicer<T>
+    implements Splicer<T>
+{
+    private static final Logger LOG = Logger.getLogger(CountingSplicer.class);
+
+    /** Default maximum number of strands which are counted */
+    static final int DEFAULT_MAX_STRANDS = 1024;
+
+    /** Number of array entries used by each strand (one cache line) */
+    private static final int STRIDE = 8;
+
+    /** Offsets of each strand's counters */
+    private static final int PAYLOADS = 0;
+    private static final int BYTES = 1;
+    private static final int LAST_TIME = 2;
+
+    /** Value used for the last time of strands which have seen no payloads */
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private Splicer<T> splicer;
+    private int maxStrands;
+
+    /** Per-strand counters */
+    private AtomicLongArray counters;
+    /** Counted strands (index in this list is the strand's counter slot) */
+    private ArrayList<CountingTail> tails = new ArrayList<CountingTail>();
+    /** Has the "too many strands" warning been logged? */
+    private boolean warnedFull;
+
+    /**
+     * Count the payloads pushed into the strands of the specified splicer
+     *
+     * @param splicer splicer
+     */
+    CountingSplicer(Splicer<T> splicer)
+    {
+        this(splicer, DEFAULT_MAX_STRANDS);
+    }
+
+    /**
+     * Count the payloads pushed into the strands of the specified splicer
+     *
+     * @param splicer splicer
+     * @param maxStrands maximum number of strands which are counted
+     */
+    CountingSplicer(Splicer<T> splicer, int maxStrands)
+    {
+        if (maxStrands < 1) {
+            throw new IllegalArgumentException("Bad maximum number of" +
+                                               " strands " + maxStrands);
+        }
+
+        this.splicer = splicer;
+        this.maxStrands = maxStrands;
+
+        counters = new AtomicLongArray(maxStrands * STRIDE);
+    }
+
+    @Override
+    public void addSplicerListener(SplicerListener<T> listener)
+    {
+        splicer.addSplicerListener(listener);
+    }
+
+    /**
+     * Add a new strand, reusing the counter slot of a closed strand if
+     * possible
+     *
+     * @return new strand tail
+     */
+    @Override
+    public synchronized StrandTail<T> beginStrand()
+    {
+        StrandTail<T> tail = splicer.beginStrand();
+
+        int slot = -1;
+        for (int i = 0; i < tails.size(); i++) {
+            if (tails.get(i).isClosed()) {
+                slot = i;
+                break;
+            }
+        }
+
+        if (slot < 0) {
+            if (tails.size() >= maxStrands) {
+                if (!warnedFull) {
+                    LOG.error("Not counting payloads for more than " +
+                              maxStrands + " strands");
+                    warnedFull = true;
+                }
+                return tail;
+            }
+
+            slot = tails.size();
+            tails.add(null);
+        }
+
+        final int base = slot * STRIDE;
+        counters.set(base + PAYLOADS, 0L);
+        counters.set(base + BYTES, 0L);
+        counters.set(base + LAST_TIME, NO_TIME);
+
+        CountingTail ctail = new CountingTail(tail, base);
+        tails.set(slot, ctail);
+
+        return ctail;
+    }
+
+    @Override
+    public void dispose()
+    {
+        splicer.dispose();
+    }
+
+    @Override
+    public void forceStop()
+    {
+        splicer.forceStop();
+    }
+
+    @Override
+    public SplicedAnalysis<T> getAnalysis()
+    {
+        return splicer.getAnalysis();
+    }
+
+    /**
+     * Get the number of bytes received by each strand
+     *
+     * @return array of byte counts
+     */
+    long[] getBytes()
+    {
+        return getCounters(BYTES);
+    }
+
+    /**
+     * Copy one counter from each strand
+     *
+     * @param offset counter offset
+     *
+     * @return array of counter values
+     */
+    private long[] getCounters(int offset)
+    {
+        final int num = getNumCounted();
+
+        long[] vals = new long[num];
+        for (int i = 0; i < num; i++) {
+            vals[i] = counters.get((i * STRIDE) + offset);
+        }
+
+        return vals;
+    }
+
+    /**
+     * Get the amount of time each open strand is behind the newest payload
+     * seen by any strand
+     *
+     * @return array of lags (in DAQ ticks), which are <tt>0</tt> for
+     *         closed strands and strands with no payloads
+     */
+    long[] getLags()
+    {
+        long[] lags = getLastTimes();
+
+        long head = 0L;
+        for (int i = 0; i < lags.length; i++) {
+            if (lags[i] > head) {
+                head = lags[i];
+            }
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < lags.length; i++) {
+                if (lags[i] == 0L || tails.get(i).isClosed()) {
+                    lags[i] = 0L;
+                } else {
+                    lags[i] = head - lags[i];
+                }
+            }
+        }
+
+        return lags;
+    }
+
+    /**
+     * Get the most recent payload time seen by each strand
+     *
+     * @return array of DAQ times (<tt>0</tt> for strands with no payloads)
+     */
+    long[] getLastTimes()
+    {
+        final int num = getNumCounted();
+
+        long[] times = new long[num];
+        for (int i = 0; i < num; i++) {
+            final long val = counters.get((i * STRIDE) + LAST_TIME);
+            times[i] = (val == NO_TIME ? 0L : val);
+        }
+
+        return times;
+    }
+
+    /**
+     * Get the number of strands with counters
+     *
+     * @return number of counted strands
+     */
+    private synchronized int getNumCounted()
+    {
+        return tails.size();
+    }
+
+    /**
+     * Get the number of payloads received by each strand
+     *
+     * @return array of payload counts
+     */
+    long[] getPayloads()
+    {
+        return getCounters(PAYLOADS);
+    }
+
+    @Override
+    public State getState()
+    {
+        return splicer.getState();
+    }
+
+    @Override
+    public int getStrandCount()
+    {
+        return splicer.getStrandCount();
+    }
+
+    @Override
+    public void removeSplicerListener(SplicerListener<T> listener)
+    {
+        splicer.removeSplicerListener(listener);
+    }
+
+    @Override
+    public void start()
+    {
+        splicer.start();
+    }
+
+    @Override
+    public void stop()
+    {
+        splicer.stop();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Counting" + splicer.toString();
+    }
+
+    /**
+     * Strand tail which updates its strand's counters before passing
+     * objects to the real strand
+     */
+    class CountingTail
+        implements StrandTail<T>
+    {
+        private StrandTail<T> tail;
+        private int base;
+
+        CountingTail(StrandTail<T> tail, int base)
+        {
+            this.tail = tail;
+            this.base = base;
+        }
+
+        @Override
+        public void close()
+        {
+            tail.close();
+        }
+
+        /**
+         * Update counters for one object
+         */
+        private void count(T obj)
+        {
+            if (!(obj instanceof IPayload)) {
+                return;
+            }
+
+            final IPayload pay = (IPayload) obj;
+
+            // only this strand's thread writes these counters
+            counters.lazySet(base + PAYLOADS,
+                             counters.get(base + PAYLOADS) + 1L);
+            counters.lazySet(base + BYTES,
+                             counters.get(base + BYTES) + pay.length());
+
+            final long utc = pay.getUTCTime();
+            if (utc > counters.get(base + LAST_TIME)) {
+                counters.lazySet(base + LAST_TIME, utc);
+            }
+        }
+
+        @Override
+        public boolean isClosed()
+        {
+            return tail.isClosed();
+        }
+
+        @Override
+        public StrandTail<T> push(List<T> list)
+            throws SplicerException
+        {
+            for (T obj : list) {
+                count(obj);
+            }
+
+            tail.push(list);
+            return this;
+        }
+
+        @Override
+        public StrandTail<T> push(T obj)
+            throws SplicerException
+        {
+            count(obj);
+
+            tail.push(obj);
+            return this;
+        }
+
+        @Override
+        public int size()
+        {
+            return tail.size();
+        }
+    }
+}
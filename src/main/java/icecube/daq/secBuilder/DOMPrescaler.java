@@ -0,0 +1,53 @@
+package icecube.daq.secBuilder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keep one of every N payloads from each DOM, so noisy DOMs are thinned
+ * without starving quiet ones.
+ */
+class DOMPrescaler
+    implements PrescalePolicy
+{
+    /** Expected number of DOMs (sizes the counter table) */
+    private static final int EXPECTED_DOMS = 5500;
+
+    private int preScale;
+    private LongIntMap counts = new LongIntMap(EXPECTED_DOMS);
+
+    /**
+     * Create a per-DOM prescaler
+     *
+     * @param preScale keep one of every <tt>preScale</tt> payloads per DOM
+     */
+    DOMPrescaler(long preScale)
+    {
+        if (preScale <= 0L || preScale > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bad per-DOM prescale " +
+                                               preScale);
+        }
+
+        this.preScale = (int) preScale;
+    }
+
+    @Override
+    public boolean accept(ByteBuffer buf, long utcTime)
+    {
+        final long mbid = buf.getLong(DOM_ID_OFFSET);
+
+        // keep the first payload of every cycle
+        final int count = counts.increment(mbid);
+        if (count >= preScale) {
+            counts.put(mbid, 0);
+        }
+
+        return count == 1;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DOMPrescale[1 of " + preScale + ", " + counts.size() +
+            " DOMs]";
+    }
+}
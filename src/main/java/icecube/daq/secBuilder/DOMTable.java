@@ -0,0 +1,194 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.util.DOMInfo;
+import icecube.daq.util.IDOMRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Table of all DOMs in the registry, built once when the registry is set.
+ * Each DOM is assigned a small integer ordinal, and its OM ID
+ * ("string-position") string is created once and reused for every bin and
+ * every run, so monitoring messages always use the same key objects (whose
+ * hash codes are computed only once).
+ *
+ * Ordinals are assigned in string and position order, so the DOMs on each
+ * string have consecutive ordinals and work can be split by string.
+ */
+class DOMTable
+{
+    /** Ordinal returned for unknown mainboard IDs */
+    static final int NO_DOM = -1;
+
+    /** Sorts DOMs by string, position and mainboard ID */
+    private static final Comparator<DOMInfo> LOCATION_ORDER =
+        new Comparator<DOMInfo>() {
+            @Override
+            public int compare(DOMInfo a, DOMInfo b)
+            {
+                if (a.getStringMajor() != b.getStringMajor()) {
+                    return a.getStringMajor() < b.getStringMajor() ? -1 : 1;
+                }
+                if (a.getStringMinor() != b.getStringMinor()) {
+                    return a.getStringMinor() < b.getStringMinor() ? -1 : 1;
+                }
+
+                final long mbA = a.getNumericMainboardId();
+                final long mbB = b.getNumericMainboardId();
+                if (mbA != mbB) {
+                    return mbA < mbB ? -1 : 1;
+                }
+
+                return 0;
+            }
+        };
+
+    private LongIntMap ordinals;
+    private DOMInfo[] doms;
+    private String[] omIDs;
+    private int numDOMs;
+
+    /** First ordinal of each string, followed by <tt>numDOMs</tt> */
+    private int[] stringStarts;
+
+    /**
+     * Build a table of all DOMs in the registry
+     *
+     * @param reg DOM registry
+     */
+    DOMTable(IDOMRegistry reg)
+    {
+        ArrayList<DOMInfo> list = new ArrayList<DOMInfo>(reg.size());
+        for (DOMInfo dom : reg.allDOMs()) {
+            list.add(dom);
+        }
+        Collections.sort(list, LOCATION_ORDER);
+
+        ordinals = new LongIntMap(list.size());
+        doms = new DOMInfo[list.size()];
+        omIDs = new String[list.size()];
+
+        // DOMs at the same location share a single OM ID string
+        HashMap<String, String> unique = new HashMap<String, String>();
+
+        int[] starts = new int[list.size() + 1];
+        int numStrings = 0;
+
+        int num = 0;
+        for (DOMInfo dom : list) {
+            final long mbid = dom.getNumericMainboardId();
+            if (ordinals.get(mbid, NO_DOM) != NO_DOM) {
+                // ignore duplicate registry entries
+                continue;
+            }
+
+            String omID = dom.getDeploymentLocation();
+            if (omID != null) {
+                final String prev = unique.get(omID);
+                if (prev != null) {
+                    omID = prev;
+                } else {
+                    // compute (and cache) the hash code now
+                    omID.hashCode();
+                    unique.put(omID, omID);
+                }
+            }
+
+            if (num == 0 ||
+                doms[num - 1].getStringMajor() != dom.getStringMajor())
+            {
+                starts[numStrings++] = num;
+            }
+
+            ordinals.put(mbid, num);
+            doms[num] = dom;
+            omIDs[num] = omID;
+            num++;
+        }
+
+        numDOMs = num;
+
+        starts[numStrings] = num;
+        stringStarts = new int[numStrings + 1];
+        System.arraycopy(starts, 0, stringStarts, 0, numStrings + 1);
+    }
+
+    /**
+     * Get the DOM with the specified ordinal
+     *
+     * @param ordinal DOM ordinal
+     *
+     * @return DOM information
+     */
+    DOMInfo getDOM(int ordinal)
+    {
+        return doms[ordinal];
+    }
+
+    /**
+     * Get the OM ID for the DOM with the specified ordinal
+     *
+     * @param ordinal DOM ordinal
+     *
+     * @return "string-position" string
+     */
+    String getOmID(int ordinal)
+    {
+        return omIDs[ordinal];
+    }
+
+    /**
+     * Get the number of strings in the table
+     *
+     * @return number of strings
+     */
+    int getNumStrings()
+    {
+        return stringStarts.length - 1;
+    }
+
+    /**
+     * Get the ordinal for the specified mainboard ID
+     *
+     * @param mbid mainboard ID
+     *
+     * @return ordinal (or <tt>NO_DOM</tt> if the DOM is unknown)
+     */
+    int getOrdinal(long mbid)
+    {
+        return ordinals.get(mbid, NO_DOM);
+    }
+
+    /**
+     * Get the first ordinal of a string's DOMs.  The string's DOMs end
+     * just before the first ordinal of the next string, and
+     * <tt>getStringStart(getNumStrings())</tt> is the number of DOMs.
+     *
+     * @param index string index (not the string number)
+     *
+     * @return first ordinal
+     */
+    int getStringStart(int index)
+    {
+        return stringStarts[index];
+    }
+
+    /**
+     * Get the number of DOMs in the table
+     *
+     * @return number of DOMs
+     */
+    int size()
+    {
+        return numDOMs;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DOMTable[" + numDOMs + " DOMs]";
+    }
+}
@@ -0,0 +1,432 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.juggler.alert.AlertException;
+import icecube.daq.juggler.alert.Alerter;
+import icecube.daq.juggler.alert.IAlertQueue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Thin the secondary streams as the dispatch disk fills, and stop thinning
+ * them once the disk has recovered.
+ *
+ * After each disk sample, a stream's disk is crowded if less than a
+ * minimum percentage is free or it is projected to fill within a minimum
+ * number of seconds.  Each crowded disk has the prescale of one of its
+ * streams doubled, taking streams in priority order so that later
+ * streams are only thinned once earlier streams have reached the maximum.
+ * Thinning only helps if data is being written, so nothing is raised while
+ * the disk is not filling, or while its time to full is still improving
+ * after the previous increase on that disk.
+ * When no stream on a disk needs to be thinned further, one stream on that
+ * disk which has recovered has its prescale halved, in the reverse order,
+ * until every stream is writing all of its payloads again.  Streams which
+ * are not in the priority order are never thinned.
+ */
+class DiskPressurePolicy
+    implements DiskSampler.Listener
+{
+    private static final Logger LOG =
+        Logger.getLogger(DiskPressurePolicy.class);
+
+    /** Disk prescale message variable name */
+    public static final String ALERT_NAME = "disk_prescale";
+    /** Disk prescale message version number */
+    public static final int ALERT_VERSION = 1;
+
+    /** Default order in which streams are thinned */
+    static final String DEFAULT_ORDER = "tcal,sn,moni";
+    /** Default free space (percentage of the disk) below which streams
+     * are thinned */
+    static final int DEFAULT_PRESSURE_PERCENT = 10;
+    /** Default free space (percentage of the disk) needed to stop
+     * thinning */
+    static final int DEFAULT_RECOVER_PERCENT = 20;
+    /** Default time to full (in seconds) below which streams are thinned */
+    static final long DEFAULT_PRESSURE_SECONDS = 3600L;
+    /** Default maximum disk prescale */
+    static final long DEFAULT_MAX_PRESCALE = 64L;
+
+    /**
+     * A stream which may be thinned
+     */
+    private static class Entry
+    {
+        private String name;
+        private SBSplicedAnalysis analysis;
+        private DiskSampler.Stream disk;
+        private long prescale = 1L;
+
+        Entry(String name, SBSplicedAnalysis analysis,
+              DiskSampler.Stream disk)
+        {
+            this.name = name;
+            this.analysis = analysis;
+            this.disk = disk;
+        }
+    }
+
+    /** Stream names, in the order they are thinned */
+    private String[] order;
+    /** Streams which have been added, guarded by <tt>this</tt> */
+    private HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+    private int pressurePercent;
+    private int recoverPercent;
+    private long pressureSeconds;
+    private long maxPrescale;
+
+    /** Has the "all streams at maximum prescale" error been logged? */
+    private boolean reportedMaximum;
+
+    /** Time to full when a prescale was last raised on each disk */
+    private HashMap<Object, Long> raisedSecondsToFull =
+        new HashMap<Object, Long>();
+
+    private volatile IAlertQueue alertQueue;
+
+    /**
+     * Create a policy with the default thresholds
+     *
+     * @param order comma-separated list of stream names, in the order
+     *              they are thinned
+     */
+    DiskPressurePolicy(String order)
+    {
+        this(order, DEFAULT_PRESSURE_PERCENT, DEFAULT_RECOVER_PERCENT,
+             DEFAULT_PRESSURE_SECONDS, DEFAULT_MAX_PRESCALE);
+    }
+
+    /**
+     * Create a policy
+     *
+     * @param order comma-separated list of stream names, in the order
+     *              they are thinned
+     * @param pressurePercent streams are thinned when less than this
+     *                        percentage of the disk is free
+     * @param recoverPercent thinning is reduced once at least this
+     *                       percentage of the disk is free
+     * @param pressureSeconds streams are thinned when the disk will be
+     *                        full in less than this many seconds
+     * @param maxPrescale largest disk prescale (1 to never thin streams)
+     */
+    DiskPressurePolicy(String order, int pressurePercent, int recoverPercent,
+                       long pressureSeconds, long maxPrescale)
+    {
+        ArrayList<String> names = new ArrayList<String>();
+        if (order != null) {
+            for (String name : order.split(",")) {
+                final String trimmed = name.trim();
+                if (trimmed.length() > 0 && !names.contains(trimmed)) {
+                    names.add(trimmed);
+                }
+            }
+        }
+        this.order = names.toArray(new String[names.size()]);
+
+        if (pressurePercent < 0 || pressurePercent > 100) {
+            LOG.error("Bad disk pressure percentage " + pressurePercent +
+                      "; using " + DEFAULT_PRESSURE_PERCENT);
+            pressurePercent = DEFAULT_PRESSURE_PERCENT;
+        }
+        if (recoverPercent < pressurePercent) {
+            LOG.error("Disk recovery percentage " + recoverPercent +
+                      " is less than pressure percentage " +
+                      pressurePercent);
+            recoverPercent = pressurePercent;
+        }
+        if (pressureSeconds < 0L) {
+            LOG.error("Bad disk pressure time " + pressureSeconds +
+                      "; using " + DEFAULT_PRESSURE_SECONDS + " seconds");
+            pressureSeconds = DEFAULT_PRESSURE_SECONDS;
+        }
+        if (maxPrescale < 1L) {
+            LOG.error("Bad maximum disk prescale " + maxPrescale +
+                      "; streams will not be thinned");
+            maxPrescale = 1L;
+        }
+
+        this.pressurePercent = pressurePercent;
+        this.recoverPercent = recoverPercent;
+        this.pressureSeconds = pressureSeconds;
+        this.maxPrescale = maxPrescale;
+    }
+
+    /**
+     * Add a stream which may be thinned
+     *
+     * @param analysis stream's analysis object
+     * @param disk sampled disk values for the stream
+     */
+    synchronized void addStream(SBSplicedAnalysis analysis,
+                                DiskSampler.Stream disk)
+    {
+        final String name = disk.getName();
+        if (!isOrdered(name)) {
+            if (LOG.isInfoEnabled()) {
+                LOG.info("Stream " + name + " will not be thinned when" +
+                         " the disk is full");
+            }
+            return;
+        }
+
+        entries.put(name, new Entry(name, analysis, disk));
+    }
+
+    /**
+     * Change a stream's disk prescale
+     *
+     * @param entry stream
+     * @param prescale new prescale
+     */
+    private void change(Entry entry, long prescale)
+    {
+        final long prev = entry.prescale;
+
+        entry.prescale = prescale;
+        entry.analysis.setDiskPrescale(prescale);
+
+        if (prescale > prev) {
+            LOG.warn("Disk is filling; writing 1 of every " + prescale +
+                     " " + entry.name + " payloads (" + entry.disk + ")");
+        } else {
+            LOG.warn("Disk has recovered; writing 1 of every " + prescale +
+                     " " + entry.name + " payloads (" + entry.disk + ")");
+        }
+
+        sendAlert(entry, prev);
+    }
+
+    /**
+     * Get a stream's current disk prescale
+     *
+     * @param name stream name
+     *
+     * @return prescale (1 if the stream is not being thinned)
+     */
+    synchronized long getPrescale(String name)
+    {
+        final Entry entry = entries.get(name);
+        if (entry == null) {
+            return 1L;
+        }
+
+        return entry.prescale;
+    }
+
+    /**
+     * Is the disk too full (or filling too quickly)?
+     *
+     * @param disk sampled disk values
+     *
+     * @return <tt>true</tt> if streams on this disk should be thinned
+     */
+    private boolean isCrowded(DiskSampler.Stream disk)
+    {
+        if (!disk.isSampled()) {
+            return false;
+        }
+
+        final long avail = disk.getDiskAvailable();
+        final long size = disk.getDiskSize();
+        if (avail >= 0L && size > 0L && avail * 100L < size * pressurePercent)
+        {
+            return true;
+        }
+
+        final long secs = disk.getSecondsToFull();
+        return secs != DiskSampler.NOT_FILLING && secs < pressureSeconds;
+    }
+
+    /**
+     * Is the disk filling at least as quickly as it was when a prescale
+     * on that disk was last raised?
+     *
+     * @param disk sampled disk values
+     *
+     * @return <tt>true</tt> if another stream should be thinned
+     */
+    private boolean isNotImproving(DiskSampler.Stream disk)
+    {
+        final long secs = disk.getSecondsToFull();
+        if (secs == DiskSampler.NOT_FILLING) {
+            // nothing is being written, so thinning won't help
+            return false;
+        }
+
+        final Long raised = raisedSecondsToFull.get(disk.getStore());
+        return raised == null || secs <= raised;
+    }
+
+    /**
+     * Is this stream in the priority order?
+     *
+     * @param name stream name
+     *
+     * @return <tt>true</tt> if the stream may be thinned
+     */
+    private boolean isOrdered(String name)
+    {
+        for (String ordered : order) {
+            if (ordered.equals(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Does the disk have enough room to reduce thinning?  The thresholds
+     * are higher than those in <tt>isCrowded()</tt> so that a prescale
+     * is not raised and lowered on alternate samples.
+     *
+     * @param disk sampled disk values
+     *
+     * @return <tt>true</tt> if streams on this disk can be thinned less
+     */
+    private boolean isRecovered(DiskSampler.Stream disk)
+    {
+        if (!disk.isSampled()) {
+            return false;
+        }
+
+        final long avail = disk.getDiskAvailable();
+        final long size = disk.getDiskSize();
+        if (avail >= 0L && size > 0L && avail * 100L < size * recoverPercent)
+        {
+            return false;
+        }
+
+        final long secs = disk.getSecondsToFull();
+        return secs == DiskSampler.NOT_FILLING || secs >= pressureSeconds * 2L;
+    }
+
+    /**
+     * Raise or lower one stream's disk prescale on each disk after each
+     * sample
+     *
+     * @param streams sampled streams
+     */
+    @Override
+    public synchronized void sampled(List<DiskSampler.Stream> streams)
+    {
+        // disks which are crowded, and those which have a stream which can
+        //  still be thinned (or which have already had a stream changed)
+        HashSet<Object> crowded = new HashSet<Object>();
+        HashSet<Object> handled = new HashSet<Object>();
+
+        for (String name : order) {
+            final Entry entry = entries.get(name);
+            if (entry == null || !isCrowded(entry.disk)) {
+                continue;
+            }
+
+            final Object store = entry.disk.getStore();
+            crowded.add(store);
+            if (entry.prescale < maxPrescale && !handled.contains(store)) {
+                if (isNotImproving(entry.disk)) {
+                    raisedSecondsToFull.put(store,
+                                            entry.disk.getSecondsToFull());
+                    change(entry, Math.min(entry.prescale * 2L,
+                                           maxPrescale));
+                    reportedMaximum = false;
+                }
+
+                // give the change time to take effect
+                handled.add(store);
+            }
+        }
+
+        if (!handled.containsAll(crowded) && !reportedMaximum &&
+            maxPrescale > 1L)
+        {
+            LOG.error("Disk is still filling but all streams are already" +
+                      " prescaled by " + maxPrescale);
+            reportedMaximum = true;
+        }
+
+        // restore the most important streams first
+        for (int i = order.length - 1; i >= 0; i--) {
+            final Entry entry = entries.get(order[i]);
+            if (entry == null || entry.prescale <= 1L) {
+                continue;
+            }
+
+            final Object store = entry.disk.getStore();
+            if (!handled.contains(store) && isRecovered(entry.disk)) {
+                raisedSecondsToFull.remove(store);
+                change(entry, entry.prescale / 2L);
+                handled.add(store);
+            }
+        }
+    }
+
+    /**
+     * Report a prescale change
+     *
+     * @param entry stream
+     * @param prev previous prescale
+     */
+    private void sendAlert(Entry entry, long prev)
+    {
+        final IAlertQueue queue = alertQueue;
+        if (queue == null || queue.isStopped()) {
+            return;
+        }
+
+        HashMap<String, Object> msg = new HashMap<String, Object>();
+        msg.put("version", ALERT_VERSION);
+        msg.put("stream", entry.name);
+        msg.put("prescale", entry.prescale);
+        msg.put("previousPrescale", prev);
+        msg.put("diskAvailable", entry.disk.getDiskAvailable());
+        msg.put("diskSize", entry.disk.getDiskSize());
+        msg.put("secondsToFull", entry.disk.getSecondsToFull());
+
+        try {
+            // changes aren't tied to a payload, so the alerter adds
+            // the current time
+            queue.push(ALERT_NAME, Alerter.Priority.SCP, null, msg);
+        } catch (AlertException ae) {
+            LOG.error("Cannot send " + ALERT_NAME, ae);
+        }
+    }
+
+    /**
+     * Set the queue used to send alerts
+     *
+     * @param queue alert queue
+     */
+    void setAlertQueue(IAlertQueue queue)
+    {
+        alertQueue = queue;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder("DiskPressurePolicy[");
+        synchronized (this) {
+            boolean first = true;
+            for (String name : order) {
+                final Entry entry = entries.get(name);
+                if (entry == null) {
+                    continue;
+                }
+
+                if (!first) {
+                    buf.append(", ");
+                }
+                buf.append(name).append('/').append(entry.prescale);
+                first = false;
+            }
+        }
+        return buf.append(']').toString();
+    }
+}
@@ -0,0 +1,418 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.io.Dispatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sample the disk space and write rate of each stream's dispatcher on a
+ * background thread.
+ *
+ * Each stream's fill rate is a smoothed average of the bytes it wrote
+ * between samples.  Streams which write to the same filesystem share
+ * its free space, so a stream's time to full uses the combined fill rate
+ * of every stream on its filesystem.  Results are kept in volatile fields,
+ * so reading them costs nothing and never touches the filesystem.
+ */
+class DiskSampler
+{
+    private static final Logger LOG = Logger.getLogger(DiskSampler.class);
+
+    /** Default number of seconds between samples */
+    static final int DEFAULT_INTERVAL_SECONDS = 10;
+
+    /** Time to full when no data is being written */
+    static final long NOT_FILLING = -1L;
+
+    /** Dispatchers report disk space in megabytes */
+    static final long BYTES_PER_MB = 1024L * 1024L;
+
+    /** Weight given to the newest fill rate */
+    private static final double RATE_WEIGHT = 0.3;
+
+    /**
+     * Notified after each sample
+     */
+    interface Listener
+    {
+        /**
+         * Called on the sampling thread after all streams have been sampled
+         *
+         * @param streams sampled streams
+         */
+        void sampled(List<Stream> streams);
+    }
+
+    /**
+     * Sampled values for one stream
+     */
+    static class Stream
+    {
+        private String name;
+        private Dispatcher dispatcher;
+
+        private volatile boolean sampled;
+        private volatile long diskAvailable = -1L;
+        private volatile long diskSize = -1L;
+        private volatile double fillRate;
+        private volatile long secondsToFull = NOT_FILLING;
+        /** Key shared by all streams on the same filesystem */
+        private volatile Object store;
+
+        /** Bytes written at the previous sample (-1 before any sample) */
+        private long prevBytes = -1L;
+        /** Time of the previous sample */
+        private long prevNanos;
+        /** <tt>true</tt> once a fill rate has been computed */
+        private boolean hasRate;
+
+        Stream(String name, Dispatcher dispatcher)
+        {
+            this.name = name;
+            this.dispatcher = dispatcher;
+        }
+
+        /**
+         * Get the available disk space from the latest sample
+         *
+         * @return megabytes available (-1 if it could not be checked)
+         */
+        long getDiskAvailable()
+        {
+            return diskAvailable;
+        }
+
+        /**
+         * Get the disk size from the latest sample
+         *
+         * @return disk size in megabytes (-1 if it could not be checked)
+         */
+        long getDiskSize()
+        {
+            return diskSize;
+        }
+
+        /**
+         * Get the rate at which this stream is writing data
+         *
+         * @return bytes per second
+         */
+        double getFillRate()
+        {
+            return fillRate;
+        }
+
+        /**
+         * Get the stream name
+         *
+         * @return name
+         */
+        String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Get the projected time until this stream's disk is full
+         *
+         * @return number of seconds (<tt>NOT_FILLING</tt> if nothing is
+         *         being written)
+         */
+        long getSecondsToFull()
+        {
+            return secondsToFull;
+        }
+
+        /**
+         * Get the filesystem holding this stream's files
+         *
+         * @return key shared by all streams on the same filesystem
+         *         (<tt>null</tt> before the first sample)
+         */
+        Object getStore()
+        {
+            return store;
+        }
+
+        /**
+         * Has this stream been sampled?
+         *
+         * @return <tt>true</tt> if the values are valid
+         */
+        boolean isSampled()
+        {
+            return sampled;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[avail %d MB, %.0f B/s, full in %d s]",
+                                 name, diskAvailable, fillRate,
+                                 secondsToFull);
+        }
+    }
+
+    /** Sampled streams, guarded by <tt>streams</tt> */
+    private final List<Stream> streams = new ArrayList<Stream>();
+
+    /** Objects notified after each sample, guarded by <tt>listeners</tt> */
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    private long intervalMillis;
+
+    private Thread thread;
+    private volatile boolean stopping;
+
+    /**
+     * Create a sampler
+     *
+     * @param seconds number of seconds between samples
+     */
+    DiskSampler(int seconds)
+    {
+        if (seconds <= 0) {
+            LOG.error("Bad disk sample interval " + seconds + "; using " +
+                      DEFAULT_INTERVAL_SECONDS + " seconds");
+            seconds = DEFAULT_INTERVAL_SECONDS;
+        }
+
+        intervalMillis = (long) seconds * 1000L;
+    }
+
+    /**
+     * Add an object to be notified after each sample
+     *
+     * @param listener new listener
+     */
+    void addListener(Listener listener)
+    {
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Add a stream.  Adding a stream again returns the existing stream, or
+     * replaces it if the stream has a new dispatcher.
+     *
+     * @param name stream name
+     * @param dispatcher stream's dispatcher
+     *
+     * @return object which holds the stream's sampled values
+     */
+    Stream addStream(String name, Dispatcher dispatcher)
+    {
+        synchronized (streams) {
+            for (int i = 0; i < streams.size(); i++) {
+                final Stream old = streams.get(i);
+                if (old.name.equals(name)) {
+                    if (old.dispatcher == dispatcher) {
+                        return old;
+                    }
+
+                    final Stream stream = new Stream(name, dispatcher);
+                    streams.set(i, stream);
+                    return stream;
+                }
+            }
+
+            final Stream stream = new Stream(name, dispatcher);
+            streams.add(stream);
+            return stream;
+        }
+    }
+
+    /**
+     * Find the filesystem holding a stream's files
+     *
+     * @param stream stream
+     *
+     * @return key shared by all streams on the same filesystem
+     */
+    private static Object getStoreKey(Stream stream)
+    {
+        final File dir = stream.dispatcher.getDispatchDestStorage();
+        if (dir != null) {
+            try {
+                final FileStore store = Files.getFileStore(dir.toPath());
+                if (store != null) {
+                    return store;
+                }
+            } catch (IOException ioe) {
+                // treat the stream as having its own filesystem
+            } catch (SecurityException sex) {
+                // treat the stream as having its own filesystem
+            }
+        }
+
+        return stream;
+    }
+
+    /**
+     * Get a snapshot of the sampled streams
+     *
+     * @return list of streams
+     */
+    List<Stream> getStreams()
+    {
+        synchronized (streams) {
+            return new ArrayList<Stream>(streams);
+        }
+    }
+
+    /**
+     * Is the sampling thread running?
+     *
+     * @return <tt>true</tt> if the thread has been started
+     */
+    synchronized boolean isRunning()
+    {
+        return thread != null;
+    }
+
+    /**
+     * Sample all streams now
+     */
+    void sample()
+    {
+        sample(System.nanoTime());
+    }
+
+    /**
+     * Sample all streams
+     *
+     * @param nanos current time (from <tt>System.nanoTime()</tt>)
+     */
+    void sample(long nanos)
+    {
+        final List<Stream> list = getStreams();
+
+        HashMap<Object, Double> storeRates = new HashMap<Object, Double>();
+        HashMap<Stream, Object> storeKeys = new HashMap<Stream, Object>();
+
+        for (Stream stream : list) {
+            final long bytes = stream.dispatcher.getNumBytesWritten();
+
+            if (stream.prevBytes >= 0L && nanos > stream.prevNanos) {
+                long delta = bytes - stream.prevBytes;
+                if (delta < 0L) {
+                    // byte count was reset for a new run
+                    delta = bytes;
+                }
+
+                final double secs =
+                    (double) (nanos - stream.prevNanos) / 1000000000.0;
+                final double rate = (double) delta / secs;
+                if (!stream.hasRate) {
+                    stream.fillRate = rate;
+                    stream.hasRate = true;
+                } else {
+                    stream.fillRate = (RATE_WEIGHT * rate) +
+                        ((1.0 - RATE_WEIGHT) * stream.fillRate);
+                }
+            }
+            stream.prevBytes = bytes;
+            stream.prevNanos = nanos;
+
+            stream.diskAvailable = stream.dispatcher.getDiskAvailable();
+            stream.diskSize = stream.dispatcher.getDiskSize();
+
+            final Object key = getStoreKey(stream);
+            storeKeys.put(stream, key);
+            stream.store = key;
+
+            final Double prevRate = storeRates.get(key);
+            storeRates.put(key, (prevRate == null ? 0.0 : prevRate) +
+                           stream.fillRate);
+        }
+
+        for (Stream stream : list) {
+            final double rate = storeRates.get(storeKeys.get(stream));
+            if (rate <= 0.0 || stream.diskAvailable < 0L) {
+                stream.secondsToFull = NOT_FILLING;
+            } else {
+                stream.secondsToFull =
+                    (long) ((double) (stream.diskAvailable * BYTES_PER_MB) /
+                            rate);
+            }
+
+            stream.sampled = true;
+        }
+
+        ArrayList<Listener> toNotify;
+        synchronized (listeners) {
+            toNotify = new ArrayList<Listener>(listeners);
+        }
+        for (Listener listener : toNotify) {
+            listener.sampled(list);
+        }
+    }
+
+    /**
+     * Start sampling on a background thread (if it isn't already running)
+     */
+    synchronized void start()
+    {
+        if (thread != null) {
+            return;
+        }
+
+        stopping = false;
+
+        thread = new Thread("DiskSampler") {
+                @Override
+                public void run()
+                {
+                    while (!stopping) {
+                        try {
+                            sample();
+                        } catch (RuntimeException rex) {
+                            LOG.error("Cannot sample disk space", rex);
+                        }
+
+                        try {
+                            Thread.sleep(intervalMillis);
+                        } catch (InterruptedException iex) {
+                            // stop() interrupts the sleep
+                        }
+                    }
+                }
+            };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop sampling
+     */
+    synchronized void stop()
+    {
+        if (thread == null) {
+            return;
+        }
+
+        stopping = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException iex) {
+            // ignore interrupts
+        }
+        thread = null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DiskSampler" + getStreams();
+    }
+}
@@ -0,0 +1,227 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.payload.impl.HardwareMonitor;
+import icecube.daq.payload.impl.Monitor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read the fields used by <tt>MoniAnalysis</tt> straight from a hardware
+ * monitoring payload's bytes, so the payload does not need to be loaded.
+ *
+ * A single view is reused for every payload; all reads are absolute, so
+ * nothing is allocated and the buffer's position is not changed.  The
+ * getters return the same values as the loaded <tt>HardwareMonitor</tt>.
+ * Payloads whose bytes cannot be read by the view are loaded and read
+ * through a {@link Loaded} view instead.
+ */
+class HardwareMoniView
+{
+    /**
+     * Read the same fields through a loaded payload's getters
+     */
+    static class Loaded
+        extends HardwareMoniView
+    {
+        private HardwareMonitor mon;
+
+        @Override
+        short getADC5VPowerSupply()
+        {
+            return mon.getADC5VPowerSupply();
+        }
+
+        @Override
+        long getDOMID()
+        {
+            return mon.getDOMID();
+        }
+
+        @Override
+        short getMBTemperature()
+        {
+            return mon.getMBTemperature();
+        }
+
+        @Override
+        int getMPEScalar()
+        {
+            return mon.getMPEScalar();
+        }
+
+        @Override
+        short getPMTBaseHVMonitorValue()
+        {
+            return mon.getPMTBaseHVMonitorValue();
+        }
+
+        @Override
+        short getPMTBaseHVSetValue()
+        {
+            return mon.getPMTBaseHVSetValue();
+        }
+
+        @Override
+        int getSPEScalar()
+        {
+            return mon.getSPEScalar();
+        }
+
+        /**
+         * Point this view at a loaded payload
+         *
+         * @param newMon loaded hardware monitoring payload
+         */
+        void wrap(HardwareMonitor newMon)
+        {
+            mon = newMon;
+        }
+
+        @Override
+        public String toString()
+        {
+            if (mon == null) {
+                return "HardwareMoniView.Loaded[]";
+            }
+
+            return "HardwareMoniView.Loaded[" +
+                Long.toHexString(mon.getDOMID()) + "]";
+        }
+    }
+
+    /** Offset of the monitor record type */
+    static final int RECORD_TYPE_OFFSET = 26;
+    /** Offset of the first hardware data value */
+    static final int DATA_OFFSET = 36;
+    /** Offset of the SPE scaler */
+    static final int SPE_OFFSET =
+        DATA_OFFSET + (HardwareMonitor.NUM_DATA_ENTRIES * 2);
+    /** Offset of the MPE scaler */
+    static final int MPE_OFFSET = SPE_OFFSET + 4;
+    /** Minimum length of a hardware monitoring payload */
+    static final int MIN_LENGTH = MPE_OFFSET + 4;
+
+    /** Data index of the 5V power supply ADC value */
+    private static final int ADC_5V_INDEX = 1;
+    /** Data index of the PMT base HV set value */
+    private static final int HV_SET_INDEX = 24;
+    /** Data index of the PMT base HV monitor value */
+    private static final int HV_MONITOR_INDEX = 25;
+    /** Data index of the mainboard temperature */
+    private static final int MB_TEMP_INDEX = 26;
+
+    private ByteBuffer buf;
+
+    /**
+     * Can this buffer be read by the view?
+     *
+     * @param buf payload bytes (starting at index 0)
+     *
+     * @return <tt>true</tt> if the buffer holds a complete hardware
+     *         monitoring record
+     */
+    static boolean canRead(ByteBuffer buf)
+    {
+        return buf != null && buf.limit() >= MIN_LENGTH &&
+            buf.getShort(RECORD_TYPE_OFFSET) == Monitor.HARDWARE;
+    }
+
+    /**
+     * Get the 5V power supply ADC value
+     *
+     * @return ADC value
+     */
+    short getADC5VPowerSupply()
+    {
+        return getData(ADC_5V_INDEX);
+    }
+
+    /**
+     * Get one of the hardware data values
+     */
+    private short getData(int index)
+    {
+        return buf.getShort(DATA_OFFSET + (index * 2));
+    }
+
+    /**
+     * Get the DOM mainboard ID
+     *
+     * @return mainboard ID
+     */
+    long getDOMID()
+    {
+        return buf.getLong(PrescalePolicy.DOM_ID_OFFSET);
+    }
+
+    /**
+     * Get the raw mainboard temperature
+     *
+     * @return temperature ADC value
+     */
+    short getMBTemperature()
+    {
+        return getData(MB_TEMP_INDEX);
+    }
+
+    /**
+     * Get the MPE scaler
+     *
+     * @return MPE scaler
+     */
+    int getMPEScalar()
+    {
+        return buf.getInt(MPE_OFFSET);
+    }
+
+    /**
+     * Get the PMT base HV monitor value
+     *
+     * @return HV monitor value
+     */
+    short getPMTBaseHVMonitorValue()
+    {
+        return getData(HV_MONITOR_INDEX);
+    }
+
+    /**
+     * Get the PMT base HV set value
+     *
+     * @return HV set value
+     */
+    short getPMTBaseHVSetValue()
+    {
+        return getData(HV_SET_INDEX);
+    }
+
+    /**
+     * Get the SPE scaler
+     *
+     * @return SPE scaler
+     */
+    int getSPEScalar()
+    {
+        return buf.getInt(SPE_OFFSET);
+    }
+
+    /**
+     * Point this view at a payload's bytes
+     *
+     * @param newBuf payload bytes (starting at index 0), which must have
+     *               passed <tt>canRead()</tt>
+     */
+    void wrap(ByteBuffer newBuf)
+    {
+        buf = newBuf;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (buf == null) {
+            return "HardwareMoniView[]";
+        }
+
+        return "HardwareMoniView[" + Long.toHexString(getDOMID()) + "]";
+    }
+}
@@ -0,0 +1,166 @@
+package icecube.daq.secBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed hash table mapping <tt>long</tt> keys (usually DOM
+ * mainboard IDs) to <tt>int</tt> values without boxing either one.
+ */
+class LongIntMap
+{
+    /** Marker for unused slots (mainboard IDs never have the top bit set) */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * Create a map sized to hold the specified number of entries without
+     * being resized
+     *
+     * @param expected expected number of entries
+     */
+    LongIntMap(int expected)
+    {
+        int cap = 16;
+        while (cap < expected * 2) {
+            cap <<= 1;
+        }
+
+        allocate(cap);
+    }
+
+    private void allocate(int cap)
+    {
+        keys = new long[cap];
+        Arrays.fill(keys, EMPTY);
+        values = new int[cap];
+        mask = cap - 1;
+        size = 0;
+    }
+
+    /**
+     * Remove all entries
+     */
+    void clear()
+    {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Find the slot for <tt>key</tt>, which will be either the slot holding
+     * the key or the empty slot where the key should be added
+     */
+    private int find(long key)
+    {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Cannot map key " + key);
+        }
+
+        // spread mainboard ID bits across the low-order bits
+        long h = key * 0x9E3779B97F4A7C15L;
+        int idx = (int) (h ^ (h >>> 32)) & mask;
+        while (keys[idx] != EMPTY && keys[idx] != key) {
+            idx = (idx + 1) & mask;
+        }
+
+        return idx;
+    }
+
+    /**
+     * Get the value associated with <tt>key</tt>
+     *
+     * @param key key
+     * @param missing value returned if the key is not found
+     *
+     * @return mapped value or <tt>missing</tt>
+     */
+    int get(long key, int missing)
+    {
+        final int idx = find(key);
+        if (keys[idx] == EMPTY) {
+            return missing;
+        }
+
+        return values[idx];
+    }
+
+    /**
+     * Add one to the value associated with <tt>key</tt>, adding the key with
+     * an initial value of zero if necessary
+     *
+     * @param key key
+     *
+     * @return new value
+     */
+    int increment(long key)
+    {
+        int idx = find(key);
+        if (keys[idx] == EMPTY) {
+            idx = add(idx, key, 0);
+        }
+
+        return ++values[idx];
+    }
+
+    /**
+     * Map <tt>key</tt> to <tt>value</tt>
+     *
+     * @param key key
+     * @param value value
+     */
+    void put(long key, int value)
+    {
+        int idx = find(key);
+        if (keys[idx] == EMPTY) {
+            idx = add(idx, key, value);
+        }
+
+        values[idx] = value;
+    }
+
+    /**
+     * Add a new key at the specified empty slot, growing the table if it
+     * has become more than half full
+     *
+     * @return slot now holding the key
+     */
+    private int add(int idx, long key, int value)
+    {
+        if ((size + 1) * 2 > keys.length) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+
+            allocate(keys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    final int ni = find(oldKeys[i]);
+                    keys[ni] = oldKeys[i];
+                    values[ni] = oldValues[i];
+                    size++;
+                }
+            }
+
+            idx = find(key);
+        }
+
+        keys[idx] = key;
+        values[idx] = value;
+        size++;
+
+        return idx;
+    }
+
+    /**
+     * Get the number of entries
+     *
+     * @return number of entries
+     */
+    int size()
+    {
+        return size;
+    }
+}
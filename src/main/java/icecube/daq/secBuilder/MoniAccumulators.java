@@ -0,0 +1,222 @@
+package icecube.daq.secBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Running totals and counts of every DOM's monitoring quantities for a
+ * single time bin.
+ *
+ * Each quantity lives in its own primitive array indexed by DOM ordinal
+ * (see {@link DOMTable}), so adding a payload touches a handful of array
+ * slots and sending a bin is a linear scan over the arrays rather than a
+ * walk over thousands of separate heap objects.  Totals for a fine bin can
+ * be added to the totals for a coarser bin, so several bin widths are
+ * filled while each payload is only read once.  Arrays are cleared and
+ * reused rather than reallocated for each bin.
+ */
+class MoniAccumulators
+{
+    private int numDOMs;
+
+    /** <tt>true</tt> if the DOM belongs in this bin (even with no data) */
+    final boolean[] present;
+
+    final long[] speTotal;
+    final int[] speCount;
+
+    final long[] mpeTotal;
+    final int[] mpeCount;
+
+    final long[] hvTotal;
+    final int[] hvCount;
+
+    final long[] power5VTotal;
+    final int[] power5VCount;
+
+    final long[] deadtimeTotal;
+    final int[] deadtimeCount;
+
+    final double[] mbTempTotal;
+    final int[] mbTempCount;
+
+    /**
+     * Create accumulators for the specified number of DOMs
+     *
+     * @param numDOMs number of DOMs
+     */
+    MoniAccumulators(int numDOMs)
+    {
+        if (numDOMs < 0) {
+            throw new IllegalArgumentException("Bad number of DOMs " +
+                                               numDOMs);
+        }
+
+        this.numDOMs = numDOMs;
+
+        present = new boolean[numDOMs];
+        speTotal = new long[numDOMs];
+        speCount = new int[numDOMs];
+        mpeTotal = new long[numDOMs];
+        mpeCount = new int[numDOMs];
+        hvTotal = new long[numDOMs];
+        hvCount = new int[numDOMs];
+        power5VTotal = new long[numDOMs];
+        power5VCount = new int[numDOMs];
+        deadtimeTotal = new long[numDOMs];
+        deadtimeCount = new int[numDOMs];
+        mbTempTotal = new double[numDOMs];
+        mbTempCount = new int[numDOMs];
+    }
+
+    /**
+     * Reset all totals and counts.  DOMs stay in the bin.
+     */
+    void clear()
+    {
+        Arrays.fill(speTotal, 0L);
+        Arrays.fill(speCount, 0);
+        Arrays.fill(mpeTotal, 0L);
+        Arrays.fill(mpeCount, 0);
+        Arrays.fill(hvTotal, 0L);
+        Arrays.fill(hvCount, 0);
+        Arrays.fill(power5VTotal, 0L);
+        Arrays.fill(power5VCount, 0);
+        Arrays.fill(deadtimeTotal, 0L);
+        Arrays.fill(deadtimeCount, 0);
+        Arrays.fill(mbTempTotal, 0.0);
+        Arrays.fill(mbTempCount, 0);
+    }
+
+    /**
+     * Reset one DOM's SPE and MPE totals and counts
+     *
+     * @param ordinal DOM ordinal
+     */
+    void clearScalers(int ordinal)
+    {
+        speTotal[ordinal] = 0;
+        speCount[ordinal] = 0;
+        mpeTotal[ordinal] = 0;
+        mpeCount[ordinal] = 0;
+    }
+
+    /**
+     * Get the number of DOMs
+     *
+     * @return number of DOMs
+     */
+    int getNumDOMs()
+    {
+        return numDOMs;
+    }
+
+    /**
+     * Does the ordinal belong to a DOM in these accumulators?
+     *
+     * @param ordinal DOM ordinal
+     *
+     * @return <tt>true</tt> if the ordinal is valid
+     */
+    boolean isValid(int ordinal)
+    {
+        return ordinal >= 0 && ordinal < numDOMs;
+    }
+
+    /**
+     * Move the per-bin totals (SPE, MPE, HV and temperature) into another
+     * set of accumulators, replacing its per-bin totals and the list of
+     * DOMs in its bin.  Run-wide totals (deadtime and power) are left in
+     * place.
+     *
+     * @param other accumulators which receive the per-bin totals
+     */
+    void moveBinTotals(MoniAccumulators other)
+    {
+        if (other.numDOMs != numDOMs) {
+            throw new IllegalArgumentException("Cannot move " + numDOMs +
+                                               " DOMs to " + other.numDOMs);
+        }
+
+        System.arraycopy(present, 0, other.present, 0, numDOMs);
+        System.arraycopy(speTotal, 0, other.speTotal, 0, numDOMs);
+        System.arraycopy(speCount, 0, other.speCount, 0, numDOMs);
+        System.arraycopy(mpeTotal, 0, other.mpeTotal, 0, numDOMs);
+        System.arraycopy(mpeCount, 0, other.mpeCount, 0, numDOMs);
+        System.arraycopy(hvTotal, 0, other.hvTotal, 0, numDOMs);
+        System.arraycopy(hvCount, 0, other.hvCount, 0, numDOMs);
+        System.arraycopy(mbTempTotal, 0, other.mbTempTotal, 0, numDOMs);
+        System.arraycopy(mbTempCount, 0, other.mbTempCount, 0, numDOMs);
+
+        Arrays.fill(speTotal, 0L);
+        Arrays.fill(speCount, 0);
+        Arrays.fill(mpeTotal, 0L);
+        Arrays.fill(mpeCount, 0);
+        Arrays.fill(hvTotal, 0L);
+        Arrays.fill(hvCount, 0);
+        Arrays.fill(mbTempTotal, 0.0);
+        Arrays.fill(mbTempCount, 0);
+    }
+
+    /**
+     * Add these totals to a coarser bin's totals, then clear them
+     *
+     * @param coarse accumulators for the coarser bin
+     */
+    void rollInto(MoniAccumulators coarse)
+    {
+        if (coarse.numDOMs != numDOMs) {
+            throw new IllegalArgumentException("Cannot roll " + numDOMs +
+                                               " DOMs into " +
+                                               coarse.numDOMs);
+        }
+
+        for (int i = 0; i < numDOMs; i++) {
+            coarse.speTotal[i] += speTotal[i];
+            coarse.speCount[i] += speCount[i];
+            coarse.mpeTotal[i] += mpeTotal[i];
+            coarse.mpeCount[i] += mpeCount[i];
+        }
+        for (int i = 0; i < numDOMs; i++) {
+            coarse.hvTotal[i] += hvTotal[i];
+            coarse.hvCount[i] += hvCount[i];
+            coarse.power5VTotal[i] += power5VTotal[i];
+            coarse.power5VCount[i] += power5VCount[i];
+        }
+        for (int i = 0; i < numDOMs; i++) {
+            coarse.deadtimeTotal[i] += deadtimeTotal[i];
+            coarse.deadtimeCount[i] += deadtimeCount[i];
+            coarse.mbTempTotal[i] += mbTempTotal[i];
+            coarse.mbTempCount[i] += mbTempCount[i];
+        }
+
+        clear();
+    }
+
+    /**
+     * Get a string listing one DOM's totals and counts
+     *
+     * @param ordinal DOM ordinal
+     *
+     * @return totals string
+     */
+    String totalsString(int ordinal)
+    {
+        final int i = ordinal;
+        return String.format("speTot %d speCnt %d mpeTot %d mpeCnt %d" +
+                             " hvTot %d hvCnt %d" +
+                             " 5VTot %d 5VCnt %d" +
+                             " deadTot %d deadCnt %d" +
+                             " mbTemp %.8f mbTempCnt %d",
+                             speTotal[i], speCount[i], mpeTotal[i],
+                             mpeCount[i], hvTotal[i], hvCount[i],
+                             power5VTotal[i], power5VCount[i],
+                             deadtimeTotal[i], deadtimeCount[i],
+                             mbTempTotal[i], mbTempCount[i]);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MoniAccumulators[" + numDOMs + " DOMs]";
+    }
+}
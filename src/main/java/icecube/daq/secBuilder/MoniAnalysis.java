@@ -2,7 +2,6 @@ package icecube.daq.secBuilder;
 
 import icecube.daq.io.Dispatcher;
 import icecube.daq.juggler.alert.Alerter;
-import icecube.daq.juggler.alert.AlertException;
 import icecube.daq.juggler.alert.IAlertQueue;
 import icecube.daq.payload.IPayload;
 import icecube.daq.payload.PayloadFormatException;
@@ -10,12 +9,14 @@ import icecube.daq.payload.impl.ASCIIMonitor;
 import icecube.daq.payload.impl.HardwareMonitor;
 import icecube.daq.payload.impl.Monitor;
 import icecube.daq.payload.impl.UTCTime;
-import icecube.daq.util.DOMInfo;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
 
 import org.apache.log4j.Logger;
 
@@ -35,38 +36,98 @@ public class MoniAnalysis
     /** 5v difference message variable name */
     public static final String HVDIFF_MONI_NAME = "dom_pmt_hv_diff";
     /** 5v message version number */
-    public static final int HV_MONI_VERSION = 0;
+    public static final int HV_MONI_VERSION = 1;
 
     /** Power supply voltage message variable name */
     public static final String POWER_MONI_NAME = "dom_mainboard_power_rail";
     /** Power supply voltage message version number */
-    public static final int POWER_MONI_VERSION = 0;
+    public static final int POWER_MONI_VERSION = 1;
 
     /** Mainboard temperature message variable name */
     public static final String MBTEMP_MONI_NAME = "dom_temperature";
     /** Mainboard temperature message version number */
-    public static final int MBTEMP_MONI_VERSION = 0;
+    public static final int MBTEMP_MONI_VERSION = 1;
 
     /** SPE monitoring message variable name */
     public static final String SPE_MONI_NAME = "dom_spe_moni_rate";
     /** MPE monitoring message variable name */
     public static final String MPE_MONI_NAME = "dom_mpe_moni_rate";
     /** SPE/MPE monitoring message version number */
-    public static final int SPE_MPE_MONI_VERSION = 0;
+    public static final int SPE_MPE_MONI_VERSION = 1;
+
+    /** Fast SPE monitoring message variable name */
+    public static final String SPE_FAST_MONI_NAME = "dom_spe_moni_rate_fast";
+    /** Fast MPE monitoring message variable name */
+    public static final String MPE_FAST_MONI_NAME = "dom_mpe_moni_rate_fast";
+    /** Fast SPE/MPE monitoring message version number */
+    public static final int SPE_MPE_FAST_MONI_VERSION = 0;
+
+    /** Default width of binned values (in seconds) */
+    public static final int DEFAULT_BIN_SECONDS = 10 * 60;
+    /** Default width of fast SPE/MPE rate bins (0 disables them) */
+    public static final int DEFAULT_FAST_BIN_SECONDS = 0;
+    /** Default time a bin is held open for late payloads (in seconds) */
+    public static final int DEFAULT_LATENESS_SECONDS = 30;
+
+    /** Time a snapshot keeps trying to read consistent values */
+    private static final long SNAPSHOT_TIMEOUT_NANOS = 1000000000L;
+    /** Time a snapshot waits for a payload to finish updating values */
+    private static final long SNAPSHOT_WAIT_NANOS = 100000L;
+
+    /** Snapshot read consistent values */
+    private static final int SNAPSHOT_READ = 0;
+    /** Snapshot could not read consistent values in time */
+    private static final int SNAPSHOT_FAILED = 1;
+    /** Snapshot values were detached by a run switch */
+    private static final int SNAPSHOT_DETACHED = 2;
 
     /** Name of field used to send SPE/MPE rate error */
     public static final String MONI_ERROR_FIELD = "rate_error";
+    /** Name of field used to send SPE/MPE rate histograms */
+    public static final String MONI_HISTOGRAM_FIELD = "rate_hist";
     /** Name of field used to send SPE/MPE rates */
     public static final String MONI_RATE_FIELD = "rate";
     /** Name of field used to send other values */
     public static final String MONI_VALUE_FIELD = "value";
+    /** Name of field used to send the largest HV/power/temperature value */
+    public static final String MONI_MAX_FIELD = "max";
+    /** Name of field used to send the smallest HV/power/temperature value */
+    public static final String MONI_MIN_FIELD = "min";
+    /** Name of field used to send HV/power/temperature standard deviation */
+    public static final String MONI_STDDEV_FIELD = "stddev";
+
+    /** Index of HV values in the per-bin statistics */
+    private static final int HV_STATS = 0;
+    /** Index of mainboard temperatures in the per-bin statistics */
+    private static final int TEMP_STATS = 1;
+    /** Number of quantities in the per-bin statistics */
+    private static final int NUM_BIN_STATS = 2;
+    /** Index of 5V power values in the run-wide statistics */
+    private static final int POWER_STATS = 0;
+
+    /** Value buffer for HV, power, temperature and deadtime values */
+    private static final int VALUE_BUF = 0;
+    /** Value buffer for standard deviations */
+    private static final int STDDEV_BUF = 1;
+    /** Value buffer for minimum values */
+    private static final int MIN_BUF = 2;
+    /** Value buffer for maximum values */
+    private static final int MAX_BUF = 3;
+
+    /** Value buffer for SPE rates */
+    private static final int SPE_RATE_BUF = 0;
+    /** Value buffer for SPE rate errors */
+    private static final int SPE_ERROR_BUF = 1;
+    /** Value buffer for MPE rates */
+    private static final int MPE_RATE_BUF = 2;
+    /** Value buffer for MPE rate errors */
+    private static final int MPE_ERROR_BUF = 3;
 
     /** Logger */
     private static final Logger LOG = Logger.getLogger(MoniAnalysis.class);
 
-    /** 10 minutes in 10ths of nanoseconds */
+    /** One second in 10ths of nanoseconds */
     private static final long ONE_SECOND = 10000000000L;
-    private static final long TEN_MINUTES = 10L * 60L * ONE_SECOND;
 
     /** Special value to indicate there is no value for this time */
     private static final long NO_UTCTIME = Long.MIN_VALUE;
@@ -74,18 +135,113 @@ public class MoniAnalysis
     private IAlertQueue alertQueue;
     private boolean warnedQueueStopped;
 
+    /** Sends alerts without holding up the analysis */
+    private AlertDelivery delivery;
+
     private long runStartTime = NO_UTCTIME;
     private long runEndTime = NO_UTCTIME;
 
     private long binStartTime = NO_UTCTIME;
     private long binEndTime = NO_UTCTIME;
+    private long fastStartTime = NO_UTCTIME;
+
+    /** Width of binned values (in DAQ ticks) */
+    private long binWidth;
+    /** Width of fast SPE/MPE rate bins (in DAQ ticks, 0 if disabled) */
+    private long fastWidth;
+    /** Time a finished bin is held open for late payloads (in DAQ ticks) */
+    private long lateness;
+
+    /** Latest payload time seen (the watermark is this minus lateness) */
+    private long maxTime = NO_UTCTIME;
+    /** End of the most recently sent bin (older payloads are dropped) */
+    private long flushedTime = NO_UTCTIME;
+
+    /** Start of the finished bin waiting for late payloads */
+    private long pendingStart = NO_UTCTIME;
+    /** Time of the payload which closed the pending bin */
+    private long pendingAlertTime = NO_UTCTIME;
+    /** <tt>false</tt> if the pending bin's times are bad */
+    private boolean pendingValid;
+
+    /** Number of late payloads added to the pending bin */
+    private long numLate;
+    /** Number of payloads which arrived after their bin was sent */
+    private long numDropped;
+
+    /** Values for this run (allocated when the first DOM is seen) */
+    private RunValues runValues;
+    /** SPE/MPE histograms for the current bin (allocated when needed) */
+    private ScalerHistograms histograms;
+    /** SPE/MPE histograms for the pending bin */
+    private ScalerHistograms pendingHistograms;
+    /** HV/temperature statistics for the current bin (allocated lazily) */
+    private RunningStatistics binStats;
+    /** HV/temperature statistics for the pending bin */
+    private RunningStatistics pendingBinStats;
+    /** 5V power statistics for the run (allocated when needed) */
+    private RunningStatistics runStats;
+
+    /** Guards the bin times and <tt>runValues</tt> */
+    private final Object binLock = new Object();
 
-    private HashMap<Long, DOMValues> domValues =
-        new HashMap<Long, DOMValues>();
+    /**
+     * Sequence lock which lets snapshots read the bin values without
+     * taking <tt>binLock</tt>.  The write lock is only taken while holding
+     * <tt>binLock</tt>, so the splicer thread never waits for it, and
+     * snapshots only use optimistic reads, so they never block a writer.
+     */
+    private final StampedLock snapshotLock = new StampedLock();
+    /** Number of times a snapshot re-read a DOM's values */
+    private final AtomicLong numSnapshotRetries = new AtomicLong();
+    /** Number of snapshots which could not read consistent values */
+    private final AtomicLong numFailedSnapshots = new AtomicLong();
+
+    /** Reusable reader for hardware records, guarded by <tt>binLock</tt> */
+    private final HardwareMoniView hardwareView = new HardwareMoniView();
+    /** Reader for loaded hardware records, guarded by <tt>binLock</tt> */
+    private final HardwareMoniView.Loaded loadedView =
+        new HardwareMoniView.Loaded();
+
+    /** Reusable per-DOM value buffers, guarded by <tt>sendLock</tt> */
+    private final StringReducer.Partial sendValues =
+        new StringReducer.Partial();
+    /** Splits large bin flushes by string, guarded by <tt>sendLock</tt> */
+    private StringReducer reducer;
+    /** Held while the encoders are in use */
+    private final Object sendLock = new Object();
 
     public MoniAnalysis(Dispatcher dispatcher)
     {
         super(dispatcher);
+
+        int inFlight = Integer.getInteger("moniAlertsInFlight",
+                                          AlertDelivery.DEFAULT_MAX_IN_FLIGHT);
+        if (inFlight < 1) {
+            LOG.error("Bad number of in-flight alerts " + inFlight +
+                      "; using " + AlertDelivery.DEFAULT_MAX_IN_FLIGHT);
+            inFlight = AlertDelivery.DEFAULT_MAX_IN_FLIGHT;
+        }
+
+        // alerts are sent from the splicer thread while the bin locks are
+        //  held, so only wait forever if explicitly asked to
+        final long waitMillis =
+            Long.getLong("moniAlertWaitMillis",
+                         AlertDelivery.DEFAULT_WAIT_MILLIS);
+        delivery = new AlertDelivery("Moni", AlertDelivery.DEFAULT_LANES,
+                                     inFlight,
+                                     AlertDelivery.DEFAULT_MAX_ATTEMPTS,
+                                     waitMillis);
+
+        setBinWidths(Integer.getInteger("moniBinSeconds",
+                                        DEFAULT_BIN_SECONDS),
+                     Integer.getInteger("moniSPEMPEFastBinSeconds",
+                                        DEFAULT_FAST_BIN_SECONDS));
+        setLateness(Integer.getInteger("moniLatenessSeconds",
+                                       DEFAULT_LATENESS_SECONDS));
+        setParallelThreshold(Integer.getInteger("moniParallelFlushDOMs",
+                                                StringReducer.
+                                                DEFAULT_THRESHOLD));
     }
 
     /**
@@ -128,29 +284,328 @@ public class MoniAnalysis
     }
 
     /**
-     * Find the DOM values for the specified mainboard ID
+     * Get the values for this run, allocating them if necessary.  Must be
+     * called while holding <tt>binLock</tt>.
+     *
+     * @return <tt>null</tt> if there is no DOM table
+     */
+    private RunValues findRunValues()
+    {
+        if (runValues == null) {
+            final DOMTable table = getDOMTable();
+            if (table != null) {
+                runValues = new RunValues(table, fastWidth > 0);
+            }
+        }
+
+        return runValues;
+    }
+
+    /**
+     * Find the ordinal for the specified mainboard ID and add the DOM to
+     * this run's values.  Must be called while holding <tt>binLock</tt>.
+     *
+     * @param mbid mainboard ID
+     *
+     * @return <tt>DOMTable.NO_DOM</tt> if the DOM is unknown
+     */
+    private int findOrdinal(long mbid)
+    {
+        final RunValues rv = findRunValues();
+        if (rv == null) {
+            return DOMTable.NO_DOM;
+        }
+
+        final int ordinal = rv.table.getOrdinal(mbid);
+        if (ordinal != DOMTable.NO_DOM) {
+            rv.bin.present[ordinal] = true;
+        }
+
+        return ordinal;
+    }
+
+    /**
+     * Close the current bin.  If late payloads are allowed, the bin's
+     * values are held until the watermark passes the end of the bin,
+     * otherwise they're sent immediately.  Must be called while holding
+     * <tt>binLock</tt>.
+     *
+     * @param nextStart start of the next bin
+     * @param valid <tt>false</tt> if the bin times are inconsistent
+     * @param alertTime time of the payload which closed the bin
+     */
+    private void closeBin(long nextStart, boolean valid, long alertTime)
+    {
+        if (lateness <= 0) {
+            if (valid) {
+                sendBinnedMonitorValues(runValues, histograms, binStats,
+                                        false, getRunNumber(), alertTime,
+                                        UTCTime.toDateString(binStartTime),
+                                        UTCTime.toDateString(nextStart - 1),
+                                        nextStart - binStartTime);
+            } else {
+                LOG.error("Bin end time " +
+                          UTCTime.toDateString(nextStart - 1) +
+                          " is earlier than start time " +
+                          UTCTime.toDateString(binStartTime));
+            }
+
+            flushedTime = nextStart;
+            return;
+        }
+
+        if (runValues != null) {
+            runValues.bin.moveBinTotals(runValues.getPendingTotals());
+        }
+
+        // the pending histograms were emptied when they were sent
+        final ScalerHistograms tmpHists = pendingHistograms;
+        pendingHistograms = histograms;
+        histograms = tmpHists;
+
+        final RunningStatistics tmpStats = pendingBinStats;
+        pendingBinStats = binStats;
+        binStats = tmpStats;
+
+        pendingStart = binStartTime;
+        pendingAlertTime = alertTime;
+        pendingValid = valid;
+    }
+
+    /**
+     * Send the pending bin (which ends at the start of the current bin).
+     * Must be called while holding <tt>binLock</tt>.
+     */
+    private void flushPending()
+    {
+        if (pendingStart == NO_UTCTIME) {
+            return;
+        }
+
+        final String startTime = UTCTime.toDateString(pendingStart);
+        final String endTime = UTCTime.toDateString(binStartTime - 1);
+
+        if (pendingValid) {
+            sendBinnedMonitorValues(runValues, pendingHistograms,
+                                    pendingBinStats, true,
+                                    getRunNumber(), pendingAlertTime,
+                                    startTime, endTime,
+                                    binStartTime - pendingStart);
+        } else {
+            LOG.error("Bin end time " + endTime +
+                      " is earlier than start time " + startTime);
+
+            // throw away the unsent values
+            if (runValues != null && runValues.pending != null) {
+                runValues.pending.clear();
+            }
+            pendingHistograms = null;
+            pendingBinStats = null;
+        }
+
+        flushedTime = binStartTime;
+        pendingStart = NO_UTCTIME;
+        pendingAlertTime = NO_UTCTIME;
+    }
+
+    /**
+     * Get the SPE/MPE histograms for the current bin, allocating them if
+     * necessary.  Must be called while holding <tt>binLock</tt>.
+     *
+     * @return <tt>null</tt> if there is no DOM table
+     */
+    private ScalerHistograms findHistograms()
+    {
+        if (histograms == null) {
+            final DOMTable table = getDOMTable();
+            if (table != null) {
+                histograms = new ScalerHistograms(table.size());
+            }
+        }
+
+        return histograms;
+    }
+
+    /**
+     * Get the HV/temperature statistics for the current bin, allocating
+     * them if necessary.  Must be called while holding <tt>binLock</tt>.
      *
-     * @param map map from mainboard IDs to DOMValues
-     * @param mbKey mainboard ID
+     * @return <tt>null</tt> if there is no DOM table
+     */
+    private RunningStatistics findBinStatistics()
+    {
+        if (binStats == null) {
+            final DOMTable table = getDOMTable();
+            if (table != null) {
+                binStats = new RunningStatistics(table.size(),
+                                                 NUM_BIN_STATS);
+            }
+        }
+
+        return binStats;
+    }
+
+    /**
+     * Get the run-wide power statistics, allocating them if necessary.
+     * Must be called while holding <tt>binLock</tt>.
      *
-     * @return DOMValues object
+     * @return <tt>null</tt> if there is no DOM table
      */
-    public DOMValues findDOMValues(HashMap<Long, DOMValues> map, Long mbKey)
+    private RunningStatistics findRunStatistics()
     {
-        // if cached entry exists for this DOM, return it
-        if (map.containsKey(mbKey)) {
-            return map.get(mbKey);
+        if (runStats == null) {
+            final DOMTable table = getDOMTable();
+            if (table != null) {
+                runStats = new RunningStatistics(table.size(), 1);
+            }
         }
 
-        DOMInfo dom = getDOM(mbKey);
-        if (dom == null) {
-            return null;
+        return runStats;
+    }
+
+    /**
+     * Detach the cached monitoring data so it can be sent without holding
+     * up the analysis of new payloads
+     *
+     * @param stopTime time when the component's stopped() or switching()
+     *                 method was called (in DAQ ticks)
+     *
+     * @return task which sends the detached data
+     */
+    @Override
+    Runnable detachMonitoring(long stopTime)
+    {
+        final RunValues values;
+        final ScalerHistograms hists;
+        final ScalerHistograms pendHists;
+        final RunningStatistics stats;
+        final RunningStatistics pendStats;
+        final RunningStatistics summaryStats;
+        final long alertTime;
+        final long pendAlertTime;
+        final long late;
+        final long dropped;
+        final long summaryStart;
+        final long summaryEnd;
+
+        String startTime = null;
+        String endTime = null;
+        String fastStart = null;
+        String pendStartTime = null;
+        String pendEndTime = null;
+        long binTicks = 0;
+
+        synchronized (binLock) {
+            if (pendingStart != NO_UTCTIME && pendingValid) {
+                pendStartTime = UTCTime.toDateString(pendingStart);
+                pendEndTime = UTCTime.toDateString(binStartTime - 1);
+            }
+
+            if (binStartTime == NO_UTCTIME || binEndTime == NO_UTCTIME) {
+                LOG.error("Monitoring start/end time has not been set, not" +
+                          " sending binned monitoring values");
+            } else {
+                if (binEndTime > stopTime) {
+                    stopTime = binEndTime;
+                }
+
+                final String startStr = UTCTime.toDateString(binStartTime);
+                final String endStr = UTCTime.toDateString(stopTime);
+
+                if (fastStartTime != NO_UTCTIME &&
+                    fastStartTime <= stopTime)
+                {
+                    fastStart = UTCTime.toDateString(fastStartTime);
+                }
+
+                if (binEndTime < binStartTime) {
+                    LOG.error("Final bin end time " + endStr +
+                              " is earlier than start time " + startStr);
+                } else {
+                    startTime = startStr;
+                    endTime = endStr;
+                    binTicks = stopTime - binStartTime;
+                }
+
+                runEndTime = binEndTime;
+            }
+
+            values = runValues;
+            hists = histograms;
+            pendHists = pendingHistograms;
+            stats = binStats;
+            pendStats = pendingBinStats;
+            summaryStats = runStats;
+            alertTime = binEndTime;
+            pendAlertTime = pendingAlertTime;
+            summaryStart = runStartTime;
+            summaryEnd = runEndTime;
+            late = numLate;
+            dropped = numDropped;
+
+            final long stamp = snapshotLock.writeLock();
+            try {
+                binStartTime = NO_UTCTIME;
+                binEndTime = NO_UTCTIME;
+                fastStartTime = NO_UTCTIME;
+                maxTime = NO_UTCTIME;
+                flushedTime = NO_UTCTIME;
+                pendingStart = NO_UTCTIME;
+                pendingAlertTime = NO_UTCTIME;
+                numLate = 0;
+                numDropped = 0;
+                runValues = null;
+                histograms = null;
+                pendingHistograms = null;
+                binStats = null;
+                pendingBinStats = null;
+                runStats = null;
+            } finally {
+                snapshotLock.unlockWrite(stamp);
+            }
         }
 
-        DOMValues dval = new DOMValues(dom);
-        map.put(mbKey, dval);
+        final int runNum = getRunNumber();
+        final String binStart = startTime;
+        final String binEnd = endTime;
+        final String fastBinStart = fastStart;
+        final String pendStart = pendStartTime;
+        final String pendEnd = pendEndTime;
+        final long ticks = binTicks;
+
+        return new Runnable() {
+            @Override
+            public void run()
+            {
+                if (late > 0 || dropped > 0) {
+                    LOG.warn("Run " + runNum + " saw " + late +
+                             " late monitoring records and dropped " +
+                             dropped + " records which arrived after" +
+                             " their bin was sent");
+                }
+
+                // send the previous bin if it was still open
+                if (pendStart != null) {
+                    sendBinnedMonitorValues(values, pendHists, pendStats,
+                                            true, runNum, pendAlertTime,
+                                            pendStart, pendEnd, binWidth);
+                }
+
+                // add the final fast bin to the final bin
+                sendFastValues(values, runNum, alertTime, fastBinStart,
+                               binEnd);
 
-        return dval;
+                if (binStart != null) {
+                    sendBinnedMonitorValues(values, hists, stats, false,
+                                            runNum, alertTime, binStart,
+                                            binEnd, ticks);
+                }
+
+                sendSummaryMonitorValues(values, summaryStats, runNum,
+                                         alertTime, summaryStart,
+                                         summaryEnd);
+            }
+        };
     }
 
     /**
@@ -162,33 +617,92 @@ public class MoniAnalysis
     @Override
     public void finishMonitoring(long stopTime)
     {
-        if (binStartTime == NO_UTCTIME || binEndTime == NO_UTCTIME) {
-            LOG.error("Monitoring start/end time has not been set, not" +
-                      " sending binned monitoring values");
-        } else {
-            if (binEndTime > stopTime) {
-                stopTime = binEndTime;
-            }
+        detachMonitoring(stopTime).run();
 
-            final String startTime = UTCTime.toDateString(binStartTime);
-            final String endTime = UTCTime.toDateString(stopTime);
+        // make sure everything is sent before the queue can be stopped
+        delivery.drain();
 
-            if (binEndTime < binStartTime) {
-                LOG.error("Final bin end time " + endTime +
-                          " is earlier than start time " + startTime);
-            } else {
-                final long binTicks = stopTime - binStartTime;
-                sendBinnedMonitorValues(startTime, endTime, binTicks);
+        if (LOG.isInfoEnabled()) {
+            for (Map.Entry<String, AlertDelivery.VarStats> entry :
+                     delivery.getStatistics().entrySet())
+            {
+                LOG.info("Alert " + entry.getKey() + ": " + entry.getValue());
             }
+        }
+    }
+
+    /**
+     * Send any queued alerts, then stop the alert sending threads
+     */
+    @Override
+    void close()
+    {
+        super.close();
+
+        delivery.drain();
+        delivery.shutdown();
+    }
+
+    /**
+     * Get the number of alerts which were dropped because too many alerts
+     * were waiting to be sent
+     *
+     * @return number of dropped alerts
+     */
+    @Override
+    public long getNumDroppedAlerts()
+    {
+        return delivery.getNumDropped();
+    }
+
+    /**
+     * Get the number of payloads in this run which arrived after their bin
+     * was sent (these are not included in any bin)
+     *
+     * @return number of dropped payloads
+     */
+    @Override
+    public long getNumDroppedLate()
+    {
+        synchronized (binLock) {
+            return numDropped;
+        }
+    }
 
-            runEndTime = binEndTime;
+    /**
+     * Get the number of payloads in this run which arrived after their bin
+     * was closed but were still added to that bin
+     *
+     * @return number of late payloads
+     */
+    @Override
+    public long getNumLate()
+    {
+        synchronized (binLock) {
+            return numLate;
         }
+    }
 
-        sendSummaryMonitorValues();
+    /**
+     * Get the number of snapshots which were abandoned because payloads
+     * kept changing the values being read
+     *
+     * @return number of failed snapshots
+     */
+    long getNumFailedSnapshots()
+    {
+        return numFailedSnapshots.get();
+    }
 
-        binStartTime = NO_UTCTIME;
-        binEndTime = NO_UTCTIME;
-        domValues.clear();
+    /**
+     * Get the number of times a snapshot re-read a DOM's values because a
+     * payload changed them while they were being read
+     *
+     * @return number of retries
+     */
+    long getNumSnapshotRetries()
+    {
+        return numSnapshotRetries.get();
     }
 
     /**
@@ -215,85 +729,209 @@ public class MoniAnalysis
                                     " is stopped");
         }
 
-        // load the payload
-        try {
-            ((IPayload) payload).loadPayload();
-        } catch (IOException ioe) {
-            throw new MoniException("Cannot load monitoring payload " +
-                                    payload, ioe);
-        } catch (PayloadFormatException pfe) {
-            throw new MoniException("Cannot load monitoring payload " +
-                                    payload, pfe);
+        // hardware records are read straight from the payload bytes,
+        //  everything else needs to be loaded
+        final boolean useView = payload instanceof HardwareMonitor &&
+            HardwareMoniView.canRead(payload.getPayloadBacking());
+        if (!useView) {
+            try {
+                ((IPayload) payload).loadPayload();
+            } catch (IOException ioe) {
+                throw new MoniException("Cannot load monitoring payload " +
+                                        payload, ioe);
+            } catch (PayloadFormatException pfe) {
+                throw new MoniException("Cannot load monitoring payload " +
+                                        payload, pfe);
+            }
         }
 
+        synchronized (binLock) {
+            final long stamp = snapshotLock.writeLock();
+            try {
+                gatherPayload(payload, useView);
+            } finally {
+                snapshotLock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Add a loaded payload's data to its bin.  A payload newer than the
+     * current bin closes that bin, and closed bins are sent once the
+     * watermark (the newest payload time minus the lateness) passes their
+     * end.  Late payloads for the closed bin are added to it; anything
+     * older is counted and dropped.
+     *
+     * @param payload loaded monitoring payload
+     * @param useView if <tt>true</tt>, hardware records are read straight
+     *                from the payload bytes rather than the loaded payload
+     */
+    private void gatherPayload(IPayload payload, boolean useView)
+        throws MoniException
+    {
+        final long utc = payload.getUTCTime();
+
         // if this is the first value, set the binning start time
         if (binStartTime == NO_UTCTIME) {
-            binStartTime = payload.getUTCTime();
+            binStartTime = utc;
+            fastStartTime = binStartTime;
             if (runStartTime == NO_UTCTIME) {
                 runStartTime = binStartTime;
             }
         }
 
-        // save previous end time, set current end time
-        long prevEnd = binEndTime;
-        binEndTime = payload.getUTCTime();
+        if (utc <= flushedTime) {
+            // this payload's bin has already been sent
+            numDropped++;
+            return;
+        }
 
-        final long nextStart = binStartTime + TEN_MINUTES;
-        if (payload.getUTCTime() > nextStart) {
-            // use old bin start/end times as time range
-            final String startTime = UTCTime.toDateString(binStartTime);
-            final String endTime = UTCTime.toDateString(nextStart - 1);
+        if (maxTime == NO_UTCTIME || utc > maxTime) {
+            maxTime = utc;
+        }
 
-            if (prevEnd < binStartTime) {
-                LOG.error("Bin end time " + endTime +
-                          " is earlier than start time " + startTime);
-            } else {
-                final long binTicks = nextStart - binStartTime;
-                sendBinnedMonitorValues(startTime, endTime, binTicks);
+        final long nextStart = binStartTime + binWidth;
+        if (utc > nextStart) {
+            // roll the final fast bin into the bin before it's closed
+            if (fastWidth > 0) {
+                final long fastEnd =
+                    Math.min(fastStartTime + fastWidth, nextStart) - 1;
+                sendFastValues(runValues, getRunNumber(), binEndTime,
+                               UTCTime.toDateString(fastStartTime),
+                               UTCTime.toDateString(fastEnd));
             }
 
+            // only one finished bin is held open
+            flushPending();
+
+            closeBin(nextStart, binEndTime >= binStartTime, utc);
+
             // set new bin start
             binStartTime = nextStart;
+            binEndTime = utc;
+            fastStartTime = nextStart;
+        }
+
+        // send the finished bin once the watermark passes its end
+        if (pendingStart != NO_UTCTIME && maxTime - lateness >= binStartTime)
+        {
+            flushPending();
+        }
+
+        // late payloads for the finished bin are added to that bin
+        final boolean toPending =
+            pendingStart != NO_UTCTIME && utc <= binStartTime;
+        if (toPending) {
+            numLate++;
+        } else if (utc > binEndTime) {
+            binEndTime = utc;
+        }
+
+        if (!toPending && fastWidth > 0 && utc > fastStartTime + fastWidth) {
+            final long fastEnd = fastStartTime + fastWidth;
+            sendFastValues(runValues, getRunNumber(), binEndTime,
+                           UTCTime.toDateString(fastStartTime),
+                           UTCTime.toDateString(fastEnd - 1));
+
+            // skip over any empty fast bins
+            fastStartTime += ((utc - fastStartTime - 1) / fastWidth) *
+                fastWidth;
         }
 
         if (payload instanceof HardwareMonitor) {
-            HardwareMonitor mon = (HardwareMonitor) payload;
+            // guarded by binLock
+            HardwareMoniView mon;
+            if (useView) {
+                hardwareView.wrap(payload.getPayloadBacking());
+                mon = hardwareView;
+            } else {
+                loadedView.wrap((HardwareMonitor) payload);
+                mon = loadedView;
+            }
 
-            DOMValues dval = findDOMValues(domValues, mon.getDOMID());
-            if (dval == null) {
+            final int ordinal = findOrdinal(mon.getDOMID());
+            if (ordinal == DOMTable.NO_DOM) {
                 LOG.error("Cannot find DOM " + mon.getDOMID());
             } else {
-                synchronized (dval) {
-                    dval.addSPEScalar(mon.getSPEScalar());
-                    dval.addMPEScalar(mon.getMPEScalar());
-
-                    final short hvSet = mon.getPMTBaseHVSetValue();
-                    if (!dval.baseSet) {
-                        // save base voltage
-                        dval.baseValue = hvSet;
-                        dval.baseSet = true;
-                        dval.baseWarned = false;
-                    } else if (dval.baseValue != hvSet && !dval.baseWarned) {
-                        final String msg =
-                            String.format("DOM %s: previous setHV %d does" +
-                                          " not match current %d; reset to" +
-                                          " current value", dval.getOmID(),
-                                          dval.baseValue, hvSet);
-                        LOG.error(msg);
-                        dval.baseValue = hvSet;
-                        dval.baseWarned = true;
-                    }
+                final int speScalar = mon.getSPEScalar();
+                final int mpeScalar = mon.getMPEScalar();
+
+                final short hvMon = mon.getPMTBaseHVMonitorValue();
+                final short power5V = mon.getADC5VPowerSupply();
+                final double mbTemp =
+                    translateTemperature(mon.getMBTemperature());
+
+                ScalerHistograms hists;
+                RunningStatistics stats;
+                if (toPending) {
+                    hists = pendingHistograms;
+                    stats = pendingBinStats;
+                } else {
+                    hists = findHistograms();
+                    stats = findBinStatistics();
+                }
+                if (hists != null) {
+                    hists.add(ordinal, ScalerHistograms.SPE, speScalar);
+                    hists.add(ordinal, ScalerHistograms.MPE, mpeScalar);
+                }
+                if (stats != null) {
+                    stats.add(ordinal, HV_STATS,
+                              convertToVoltage(hvMon, 1));
+                    stats.add(ordinal, TEMP_STATS, mbTemp);
+                }
 
-                    dval.hvTotal += mon.getPMTBaseHVMonitorValue();
-                    dval.hvCount++;
+                final RunningStatistics power = findRunStatistics();
+                if (power != null) {
+                    power.add(ordinal, POWER_STATS,
+                              convertToMBPower(power5V, 1));
+                }
 
-                    dval.power5VTotal += mon.getADC5VPowerSupply();
-                    dval.power5VCount++;
+                // guarded by binLock
+                final RunValues rv = runValues;
 
-                    dval.mbTempTotal +=
-                        translateTemperature(mon.getMBTemperature());
-                    dval.mbTempCount++;
+                MoniAccumulators tot;
+                if (toPending) {
+                    tot = rv.getPendingTotals();
+                    tot.present[ordinal] = true;
+                } else {
+                    tot = rv.getGatherTotals();
                 }
+
+                tot.speTotal[ordinal] += speScalar;
+                tot.speCount[ordinal]++;
+                tot.mpeTotal[ordinal] += mpeScalar;
+                tot.mpeCount[ordinal]++;
+
+                final short hvSet = mon.getPMTBaseHVSetValue();
+                if (!rv.baseSet[ordinal]) {
+                    // save base voltage
+                    rv.baseValue[ordinal] = hvSet;
+                    rv.baseSet[ordinal] = true;
+                    rv.baseWarned[ordinal] = false;
+                } else if (rv.baseValue[ordinal] != hvSet &&
+                           !rv.baseWarned[ordinal])
+                {
+                    final String msg =
+                        String.format("DOM %s: previous setHV %d does" +
+                                      " not match current %d; reset to" +
+                                      " current value", rv.getOmID(ordinal),
+                                      rv.baseValue[ordinal], hvSet);
+                    LOG.error(msg);
+                    rv.baseValue[ordinal] = hvSet;
+                    rv.baseWarned[ordinal] = true;
+                }
+
+                tot.hvTotal[ordinal] += hvMon;
+                tot.hvCount[ordinal]++;
+
+                tot.mbTempTotal[ordinal] += mbTemp;
+                tot.mbTempCount[ordinal]++;
+
+                // power is only reported once a run, so late values are
+                //  added to the current totals
+                final MoniAccumulators runTot = rv.getGatherTotals();
+                runTot.power5VTotal[ordinal] += power5V;
+                runTot.power5VCount[ordinal]++;
             }
         } else if (payload instanceof ASCIIMonitor) {
             ASCIIMonitor mon = (ASCIIMonitor) payload;
@@ -312,11 +950,14 @@ public class MoniAnalysis
                 return;
             }
 
-            DOMValues dval = findDOMValues(domValues, mon.getDOMID());
-            if (dval == null) {
+            final int ordinal = findOrdinal(mon.getDOMID());
+            if (ordinal == DOMTable.NO_DOM) {
                 LOG.error("Cannot find DOM " + mon.getDOMID());
             } else {
-                final boolean icetop = dval.dom.isIceTop();
+                // guarded by binLock
+                final RunValues rv = runValues;
+
+                final boolean icetop = rv.table.getDOM(ordinal).isIceTop();
 
                 int speCount = Integer.MIN_VALUE;
                 int mpeCount = Integer.MIN_VALUE;
@@ -360,10 +1001,10 @@ public class MoniAnalysis
                     }
                 }
 
-                synchronized (dval) {
-                    dval.deadtimeTotal += deadtime;
-                    dval.deadtimeCount++;
-                }
+                MoniAccumulators tot = rv.getGatherTotals();
+
+                tot.deadtimeTotal[ordinal] += deadtime;
+                tot.deadtimeCount[ordinal]++;
             }
         } else if (!(payload instanceof Monitor)) {
             throw new MoniException("Saw non-Monitor payload " + payload);
@@ -373,51 +1014,39 @@ public class MoniAnalysis
     /**
      * Send average deadtime
      */
-    private void sendDeadtime(String startTime, String endTime)
+    private void sendDeadtime(final RunValues values, int runNum,
+                              long alertTime, String startTime,
+                              String endTime)
     {
-        HashMap<String, Double> map = new HashMap<String, Double>();
-
-        for (Long mbKey : domValues.keySet()) {
-            DOMValues dv = domValues.get(mbKey);
+        if (values == null) {
+            return;
+        }
 
-            // 'deadtime' is average number of 25ns clock cycles per second
-            // a PMT pulse arrived while both ATWDs were busy.
-            final double deadtime;
-            synchronized (dv) {
-                if (dv.deadtimeCount == 0) {
-                    if (dv.deadtimeTotal > 0) {
-                        LOG.error("Found deadtime " + dv.deadtimeTotal +
-                                  " total with 0 count for " + dv.getOmID());
-                        dv.deadtimeTotal = 0;
-                    }
+        final StringReducer.Partial result = sendValues;
+        result.reset();
 
-                    // skip DOM if there were no reported values
-                    continue;
+        reducer.run(values.table, new StringReducer.Reduction() {
+                @Override
+                public void reduce(int first, int last,
+                                   StringReducer.Partial part)
+                {
+                    reduceDeadtime(values, first, last, part);
                 }
+            }, result);
 
-                deadtime = (double) dv.deadtimeTotal /
-                    (double) dv.deadtimeCount;
-                dv.deadtimeTotal = 0;
-                dv.deadtimeCount = 0;
-            }
-
-            // convert 'deadtime' to a fraction of a second
-            //   (40000000 = 1000000000 ns/sec / 25 ns)
-            map.put(dv.getOmID(), deadtime / 40000000.0);
-        }
-
-        if (map.size() > 0) {
+        final MoniMessageEncoder map = result.getEncoder(VALUE_BUF);
+        if (!map.isEmpty()) {
             HashMap msg = new HashMap();
             msg.put("version", DEADTIME_MONI_VERSION);
-            msg.put("runNumber", getRunNumber());
+            msg.put("runNumber", runNum);
 
             if (startTime != null && endTime != null) {
                 msg.put(BIN_START_NAME, startTime);
                 msg.put(BIN_STOP_NAME, endTime);
             }
 
-            msg.put(MONI_VALUE_FIELD, map);
-            sendMessage(DEADTIME_MONI_NAME, msg);
+            msg.put(MONI_VALUE_FIELD, map.build());
+            sendMessage(DEADTIME_MONI_NAME, alertTime, msg);
         }
     }
 
@@ -427,132 +1056,123 @@ public class MoniAnalysis
      * @param startTime starting date/time string
      * @param endTime ending date/time string
      */
-    private void sendHV(String startTime, String endTime)
+    private void sendHV(final RunValues values,
+                        final RunningStatistics stats, boolean pending,
+                        int runNum, long alertTime, String startTime,
+                        String endTime)
     {
-        HashMap<String, Double> map = new HashMap<String, Double>();
+        if (values == null || values.getBinTotals(pending) == null) {
+            // no DOMs were seen or no bin has been closed
+            return;
+        }
 
-        for (Long mbKey : domValues.keySet()) {
-            DOMValues dv = domValues.get(mbKey);
+        final MoniAccumulators tot = values.getBinTotals(pending);
 
-            double voltage;
-            synchronized (dv) {
-                if (dv.hvCount == 0) {
-                    if (dv.hvTotal > 0) {
-                        LOG.error("Found HV " + dv.hvTotal +
-                                  " total with 0 count for " + dv.getOmID());
-                        dv.hvTotal = 0;
-                    }
+        final StringReducer.Partial result = sendValues;
+        result.reset();
 
-                    // skip DOM if there were no reported values
-                    continue;
+        reducer.run(values.table, new StringReducer.Reduction() {
+                @Override
+                public void reduce(int first, int last,
+                                   StringReducer.Partial part)
+                {
+                    reduceHV(values, tot, stats, first, last, part);
                 }
+            }, result);
 
-                voltage = convertToVoltage(dv.hvTotal, dv.hvCount);
-
-                // done with this bin, reset accumulator values
-                dv.hvTotal = 0;
-                dv.hvCount = 0;
-            }
-
-            final double expected = convertToVoltage(dv.baseValue, 1);
-            map.put(dv.getOmID(), voltage - expected);
-        }
-
-        if (map.size() > 0) {
+        final MoniMessageEncoder map = result.getEncoder(VALUE_BUF);
+        if (!map.isEmpty()) {
             HashMap msg = new HashMap();
             msg.put(BIN_START_NAME, startTime);
             msg.put(BIN_STOP_NAME, endTime);
             msg.put("version", HV_MONI_VERSION);
-            msg.put("runNumber", getRunNumber());
-            msg.put(MONI_VALUE_FIELD, map);
-            sendMessage(HVDIFF_MONI_NAME, msg);
+            msg.put("runNumber", runNum);
+            msg.put(MONI_VALUE_FIELD, map.build());
+            putSpread(msg, result);
+            sendMessage(HVDIFF_MONI_NAME, alertTime, msg);
         }
     }
 
     /**
      * Send average mainboard temperature
      */
-    private void sendTemperature(String startTime, String endTime)
+    private void sendTemperature(final RunValues values,
+                                 final RunningStatistics stats,
+                                 boolean pending, int runNum,
+                                 long alertTime, String startTime,
+                                 String endTime)
     {
-        HashMap<String, Double> map = new HashMap<String, Double>();
+        if (values == null || values.getBinTotals(pending) == null) {
+            // no DOMs were seen or no bin has been closed
+            return;
+        }
 
-        for (Long mbKey : domValues.keySet()) {
-            DOMValues dv = domValues.get(mbKey);
+        final MoniAccumulators tot = values.getBinTotals(pending);
 
-            double avg;
-            synchronized (dv) {
-                if (dv.mbTempCount == 0) {
-                    if (dv.mbTempTotal > 0.0) {
-                        LOG.error("Found MB temperature " + dv.mbTempTotal +
-                                  " total with 0 count for " + dv.getOmID());
-                        dv.mbTempTotal = 0.0;
-                    }
+        final StringReducer.Partial result = sendValues;
+        result.reset();
 
-                    // skip DOM if there were no reported values
-                    continue;
+        reducer.run(values.table, new StringReducer.Reduction() {
+                @Override
+                public void reduce(int first, int last,
+                                   StringReducer.Partial part)
+                {
+                    reduceTemperature(values, tot, stats, first, last,
+                                      part);
                 }
+            }, result);
 
-                avg = dv.mbTempTotal / (double) dv.mbTempCount;
-                dv.mbTempTotal = 0.0;
-                dv.mbTempCount = 0;
-            }
-
-            map.put(dv.getOmID(), avg);
-        }
-
-        if (map.size() > 0) {
+        final MoniMessageEncoder map = result.getEncoder(VALUE_BUF);
+        if (!map.isEmpty()) {
             HashMap msg = new HashMap();
             msg.put(BIN_START_NAME, startTime);
             msg.put(BIN_STOP_NAME, endTime);
             msg.put("version", MBTEMP_MONI_VERSION);
-            msg.put("runNumber", getRunNumber());
-            msg.put(MONI_VALUE_FIELD, map);
-            sendMessage(MBTEMP_MONI_NAME, msg);
+            msg.put("runNumber", runNum);
+            msg.put(MONI_VALUE_FIELD, map.build());
+            putSpread(msg, result);
+            sendMessage(MBTEMP_MONI_NAME, alertTime, msg);
         }
     }
 
     /**
      * Send average Power Supply voltage
      */
-    private void sendPower(String startTime, String endTime)
+    private void sendPower(final RunValues values,
+                           final RunningStatistics stats, int runNum,
+                           long alertTime, String startTime,
+                           String endTime)
     {
-        HashMap<String, Double> map = new HashMap<String, Double>();
-
-        for (Long mbKey : domValues.keySet()) {
-            DOMValues dv = domValues.get(mbKey);
+        if (values == null) {
+            return;
+        }
 
-            double voltage;
-            synchronized (dv) {
-                if (dv.power5VCount == 0) {
-                    if (dv.power5VTotal > 0) {
-                        LOG.error("Found 5V " + dv.power5VTotal +
-                                  " total with 0 count for " + dv.getOmID());
-                        dv.power5VTotal = 0;
-                    }
+        final StringReducer.Partial result = sendValues;
+        result.reset();
 
-                    // skip DOM if there were no reported values
-                    continue;
+        reducer.run(values.table, new StringReducer.Reduction() {
+                @Override
+                public void reduce(int first, int last,
+                                   StringReducer.Partial part)
+                {
+                    reducePower(values, stats, first, last, part);
                 }
+            }, result);
 
-                voltage = convertToMBPower(dv.power5VTotal, dv.power5VCount);
-                dv.power5VTotal = 0;
-                dv.power5VCount = 0;
-            }
-            map.put(dv.getOmID(), voltage);
-        }
-
-        if (map.size() > 0) {
+        final MoniMessageEncoder map = result.getEncoder(VALUE_BUF);
+        if (!map.isEmpty()) {
             HashMap msg = new HashMap();
             msg.put("version", POWER_MONI_VERSION);
-            msg.put("runNumber", getRunNumber());
-            msg.put(MONI_VALUE_FIELD, map);
+            msg.put("runNumber", runNum);
+            msg.put(MONI_VALUE_FIELD, map.build());
+            putSpread(msg, result);
 
             if (startTime != null && endTime != null) {
                 msg.put(BIN_START_NAME, startTime);
                 msg.put(BIN_STOP_NAME, endTime);
             }
 
-            sendMessage(POWER_MONI_NAME, msg);
+            sendMessage(POWER_MONI_NAME, alertTime, msg);
         }
     }
 
@@ -562,46 +1182,400 @@ public class MoniAnalysis
      * @param startTime starting date/time string
      * @param endTime ending date/time string
      */
-    private void sendSPEMPE(String startTime, String endTime, long binTicks)
+    private void sendSPEMPE(final RunValues values,
+                            final ScalerHistograms hists, boolean pending,
+                            int runNum,
+                            long alertTime, String startTime, String endTime,
+                            long binTicks)
     {
-        HashMap<String, Double> speRate = new HashMap<String, Double>();
-        HashMap<String, Double> speRateError = new HashMap<String, Double>();
-        HashMap<String, Double> mpeRate = new HashMap<String, Double>();
-        HashMap<String, Double> mpeRateError = new HashMap<String, Double>();
+        if (values == null || values.getBinTotals(pending) == null) {
+            // no DOMs were seen or no bin has been closed
+            return;
+        }
+
+        final MoniAccumulators tot = values.getBinTotals(pending);
 
         // skip rates with zero values if this is a partial bin at the
         //  end of the run
-        final boolean skipZeros = binTicks < TEN_MINUTES / 2L;
-
-        for (Long mbKey : domValues.keySet()) {
-            DOMValues dv = domValues.get(mbKey);
-
-            synchronized (dv) {
-                dv.putRateAndError(true, speRate, speRateError, skipZeros);
-                dv.putRateAndError(false, mpeRate, mpeRateError, skipZeros);
-            }
-        }
+        final boolean skipZeros = binTicks < binWidth / 2L;
+
+        // histogram maps are handed to the alert queue, so reset() creates
+        //  new ones
+        final StringReducer.Partial result = sendValues;
+        result.reset();
+
+        reducer.run(values.table, new StringReducer.Reduction() {
+                @Override
+                public void reduce(int first, int last,
+                                   StringReducer.Partial part)
+                {
+                    reduceSPEMPE(values, tot, hists, skipZeros, first, last,
+                                 part);
+                }
+            }, result);
 
-        if (speRate.size() > 0) {
+        final MoniMessageEncoder speRate = result.getEncoder(SPE_RATE_BUF);
+        if (!speRate.isEmpty()) {
             HashMap msg = new HashMap();
             msg.put(BIN_START_NAME, startTime);
             msg.put(BIN_STOP_NAME, endTime);
             msg.put("version", SPE_MPE_MONI_VERSION);
-            msg.put("runNumber", getRunNumber());
-            msg.put(MONI_RATE_FIELD, speRate);
-            msg.put(MONI_ERROR_FIELD, speRateError);
-            sendMessage(SPE_MONI_NAME, msg);
+            msg.put("runNumber", runNum);
+            msg.put(MONI_RATE_FIELD, speRate.build());
+            msg.put(MONI_ERROR_FIELD,
+                    result.getEncoder(SPE_ERROR_BUF).build());
+            msg.put(MONI_HISTOGRAM_FIELD,
+                    result.getHistograms(ScalerHistograms.SPE));
+            sendMessage(SPE_MONI_NAME, alertTime, msg);
         }
 
-        if (mpeRate.size() > 0) {
+        final MoniMessageEncoder mpeRate = result.getEncoder(MPE_RATE_BUF);
+        if (!mpeRate.isEmpty()) {
             HashMap msg = new HashMap();
             msg.put(BIN_START_NAME, startTime);
             msg.put(BIN_STOP_NAME, endTime);
             msg.put("version", SPE_MPE_MONI_VERSION);
-            msg.put("runNumber", getRunNumber());
-            msg.put(MONI_RATE_FIELD, mpeRate);
-            msg.put(MONI_ERROR_FIELD, mpeRateError);
-            sendMessage(MPE_MONI_NAME, msg);
+            msg.put("runNumber", runNum);
+            msg.put(MONI_RATE_FIELD, mpeRate.build());
+            msg.put(MONI_ERROR_FIELD,
+                    result.getEncoder(MPE_ERROR_BUF).build());
+            msg.put(MONI_HISTOGRAM_FIELD,
+                    result.getHistograms(ScalerHistograms.MPE));
+            sendMessage(MPE_MONI_NAME, alertTime, msg);
+        }
+    }
+
+    /**
+     * Send SPE and MPE rates for a fast bin, then add the fast bin totals
+     * to the current bin
+     *
+     * @param startTime starting date/time string (if <tt>null</tt>, the
+     *                  totals are added to the bin but not sent)
+     * @param endTime ending date/time string
+     */
+    private void sendFastValues(RunValues values, int runNum,
+                                long alertTime, String startTime,
+                                String endTime)
+    {
+        if (fastWidth <= 0 || values == null || values.fast == null) {
+            return;
+        }
+
+        synchronized (sendLock) {
+            final StringReducer.Partial result = sendValues;
+            result.reset();
+
+            MoniMessageEncoder speRate = result.getEncoder(SPE_RATE_BUF);
+            MoniMessageEncoder speRateError =
+                result.getEncoder(SPE_ERROR_BUF);
+            MoniMessageEncoder mpeRate = result.getEncoder(MPE_RATE_BUF);
+            MoniMessageEncoder mpeRateError =
+                result.getEncoder(MPE_ERROR_BUF);
+
+            final MoniAccumulators fast = values.fast;
+            if (startTime != null && endTime != null) {
+                for (int i = 0; i < fast.getNumDOMs(); i++) {
+                    // only DOMs which reported during this fast bin
+                    if (fast.speCount[i] == 0 && fast.mpeCount[i] == 0) {
+                        continue;
+                    }
+
+                    final String omId = values.getOmID(i);
+                    putRateAndError(fast, i, omId, true, speRate,
+                                    speRateError, true);
+                    putRateAndError(fast, i, omId, false, mpeRate,
+                                    mpeRateError, true);
+                }
+            }
+
+            fast.rollInto(values.bin);
+
+            if (!speRate.isEmpty()) {
+                HashMap msg = new HashMap();
+                msg.put(BIN_START_NAME, startTime);
+                msg.put(BIN_STOP_NAME, endTime);
+                msg.put("version", SPE_MPE_FAST_MONI_VERSION);
+                msg.put("runNumber", runNum);
+                msg.put(MONI_RATE_FIELD, speRate.build());
+                msg.put(MONI_ERROR_FIELD, speRateError.build());
+                sendMessage(SPE_FAST_MONI_NAME, alertTime, msg);
+            }
+
+            if (!mpeRate.isEmpty()) {
+                HashMap msg = new HashMap();
+                msg.put(BIN_START_NAME, startTime);
+                msg.put(BIN_STOP_NAME, endTime);
+                msg.put("version", SPE_MPE_FAST_MONI_VERSION);
+                msg.put("runNumber", runNum);
+                msg.put(MONI_RATE_FIELD, mpeRate.build());
+                msg.put(MONI_ERROR_FIELD, mpeRateError.build());
+                sendMessage(MPE_FAST_MONI_NAME, alertTime, msg);
+            }
+        }
+    }
+
+    /**
+     * Add a DOM's standard deviation, minimum and maximum to the spread
+     * buffers, then clear its statistics for the next bin
+     *
+     * @param stats statistics for the bin (may be <tt>null</tt>)
+     * @param values run values
+     * @param ordinal DOM ordinal
+     * @param kind quantity index
+     * @param offset amount subtracted from the minimum and maximum
+     * @param part receives the values
+     */
+    private static void addSpread(RunningStatistics stats, RunValues values,
+                                  int ordinal, int kind, double offset,
+                                  StringReducer.Partial part)
+    {
+        if (stats == null || stats.getCount(ordinal, kind) == 0) {
+            return;
+        }
+
+        final String omId = values.getOmID(ordinal);
+        part.getEncoder(STDDEV_BUF).add(omId,
+                                        stats.getStdDev(ordinal, kind));
+        part.getEncoder(MIN_BUF).add(omId,
+                                     stats.getMin(ordinal, kind) - offset);
+        part.getEncoder(MAX_BUF).add(omId,
+                                     stats.getMax(ordinal, kind) - offset);
+
+        stats.clear(ordinal, kind);
+    }
+
+    /**
+     * Add the spread maps to a message
+     *
+     * @param msg message
+     * @param result values being sent
+     */
+    private static void putSpread(HashMap msg, StringReducer.Partial result)
+    {
+        final MoniMessageEncoder stdDev = result.getEncoder(STDDEV_BUF);
+        if (!stdDev.isEmpty()) {
+            msg.put(MONI_STDDEV_FIELD, stdDev.build());
+            msg.put(MONI_MIN_FIELD, result.getEncoder(MIN_BUF).build());
+            msg.put(MONI_MAX_FIELD, result.getEncoder(MAX_BUF).build());
+        }
+    }
+
+    /**
+     * Compute average deadtime for a range of DOMs
+     *
+     * @param values run values
+     * @param first first DOM ordinal
+     * @param last ordinal after the final DOM
+     * @param part receives the values
+     */
+    private static void reduceDeadtime(RunValues values, int first,
+                                       int last, StringReducer.Partial part)
+    {
+        final MoniAccumulators tot = values.bin;
+        final MoniMessageEncoder map = part.getEncoder(VALUE_BUF);
+        for (int i = first; i < last; i++) {
+            if (tot.deadtimeCount[i] == 0) {
+                if (tot.deadtimeTotal[i] > 0) {
+                    LOG.error("Found deadtime " + tot.deadtimeTotal[i] +
+                              " total with 0 count for " +
+                              values.getOmID(i));
+                    tot.deadtimeTotal[i] = 0;
+                }
+
+                // skip DOM if there were no reported values
+                continue;
+            }
+
+            // 'deadtime' is average number of 25ns clock cycles per second
+            // a PMT pulse arrived while both ATWDs were busy.
+            final double deadtime = (double) tot.deadtimeTotal[i] /
+                (double) tot.deadtimeCount[i];
+            tot.deadtimeTotal[i] = 0;
+            tot.deadtimeCount[i] = 0;
+
+            // convert 'deadtime' to a fraction of a second
+            //   (40000000 = 1000000000 ns/sec / 25 ns)
+            map.add(values.getOmID(i), deadtime / 40000000.0);
+        }
+    }
+
+    /**
+     * Compute HV differences for a range of DOMs
+     *
+     * @param values run values
+     * @param tot totals being reported
+     * @param stats statistics for the bin (may be <tt>null</tt>)
+     * @param first first DOM ordinal
+     * @param last ordinal after the final DOM
+     * @param part receives the values
+     */
+    private static void reduceHV(RunValues values, MoniAccumulators tot,
+                                 RunningStatistics stats, int first,
+                                 int last, StringReducer.Partial part)
+    {
+        final MoniMessageEncoder map = part.getEncoder(VALUE_BUF);
+        for (int i = first; i < last; i++) {
+            if (!tot.present[i]) {
+                // DOM was first seen after this bin was closed
+                continue;
+            }
+
+            if (tot.hvCount[i] == 0) {
+                if (tot.hvTotal[i] > 0) {
+                    LOG.error("Found HV " + tot.hvTotal[i] +
+                              " total with 0 count for " +
+                              values.getOmID(i));
+                    tot.hvTotal[i] = 0;
+                }
+
+                // skip DOM if there were no reported values
+                continue;
+            }
+
+            final double voltage =
+                convertToVoltage(tot.hvTotal[i], tot.hvCount[i]);
+
+            // done with this bin, reset accumulator values
+            tot.hvTotal[i] = 0;
+            tot.hvCount[i] = 0;
+
+            final double expected = convertToVoltage(values.baseValue[i], 1);
+            map.add(values.getOmID(i), voltage - expected);
+            addSpread(stats, values, i, HV_STATS, expected, part);
+        }
+    }
+
+    /**
+     * Compute average power supply voltages for a range of DOMs
+     *
+     * @param values run values
+     * @param stats statistics for the run (may be <tt>null</tt>)
+     * @param first first DOM ordinal
+     * @param last ordinal after the final DOM
+     * @param part receives the values
+     */
+    private static void reducePower(RunValues values,
+                                    RunningStatistics stats, int first,
+                                    int last, StringReducer.Partial part)
+    {
+        final MoniAccumulators tot = values.bin;
+        final MoniMessageEncoder map = part.getEncoder(VALUE_BUF);
+        for (int i = first; i < last; i++) {
+            if (tot.power5VCount[i] == 0) {
+                if (tot.power5VTotal[i] > 0) {
+                    LOG.error("Found 5V " + tot.power5VTotal[i] +
+                              " total with 0 count for " +
+                              values.getOmID(i));
+                    tot.power5VTotal[i] = 0;
+                }
+
+                // skip DOM if there were no reported values
+                continue;
+            }
+
+            final double voltage =
+                convertToMBPower(tot.power5VTotal[i], tot.power5VCount[i]);
+            tot.power5VTotal[i] = 0;
+            tot.power5VCount[i] = 0;
+
+            map.add(values.getOmID(i), voltage);
+            addSpread(stats, values, i, POWER_STATS, 0.0, part);
+        }
+    }
+
+    /**
+     * Compute SPE and MPE rates and histograms for a range of DOMs
+     *
+     * @param values run values
+     * @param tot totals being reported
+     * @param hists histograms for the bin (may be <tt>null</tt>)
+     * @param skipZeros don't add zero rates
+     * @param first first DOM ordinal
+     * @param last ordinal after the final DOM
+     * @param part receives the values
+     */
+    private static void reduceSPEMPE(RunValues values, MoniAccumulators tot,
+                                     ScalerHistograms hists,
+                                     boolean skipZeros, int first, int last,
+                                     StringReducer.Partial part)
+    {
+        final MoniMessageEncoder speRate = part.getEncoder(SPE_RATE_BUF);
+        final MoniMessageEncoder speRateError =
+            part.getEncoder(SPE_ERROR_BUF);
+        final MoniMessageEncoder mpeRate = part.getEncoder(MPE_RATE_BUF);
+        final MoniMessageEncoder mpeRateError =
+            part.getEncoder(MPE_ERROR_BUF);
+
+        for (int i = first; i < last; i++) {
+            if (!tot.present[i]) {
+                // DOM was first seen after this bin was closed
+                continue;
+            }
+
+            final String omId = values.getOmID(i);
+
+            putRateAndError(tot, i, omId, true, speRate, speRateError,
+                            skipZeros);
+            putRateAndError(tot, i, omId, false, mpeRate, mpeRateError,
+                            skipZeros);
+            tot.clearScalers(i);
+
+            if (hists != null) {
+                long[] hist = hists.drain(i, ScalerHistograms.SPE);
+                if (hist != null) {
+                    part.getHistograms(ScalerHistograms.SPE).put(omId, hist);
+                }
+
+                hist = hists.drain(i, ScalerHistograms.MPE);
+                if (hist != null) {
+                    part.getHistograms(ScalerHistograms.MPE).put(omId, hist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute average mainboard temperatures for a range of DOMs
+     *
+     * @param values run values
+     * @param tot totals being reported
+     * @param stats statistics for the bin (may be <tt>null</tt>)
+     * @param first first DOM ordinal
+     * @param last ordinal after the final DOM
+     * @param part receives the values
+     */
+    private static void reduceTemperature(RunValues values,
+                                          MoniAccumulators tot,
+                                          RunningStatistics stats,
+                                          int first, int last,
+                                          StringReducer.Partial part)
+    {
+        final MoniMessageEncoder map = part.getEncoder(VALUE_BUF);
+        for (int i = first; i < last; i++) {
+            if (!tot.present[i]) {
+                // DOM was first seen after this bin was closed
+                continue;
+            }
+
+            if (tot.mbTempCount[i] == 0) {
+                if (tot.mbTempTotal[i] > 0.0) {
+                    LOG.error("Found MB temperature " + tot.mbTempTotal[i] +
+                              " total with 0 count for " +
+                              values.getOmID(i));
+                    tot.mbTempTotal[i] = 0.0;
+                }
+
+                // skip DOM if there were no reported values
+                continue;
+            }
+
+            final double avg =
+                tot.mbTempTotal[i] / (double) tot.mbTempCount[i];
+            tot.mbTempTotal[i] = 0.0;
+            tot.mbTempCount[i] = 0;
+
+            map.add(values.getOmID(i), avg);
+            addSpread(stats, values, i, TEMP_STATS, 0.0, part);
         }
     }
 
@@ -611,43 +1585,57 @@ public class MoniAnalysis
      * @param startTime starting date/time string
      * @param endTime ending date/time string
      */
-    private void sendBinnedMonitorValues(String startTime, String endTime,
-                                         long binTicks)
+    private void sendBinnedMonitorValues(RunValues values,
+                                         ScalerHistograms hists,
+                                         RunningStatistics stats,
+                                         boolean pending, int runNum,
+                                         long alertTime, String startTime,
+                                         String endTime, long binTicks)
     {
-        sendSPEMPE(startTime, endTime, binTicks);
-        sendHV(startTime, endTime);
-        sendTemperature(startTime, endTime);
+        synchronized (sendLock) {
+            sendSPEMPE(values, hists, pending, runNum, alertTime, startTime,
+                       endTime, binTicks);
+            sendHV(values, stats, pending, runNum, alertTime, startTime,
+                   endTime);
+            sendTemperature(values, stats, pending, runNum, alertTime,
+                            startTime, endTime);
+        }
     }
 
-    private void sendMessage(String varname, Map<String, Object> value)
+    private void sendMessage(String varname, long alertTime,
+                             Map<String, Object> value)
     {
-        try {
-            alertQueue.push(varname, Alerter.Priority.SCP,
-                            new UTCTime(binEndTime), value);
-        } catch (AlertException ae) {
-            LOG.error("Cannot send " + varname, ae);
-        } catch (Throwable thr) {
-            LOG.error("Cannot send " + varname + " value " + value, thr);
+        if (!delivery.send(alertQueue, varname, Alerter.Priority.SCP,
+                           alertTime, value))
+        {
+            LOG.error("Dropped " + varname + " alert (" +
+                      delivery.getNumInFlight() + " alerts in flight)");
         }
     }
 
     /**
      * Send once-a-run values
      */
-    private void sendSummaryMonitorValues()
+    private void sendSummaryMonitorValues(RunValues values,
+                                          RunningStatistics stats,
+                                          int runNum, long alertTime,
+                                          long runStart, long runEnd)
     {
         String startTime, endTime;
 
-        if (runStartTime == NO_UTCTIME || runEndTime == NO_UTCTIME) {
+        if (runStart == NO_UTCTIME || runEnd == NO_UTCTIME) {
             startTime = null;
             endTime = null;
         } else {
-            startTime = UTCTime.toDateString(runStartTime);
-            endTime = UTCTime.toDateString(runEndTime);
+            startTime = UTCTime.toDateString(runStart);
+            endTime = UTCTime.toDateString(runEnd);
         }
 
-        sendDeadtime(startTime, endTime);
-        sendPower(startTime, endTime);
+        synchronized (sendLock) {
+            sendDeadtime(values, runNum, alertTime, startTime, endTime);
+            sendPower(values, stats, runNum, alertTime, startTime,
+                      endTime);
+        }
     }
 
     /**
@@ -655,8 +1643,14 @@ public class MoniAnalysis
      *
      * @param newQueue new alert queue
      */
+    @Override
     public void setAlertQueue(IAlertQueue newQueue)
     {
+        super.setAlertQueue(newQueue);
+
+        // alerts for the old queue must be sent before it is stopped
+        delivery.drain();
+
         if (alertQueue != null && !alertQueue.isStopped()) {
             alertQueue.stop();
         }
@@ -668,6 +1662,316 @@ public class MoniAnalysis
         }
     }
 
+    /**
+     * Set the width of the binned values and of the optional fast bins.
+     * Only SPE and MPE rates are sent for fast bins; every other value is
+     * only sent for the normal bins.  Fast bins are rolled up into the
+     * normal bins, so their width must evenly divide the bin width.  This
+     * should be called before any payloads are gathered.
+     *
+     * @param binSeconds width of binned values (in seconds)
+     * @param fastSeconds width of fast SPE/MPE rate bins (in seconds, 0 to
+     *                    disable)
+     */
+    void setBinWidths(int binSeconds, int fastSeconds)
+    {
+        if (binSeconds <= 0) {
+            LOG.error("Bad monitoring bin width " + binSeconds +
+                      "; using " + DEFAULT_BIN_SECONDS + " seconds");
+            binSeconds = DEFAULT_BIN_SECONDS;
+        }
+
+        if (fastSeconds < 0 || fastSeconds >= binSeconds ||
+            (fastSeconds > 0 && binSeconds % fastSeconds != 0))
+        {
+            LOG.error("Fast monitoring bin width " + fastSeconds +
+                      " does not evenly divide bin width " + binSeconds +
+                      "; disabling fast bins");
+            fastSeconds = 0;
+        }
+
+        synchronized (binLock) {
+            binWidth = (long) binSeconds * ONE_SECOND;
+            fastWidth = (long) fastSeconds * ONE_SECOND;
+        }
+    }
+
+    /**
+     * Set the amount of time a finished bin is held open for late
+     * payloads.  This should be called before any payloads are gathered.
+     *
+     * @param seconds number of seconds (0 sends each bin immediately)
+     */
+    void setLateness(int seconds)
+    {
+        if (seconds < 0) {
+            LOG.error("Bad monitoring lateness " + seconds +
+                      "; using " + DEFAULT_LATENESS_SECONDS + " seconds");
+            seconds = DEFAULT_LATENESS_SECONDS;
+        }
+
+        synchronized (binLock) {
+            lateness = (long) seconds * ONE_SECOND;
+        }
+    }
+
+    /**
+     * Set the number of DOMs needed before a bin flush is split by string
+     * and run on the common fork-join pool.  The messages are the same
+     * either way.
+     *
+     * @param numDOMs number of DOMs (0 to never split flushes)
+     */
+    void setParallelThreshold(int numDOMs)
+    {
+        if (numDOMs < 0) {
+            LOG.error("Bad parallel flush threshold " + numDOMs +
+                      "; using " + StringReducer.DEFAULT_THRESHOLD +
+                      " DOMs");
+            numDOMs = StringReducer.DEFAULT_THRESHOLD;
+        }
+
+        synchronized (sendLock) {
+            reducer = new StringReducer(ForkJoinPool.commonPool(), numDOMs);
+        }
+    }
+
+    /**
+     * Get one DOM's average value for the current bin.  This is called
+     * without any lock, so the result is only valid if the snapshot lock
+     * was not taken while it was read.
+     *
+     * @param values run values
+     * @param ordinal DOM ordinal
+     * @param kind quantity (one of the <tt>MoniBinSnapshot</tt> constants)
+     *
+     * @return average value (<tt>NaN</tt> if the DOM has no values)
+     */
+    private static double readAverage(RunValues values, int ordinal,
+                                      int kind)
+    {
+        // values gathered since the last fast bin haven't been added to
+        //  the bin totals yet
+        final MoniAccumulators bin = values.bin;
+        final MoniAccumulators fast = values.fast;
+
+        long total;
+        int count;
+        switch (kind) {
+        case MoniBinSnapshot.SPE_RATE:
+            total = bin.speTotal[ordinal];
+            count = bin.speCount[ordinal];
+            if (fast != null) {
+                total += fast.speTotal[ordinal];
+                count += fast.speCount[ordinal];
+            }
+            return count == 0 ? Double.NaN : (double) total / (double) count;
+        case MoniBinSnapshot.MPE_RATE:
+            total = bin.mpeTotal[ordinal];
+            count = bin.mpeCount[ordinal];
+            if (fast != null) {
+                total += fast.mpeTotal[ordinal];
+                count += fast.mpeCount[ordinal];
+            }
+            return count == 0 ? Double.NaN : (double) total / (double) count;
+        case MoniBinSnapshot.HV_DIFF:
+            total = bin.hvTotal[ordinal];
+            count = bin.hvCount[ordinal];
+            if (fast != null) {
+                total += fast.hvTotal[ordinal];
+                count += fast.hvCount[ordinal];
+            }
+            if (count == 0) {
+                return Double.NaN;
+            }
+            return convertToVoltage(total, count) -
+                convertToVoltage(values.baseValue[ordinal], 1);
+        case MoniBinSnapshot.MB_TEMP:
+            double dtotal = bin.mbTempTotal[ordinal];
+            count = bin.mbTempCount[ordinal];
+            if (fast != null) {
+                dtotal += fast.mbTempTotal[ordinal];
+                count += fast.mbTempCount[ordinal];
+            }
+            return count == 0 ? Double.NaN : dtotal / (double) count;
+        case MoniBinSnapshot.POWER_5V:
+            total = bin.power5VTotal[ordinal];
+            count = bin.power5VCount[ordinal];
+            if (fast != null) {
+                total += fast.power5VTotal[ordinal];
+                count += fast.power5VCount[ordinal];
+            }
+            return count == 0 ? Double.NaN : convertToMBPower(total, count);
+        case MoniBinSnapshot.DEADTIME:
+            total = bin.deadtimeTotal[ordinal];
+            count = bin.deadtimeCount[ordinal];
+            if (fast != null) {
+                total += fast.deadtimeTotal[ordinal];
+                count += fast.deadtimeCount[ordinal];
+            }
+            return count == 0 ? Double.NaN :
+                convertToDeadtime(total, count);
+        default:
+            throw new IllegalArgumentException("Bad snapshot quantity " +
+                                               kind);
+        }
+    }
+
+    /**
+     * Get every DOM's average value for the bin which is being filled.
+     *
+     * This never takes <tt>binLock</tt>, so it cannot hold up the splicer
+     * thread.  Each DOM's values are read optimistically and read again if
+     * a payload was added while they were being read.  Values for
+     * different DOMs may include different payloads.
+     *
+     * @param kind quantity (one of the <tt>MoniBinSnapshot</tt> constants)
+     *
+     * @return map of OM IDs to average values (<tt>null</tt> if consistent
+     *         values could not be read within a second)
+     */
+    HashMap<String, Double> snapshotAverages(int kind)
+    {
+        if (kind < MoniBinSnapshot.SPE_RATE ||
+            kind > MoniBinSnapshot.DEADTIME)
+        {
+            throw new IllegalArgumentException("Bad snapshot quantity " +
+                                               kind);
+        }
+
+        final long deadline = System.nanoTime() + SNAPSHOT_TIMEOUT_NANOS;
+
+        while (true) {
+            RunValues values;
+            while (true) {
+                final long stamp = snapshotLock.tryOptimisticRead();
+                if (stamp != 0L) {
+                    values = runValues;
+                    if (snapshotLock.validate(stamp)) {
+                        break;
+                    }
+                }
+
+                if (!waitForSnapshot(deadline)) {
+                    return null;
+                }
+            }
+
+            HashMap<String, Double> map = new HashMap<String, Double>();
+            if (values == null) {
+                return map;
+            }
+
+            final int result = readAverages(values, kind, deadline, map);
+            if (result == SNAPSHOT_READ) {
+                return map;
+            } else if (result == SNAPSHOT_FAILED) {
+                return null;
+            }
+
+            // the values were detached for a run switch, so start over
+        }
+    }
+
+    /**
+     * Add every DOM's average value to the snapshot map.  Each value is
+     * only used if <tt>values</tt> was still the current run's values when
+     * it was read, since detached values are cleared without any lock
+     * while they are being sent.
+     *
+     * @param values run values read by the snapshot
+     * @param kind quantity (one of the <tt>MoniBinSnapshot</tt> constants)
+     * @param deadline <tt>System.nanoTime()</tt> value when the snapshot
+     *                 should be abandoned
+     * @param map map of OM IDs to average values
+     *
+     * @return <tt>SNAPSHOT_READ</tt>, <tt>SNAPSHOT_FAILED</tt> or
+     *         <tt>SNAPSHOT_DETACHED</tt>
+     */
+    private int readAverages(RunValues values, int kind, long deadline,
+                             HashMap<String, Double> map)
+    {
+        for (int i = 0; i < values.table.size(); i++) {
+            double value;
+            while (true) {
+                final long stamp = snapshotLock.tryOptimisticRead();
+                if (stamp != 0L) {
+                    value = readAverage(values, i, kind);
+                    final boolean attached = runValues == values;
+                    if (snapshotLock.validate(stamp)) {
+                        if (!attached) {
+                            return SNAPSHOT_DETACHED;
+                        }
+                        break;
+                    }
+                }
+
+                if (!waitForSnapshot(deadline)) {
+                    return SNAPSHOT_FAILED;
+                }
+            }
+
+            if (!Double.isNaN(value)) {
+                map.put(values.getOmID(i), value);
+            }
+        }
+
+        return SNAPSHOT_READ;
+    }
+
+    /**
+     * Get the start of the bin which is being filled, without taking
+     * <tt>binLock</tt>
+     *
+     * @return date/time string (<tt>null</tt> if there is no current bin
+     *         or it could not be read within a second)
+     */
+    String snapshotBinStart()
+    {
+        final long deadline = System.nanoTime() + SNAPSHOT_TIMEOUT_NANOS;
+
+        while (true) {
+            final long stamp = snapshotLock.tryOptimisticRead();
+            if (stamp != 0L) {
+                final long start = binStartTime;
+                if (snapshotLock.validate(stamp)) {
+                    if (start == NO_UTCTIME) {
+                        return null;
+                    }
+
+                    return UTCTime.toDateString(start);
+                }
+            }
+
+            if (!waitForSnapshot(deadline)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Wait briefly for the splicer thread to finish adding a payload
+     *
+     * @param deadline <tt>System.nanoTime()</tt> value when the snapshot
+     *                 should be abandoned
+     *
+     * @return <tt>false</tt> if the deadline has passed
+     */
+    private boolean waitForSnapshot(long deadline)
+    {
+        if (System.nanoTime() - deadline > 0L) {
+            numFailedSnapshots.incrementAndGet();
+            LOG.warn("Abandoned monitoring snapshot; values changed for" +
+                     " more than " + (SNAPSHOT_TIMEOUT_NANOS / 1000000L) +
+                     " ms");
+            return false;
+        }
+
+        numSnapshotRetries.incrementAndGet();
+        LockSupport.parkNanos(SNAPSHOT_WAIT_NANOS);
+        return true;
+    }
+
     /**
      * Convert ADC units into a celsius temperature
      * @param rawValue raw ADC value
@@ -692,146 +1996,150 @@ public class MoniAnalysis
     }
 
     /**
-     * Per-DOM monitoring data
+     * Fill <tt>rate</tt> and <tt>rateError</tt> maps with string-position
+     * keys mapped to SPE/MPE values
+     *
+     * @param tot totals being reported
+     * @param ordinal DOM ordinal
+     * @param omId DOM's OM ID
+     * @param useSPE <tt>true</tt> if filling maps with SPE values
+     * @param rate map holding rate values
+     * @param rateError map holding error values
+     * @param skipZeros don't add zero rates to the list
      */
-    private static class DOMValues
+    private static void putRateAndError(MoniAccumulators tot, int ordinal,
+                                        String omId, boolean useSPE,
+                                        MoniMessageEncoder rate,
+                                        MoniMessageEncoder rateError,
+                                        boolean skipZeros)
     {
-        DOMInfo dom;
+        final long lsum;
+        final int count;
+        if (useSPE) {
+            lsum = tot.speTotal[ordinal];
+            count = tot.speCount[ordinal];
+        } else {
+            lsum = tot.mpeTotal[ordinal];
+            count = tot.mpeCount[ordinal];
+        }
 
-        ArrayList<Integer> speScalar = new ArrayList<Integer>();
-        ArrayList<Integer> mpeScalar = new ArrayList<Integer>();
+        if (count == 0) {
+            if (!skipZeros) {
+                rate.add(omId, 0.0);
+                rateError.add(omId, 0.0);
+            }
+        } else {
+            final double sum = (double) lsum;
+            final double len = (double) count;
 
-        boolean baseSet;
-        short baseValue;
-        boolean baseWarned;
+            rate.add(omId, sum / len);
+            rateError.add(omId, Math.sqrt(sum) / len);
+        }
+    }
 
-        long hvTotal;
-        int hvCount;
+    /**
+     * Monitoring data for every DOM seen during a run, indexed by DOM
+     * ordinal.  The bin accumulators hold the values for the current bin
+     * (and the run-wide deadtime and power values).
+     */
+    private static class RunValues
+    {
+        /** Table which assigned the DOM ordinals */
+        final DOMTable table;
 
-        long power5VTotal;
-        int power5VCount;
+        /** Totals for the current bin */
+        final MoniAccumulators bin;
 
-        long deadtimeTotal;
-        int deadtimeCount;
+        /** Totals for the current fast bin (null if fast bins are disabled) */
+        final MoniAccumulators fast;
 
-        double mbTempTotal;
-        int mbTempCount;
+        /** Per-bin totals for the closed bin which is waiting for late
+         *  payloads (null until a bin has been closed) */
+        MoniAccumulators pending;
 
-        // OM ID generated from deployed DOM's major/minor values
-        private String omId;
+        /** Each DOM's PMT base HV set value */
+        final short[] baseValue;
+        final boolean[] baseSet;
+        final boolean[] baseWarned;
 
-        DOMValues(DOMInfo dom)
+        RunValues(DOMTable table, boolean useFast)
         {
-            this.dom = dom;
-        }
+            this.table = table;
 
-        /**
-         * Add an MPE scaler value
-         *
-         * @param val value to add
-         */
-        public void addMPEScalar(int val)
-        {
-            mpeScalar.add(val);
-        }
+            final int numDOMs = table.size();
 
-        /**
-         * Add an SPE scaler value
-         *
-         * @param val value to add
-         */
-        public void addSPEScalar(int val)
-        {
-            speScalar.add(val);
+            bin = new MoniAccumulators(numDOMs);
+            if (useFast) {
+                fast = new MoniAccumulators(numDOMs);
+            } else {
+                fast = null;
+            }
+
+            baseValue = new short[numDOMs];
+            baseSet = new boolean[numDOMs];
+            baseWarned = new boolean[numDOMs];
         }
 
         /**
-         * Has DOM sent one or more MPE values?
+         * Get the per-bin totals for the current or pending bin
+         *
+         * @param usePending <tt>true</tt> for the pending bin's totals
          *
-         * @return <tt>true</tt> if there is MPE data
+         * @return <tt>null</tt> if no bin has been closed
          */
-        public boolean hasMPE()
+        MoniAccumulators getBinTotals(boolean usePending)
         {
-            return !mpeScalar.isEmpty();
+            if (usePending) {
+                return pending;
+            }
+
+            return bin;
         }
 
         /**
-         * Has DOM sent one or more SPE values?
+         * Get the totals which receive new payload values
          *
-         * @return <tt>true</tt> if there is SPE data
+         * @return fast bin totals if enabled, otherwise the bin totals
          */
-        public boolean hasSPE()
+        MoniAccumulators getGatherTotals()
         {
-            return !speScalar.isEmpty();
+            if (fast != null) {
+                return fast;
+            }
+
+            return bin;
         }
 
         /**
-         * Get the OM ID
+         * Get the OM ID for a DOM
          *
-         * @return "(string, position)"
+         * @param ordinal DOM ordinal
+         *
+         * @return "string-position"
          */
-        public String getOmID()
+        String getOmID(int ordinal)
         {
-            if (omId == null) {
-                omId = dom.getDeploymentLocation();
-            }
-
-            return omId;
+            return table.getOmID(ordinal);
         }
 
         /**
-         * Fill <tt>rate</tt> and <tt>rateError</tt> maps with string-position
-         * keys mapped to SPE/MPE values
+         * Get the pending bin's totals, creating them if necessary
          *
-         * @param useSPE <tt>true</tt> if filling maps with SPE values
-         * @param rate map holding rate values
-         * @param rateError map holding error values
-         * @param skipZeros don't add zero rates to the list
+         * @return pending bin totals
          */
-        void putRateAndError(boolean useSPE, HashMap<String, Double> rate,
-                             HashMap<String, Double> rateError,
-                             boolean skipZeros)
+        MoniAccumulators getPendingTotals()
         {
-            ArrayList<Integer> sv;
-            if (useSPE) {
-                sv = speScalar;
-            } else {
-                sv = mpeScalar;
+            if (pending == null) {
+                pending = new MoniAccumulators(bin.getNumDOMs());
             }
 
-            if (sv.isEmpty()) {
-                if (!skipZeros) {
-                    rate.put(getOmID(), 0.0);
-                    rateError.put(getOmID(), 0.0);
-                }
-            } else {
-                long lsum = 0;
-                for (Integer val : sv) {
-                    lsum += val;
-                }
-
-                final double sum = (double) lsum;
-                final double len = (double) sv.size();
-
-                rate.put(getOmID(), sum / len);
-                rateError.put(getOmID(), Math.sqrt(sum) / len);
-
-                sv.clear();
-            }
+            return pending;
         }
 
         @Override
         public String toString()
         {
-            return String.format("%s: spe %s mpe %s" +
-                                 " hvTot %d hvCnt %d" +
-                                 " 5VTot %d 5VCnt %d" +
-                                 " deadTot %d deadCnt %d" +
-                                 " mbTemp %.8f mbTempCnt %d",
-                                 getOmID(), speScalar, mpeScalar,
-                                 hvTotal, hvCount, power5VTotal, power5VCount,
-                                 deadtimeTotal, deadtimeCount, mbTempTotal,
-                                 mbTempCount);
+            return "RunValues[" + table + "]";
         }
     }
 }
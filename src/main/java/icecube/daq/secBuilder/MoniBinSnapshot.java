@@ -0,0 +1,98 @@
+package icecube.daq.secBuilder;
+
+import java.util.Map;
+
+/**
+ * Report the monitoring values gathered so far for the current bin.
+ *
+ * Values are read by {@link MoniAnalysis#snapshotAverages(int)}, which
+ * never takes the lock used by the splicer thread, so a JMX query cannot
+ * delay payload processing.
+ */
+public class MoniBinSnapshot
+    implements MoniBinSnapshotMBean
+{
+    /** Average SPE rate */
+    static final int SPE_RATE = 0;
+    /** Average MPE rate */
+    static final int MPE_RATE = 1;
+    /** Average high voltage minus the expected voltage */
+    static final int HV_DIFF = 2;
+    /** Average mainboard temperature */
+    static final int MB_TEMP = 3;
+    /** Average 5V power supply voltage */
+    static final int POWER_5V = 4;
+    /** Average deadtime */
+    static final int DEADTIME = 5;
+
+    private MoniAnalysis analysis;
+
+    public MoniBinSnapshot(MoniAnalysis analysis)
+    {
+        if (analysis == null) {
+            throw new IllegalArgumentException("Analysis cannot be null");
+        }
+
+        this.analysis = analysis;
+    }
+
+    @Override
+    public String getBinStartTime()
+    {
+        return analysis.snapshotBinStart();
+    }
+
+    @Override
+    public Map<String, Double> getDeadtime()
+    {
+        return analysis.snapshotAverages(DEADTIME);
+    }
+
+    @Override
+    public Map<String, Double> getHVDifference()
+    {
+        return analysis.snapshotAverages(HV_DIFF);
+    }
+
+    @Override
+    public Map<String, Double> getMBTemperature()
+    {
+        return analysis.snapshotAverages(MB_TEMP);
+    }
+
+    @Override
+    public Map<String, Double> getMPERate()
+    {
+        return analysis.snapshotAverages(MPE_RATE);
+    }
+
+    @Override
+    public long getNumFailedSnapshots()
+    {
+        return analysis.getNumFailedSnapshots();
+    }
+
+    @Override
+    public long getNumSnapshotRetries()
+    {
+        return analysis.getNumSnapshotRetries();
+    }
+
+    @Override
+    public Map<String, Double> getPowerSupplyVoltage()
+    {
+        return analysis.snapshotAverages(POWER_5V);
+    }
+
+    @Override
+    public Map<String, Double> getSPERate()
+    {
+        return analysis.snapshotAverages(SPE_RATE);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MoniBinSnapshot[" + analysis + "]";
+    }
+}
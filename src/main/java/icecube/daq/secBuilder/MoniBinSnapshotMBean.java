@@ -0,0 +1,84 @@
+package icecube.daq.secBuilder;
+
+import java.util.Map;
+
+/**
+ * Per-DOM averages for the monitoring bin which is still being filled.
+ * Each method takes a fresh snapshot, so values from different methods
+ * may include different payloads.
+ */
+public interface MoniBinSnapshotMBean
+{
+    /**
+     * Get the start of the current bin
+     *
+     * @return date/time string (<tt>null</tt> if no bin has been started)
+     */
+    String getBinStartTime();
+
+    /**
+     * Get the average deadtime (fraction of a second) since the start of
+     * the run
+     *
+     * @return map of OM IDs to deadtime (<tt>null</tt> if the snapshot
+     *         could not be taken)
+     */
+    Map<String, Double> getDeadtime();
+
+    /**
+     * Get the difference between the average and expected PMT high voltage
+     * for the current bin
+     *
+     * @return map of OM IDs to voltage difference (<tt>null</tt> if the
+     *         snapshot could not be taken)
+     */
+    Map<String, Double> getHVDifference();
+
+    /**
+     * Get the average mainboard temperature for the current bin
+     *
+     * @return map of OM IDs to temperature (<tt>null</tt> if the snapshot
+     *         could not be taken)
+     */
+    Map<String, Double> getMBTemperature();
+
+    /**
+     * Get the average MPE rate for the current bin
+     *
+     * @return map of OM IDs to rate (<tt>null</tt> if the snapshot could
+     *         not be taken)
+     */
+    Map<String, Double> getMPERate();
+
+    /**
+     * Get the average 5V power supply voltage since the start of the run
+     *
+     * @return map of OM IDs to voltage (<tt>null</tt> if the snapshot could
+     *         not be taken)
+     */
+    Map<String, Double> getPowerSupplyVoltage();
+
+    /**
+     * Get the number of snapshots which were abandoned because payloads
+     * kept changing the values being read
+     *
+     * @return number of failed snapshots
+     */
+    long getNumFailedSnapshots();
+
+    /**
+     * Get the number of times a DOM's values were read again because a
+     * payload changed them while they were being read
+     *
+     * @return number of retries
+     */
+    long getNumSnapshotRetries();
+
+    /**
+     * Get the average SPE rate for the current bin
+     *
+     * @return map of OM IDs to rate (<tt>null</tt> if the snapshot could
+     *         not be taken)
+     */
+    Map<String, Double> getSPERate();
+}
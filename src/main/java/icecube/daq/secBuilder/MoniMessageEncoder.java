@@ -0,0 +1,342 @@
+package icecube.daq.secBuilder;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Collects per-DOM values for one monitoring quantity in reusable primitive
+ * arrays, then builds a compact immutable map for the alert queue.
+ *
+ * The map iterates over its entries in the same order as a
+ * <tt>HashMap</tt> filled with the same values, so the JSON written for
+ * the alert is byte-for-byte the same as before.  (HashMap only changes
+ * that order if eight or more keys collide in one slot of a table with at
+ * least 64 slots, which does not happen with OM IDs.)  Values are only
+ * boxed when the map is serialized.
+ */
+class MoniMessageEncoder
+{
+    /** HashMap's initial table size */
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private String[] keys;
+    private double[] values;
+    private int size;
+
+    /** Reusable sort keys (table index in the top half, entry index below) */
+    private long[] order;
+
+    MoniMessageEncoder()
+    {
+        this(MIN_TABLE_SIZE);
+    }
+
+    MoniMessageEncoder(int initialSize)
+    {
+        keys = new String[initialSize];
+        values = new double[initialSize];
+        order = new long[initialSize];
+    }
+
+    /**
+     * Add a value.  If the key was added before, the new value replaces
+     * the previous one, just as it would in a <tt>HashMap</tt>.
+     *
+     * @param key key (an OM ID)
+     * @param value value
+     */
+    void add(String key, double value)
+    {
+        if (size == keys.length) {
+            final int newLen = keys.length * 2;
+            keys = Arrays.copyOf(keys, newLen);
+            values = Arrays.copyOf(values, newLen);
+            order = new long[newLen];
+        }
+
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Add all the values from another encoder, in the order they were
+     * added to it
+     *
+     * @param other encoder holding more values
+     */
+    void addAll(MoniMessageEncoder other)
+    {
+        for (int i = 0; i < other.size; i++) {
+            add(other.keys[i], other.values[i]);
+        }
+    }
+
+    /**
+     * Build an immutable map from the values added since the last
+     * <tt>reset()</tt>
+     *
+     * @return map of keys to values
+     */
+    Map<String, Double> build()
+    {
+        String[] mapKeys = new String[size];
+        double[] mapVals = new double[size];
+
+        int tableSize = tableSize(size);
+        int num = arrange(tableSize, mapKeys, mapVals);
+        if (num < size && tableSize(num) != tableSize) {
+            // replaced keys left the HashMap with a smaller table
+            tableSize = tableSize(num);
+            num = arrange(tableSize, mapKeys, mapVals);
+        }
+
+        if (num < size) {
+            mapKeys = Arrays.copyOf(mapKeys, num);
+            mapVals = Arrays.copyOf(mapVals, num);
+        }
+
+        return new DoubleMap(mapKeys, mapVals, tableSize);
+    }
+
+    /**
+     * Fill the arrays with the unique keys and their latest values, in the
+     * order a <tt>HashMap</tt> with the specified table size would use
+     *
+     * @return number of unique keys
+     */
+    private int arrange(int tableSize, String[] mapKeys, double[] mapVals)
+    {
+        // order entries by HashMap table slot, then by insertion order
+        for (int i = 0; i < size; i++) {
+            final int slot = spread(keys[i].hashCode()) & (tableSize - 1);
+            order[i] = ((long) slot << 32) | i;
+        }
+        Arrays.sort(order, 0, size);
+
+        int num = 0;
+        int slotStart = 0;
+        long prevSlot = -1L;
+        for (int i = 0; i < size; i++) {
+            final long slot = order[i] >>> 32;
+            final int idx = (int) order[i];
+
+            if (slot != prevSlot) {
+                slotStart = num;
+                prevSlot = slot;
+            }
+
+            // replaced keys keep their original position
+            int dup = -1;
+            for (int j = slotStart; j < num; j++) {
+                if (mapKeys[j].equals(keys[idx])) {
+                    dup = j;
+                    break;
+                }
+            }
+
+            if (dup >= 0) {
+                mapVals[dup] = values[idx];
+            } else {
+                mapKeys[num] = keys[idx];
+                mapVals[num] = values[idx];
+                num++;
+            }
+        }
+
+        return num;
+    }
+
+    /**
+     * Has nothing been added since the last <tt>reset()</tt>?
+     *
+     * @return <tt>true</tt> if there are no values
+     */
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Forget all values so the encoder can be reused
+     */
+    void reset()
+    {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Get the number of values added since the last <tt>reset()</tt>
+     *
+     * @return number of values
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Mix the hash code the same way <tt>HashMap</tt> does.  This copies
+     * <tt>HashMap.hash()</tt> from JDK 8 (unchanged through at least
+     * JDK 21); if a JDK changes it, or the table sizing in
+     * <tt>tableSize()</tt>, the maps will no longer iterate in HashMap
+     * order and <tt>MoniMessageEncoderTest</tt> will fail.
+     */
+    private static int spread(int h)
+    {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get the table size used by a default <tt>HashMap</tt> holding
+     * <tt>num</tt> keys (JDK 8 <tt>HashMap.resize()</tt> with the default
+     * capacity and load factor)
+     */
+    private static int tableSize(int num)
+    {
+        int tableSize = MIN_TABLE_SIZE;
+        while (num > (tableSize / 4) * 3) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    /**
+     * Immutable map backed by parallel key and value arrays.  The entries
+     * are sorted by their slot in a table of <tt>tableSize</tt> slots, so
+     * lookups only compare the keys in one slot.
+     */
+    static class DoubleMap
+        extends AbstractMap<String, Double>
+    {
+        private String[] keys;
+        private double[] values;
+        /** Index of the first entry in each slot, followed by the size */
+        private int[] slotStarts;
+        /** Mask which turns a spread hash code into a slot */
+        private int mask;
+
+        DoubleMap(String[] keys, double[] values, int tableSize)
+        {
+            this.keys = keys;
+            this.values = values;
+
+            mask = tableSize - 1;
+            slotStarts = new int[tableSize + 1];
+            for (String key : keys) {
+                slotStarts[slot(key) + 1]++;
+            }
+            for (int i = 0; i < tableSize; i++) {
+                slotStarts[i + 1] += slotStarts[i];
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Double>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<String, Double>>() {
+                @Override
+                public Iterator<Map.Entry<String, Double>> iterator()
+                {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size()
+                {
+                    return keys.length;
+                }
+            };
+        }
+
+        @Override
+        public Double get(Object key)
+        {
+            final int idx = indexOf(key);
+            if (idx < 0) {
+                return null;
+            }
+
+            return values[idx];
+        }
+
+        /**
+         * Find the entry for a key
+         *
+         * @param key key
+         *
+         * @return entry index (<tt>-1</tt> if the key is not in the map)
+         */
+        private int indexOf(Object key)
+        {
+            if (!(key instanceof String)) {
+                return -1;
+            }
+
+            final int slot = slot((String) key);
+            for (int i = slotStarts[slot]; i < slotStarts[slot + 1]; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        @Override
+        public int size()
+        {
+            return keys.length;
+        }
+
+        /**
+         * Get the table slot for a key
+         */
+        private int slot(String key)
+        {
+            return spread(key.hashCode()) & mask;
+        }
+
+        class EntryIterator
+            implements Iterator<Map.Entry<String, Double>>
+        {
+            private int next;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < keys.length;
+            }
+
+            @Override
+            public Map.Entry<String, Double> next()
+            {
+                if (next >= keys.length) {
+                    throw new NoSuchElementException();
+                }
+
+                final int idx = next++;
+                return new AbstractMap.SimpleImmutableEntry<String, Double>(
+                    keys[idx], values[idx]);
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException("Map is immutable");
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package icecube.daq.secBuilder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decide which payloads are written when a stream is prescaled by
+ * something other than a simple "keep 1 of every N" count.
+ */
+interface PrescalePolicy
+{
+    /**
+     * Offset of the DOM mainboard ID in monitoring, time calibration and
+     * supernova payloads (immediately after the 16-byte payload header)
+     */
+    int DOM_ID_OFFSET = 16;
+
+    /**
+     * Should this payload be written?
+     *
+     * @param buf payload bytes (starting at index 0, length at index 0)
+     * @param utcTime payload time (in DAQ ticks)
+     *
+     * @return <tt>true</tt> if the payload should be dispatched
+     */
+    boolean accept(ByteBuffer buf, long utcTime);
+}
@@ -0,0 +1,277 @@
+package icecube.daq.secBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Fixed-size history of the final event totals for recent runs.  Each run
+ * occupies the slot selected by its run number, so lookups are constant
+ * time and the history never grows.  If a file is specified, each entry
+ * is also appended to that file and the history is reloaded from it when
+ * the component restarts.
+ */
+class RunDataHistory
+{
+    private static final Logger LOG = Logger.getLogger(RunDataHistory.class);
+
+    /** Number of values saved for each run */
+    static final int NUM_VALUES = 6;
+
+    /** Number of bytes in each file record (run number plus values) */
+    private static final int RECORD_BYTES = 4 + (NUM_VALUES * 8);
+
+    /** The file is rewritten after this many records per slot */
+    private static final int COMPACT_FACTOR = 4;
+
+    /** Marker for unused slots */
+    private static final int NO_RUN = Integer.MIN_VALUE;
+
+    private int[] runNumbers;
+    private long[] values;
+
+    private File file;
+    private DataOutputStream out;
+    private int numRecords;
+
+    /**
+     * Create a run data history
+     *
+     * @param capacity number of runs to remember
+     * @param file file used to save entries (<tt>null</tt> if entries
+     *             should only be kept in memory)
+     */
+    RunDataHistory(int capacity, File file)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Bad capacity " + capacity);
+        }
+
+        runNumbers = new int[capacity];
+        Arrays.fill(runNumbers, NO_RUN);
+        values = new long[capacity * NUM_VALUES];
+
+        this.file = file;
+        if (file != null) {
+            load();
+        }
+    }
+
+    /**
+     * Close the history file.  Later values are only kept in memory.
+     */
+    synchronized void close()
+    {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                LOG.error("Cannot close " + file, ioe);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Get the values for the specified run
+     *
+     * @param runNum run number
+     *
+     * @return array of values (<tt>null</tt> if the run is not known)
+     */
+    synchronized long[] get(int runNum)
+    {
+        final int slot = slot(runNum);
+        if (runNumbers[slot] != runNum) {
+            return null;
+        }
+
+        final int base = slot * NUM_VALUES;
+        return Arrays.copyOfRange(values, base, base + NUM_VALUES);
+    }
+
+    /**
+     * Read all records from the history file.  A partial final record
+     * (from a crash during a write) is ignored.
+     */
+    private void load()
+    {
+        if (file.exists()) {
+            long[] vals = new long[NUM_VALUES];
+
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+                while (true) {
+                    final int runNum = in.readInt();
+                    for (int i = 0; i < NUM_VALUES; i++) {
+                        vals[i] = in.readLong();
+                    }
+
+                    store(runNum, vals);
+                    numRecords++;
+                }
+            } catch (EOFException eof) {
+                // done reading
+            } catch (IOException ioe) {
+                LOG.error("Cannot read run data from " + file, ioe);
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ioe) {
+                        // ignore errors on close
+                    }
+                }
+            }
+
+            // drop any partial record so new records are correctly aligned
+            if (file.length() != (long) numRecords * RECORD_BYTES) {
+                LOG.error("Ignoring partial record at end of " + file);
+                rewrite();
+            }
+        }
+
+        if (out == null) {
+            openForAppend();
+        }
+    }
+
+    /**
+     * Open the history file for appending
+     */
+    private void openForAppend()
+    {
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file, true), RECORD_BYTES));
+        } catch (IOException ioe) {
+            LOG.error("Cannot open " + file + "; run data will not be saved",
+                      ioe);
+            out = null;
+        }
+    }
+
+    /**
+     * Save the values for the specified run
+     *
+     * @param runNum run number
+     * @param vals array of <tt>NUM_VALUES</tt> values
+     */
+    synchronized void put(int runNum, long[] vals)
+    {
+        if (vals.length != NUM_VALUES) {
+            throw new IllegalArgumentException("Expected " + NUM_VALUES +
+                                               " values, not " + vals.length);
+        }
+
+        store(runNum, vals);
+
+        if (out != null) {
+            if (numRecords >= runNumbers.length * COMPACT_FACTOR) {
+                rewrite();
+            } else {
+                try {
+                    writeRecord(out, runNum, vals);
+                    out.flush();
+                    numRecords++;
+                } catch (IOException ioe) {
+                    LOG.error("Cannot save run " + runNum + " data to " +
+                              file, ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the history file with the current entries, which bounds the
+     * size of the file
+     */
+    private void rewrite()
+    {
+        close();
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+
+        DataOutputStream tmpOut = null;
+        try {
+            tmpOut = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmpFile)));
+
+            numRecords = 0;
+
+            long[] vals = new long[NUM_VALUES];
+            for (int slot = 0; slot < runNumbers.length; slot++) {
+                if (runNumbers[slot] != NO_RUN) {
+                    System.arraycopy(values, slot * NUM_VALUES, vals, 0,
+                                     NUM_VALUES);
+                    writeRecord(tmpOut, runNumbers[slot], vals);
+                    numRecords++;
+                }
+            }
+
+            tmpOut.close();
+            tmpOut = null;
+
+            if (!tmpFile.renameTo(file)) {
+                LOG.error("Cannot rename " + tmpFile + " to " + file);
+            }
+        } catch (IOException ioe) {
+            LOG.error("Cannot rewrite " + file, ioe);
+        } finally {
+            if (tmpOut != null) {
+                try {
+                    tmpOut.close();
+                } catch (IOException ioe) {
+                    // ignore errors on close
+                }
+            }
+        }
+
+        openForAppend();
+    }
+
+    /**
+     * Find the slot used by the specified run
+     */
+    private int slot(int runNum)
+    {
+        final int slot = runNum % runNumbers.length;
+        if (slot < 0) {
+            return slot + runNumbers.length;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Save values in the run's slot, replacing any older run which used it
+     */
+    private void store(int runNum, long[] vals)
+    {
+        final int slot = slot(runNum);
+
+        runNumbers[slot] = runNum;
+        System.arraycopy(vals, 0, values, slot * NUM_VALUES, NUM_VALUES);
+    }
+
+    private static void writeRecord(DataOutputStream out, int runNum,
+                                    long[] vals)
+        throws IOException
+    {
+        out.writeInt(runNum);
+        for (int i = 0; i < NUM_VALUES; i++) {
+            out.writeLong(vals[i]);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package icecube.daq.secBuilder;
+
+/**
+ * Running mean, variance, minimum and maximum of one or more monitoring
+ * quantities for each DOM.
+ *
+ * Values are accumulated with Welford's algorithm, so the variance stays
+ * accurate even when the spread is tiny compared to the mean (as it is for
+ * PMT high voltage) and no raw readings need to be kept.  Each statistic
+ * lives in its own primitive array indexed by DOM ordinal (see
+ * {@link DOMTable}) and quantity, so adding a value touches one slot in
+ * each array and nothing is allocated.
+ *
+ * Each slot needs 40 bytes, which is 412,800 bytes for two quantities for
+ * the 5160 DOMs in the full detector.
+ */
+class RunningStatistics
+{
+    private int numDOMs;
+    private int numKinds;
+
+    private long[] count;
+    private double[] mean;
+    /** Sum of squared differences from the current mean */
+    private double[] sumSquares;
+    private double[] min;
+    private double[] max;
+
+    /**
+     * Create statistics for the specified number of DOMs
+     *
+     * @param numDOMs number of DOMs
+     * @param numKinds number of quantities tracked for each DOM
+     */
+    RunningStatistics(int numDOMs, int numKinds)
+    {
+        if (numDOMs < 0) {
+            throw new IllegalArgumentException("Bad number of DOMs " +
+                                               numDOMs);
+        }
+        if (numKinds <= 0) {
+            throw new IllegalArgumentException("Bad number of quantities " +
+                                               numKinds);
+        }
+
+        this.numDOMs = numDOMs;
+        this.numKinds = numKinds;
+
+        final int len = numDOMs * numKinds;
+        count = new long[len];
+        mean = new double[len];
+        sumSquares = new double[len];
+        min = new double[len];
+        max = new double[len];
+    }
+
+    /**
+     * Add a value to a DOM's statistics
+     *
+     * @param ordinal DOM ordinal
+     * @param kind quantity index
+     * @param value new value
+     *
+     * @return <tt>false</tt> if the ordinal is outside these statistics
+     */
+    boolean add(int ordinal, int kind, double value)
+    {
+        if (ordinal < 0 || ordinal >= numDOMs) {
+            return false;
+        }
+
+        final int idx = index(ordinal, kind);
+
+        final long n = ++count[idx];
+        if (n == 1) {
+            mean[idx] = value;
+            sumSquares[idx] = 0.0;
+            min[idx] = value;
+            max[idx] = value;
+            return true;
+        }
+
+        final double delta = value - mean[idx];
+        mean[idx] += delta / (double) n;
+        sumSquares[idx] += delta * (value - mean[idx]);
+
+        if (value < min[idx]) {
+            min[idx] = value;
+        }
+        if (value > max[idx]) {
+            max[idx] = value;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reset a DOM's statistics for the next bin
+     *
+     * @param ordinal DOM ordinal
+     * @param kind quantity index
+     */
+    void clear(int ordinal, int kind)
+    {
+        if (ordinal >= 0 && ordinal < numDOMs) {
+            count[index(ordinal, kind)] = 0;
+        }
+    }
+
+    /**
+     * Get the number of values added for a DOM
+     *
+     * @param ordinal DOM ordinal
+     * @param kind quantity index
+     *
+     * @return number of values (0 if the ordinal is outside these
+     *         statistics)
+     */
+    long getCount(int ordinal, int kind)
+    {
+        if (ordinal < 0 || ordinal >= numDOMs) {
+            return 0;
+        }
+
+        return count[index(ordinal, kind)];
+    }
+
+    /**
+     * Get the largest value.  Only valid if <tt>getCount()</tt> is not 0.
+     *
+     * @param ordinal DOM ordinal
+     * @param kind quantity index
+     *
+     * @return maximum value
+     */
+    double getMax(int ordinal, int kind)
+    {
+        return max[index(ordinal, kind)];
+    }
+
+    /**
+     * Get the mean value.  Only valid if <tt>getCount()</tt> is not 0.
+     *
+     * @param ordinal DOM ordinal
+     * @param kind quantity index
+     *
+     * @return mean value
+     */
+    double getMean(int ordinal, int kind)
+    {
+        return mean[index(ordinal, kind)];
+    }
+
+    /**
+     * Get the smallest value.  Only valid if <tt>getCount()</tt> is not 0.
+     *
+     * @param ordinal DOM ordinal
+     * @param kind quantity index
+     *
+     * @return minimum value
+     */
+    double getMin(int ordinal, int kind)
+    {
+        return min[index(ordinal, kind)];
+    }
+
+    /**
+     * Get the number of DOMs
+     *
+     * @return number of DOMs
+     */
+    int getNumDOMs()
+    {
+        return numDOMs;
+    }
+
+    /**
+     * Get the sample standard deviation
+     *
+     * @param ordinal DOM ordinal
+     * @param kind quantity index
+     *
+     * @return standard deviation (0 if fewer than two values were added)
+     */
+    double getStdDev(int ordinal, int kind)
+    {
+        return Math.sqrt(getVariance(ordinal, kind));
+    }
+
+    /**
+     * Get the sample variance
+     *
+     * @param ordinal DOM ordinal
+     * @param kind quantity index
+     *
+     * @return variance (0 if fewer than two values were added)
+     */
+    double getVariance(int ordinal, int kind)
+    {
+        final int idx = index(ordinal, kind);
+        if (count[idx] < 2) {
+            return 0.0;
+        }
+
+        return sumSquares[idx] / (double) (count[idx] - 1);
+    }
+
+    /**
+     * Get the array index of a DOM's quantity
+     */
+    private int index(int ordinal, int kind)
+    {
+        if (kind < 0 || kind >= numKinds) {
+            throw new IllegalArgumentException("Bad quantity " + kind);
+        }
+
+        return (ordinal * numKinds) + kind;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RunningStatistics[" + numDOMs + " DOMs, " + numKinds +
+            " quantities]";
+    }
+}
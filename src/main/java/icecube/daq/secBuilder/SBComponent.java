@@ -32,25 +32,17 @@ import icecube.daq.util.DOMRegistryException;
 import icecube.daq.util.DOMRegistryFactory;
 import icecube.daq.util.IDOMRegistry;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.Logger;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import org.xml.sax.SAXException;
-
 /**
  * This is the place where we initialize all the IO engines, splicers
  * and monitoring classes for secondary builders
@@ -59,54 +51,28 @@ import org.xml.sax.SAXException;
  */
 public class SBComponent extends DAQComponent
 {
-    /**
-     * Event totals for a run.
-     */
-    class SBRunData
-    {
-        private long tcalCount;
-        private long tcalTicks;
-        private long snCount;
-        private long snTicks;
-        private long moniCount;
-        private long moniTicks;
-
-        /**
-         * Create an object holding the event totals for a run.
-         *
-         * @param tcalCount - number of time calibration events dispatched
-         * @param snCount - number of supernova events dispatched
-         * @param moniCount - number of monitoring events dispatched
-         */
-        SBRunData(long tcalCount, long tcalTicks, long snCount, long snTicks,
-                  long moniCount, long moniTicks)
-        {
-            this.tcalCount = tcalCount;
-            this.tcalTicks = tcalTicks;
-            this.snCount = snCount;
-            this.snTicks = snTicks;
-            this.moniCount = moniCount;
-            this.moniTicks = moniTicks;
-        }
-
-        /**
-         * Return run data as an array of <tt>long</tt> values.
-         *
-         * @return array of <tt>long</tt> values
-         */
-        public long[] toArray()
-        {
-            return new long[] {
-                tcalCount, tcalTicks, snCount, snTicks, moniCount, moniTicks,
-            };
-        }
-    }
-
     private static final Logger LOG = Logger.getLogger(SBComponent.class);
 
     private static final boolean USE_PRIO_SPLICER =
         System.getProperty("usePrioritySplicer") != null;
 
+    /** Decode monitoring payloads on a separate thread from dispatching */
+    private static final boolean PIPELINE_MONI =
+        System.getProperty("pipelineMoni") != null;
+
+    /** Splicer types for the per-stream "&lt;stream&gt;Splicer" property */
+    private static final String HKN1_SPLICER = "hkn1";
+    private static final String PRIO_SPLICER = "priority";
+    private static final String SHARDED_SPLICER = "sharded";
+
+    /** Prescale modes used in the run config's &lt;prescale&gt; element */
+    private static final String PRESCALE_COUNT = "count";
+    private static final String PRESCALE_BYTE_RATE = "bytesPerSecond";
+    private static final String PRESCALE_PER_DOM = "perDOM";
+
+    /** Default number of strand groups used by the sharded splicer */
+    private static final int DEFAULT_SHARDS = 8;
+
     private static final Spliceable LAST_SPLICEABLE =
         SpliceableFactory.LAST_POSSIBLE_SPLICEABLE;
 
@@ -121,9 +87,9 @@ public class SBComponent extends DAQComponent
     private SpliceableFactory snFactory;
     private SpliceableFactory moniFactory;
 
-    private Splicer<Spliceable> tcalSplicer;
-    private Splicer<Spliceable> snSplicer;
-    private Splicer<Spliceable> moniSplicer;
+    private CountingSplicer<Spliceable> tcalSplicer;
+    private CountingSplicer<Spliceable> snSplicer;
+    private CountingSplicer<Spliceable> moniSplicer;
 
     private TCalAnalysis tcalSplicedAnalysis;
     private SBSplicedAnalysis snSplicedAnalysis;
@@ -156,9 +122,30 @@ public class SBComponent extends DAQComponent
 
     private int runNumber;
 
-    /** Map used to track event counts for each run */
-    private HashMap<Integer, SBRunData> runData =
-        new HashMap<Integer, SBRunData>();
+    /** Number of runs whose event counts are remembered */
+    private static final int RUN_HISTORY_SIZE = 1000;
+
+    /** Recent event counts for each run */
+    private RunDataHistory runData;
+
+    /** Samples each stream's disk space and write rate */
+    private DiskSampler diskSampler;
+    /** Thins the streams when the disk is filling */
+    private DiskPressurePolicy diskPolicy;
+
+    /** Switches all streams to a new run at the same time */
+    private final ExecutorService switchPool =
+        Executors.newFixedThreadPool(3, new ThreadFactory() {
+                private int num;
+
+                @Override
+                public synchronized Thread newThread(Runnable r)
+                {
+                    Thread thrd = new Thread(r, "SBSwitch#" + num++);
+                    thrd.setDaemon(true);
+                    return thrd;
+                }
+            });
 
     public SBComponent(SBCompConfig compConfig)
         throws DAQCompException
@@ -169,6 +156,35 @@ public class SBComponent extends DAQComponent
         isTcalEnabled = compConfig.isTcalEnabled();
         isSnEnabled = compConfig.isSnEnabled();
         isMoniEnabled = compConfig.isMoniEnabled();
+
+        // if specified, run counts are saved so they survive a restart
+        final String runDataPath = System.getProperty("runDataFile");
+        File runDataFile;
+        if (runDataPath == null) {
+            runDataFile = null;
+        } else {
+            runDataFile = new File(runDataPath);
+        }
+        runData = new RunDataHistory(RUN_HISTORY_SIZE, runDataFile);
+
+        diskSampler =
+            new DiskSampler(Integer.getInteger("diskSampleSeconds",
+                                               DiskSampler.
+                                               DEFAULT_INTERVAL_SECONDS));
+
+        final String order =
+            System.getProperty("diskPressureOrder",
+                               DiskPressurePolicy.DEFAULT_ORDER);
+        diskPolicy = new DiskPressurePolicy(order,
+            Integer.getInteger("diskPressurePercent",
+                               DiskPressurePolicy.DEFAULT_PRESSURE_PERCENT),
+            Integer.getInteger("diskRecoverPercent",
+                               DiskPressurePolicy.DEFAULT_RECOVER_PERCENT),
+            Long.getLong("diskPressureSeconds",
+                         DiskPressurePolicy.DEFAULT_PRESSURE_SECONDS),
+            Long.getLong("diskMaxPrescale",
+                         DiskPressurePolicy.DEFAULT_MAX_PRESCALE));
+        diskSampler.addListener(diskPolicy);
     }
 
     @Override
@@ -191,11 +207,15 @@ public class SBComponent extends DAQComponent
             addMBean("tcalCache", tcalBufferCache);
             tcalFactory = new PayloadFactory(tcalBufferCache);
             tcalSplicedAnalysis = new TCalAnalysis(tcalDispatcher);
-            tcalSplicer = createSplicer(tcalSplicedAnalysis);
+            tcalSplicer = new CountingSplicer<Spliceable>(
+                createSplicer("tcal", tcalSplicedAnalysis));
             addSplicer(tcalSplicer);
 
             tcalSplicedAnalysis.setSplicer(tcalSplicer);
             tcalSplicedAnalysis.setStreamName("tcal");
+            final DiskSampler.Stream tcalDiskStream =
+                diskSampler.addStream("tcal", tcalDispatcher);
+            diskPolicy.addStream(tcalSplicedAnalysis, tcalDiskStream);
             try {
                 tcalInputEngine = new SpliceableStreamReader(
                     "tcalInputEngine", 50000, tcalSplicer, tcalFactory);
@@ -204,7 +224,9 @@ public class SBComponent extends DAQComponent
 
                 if (isMonitoring) {
                     tcalBuilderMonitor = new SecBuilderMonitor("TcalBuilder",
-                        tcalInputEngine, tcalSplicer, tcalDispatcher);
+                        tcalInputEngine, tcalSplicer, tcalDispatcher,
+                        tcalSplicedAnalysis);
+                    tcalBuilderMonitor.setDiskStream(tcalDiskStream);
                     addMBean("tcalBuilder", tcalBuilderMonitor);
                 }
             } catch (IOException iox) {
@@ -231,11 +253,15 @@ public class SBComponent extends DAQComponent
             addMBean("snCache", snBufferCache);
             snFactory = new PayloadFactory(snBufferCache);
             snSplicedAnalysis = new SBSplicedAnalysis(snDispatcher);
-            snSplicer = createSplicer(snSplicedAnalysis);
+            snSplicer = new CountingSplicer<Spliceable>(
+                createSplicer("sn", snSplicedAnalysis));
             addSplicer(snSplicer);
 
             snSplicedAnalysis.setSplicer(snSplicer);
             snSplicedAnalysis.setStreamName("sn");
+            final DiskSampler.Stream snDiskStream =
+                diskSampler.addStream("sn", snDispatcher);
+            diskPolicy.addStream(snSplicedAnalysis, snDiskStream);
             try {
                 snInputEngine = new SpliceableStreamReader("stringHubSnInput",
                     25000, snSplicer, snFactory);
@@ -243,7 +269,9 @@ public class SBComponent extends DAQComponent
 
                 if (isMonitoring) {
                     snBuilderMonitor = new SecBuilderMonitor("SnBuilder",
-                        snInputEngine, snSplicer, snDispatcher);
+                        snInputEngine, snSplicer, snDispatcher,
+                        snSplicedAnalysis);
+                    snBuilderMonitor.setDiskStream(snDiskStream);
                     addMBean("snBuilder", snBuilderMonitor);
                 }
             } catch (IOException iox) {
@@ -269,11 +297,16 @@ public class SBComponent extends DAQComponent
             addMBean("moniCache", moniBufferCache);
             moniFactory = new PayloadFactory(moniBufferCache);
             moniSplicedAnalysis = new MoniAnalysis(moniDispatcher);
-            moniSplicer = createSplicer(moniSplicedAnalysis);
+            moniSplicer = new CountingSplicer<Spliceable>(
+                createSplicer("moni", moniSplicedAnalysis));
             addSplicer(moniSplicer);
 
             moniSplicedAnalysis.setSplicer(moniSplicer);
             moniSplicedAnalysis.setStreamName("moni");
+            final DiskSampler.Stream moniDiskStream =
+                diskSampler.addStream("moni", moniDispatcher);
+            diskPolicy.addStream(moniSplicedAnalysis, moniDiskStream);
+            moniSplicedAnalysis.setPipelined(PIPELINE_MONI);
             try {
                 moniInputEngine = new SpliceableStreamReader(
                     "stringHubMoniInput", 5000, moniSplicer, moniFactory);
@@ -282,8 +315,12 @@ public class SBComponent extends DAQComponent
 
                 if (isMonitoring) {
                     moniBuilderMonitor = new SecBuilderMonitor("MoniBuilder",
-                        moniInputEngine, moniSplicer, moniDispatcher);
+                        moniInputEngine, moniSplicer, moniDispatcher,
+                        moniSplicedAnalysis);
+                    moniBuilderMonitor.setDiskStream(moniDiskStream);
                     addMBean("moniBuilder", moniBuilderMonitor);
+                    addMBean("moniBins",
+                             new MoniBinSnapshot(moniSplicedAnalysis));
                 }
             } catch (IOException iox) {
                 LOG.error(iox);
@@ -293,15 +330,58 @@ public class SBComponent extends DAQComponent
 
         addMBean("jvm", new MemoryStatistics());
         addMBean("system", new SystemStatistics());
+
+        diskSampler.start();
     }
 
-    private Splicer<Spliceable> createSplicer(SplicedAnalysis<Spliceable> a)
+    /**
+     * Create the splicer for a stream.  The splicer type can be chosen for
+     * each stream with the "&lt;stream&gt;Splicer" property (one of "hkn1",
+     * "priority" or "sharded"), otherwise the "usePrioritySplicer" property
+     * selects between the HKN1 and priority splicers.
+     *
+     * @param stream stream name (tcal, sn, moni)
+     * @param a analysis object which consumes the spliced payloads
+     *
+     * @return new splicer
+     *
+     * @throws DAQCompException if the splicer cannot be created
+     */
+    private Splicer<Spliceable> createSplicer(String stream,
+                                              SplicedAnalysis<Spliceable> a)
         throws DAQCompException
     {
-        if (!USE_PRIO_SPLICER) {
+        String type = System.getProperty(stream + "Splicer");
+        if (type == null) {
+            type = USE_PRIO_SPLICER ? PRIO_SPLICER : HKN1_SPLICER;
+        }
+
+        if (type.equalsIgnoreCase(HKN1_SPLICER)) {
             return new HKN1Splicer<Spliceable>(a, splicerCmp, LAST_SPLICEABLE);
         }
 
+        if (type.equalsIgnoreCase(SHARDED_SPLICER)) {
+            final int numShards =
+                Integer.getInteger(stream + "SplicerShards", DEFAULT_SHARDS);
+            if (LOG.isInfoEnabled()) {
+                LOG.info("Using " + numShards + "-shard splicer for " +
+                         stream);
+            }
+            try {
+                return new ShardedSplicer<Spliceable>(a, splicerCmp,
+                                                      LAST_SPLICEABLE,
+                                                      numShards);
+            } catch (IllegalArgumentException iae) {
+                throw new DAQCompException("Cannot create " + stream +
+                                           " splicer", iae);
+            }
+        }
+
+        if (!type.equalsIgnoreCase(PRIO_SPLICER)) {
+            throw new DAQCompException("Unknown " + stream + " splicer \"" +
+                                       type + "\"");
+        }
+
         final int totChannels = DAQCmdInterface.DAQ_MAX_NUM_STRINGS +
             DAQCmdInterface.DAQ_MAX_NUM_IDH;
         try {
@@ -382,6 +462,8 @@ public class SBComponent extends DAQComponent
 
         moniSplicedAnalysis.setAlertQueue(getAlertQueue());
         tcalSplicedAnalysis.setAlertQueue(getAlertQueue());
+        snSplicedAnalysis.setAlertQueue(getAlertQueue());
+        diskPolicy.setAlertQueue(getAlertQueue());
     }
 
     /**
@@ -393,106 +475,68 @@ public class SBComponent extends DAQComponent
     private void parseConfigFile(String runConfigFileName)
         throws DAQCompException
     {
+        SBRunConfig runCfg = SBRunConfig.load(runConfigFileName);
 
-        try {
-            Document doc = DocumentBuilderFactory.newInstance().
-                newDocumentBuilder().parse(runConfigFileName);
-
-            XPath xpath = XPathFactory.newInstance().newXPath();
-
-            // is this a SuperSaver run?
-            final String save_expr = "/runConfig/supersaver";
-            NodeList saveNodes =
-                (NodeList) xpath.evaluate(save_expr, doc,
-                                          XPathConstants.NODESET);
-            if (saveNodes.getLength() > 1) {
-                final String errmsg = "Found " + saveNodes.getLength() +
-                    " secondaryBuilder <supersaver/> tags rather than 1 in " +
-                    runConfigFileName;
-                throw new DAQCompException(errmsg);
-            }
-
-            final boolean supersaver = saveNodes.getLength() == 1;
-            if (isMoniEnabled) {
-                moniDispatcher.setSuperSaver(supersaver);
-            }
-            if (isSnEnabled) {
-                snDispatcher.setSuperSaver(supersaver);
-            }
-            if (isTcalEnabled) {
-                tcalDispatcher.setSuperSaver(supersaver);
-            }
-
-            // check all subcomponents for prescale setting
-            String sb_expr =
-                "/runConfig/runComponent[@name='secondaryBuilders']";
-            NodeList sbNodes = (NodeList) xpath.evaluate(sb_expr, doc,
-                XPathConstants.NODESET);
-            if (sbNodes.getLength() != 1) {
-                throw new DAQCompException("Found " + sbNodes.getLength() +
-                     " secondaryBuilder runComponents rather than 1 in " +
-                          runConfigFileName);
-            }
-            Node sbNode = sbNodes.item(0);
-
-            if (isTcalEnabled) {
-                long tcal_prescale = parsePrescale("tcal", sbNode, xpath);
-                if (tcal_prescale > 0L) {
-                    tcalSplicedAnalysis.setPreScale(tcal_prescale);
-                } else if (supersaver) {
-                    tcalSplicedAnalysis.setPreScale(1L);
-                }
-            }
-
-            if (isSnEnabled) {
-                long sn_prescale = parsePrescale("sn", sbNode, xpath);
-                if (sn_prescale > 0L) {
-                    snSplicedAnalysis.setPreScale(sn_prescale);
-                }
-            }
+        // is this a SuperSaver run?
+        final boolean supersaver = runCfg.isSuperSaver();
+        if (isMoniEnabled) {
+            moniDispatcher.setSuperSaver(supersaver);
+        }
+        if (isSnEnabled) {
+            snDispatcher.setSuperSaver(supersaver);
+        }
+        if (isTcalEnabled) {
+            tcalDispatcher.setSuperSaver(supersaver);
+        }
 
-            if (isMoniEnabled) {
-                long moni_prescale = parsePrescale("moni", sbNode, xpath);
-                if (moni_prescale > 0L) {
-                    moniSplicedAnalysis.setPreScale(moni_prescale);
-                }
+        // check all subcomponents for prescale setting
+        if (isTcalEnabled) {
+            if (!configurePrescale("tcal", tcalSplicedAnalysis, runCfg) &&
+                supersaver)
+            {
+                tcalSplicedAnalysis.setPreScale(1L);
             }
+        }
 
-        } catch (ParserConfigurationException ex) {
-            throw new DAQCompException(ex);
-        } catch (SAXException ex) {
-            throw new DAQCompException(ex);
-        } catch (IOException ex) {
-            throw new DAQCompException(ex);
-        } catch (XPathExpressionException ex) {
-            throw new DAQCompException(ex);
+        if (isSnEnabled) {
+            configurePrescale("sn", snSplicedAnalysis, runCfg);
         }
 
+        if (isMoniEnabled) {
+            configurePrescale("moni", moniSplicedAnalysis, runCfg);
+        }
     }
 
     /**
-     * Helper function to parse the specified stream prescale value from
-     * the given DOM Node using the provided XPath interace.
+     * Helper function to fetch the specified stream prescale value from
+     * the parsed run configuration and apply it to the stream's analysis
+     * object.
+     *
+     * The optional "mode" attribute of the &lt;prescale&gt; element selects
+     * how the value is used:<ul>
+     *    <li>"count" (the default): keep 1 of every N payloads
+     *    <li>"bytesPerSecond": write at most N bytes per second
+     *    <li>"perDOM": keep 1 of every N payloads from each DOM
+     *    </ul>
      *
      * @param stream - the name of the stream (tcal, sn, moni)
-     * @param sbNode - the DOM Node of the secondaryBuilder Element
-     * from the run config file.
-     * @param xpath - the XPath interface to use
+     * @param analysis - the stream's analysis object
+     * @param runCfg - the secondary builder settings from the run config
      *
-     * @return the prescale value as a Long or null if not specified.
+     * @return <tt>false</tt> if no prescale was specified
      */
-    private long parsePrescale(String stream, Node sbNode, XPath xpath)
-        throws XPathExpressionException, DAQCompException
+    private boolean configurePrescale(String stream,
+                                      SBSplicedAnalysis analysis,
+                                      SBRunConfig runCfg)
+        throws DAQCompException
     {
-
-        String prescale_expr = "stream[@name='" + stream + "']/prescale";
-
-        String prescale = (String) xpath.evaluate(prescale_expr, sbNode,
-                                                  XPathConstants.STRING);
+        String prescale = runCfg.getPrescale(stream);
         if (prescale.length() == 0) {
-            return Long.MIN_VALUE;
+            return false;
         }
 
+        String mode = runCfg.getPrescaleMode(stream);
+
         long ps;
         try {
             ps = Long.valueOf(prescale);
@@ -505,7 +549,23 @@ public class SBComponent extends DAQComponent
                                        prescale + "\"");
         }
 
-        return ps;
+        if (mode.length() == 0 || mode.equals(PRESCALE_COUNT)) {
+            analysis.setPreScale(ps);
+        } else if (mode.equals(PRESCALE_BYTE_RATE)) {
+            analysis.setPrescalePolicy(new ByteRatePrescaler(ps));
+        } else if (mode.equals(PRESCALE_PER_DOM)) {
+            if (ps > Integer.MAX_VALUE) {
+                throw new DAQCompException("Bad " + stream +
+                                           " per-DOM prescale \"" +
+                                           prescale + "\"");
+            }
+            analysis.setPrescalePolicy(new DOMPrescaler(ps));
+        } else {
+            throw new DAQCompException("Unknown " + stream +
+                                       " prescale mode \"" + mode + "\"");
+        }
+
+        return true;
     }
 
     /**
@@ -595,6 +655,7 @@ public class SBComponent extends DAQComponent
     {
         final long stopTime = new UTCTime().longValue();
 
+        moniSplicedAnalysis.drainMonitoring();
         moniSplicedAnalysis.finishMonitoring(stopTime);
         StreamMetaData moniMD = moniSplicedAnalysis.getMetaData();
 
@@ -604,10 +665,7 @@ public class SBComponent extends DAQComponent
         tcalSplicedAnalysis.finishMonitoring(stopTime);
         StreamMetaData tcalMD = tcalSplicedAnalysis.getMetaData();
 
-        runData.put(runNumber,
-                    new SBRunData(tcalMD.getCount(), tcalMD.getTicks(),
-                                  snMD.getCount(), snMD.getTicks(),
-                                  moniMD.getCount(), moniMD.getTicks()));
+        saveRunData(runNumber, tcalMD, snMD, moniMD);
     }
 
     /**
@@ -622,6 +680,7 @@ public class SBComponent extends DAQComponent
         throws DAQCompException
     {
         final long switchTime = new UTCTime().longValue();
+        final long switchStart = System.nanoTime();
 
         StreamMetaData tcalMD;
         StreamMetaData snMD;
@@ -630,31 +689,133 @@ public class SBComponent extends DAQComponent
         if (LOG.isInfoEnabled()){
             LOG.info("Setting runNumber = " + runNumber);
         }
-        if (isTcalEnabled) {
-            tcalMD = tcalSplicedAnalysis.switchToNewRun(runNumber, switchTime);
-        } else {
-            tcalMD = new StreamMetaData(-1, -1);
+
+        // switch all streams at once so the gap in each stream is as short
+        // as possible
+        Future<StreamMetaData> tcalFuture =
+            submitSwitch(switchPool, isTcalEnabled, tcalSplicedAnalysis,
+                         runNumber, switchTime);
+        Future<StreamMetaData> snFuture =
+            submitSwitch(switchPool, isSnEnabled, snSplicedAnalysis,
+                         runNumber, switchTime);
+        Future<StreamMetaData> moniFuture =
+            submitSwitch(switchPool, isMoniEnabled, moniSplicedAnalysis,
+                         runNumber, switchTime);
+
+        // wait for every stream before reporting the first failure
+        DAQCompException failure = null;
+        try {
+            tcalMD = waitForSwitch("tcal", tcalFuture);
+        } catch (DAQCompException dce) {
+            tcalMD = null;
+            failure = dce;
         }
-        if (isSnEnabled) {
-            snMD = snSplicedAnalysis.switchToNewRun(runNumber, switchTime);
-        } else {
-            snMD = new StreamMetaData(-1, -1);
+        try {
+            snMD = waitForSwitch("sn", snFuture);
+        } catch (DAQCompException dce) {
+            snMD = null;
+            if (failure == null) {
+                failure = dce;
+            }
         }
-        if (isMoniEnabled) {
-            moniMD = moniSplicedAnalysis.switchToNewRun(runNumber, switchTime);
-        } else {
-            moniMD = new StreamMetaData(-1, -1);
+        try {
+            moniMD = waitForSwitch("moni", moniFuture);
+        } catch (DAQCompException dce) {
+            moniMD = null;
+            if (failure == null) {
+                failure = dce;
+            }
+        }
+
+        if (failure != null) {
+            // the final counts for the previous run are unknown
+            this.runNumber = runNumber;
+            throw failure;
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info(String.format("Switched to run %d in %.3f ms",
+                                   runNumber,
+                                   (double) (System.nanoTime() -
+                                             switchStart) / 1000000.0));
         }
 
         // save run data for later retrieval
-        runData.put(this.runNumber,
-                    new SBRunData(tcalMD.getCount(), tcalMD.getTicks(),
-                                  snMD.getCount(), snMD.getTicks(),
-                                  moniMD.getCount(), moniMD.getTicks()));
+        saveRunData(this.runNumber, tcalMD, snMD, moniMD);
 
         this.runNumber = runNumber;
     }
 
+    /**
+     * Start switching a stream to a new run.
+     *
+     * @param pool thread pool used to run the switch
+     * @param enabled <tt>false</tt> if the stream is not enabled
+     * @param analysis stream's analysis object
+     * @param runNumber new run number
+     * @param switchTime time when switching() was called (in DAQ ticks)
+     *
+     * @return result of the switch (<tt>null</tt> if stream is not enabled)
+     */
+    private static Future<StreamMetaData>
+        submitSwitch(ExecutorService pool, boolean enabled,
+                     final SBSplicedAnalysis analysis, final int runNumber,
+                     final long switchTime)
+    {
+        if (!enabled) {
+            return null;
+        }
+
+        return pool.submit(new Callable<StreamMetaData>() {
+                @Override
+                public StreamMetaData call()
+                {
+                    return analysis.switchToNewRun(runNumber, switchTime);
+                }
+            });
+    }
+
+    /**
+     * Wait for a stream to finish switching to a new run.
+     *
+     * @param stream stream name
+     * @param future result of the switch (<tt>null</tt> if stream is not
+     *               enabled)
+     *
+     * @return metadata for the previous run (<tt>-1</tt> counts if the
+     *         stream is not enabled)
+     *
+     * @throws DAQCompException if an enabled stream could not be switched
+     */
+    private static StreamMetaData waitForSwitch(String stream,
+                                                Future<StreamMetaData> future)
+        throws DAQCompException
+    {
+        if (future == null) {
+            // disabled streams have no counts
+            return new StreamMetaData(-1, -1);
+        }
+
+        StreamMetaData md;
+        try {
+            md = future.get();
+        } catch (ExecutionException ee) {
+            throw new DAQCompException("Cannot switch " + stream,
+                                       ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new DAQCompException("Interrupted while switching " +
+                                       stream, ie);
+        }
+
+        if (md == null) {
+            // switchToNewRun() has already logged the reason
+            throw new DAQCompException("Cannot switch " + stream);
+        }
+
+        return md;
+    }
+
     /**
      * Get the run data for the specified run.
      *
@@ -671,16 +832,33 @@ public class SBComponent extends DAQComponent
     public long[] getRunData(int runNum)
         throws DAQCompException
     {
-        if (!runData.containsKey(runNum)) {
+        long[] data = runData.get(runNum);
+        if (data == null) {
             throw new DAQCompException("No final counts found for run " +
                                        runNum + "; state is " + getState());
         }
 
-        return runData.get(runNum).toArray();
+        return data;
     }
 
     /**
-     * Save run counts after
+     * Save the event totals for a run.
+     *
+     * @param runNum run number
+     * @param tcalMD time calibration stream metadata
+     * @param snMD supernova stream metadata
+     * @param moniMD monitoring stream metadata
+     */
+    private void saveRunData(int runNum, StreamMetaData tcalMD,
+                             StreamMetaData snMD, StreamMetaData moniMD)
+    {
+        runData.put(runNum, new long[] {
+                tcalMD.getCount(), tcalMD.getTicks(),
+                snMD.getCount(), snMD.getTicks(),
+                moniMD.getCount(), moniMD.getTicks(),
+            });
+    }
+
     /**
      * Get the current run number.
      *
@@ -692,6 +870,28 @@ public class SBComponent extends DAQComponent
         return runNumber;
     }
 
+    /**
+     * Release the threads and files used by this component.  This is
+     * called when the server exits.
+     */
+    void shutdown()
+    {
+        diskSampler.stop();
+        switchPool.shutdown();
+
+        if (tcalSplicedAnalysis != null) {
+            tcalSplicedAnalysis.close();
+        }
+        if (snSplicedAnalysis != null) {
+            snSplicedAnalysis.close();
+        }
+        if (moniSplicedAnalysis != null) {
+            moniSplicedAnalysis.close();
+        }
+
+        runData.close();
+    }
+
     /**
      * Run a DAQ component server.
      *
@@ -702,14 +902,25 @@ public class SBComponent extends DAQComponent
     {
         SecBuilderCompConfig cfg = new SecBuilderCompConfig();
 
+        final SBComponent comp;
         DAQCompServer srvr;
         try {
-            srvr = new DAQCompServer(new SBComponent(cfg), args);
+            comp = new SBComponent(cfg);
+            srvr = new DAQCompServer(comp, args);
         } catch (IllegalArgumentException ex) {
             System.err.println(ex.getMessage());
             System.exit(1);
             return;
         }
+
+        Runtime.getRuntime().addShutdownHook(new Thread("SBShutdown") {
+                @Override
+                public void run()
+                {
+                    comp.shutdown();
+                }
+            });
+
         srvr.startServing();
     }
 }
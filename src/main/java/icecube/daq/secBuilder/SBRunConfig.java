@@ -0,0 +1,270 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.juggler.component.DAQCompException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The secondary builder settings from a run configuration file.
+ *
+ * Only the &lt;supersaver&gt; tag and the secondaryBuilders
+ * &lt;runComponent&gt; are read, using a streaming parser.  Parsed files
+ * are cached by path and are only read again if the file has changed.
+ */
+class SBRunConfig
+{
+    /** Maximum number of cached run configurations */
+    private static final int MAX_CACHED = 16;
+
+    private static final XMLInputFactory FACTORY = newFactory();
+
+    /** Cache of recently parsed run configurations */
+    private static final Map<String, SBRunConfig> CACHE =
+        new LinkedHashMap<String, SBRunConfig>(MAX_CACHED, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,
+                                                SBRunConfig> eldest)
+            {
+                return size() > MAX_CACHED;
+            }
+        };
+
+    /** File modification time when this configuration was parsed */
+    private long lastModified;
+    /** File length when this configuration was parsed */
+    private long length;
+
+    private boolean supersaver;
+    /** Map of stream names to prescale values */
+    private HashMap<String, String> prescales = new HashMap<String, String>();
+    /** Map of stream names to prescale modes */
+    private HashMap<String, String> modes = new HashMap<String, String>();
+
+    private SBRunConfig(long lastModified, long length)
+    {
+        this.lastModified = lastModified;
+        this.length = length;
+    }
+
+    /**
+     * Get the text of the specified stream's &lt;prescale&gt; element.
+     *
+     * @param stream stream name (tcal, sn, moni)
+     *
+     * @return prescale string (empty if no prescale was specified)
+     */
+    String getPrescale(String stream)
+    {
+        final String val = prescales.get(stream);
+        if (val == null) {
+            return "";
+        }
+
+        return val;
+    }
+
+    /**
+     * Get the "mode" attribute of the specified stream's &lt;prescale&gt;
+     * element.
+     *
+     * @param stream stream name (tcal, sn, moni)
+     *
+     * @return prescale mode (empty if no mode was specified)
+     */
+    String getPrescaleMode(String stream)
+    {
+        final String val = modes.get(stream);
+        if (val == null) {
+            return "";
+        }
+
+        return val;
+    }
+
+    /**
+     * Is this a SuperSaver run?
+     *
+     * @return <tt>true</tt> if the run config has a &lt;supersaver&gt; tag
+     */
+    boolean isSuperSaver()
+    {
+        return supersaver;
+    }
+
+    /**
+     * Return the settings from the specified run configuration file,
+     * parsing it only if it is not cached or has changed since it was
+     * cached.
+     *
+     * @param runConfigFileName path to run configuration file
+     *
+     * @return run configuration settings
+     *
+     * @throws DAQCompException if the file cannot be parsed
+     */
+    static SBRunConfig load(String runConfigFileName)
+        throws DAQCompException
+    {
+        File file = new File(runConfigFileName);
+
+        final long lastModified = file.lastModified();
+        final long length = file.length();
+
+        synchronized (CACHE) {
+            SBRunConfig cached = CACHE.get(runConfigFileName);
+            if (cached != null && cached.lastModified == lastModified &&
+                cached.length == length)
+            {
+                return cached;
+            }
+        }
+
+        SBRunConfig cfg = new SBRunConfig(lastModified, length);
+        cfg.parse(file, runConfigFileName);
+
+        synchronized (CACHE) {
+            CACHE.put(runConfigFileName, cfg);
+        }
+
+        return cfg;
+    }
+
+    private static XMLInputFactory newFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,
+                            Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Read the secondary builder settings from the file.
+     */
+    private void parse(File file, String runConfigFileName)
+        throws DAQCompException
+    {
+        int numSaveNodes = 0;
+        int numSBNodes = 0;
+
+        InputStream in = null;
+        XMLStreamReader rdr = null;
+        try {
+            in = new FileInputStream(file);
+            synchronized (FACTORY) {
+                rdr = FACTORY.createXMLStreamReader(in);
+            }
+
+            boolean isRunConfig = false;
+            boolean inSB = false;
+            String stream = null;
+            StringBuilder text = null;
+
+            int depth = 0;
+            while (rdr.hasNext()) {
+                final int event = rdr.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+
+                    final String name = rdr.getLocalName();
+                    if (depth == 1) {
+                        isRunConfig = name.equals("runConfig");
+                    } else if (depth == 2 && isRunConfig) {
+                        if (name.equals("supersaver")) {
+                            numSaveNodes++;
+                        } else if (name.equals("runComponent") &&
+                                   "secondaryBuilders".equals(
+                                       rdr.getAttributeValue(null, "name")))
+                        {
+                            numSBNodes++;
+                            inSB = numSBNodes == 1;
+                        }
+                    } else if (depth == 3 && inSB && name.equals("stream")) {
+                        stream = rdr.getAttributeValue(null, "name");
+                    } else if (depth == 4 && stream != null &&
+                               name.equals("prescale") &&
+                               !prescales.containsKey(stream))
+                    {
+                        // only the first <prescale> for a stream is used
+                        final String mode =
+                            rdr.getAttributeValue(null, "mode");
+                        if (mode != null) {
+                            modes.put(stream, mode);
+                        }
+                        text = new StringBuilder();
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS ||
+                           event == XMLStreamConstants.CDATA)
+                {
+                    if (text != null) {
+                        text.append(rdr.getText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 4 && text != null) {
+                        prescales.put(stream, text.toString());
+                        text = null;
+                    } else if (depth == 3) {
+                        stream = null;
+                    } else if (depth == 2) {
+                        inSB = false;
+                    }
+
+                    depth--;
+                }
+            }
+        } catch (IOException ioe) {
+            throw new DAQCompException(ioe);
+        } catch (XMLStreamException xse) {
+            throw new DAQCompException(xse);
+        } finally {
+            if (rdr != null) {
+                try {
+                    rdr.close();
+                } catch (XMLStreamException xse) {
+                    // ignore errors on close
+                }
+            }
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ioe) {
+                    // ignore errors on close
+                }
+            }
+        }
+
+        if (numSaveNodes > 1) {
+            final String errmsg = "Found " + numSaveNodes +
+                " secondaryBuilder <supersaver/> tags rather than 1 in " +
+                runConfigFileName;
+            throw new DAQCompException(errmsg);
+        }
+        supersaver = numSaveNodes == 1;
+
+        if (numSBNodes != 1) {
+            throw new DAQCompException("Found " + numSBNodes +
+                                       " secondaryBuilder runComponents" +
+                                       " rather than 1 in " +
+                                       runConfigFileName);
+        }
+
+        // an empty <prescale/> is the same as no prescale
+        for (String key : prescales.keySet().toArray(new String[0])) {
+            if (prescales.get(key).length() == 0) {
+                prescales.remove(key);
+                modes.remove(key);
+            }
+        }
+    }
+}
@@ -9,8 +9,12 @@ package icecube.daq.secBuilder;
 import icecube.daq.io.DispatchException;
 import icecube.daq.io.Dispatcher;
 import icecube.daq.io.StreamMetaData;
+import icecube.daq.juggler.alert.AlertException;
+import icecube.daq.juggler.alert.Alerter;
+import icecube.daq.juggler.alert.IAlertQueue;
 import icecube.daq.payload.IPayload;
 import icecube.daq.payload.impl.Monitor;
+import icecube.daq.payload.impl.UTCTime;
 import icecube.daq.splicer.SpliceableFactory;
 import icecube.daq.splicer.Spliceable;
 import icecube.daq.splicer.SplicedAnalysis;
@@ -21,7 +25,15 @@ import icecube.daq.util.IDOMRegistry;
 import icecube.daq.util.DOMInfo;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -37,8 +49,26 @@ public class SBSplicedAnalysis
 {
     private static final boolean STRIP_NONSTANDARD_MONI = true;
 
+    /** Initial size of the per-list payload arrays */
+    private static final int INITIAL_BATCH = 256;
+
+    /** Maximum number of spliced lists waiting for pipelined monitoring */
+    static final int MAX_PENDING_BATCHES = 4;
+
+    /** Silent DOM message variable name */
+    public static final String SILENT_DOM_NAME = "dom_silent";
+    /** Silent DOM message version number */
+    public static final int SILENT_DOM_VERSION = 0;
+    /** Default silent DOM check interval (in seconds, 0 to disable) */
+    public static final int DEFAULT_SILENT_DOM_SECONDS = 600;
+
+    /** One second in 10ths of nanoseconds */
+    private static final long ONE_SECOND = 10000000000L;
+
     /** Database of DOM info */
     private static IDOMRegistry domRegistry;
+    /** Ordinals and OM IDs for all DOMs in the registry */
+    private static volatile DOMTable domTable;
     /** Have we complained about a missing DOM registry yet? */
     private boolean warnedDomRegistry = false;
 
@@ -47,9 +77,43 @@ public class SBSplicedAnalysis
     private int runNumber;
     private boolean reportedError;
     private String streamName = "noname";
-    private boolean preScaling = false;
     private long preScale = 1;
-    private long preScaleCount = 1;
+    /** Number of payloads to discard before the next one is dispatched */
+    private long preScaleSkip;
+    /** If non-null, decides which payloads are written */
+    private PrescalePolicy prescalePolicy;
+    /** Extra "1 of every N" thinning applied while the disk is filling */
+    private volatile long diskPrescale = 1;
+    /** Number of payloads to discard before the next one is thinned */
+    private long diskPrescaleSkip;
+    /** Number of payloads discarded by prescaling during this run */
+    private volatile long numPrescaled;
+    /** Time the dispatcher was held during the last run switch */
+    private volatile long switchPauseNanos;
+    /** Time spent syncing outside the lock during the last run switch */
+    private volatile long switchSyncNanos;
+
+    /** Payloads from the current spliced list */
+    private IPayload[] batchPayloads = new IPayload[INITIAL_BATCH];
+    /** Views of the payloads which will be dispatched */
+    private ByteBuffer[] batchViews = new ByteBuffer[INITIAL_BATCH];
+    /** DAQ times of the payloads which will be dispatched */
+    private long[] batchTicks = new long[INITIAL_BATCH];
+
+    /** If non-null, monitoring data is gathered on this thread */
+    private volatile ExecutorService moniExecutor;
+    /** Limits the number of lists queued for pipelined monitoring */
+    private Semaphore pendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+    /** Batches which have been released by both threads */
+    private ConcurrentLinkedQueue<PayloadBatch> freeBatches =
+        new ConcurrentLinkedQueue<PayloadBatch>();
+    /** Number of batches allocated for pipelined monitoring */
+    private int numBatches;
+
+    /** Finds DOMs which sent nothing (<tt>null</tt> if disabled) */
+    private SilentDOMDetector silentDOMs;
+    /** Receives silent DOM reports */
+    private IAlertQueue silentQueue;
 
     private Logger log = Logger.getLogger(SBSplicedAnalysis.class);
 
@@ -60,6 +124,12 @@ public class SBSplicedAnalysis
             throw new IllegalArgumentException("Dispatcher cannot be null");
         }
         this.dispatcher = dispatcher;
+
+        final int silentSecs = Integer.getInteger("silentDOMSeconds",
+                                                  DEFAULT_SILENT_DOM_SECONDS);
+        if (silentSecs > 0) {
+            silentDOMs = new SilentDOMDetector(silentSecs * ONE_SECOND);
+        }
     }
 
     /**
@@ -71,6 +141,29 @@ public class SBSplicedAnalysis
     @Override
     public void analyze(List<Spliceable> splicedObjects)
     {
+        final PrescalePolicy policy = prescalePolicy;
+        final long diskScale = diskPrescale;
+
+        ensureBatchCapacity(splicedObjects.size());
+
+        // if pipelining, monitoring data is gathered on a separate thread
+        final ExecutorService executor = moniExecutor;
+        PayloadBatch batch;
+        if (executor == null) {
+            batch = null;
+        } else {
+            batch = getBatch(splicedObjects.size());
+        }
+
+        // index of the next payload which survives prescaling
+        long nextKeep = preScaleSkip;
+        long dropped = 0;
+
+        // payloads which survive prescaling may still be thinned
+        long diskSkip = Math.min(diskPrescaleSkip, diskScale - 1);
+
+        int idx = 0;
+        int numOut = 0;
         for (Spliceable spl : splicedObjects) {
             if (spl == SpliceableFactory.LAST_POSSIBLE_SPLICEABLE) {
                 break;
@@ -79,35 +172,170 @@ public class SBSplicedAnalysis
             // get the next payload
             IPayload payload = (IPayload) spl;
 
-            // gather data for monitoring messages
-            try {
-                gatherMonitoring(payload);
-            } catch (MoniException me) {
-                log.error("Cannot process payload " + payload, me);
-            } catch (Throwable thr) {
-                log.error("Unexpected monitoring error from " + payload, thr);
+            if (silentDOMs != null) {
+                checkSilentDOMs(payload);
             }
+            if (batch != null) {
+                batch.add(payload);
+            } else {
+                batchPayloads[idx] = payload;
+
+                // gather data for monitoring messages
+                gatherSafely(payload);
+            }
+
+            if (STRIP_NONSTANDARD_MONI && isNonStandardDOM(payload)) {
+                // scintillator/IceACT monitoring payloads break
+                // legacy IceTop software, and don't count toward the prescale
+                nextKeep++;
+            } else if (idx < nextKeep) {
+                // discarded by prescale, so don't touch the payload's buffer
+                dropped++;
+            } else {
+                nextKeep = idx + preScale;
 
-            // scintillator/IceACT monitoring payloads break
-            // legacy IceTop software
-            if (!STRIP_NONSTANDARD_MONI || !isNonStandardDOM(payload)) {
-                // limit the byte buffer to the length specified in the header
                 ByteBuffer buf  = payload.getPayloadBacking();
-                buf.limit(buf.getInt(0));
+                if (policy != null &&
+                    !policy.accept(buf, payload.getUTCTime()))
+                {
+                    dropped++;
+                } else if (diskSkip > 0) {
+                    diskSkip--;
+                    dropped++;
+                } else {
+                    diskSkip = diskScale - 1;
 
-                // write out the payload
-                try {
-                    dispatchEvent(buf, payload.getUTCTime());
-                } catch (DispatchException de) {
-                    if (!reportedError) {
-                        log.error("couldn't dispatch the " + streamName +
-                                  " payload: ", de);
-                        reportedError = true;
-                    }
+                    batchViews[numOut] = payloadView(buf);
+                    batchTicks[numOut] = payload.getUTCTime();
+                    numOut++;
                 }
             }
 
-            payload.recycle();
+            idx++;
+        }
+
+        preScaleSkip = nextKeep - idx;
+        diskPrescaleSkip = diskSkip;
+        if (dropped > 0) {
+            numPrescaled += dropped;
+        }
+
+        if (batch != null) {
+            // decode on the monitoring thread while writing on this one
+            pendingBatches.acquireUninterruptibly();
+            try {
+                executor.execute(batch);
+            } catch (RejectedExecutionException ree) {
+                // pipelining was turned off, so gather the data here
+                // (which also releases the permit and one reference)
+                batch.run();
+            }
+
+            dispatchBatch(numOut);
+
+            // last one finished recycles the payloads
+            batch.release();
+        } else {
+            // write out the payloads
+            dispatchBatch(numOut);
+
+            // views share the payloads' memory, so recycle after dispatching
+            for (int i = 0; i < idx; i++) {
+                batchPayloads[i].recycle();
+                batchPayloads[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Mark the payload's DOM as seen, first reporting silent DOMs if the
+     * payload ends the current check interval
+     *
+     * @param payload payload
+     */
+    private void checkSilentDOMs(IPayload payload)
+    {
+        final long utc = payload.getUTCTime();
+        if (silentDOMs.isFinished(utc)) {
+            final long start = silentDOMs.getStartTime();
+            final long end = silentDOMs.getEndTime();
+
+            final String[] silent = silentDOMs.finishInterval(utc);
+            if (silent != null) {
+                sendSilentDOMs(silent, start, end);
+            }
+        }
+
+        final ByteBuffer buf = payload.getPayloadBacking();
+        if (buf != null && buf.limit() >= PrescalePolicy.DOM_ID_OFFSET + 8) {
+            silentDOMs.mark(buf.getLong(PrescalePolicy.DOM_ID_OFFSET));
+        }
+    }
+
+    /**
+     * Release all threads used by this analysis
+     */
+    void close()
+    {
+        setPipelined(false);
+    }
+
+    /**
+     * Wait for all pipelined monitoring work to finish
+     */
+    public void drainMonitoring()
+    {
+        if (moniExecutor == null) {
+            return;
+        }
+
+        pendingBatches.acquireUninterruptibly(MAX_PENDING_BATCHES);
+        pendingBatches.release(MAX_PENDING_BATCHES);
+    }
+
+    /**
+     * Get an unused batch, allocating a new one if all batches are in use
+     *
+     * @param size number of payloads which will be added
+     *
+     * @return empty batch
+     */
+    private PayloadBatch getBatch(int size)
+    {
+        PayloadBatch batch = freeBatches.poll();
+        if (batch == null) {
+            batch = new PayloadBatch(size);
+            numBatches++;
+        } else {
+            batch.reset(size);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Get the number of batches allocated for pipelined monitoring
+     *
+     * @return number of batches
+     */
+    int getNumBatches()
+    {
+        return numBatches;
+    }
+
+    /**
+     * Gather monitoring data from a payload, logging any problems
+     *
+     * @param payload payload
+     */
+    private void gatherSafely(IPayload payload)
+    {
+        try {
+            gatherMonitoring(payload);
+        } catch (MoniException me) {
+            log.error("Cannot process payload " + payload, me);
+        } catch (Throwable thr) {
+            log.error("Unexpected monitoring error from " + payload, thr);
         }
     }
 
@@ -152,9 +380,122 @@ public class SBSplicedAnalysis
             return null;
         }
 
+        final DOMTable table = domTable;
+        if (table != null) {
+            final int ordinal = table.getOrdinal(mbid);
+            if (ordinal != DOMTable.NO_DOM) {
+                return table.getDOM(ordinal);
+            }
+        }
+
         return domRegistry.getDom(mbid);
     }
 
+    /**
+     * Get the table of DOM ordinals and OM IDs.
+     *
+     * @return <tt>null</tt> if no DOM registry has been set
+     */
+    static DOMTable getDOMTable()
+    {
+        return domTable;
+    }
+
+    /**
+     * Get the shared OM ID string for a DOM.
+     *
+     * @param mbid mainboard ID
+     * @param dom DOM info
+     *
+     * @return "string-position" string
+     */
+    static String getOmID(long mbid, DOMInfo dom)
+    {
+        final DOMTable table = domTable;
+        if (table != null) {
+            final int ordinal = table.getOrdinal(mbid);
+            if (ordinal != DOMTable.NO_DOM) {
+                return table.getOmID(ordinal);
+            }
+        }
+
+        return dom.getDeploymentLocation();
+    }
+
+    /**
+     * Get the extra prescale factor applied while the disk is filling
+     *
+     * @return prescale factor (1 if nothing is being thinned)
+     */
+    public long getDiskPrescale()
+    {
+        return diskPrescale;
+    }
+
+    /**
+     * Get the number of alerts which were dropped because too many alerts
+     * were waiting to be sent
+     *
+     * @return number of dropped alerts
+     */
+    public long getNumDroppedAlerts()
+    {
+        return 0L;
+    }
+
+    /**
+     * Get the number of payloads in this run which arrived after their bin
+     * was sent (these are not included in any bin)
+     *
+     * @return number of dropped payloads
+     */
+    public long getNumDroppedLate()
+    {
+        return 0L;
+    }
+
+    /**
+     * Get the number of payloads in this run which arrived after their bin
+     * was closed but were still added to that bin
+     *
+     * @return number of late payloads
+     */
+    public long getNumLate()
+    {
+        return 0L;
+    }
+
+    /**
+     * Get the number of payloads discarded by prescaling during this run
+     *
+     * @return number of prescaled payloads
+     */
+    public long getNumPrescaled()
+    {
+        return numPrescaled;
+    }
+
+    /**
+     * Get the time the dispatcher was held by the last run switch
+     *
+     * @return number of nanoseconds
+     */
+    public long getSwitchPauseNanos()
+    {
+        return switchPauseNanos;
+    }
+
+    /**
+     * Get the time the last run switch spent syncing the previous run's
+     * data file without holding the dispatcher
+     *
+     * @return number of nanoseconds
+     */
+    public long getSwitchSyncNanos()
+    {
+        return switchSyncNanos;
+    }
+
     /**
      * Has the dom registry been set?
      *
@@ -165,6 +506,33 @@ public class SBSplicedAnalysis
         return domRegistry != null;
     }
 
+    /**
+     * If <tt>true</tt>, gather monitoring data on a separate thread while
+     * the payloads are being dispatched.
+     *
+     * @param pipelined <tt>true</tt> to enable pipelined monitoring
+     */
+    void setPipelined(boolean pipelined)
+    {
+        if (pipelined && moniExecutor == null) {
+            final String name = streamName + "Monitoring";
+            moniExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thrd = new Thread(r, name);
+                        thrd.setDaemon(true);
+                        return thrd;
+                    }
+                });
+        } else if (!pipelined && moniExecutor != null) {
+            drainMonitoring();
+            moniExecutor.shutdown();
+            moniExecutor = null;
+        }
+    }
+
     /**
      * Set the prescale factor - let through only every 'preScale'
      * events (default=1)
@@ -185,9 +553,44 @@ public class SBSplicedAnalysis
         }
 
         // Setting to 1 => turning off preScaling
-        this.preScaling = preScale > 1;
         this.preScale = preScale;
-        this.preScaleCount = 1;
+        this.preScaleSkip = preScale - 1;
+        this.prescalePolicy = null;
+    }
+
+    /**
+     * Thin the payloads which survive the configured prescale, writing only
+     * 1 of every 'diskPrescale' of them.  This is changed as the disk
+     * fills and empties, and leaves the run configuration's prescale alone.
+     *
+     * @param diskPrescale prescale factor (1 to stop thinning)
+     */
+    void setDiskPrescale(long diskPrescale)
+    {
+        if (diskPrescale <= 0L) {
+            throw new IllegalArgumentException("Bad " + streamName +
+                " disk prescale value: " + diskPrescale);
+        }
+
+        this.diskPrescale = diskPrescale;
+    }
+
+    /**
+     * Replace "1 of every N" prescaling with a policy which decides
+     * whether each payload is written.
+     *
+     * @param policy prescale policy (<tt>null</tt> to write all payloads)
+     */
+    void setPrescalePolicy(PrescalePolicy policy)
+    {
+        if (log.isInfoEnabled()) {
+            log.info("Setting " + streamName + " prescale policy to " +
+                     policy);
+        }
+
+        this.preScale = 1;
+        this.preScaleSkip = 0;
+        this.prescalePolicy = policy;
     }
 
     /**
@@ -200,9 +603,12 @@ public class SBSplicedAnalysis
     boolean isNonStandardDOM(IPayload payload)
     {
         if (payload instanceof Monitor) {
-            Monitor mon = (Monitor) payload;
+            // read the mainboard ID from the payload bytes so this works
+            // before (or while) the payload is loaded
+            final long mbid = payload.getPayloadBacking().
+                getLong(PrescalePolicy.DOM_ID_OFFSET);
 
-            DOMInfo dom = getDOM(mon.getDOMID());
+            DOMInfo dom = getDOM(mbid);
             if (dom != null) {
                 return dom.isScintillator() || dom.isIceACT();
             }
@@ -212,41 +618,68 @@ public class SBSplicedAnalysis
     }
 
     /**
-     * Dispatch an event taking into account any prescale settings
-     * (meaning it might not dispatch it).
+     * Dispatch all the payload views saved by <tt>analyze()</tt> while
+     * holding the dispatcher lock once.  Prescaling has already been applied.
      *
-     * @param buffer the ByteBuffer containg the event.
-     * @param ticks DAQ time for this payload
-     *
-     * @throws DispatchException is there is a problem in the Dispatch system.
+     * @param numOut number of saved views
      */
-    private void dispatchEvent(ByteBuffer buf, long ticks)
-        throws DispatchException
+    private void dispatchBatch(int numOut)
     {
+        if (numOut == 0) {
+            return;
+        }
 
-        if (preScaling) {
-            if (preScaleCount < preScale) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Discarding " + streamName +
-                              " prescaled event " + preScaleCount +
-                              " out of " + preScale);
-                }
-                preScaleCount++;
-                return;
-            } else {
-                if (log.isDebugEnabled()) {
-                    log.debug("Resetting " + streamName +
-                        " prescale count, dispatching event.");
+        synchronized (dispatcher) {
+            for (int i = 0; i < numOut; i++) {
+                try {
+                    dispatcher.dispatchEvent(batchViews[i], batchTicks[i]);
+                } catch (DispatchException de) {
+                    if (!reportedError) {
+                        log.error("couldn't dispatch the " + streamName +
+                                  " payload: ", de);
+                        reportedError = true;
+                    }
                 }
-                preScaleCount = 1;
+                batchViews[i] = null;
             }
         }
+    }
 
-        synchronized (dispatcher) {
-            dispatcher.dispatchEvent(buf, ticks);
+    /**
+     * Make sure the per-list arrays can hold the specified number of payloads
+     *
+     * @param size number of payloads
+     */
+    private void ensureBatchCapacity(int size)
+    {
+        if (batchPayloads.length < size) {
+            int newLen = batchPayloads.length;
+            while (newLen < size) {
+                newLen *= 2;
+            }
+
+            batchPayloads = new IPayload[newLen];
+            batchViews = new ByteBuffer[newLen];
+            batchTicks = new long[newLen];
         }
     }
 
+    /**
+     * Return a read-only view of exactly the payload's bytes.  The shared
+     * backing buffer is not modified, so the payload can still be decoded
+     * while its bytes are being written.
+     *
+     * @param backing payload's backing buffer (with the length at index 0)
+     *
+     * @return read-only view
+     */
+    static ByteBuffer payloadView(ByteBuffer backing)
+    {
+        ByteBuffer view = backing.asReadOnlyBuffer();
+        view.position(0);
+        view.limit(backing.getInt(0));
+        return view;
+    }
 
     /**
      * Send any cached monitoring data
@@ -259,6 +692,71 @@ public class SBSplicedAnalysis
         // do nothing
     }
 
+    /**
+     * Detach the cached monitoring data while the dispatcher is locked for
+     * a run switch, and return a task which sends it after the lock has been
+     * released.  Analysis classes which cannot safely separate their data
+     * from the live accumulators should send it here and return
+     * <tt>null</tt>.
+     *
+     * @param stopTime time when the component's switching() method was
+     *        called (in DAQ ticks)
+     *
+     * @return task which sends the detached data (or <tt>null</tt>)
+     */
+    Runnable detachMonitoring(long stopTime)
+    {
+        finishMonitoring(stopTime);
+        return null;
+    }
+
+    /**
+     * Report DOMs which sent nothing to this stream
+     *
+     * @param silent OM IDs of silent DOMs
+     * @param startTime start of the check interval
+     * @param endTime end of the check interval
+     */
+    private void sendSilentDOMs(String[] silent, long startTime,
+                                long endTime)
+    {
+        if (log.isInfoEnabled()) {
+            log.info(silent.length + " of " + silentDOMs.getNumExpected() +
+                     " DOMs were silent in " + streamName + " stream");
+        }
+
+        final IAlertQueue queue = silentQueue;
+        if (queue == null || queue.isStopped()) {
+            return;
+        }
+
+        HashMap<String, Object> msg = new HashMap<String, Object>();
+        msg.put("version", SILENT_DOM_VERSION);
+        msg.put("runNumber", runNumber);
+        msg.put("stream", streamName);
+        msg.put("recordingStartTime", UTCTime.toDateString(startTime));
+        msg.put("recordingStopTime", UTCTime.toDateString(endTime - 1));
+        msg.put("numExpected", silentDOMs.getNumExpected());
+        msg.put("silent", silent);
+
+        try {
+            queue.push(SILENT_DOM_NAME, Alerter.Priority.SCP,
+                       new UTCTime(endTime), msg);
+        } catch (AlertException ae) {
+            log.error("Cannot send " + SILENT_DOM_NAME, ae);
+        }
+    }
+
+    /**
+     * Set the queue used to send alerts
+     *
+     * @param queue alert queue
+     */
+    public void setAlertQueue(IAlertQueue queue)
+    {
+        silentQueue = queue;
+    }
+
     /**
      * Set the name of the secondary builder stream for this
      * spliced analysis engine.
@@ -402,6 +900,13 @@ public class SBSplicedAnalysis
      */
     public static void setDOMRegistry(IDOMRegistry reg)
     {
+        // the registry is usually set once for each stream
+        if (reg == null) {
+            domTable = null;
+        } else if (reg != domRegistry || domTable == null) {
+            domTable = new DOMTable(reg);
+        }
+
         domRegistry = reg;
     }
 
@@ -425,12 +930,14 @@ public class SBSplicedAnalysis
     public void setRunNumber(int runNumber)
     {
         this.runNumber = runNumber;
+        numPrescaled = 0;
     }
 
     /**
      * Switch to a new run.
      *
      * @return number of events dispatched before the run was switched
+     *         (<tt>null</tt> if the switch failed)
      *
      * @param runNumber new run number
      *
@@ -439,22 +946,130 @@ public class SBSplicedAnalysis
      */
     public StreamMetaData switchToNewRun(int runNumber, long switchTime) {
         StreamMetaData metadata;
+        Runnable flush = null;
+
+        final SuperDispatcher superDisp;
+        if (dispatcher instanceof SuperDispatcher) {
+            superDisp = (SuperDispatcher) dispatcher;
+        } else {
+            superDisp = null;
+        }
+
+        // sync most of the previous run's data before pausing dispatch
+        long syncNanos = 0;
+        if (superDisp != null) {
+            final long syncStart = System.nanoTime();
+            superDisp.prepareSwitch();
+            syncNanos += System.nanoTime() - syncStart;
+        }
+
         try {
+            long lockStart;
             synchronized (dispatcher) {
-                finishMonitoring(switchTime);
+                lockStart = System.nanoTime();
+                drainMonitoring();
+                flush = detachMonitoring(switchTime);
                 metadata = dispatcher.getMetaData();
                 dispatcher.dataBoundary(Dispatcher.SWITCH_PREFIX + runNumber);
-                if (log.isInfoEnabled()) {
-                    log.info("switched " + streamName + " to run " +
-                             runNumber);
-                }
                 this.runNumber = runNumber;
+                numPrescaled = 0;
             }
+            switchPauseNanos = System.nanoTime() - lockStart;
         } catch (DispatchException de) {
             log.error("failed to switch " + streamName, de);
             metadata = null;
         }
 
+        // make the renamed file's directory entry durable
+        if (superDisp != null) {
+            final long syncStart = System.nanoTime();
+            superDisp.finishSwitch();
+            syncNanos += System.nanoTime() - syncStart;
+        }
+        switchSyncNanos = syncNanos;
+
+        // send the previous run's monitoring data without blocking dispatch
+        long flushNanos = 0;
+        if (flush != null) {
+            final long flushStart = System.nanoTime();
+            flush.run();
+            flushNanos = System.nanoTime() - flushStart;
+        }
+
+        if (metadata != null && log.isInfoEnabled()) {
+            log.info(String.format("switched %s to run %d (dispatch paused" +
+                                   " %.3f ms, file sync %.3f ms," +
+                                   " monitoring flush %.3f ms)",
+                                   streamName, runNumber,
+                                   (double) switchPauseNanos / 1000000.0,
+                                   (double) syncNanos / 1000000.0,
+                                   (double) flushNanos / 1000000.0));
+        }
+
         return metadata;
     }
+
+    /**
+     * Payloads from one spliced list which are shared by the monitoring
+     * thread and the dispatching thread.  The payloads are recycled and the
+     * batch is returned to the free list when both threads have released it.
+     */
+    class PayloadBatch
+        implements Runnable
+    {
+        private IPayload[] payloads;
+        private int num;
+        private AtomicInteger refs = new AtomicInteger(2);
+
+        PayloadBatch(int size)
+        {
+            payloads = new IPayload[size];
+        }
+
+        void add(IPayload payload)
+        {
+            payloads[num++] = payload;
+        }
+
+        /**
+         * Prepare a released batch for reuse
+         *
+         * @param size number of payloads which will be added
+         */
+        void reset(int size)
+        {
+            if (payloads.length < size) {
+                payloads = new IPayload[size];
+            }
+            num = 0;
+            refs.set(2);
+        }
+
+        /**
+         * Release one reference, recycling all payloads after the last one
+         */
+        void release()
+        {
+            if (refs.decrementAndGet() == 0) {
+                for (int i = 0; i < num; i++) {
+                    payloads[i].recycle();
+                    payloads[i] = null;
+                }
+                freeBatches.add(this);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                for (int i = 0; i < num; i++) {
+                    gatherSafely(payloads[i]);
+                }
+            } finally {
+                release();
+                pendingBatches.release();
+            }
+        }
+    }
 }
@@ -0,0 +1,174 @@
+package icecube.daq.secBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Log-scale histograms of each DOM's SPE and MPE scaler values.
+ *
+ * All histograms live in a single <tt>long[]</tt> arena indexed by DOM
+ * ordinal (see {@link DOMTable}), so adding a value is just an array
+ * increment.  Bucket 0 counts zero (and negative) values and bucket
+ * <tt>b</tt> counts values from 2<sup>b-1</sup> to 2<sup>b</sup>-1, so
+ * 32 buckets cover every <tt>int</tt>.
+ *
+ * The arena needs <tt>numDOMs * 2 * 32 * 8</tt> bytes, which is
+ * 2,641,920 bytes (about 2.5 MB) for the 5160 DOMs in the full detector.
+ */
+class ScalerHistograms
+{
+    /** Number of buckets in each histogram */
+    static final int NUM_BUCKETS = 32;
+
+    /** Histogram index for SPE scalers */
+    static final int SPE = 0;
+    /** Histogram index for MPE scalers */
+    static final int MPE = 1;
+
+    /** Number of histograms for each DOM */
+    private static final int NUM_KINDS = 2;
+
+    private long[] arena;
+    private int numDOMs;
+
+    /**
+     * Create histograms for the specified number of DOMs
+     *
+     * @param numDOMs number of DOMs
+     */
+    ScalerHistograms(int numDOMs)
+    {
+        if (numDOMs < 0) {
+            throw new IllegalArgumentException("Bad number of DOMs " +
+                                               numDOMs);
+        }
+
+        this.numDOMs = numDOMs;
+
+        arena = new long[numDOMs * NUM_KINDS * NUM_BUCKETS];
+    }
+
+    /**
+     * Add a scaler value to a DOM's histogram
+     *
+     * @param ordinal DOM ordinal
+     * @param kind <tt>SPE</tt> or <tt>MPE</tt>
+     * @param value scaler value
+     *
+     * @return <tt>false</tt> if the ordinal is outside this arena
+     */
+    boolean add(int ordinal, int kind, int value)
+    {
+        if (ordinal < 0 || ordinal >= numDOMs) {
+            return false;
+        }
+
+        arena[offset(ordinal, kind) + bucket(value)]++;
+        return true;
+    }
+
+    /**
+     * Get the bucket which holds a value
+     *
+     * @param value scaler value
+     *
+     * @return bucket index
+     */
+    static int bucket(int value)
+    {
+        if (value <= 0) {
+            return 0;
+        }
+
+        return Integer.SIZE - Integer.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Get the number of bytes used by histograms for the specified number
+     * of DOMs
+     *
+     * @param numDOMs number of DOMs
+     *
+     * @return number of bytes in the arena
+     */
+    static long bytesNeeded(int numDOMs)
+    {
+        return (long) numDOMs * NUM_KINDS * NUM_BUCKETS * (Long.SIZE / 8);
+    }
+
+    /**
+     * Encode one DOM's histogram and clear it for the next bin.
+     *
+     * The encoded array starts with the index of the first non-empty
+     * bucket, followed by the counts from that bucket through the last
+     * non-empty bucket.
+     *
+     * @param ordinal DOM ordinal
+     * @param kind <tt>SPE</tt> or <tt>MPE</tt>
+     *
+     * @return encoded histogram, or <tt>null</tt> if it is empty
+     */
+    long[] drain(int ordinal, int kind)
+    {
+        if (ordinal < 0 || ordinal >= numDOMs) {
+            return null;
+        }
+
+        final int base = offset(ordinal, kind);
+
+        int first = 0;
+        while (first < NUM_BUCKETS && arena[base + first] == 0) {
+            first++;
+        }
+        if (first == NUM_BUCKETS) {
+            return null;
+        }
+
+        int last = NUM_BUCKETS - 1;
+        while (arena[base + last] == 0) {
+            last--;
+        }
+
+        long[] encoded = new long[last - first + 2];
+        encoded[0] = first;
+        System.arraycopy(arena, base + first, encoded, 1, last - first + 1);
+
+        Arrays.fill(arena, base, base + NUM_BUCKETS, 0L);
+
+        return encoded;
+    }
+
+    /**
+     * Get the number of DOMs in this arena
+     *
+     * @return number of DOMs
+     */
+    int getNumDOMs()
+    {
+        return numDOMs;
+    }
+
+    /**
+     * Get the index of the first bucket of a histogram
+     */
+    private static int offset(int ordinal, int kind)
+    {
+        return ((ordinal * NUM_KINDS) + kind) * NUM_BUCKETS;
+    }
+
+    /**
+     * Get the number of bytes used by this arena
+     *
+     * @return number of bytes
+     */
+    long size()
+    {
+        return (long) arena.length * (Long.SIZE / 8);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ScalerHistograms[" + numDOMs + " DOMs, " + size() +
+            " bytes]";
+    }
+}
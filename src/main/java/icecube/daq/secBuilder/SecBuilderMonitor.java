@@ -9,19 +9,22 @@ package icecube.daq.secBuilder;
 import icecube.daq.io.DAQComponentInputProcessor;
 import icecube.daq.io.Dispatcher;
 import icecube.daq.io.StreamMetaData;
-import icecube.daq.splicer.Splicer;
 
 public class SecBuilderMonitor implements SecBuilderMonitorMBean
 {
 
     private String dataType;
     private DAQComponentInputProcessor inputProcessor;
-    private Splicer splicer;
+    private CountingSplicer<?> splicer;
     private Dispatcher dispatcher;
+    private SBSplicedAnalysis analysis;
+    /** Sampled disk values (if <tt>null</tt>, the dispatcher is asked) */
+    private DiskSampler.Stream diskStream;
 
     public SecBuilderMonitor(String dataType,
         DAQComponentInputProcessor inputProcessor,
-            Splicer splicer, Dispatcher dispatcher)
+            CountingSplicer<?> splicer, Dispatcher dispatcher,
+            SBSplicedAnalysis analysis)
     {
 
         if (dataType == null) {
@@ -43,6 +46,11 @@ public class SecBuilderMonitor implements SecBuilderMonitorMBean
             throw new RuntimeException("dispatcher should not be null!!!");
         }
         this.dispatcher = dispatcher;
+
+        if (analysis == null) {
+            throw new RuntimeException("analysis should not be null!!!");
+        }
+        this.analysis = analysis;
     }
 
     @Override
@@ -63,6 +71,69 @@ public class SecBuilderMonitor implements SecBuilderMonitorMBean
         return splicer.getStrandCount();
     }
 
+    /**
+     * Get the number of microseconds dispatching was paused by the last
+     * run switch
+     * @return a long value
+     */
+    @Override
+    public long getLastSwitchPause()
+    {
+        return analysis.getSwitchPauseNanos() / 1000L;
+    }
+
+    /**
+     * Get the number of microseconds the last run switch spent syncing
+     * data outside the dispatch pause
+     * @return a long value
+     */
+    @Override
+    public long getLastSwitchSync()
+    {
+        return analysis.getSwitchSyncNanos() / 1000L;
+    }
+
+    /**
+     * Get the number of bytes received by each strand
+     * @return an array of long values
+     */
+    @Override
+    public long[] getStrandBytes()
+    {
+        return splicer.getBytes();
+    }
+
+    /**
+     * Get the time each strand is behind the newest payload received by
+     * any strand (in 0.1ns)
+     * @return an array of long values
+     */
+    @Override
+    public long[] getStrandLags()
+    {
+        return splicer.getLags();
+    }
+
+    /**
+     * Get the time of the newest payload received by each strand
+     * @return an array of long values
+     */
+    @Override
+    public long[] getStrandLastTimes()
+    {
+        return splicer.getLastTimes();
+    }
+
+    /**
+     * Get the number of payloads received by each strand
+     * @return an array of long values
+     */
+    @Override
+    public long[] getStrandPayloads()
+    {
+        return splicer.getPayloads();
+    }
+
     /**
      * Get the amount of dispatched data for the current run
      * @return a long value
@@ -73,6 +144,48 @@ public class SecBuilderMonitor implements SecBuilderMonitorMBean
         return dispatcher.getNumDispatchedEvents();
     }
 
+    /**
+     * Get the number of alerts dropped because too many were waiting
+     * @return a long value
+     */
+    @Override
+    public long getNumDroppedAlerts()
+    {
+        return analysis.getNumDroppedAlerts();
+    }
+
+    /**
+     * Get the number of payloads in this run which arrived too late to be
+     * included in any monitoring bin
+     * @return a long value
+     */
+    @Override
+    public long getNumDroppedLate()
+    {
+        return analysis.getNumDroppedLate();
+    }
+
+    /**
+     * Get the number of payloads in this run which arrived late but were
+     * still added to their monitoring bin
+     * @return a long value
+     */
+    @Override
+    public long getNumLate()
+    {
+        return analysis.getNumLate();
+    }
+
+    /**
+     * Get the number of payloads discarded by prescaling for the current run
+     * @return a long value
+     */
+    @Override
+    public long getNumPrescaledData()
+    {
+        return analysis.getNumPrescaled();
+    }
+
     /**
      * Get the total dispatched data since this component has started
      * @return a long value
@@ -83,6 +196,49 @@ public class SecBuilderMonitor implements SecBuilderMonitorMBean
         return dispatcher.getTotalDispatchedEvents();
     }
 
+    /**
+     * Get the number of bytes written since the data file was last synced
+     * @return a long value
+     */
+    @Override
+    public long getBytesAtRisk()
+    {
+        if (!(dispatcher instanceof SuperDispatcher)) {
+            return 0L;
+        }
+
+        return ((SuperDispatcher) dispatcher).getBytesAtRisk();
+    }
+
+    /**
+     * Get the number of times the data file was synced to disk
+     * @return a long value
+     */
+    @Override
+    public long getNumSyncs()
+    {
+        if (!(dispatcher instanceof SuperDispatcher)) {
+            return 0L;
+        }
+
+        return ((SuperDispatcher) dispatcher).getNumSyncs();
+    }
+
+    /**
+     * Get the last, average and maximum time needed to sync the data file
+     * (in microseconds)
+     * @return an array of long values
+     */
+    @Override
+    public long[] getSyncLatency()
+    {
+        if (!(dispatcher instanceof SuperDispatcher)) {
+            return new long[3];
+        }
+
+        return ((SuperDispatcher) dispatcher).getSyncLatency();
+    }
+
     /**
      * Returns the number of units still available in the disk (measured in MB)
      * If it fails to check the disk space, then it returns -1.
@@ -92,7 +248,37 @@ public class SecBuilderMonitor implements SecBuilderMonitorMBean
     @Override
     public long getDiskAvailable()
     {
-        return dispatcher.getDiskAvailable();
+        final DiskSampler.Stream stream = diskStream;
+        if (stream == null || !stream.isSampled()) {
+            return dispatcher.getDiskAvailable();
+        }
+
+        return stream.getDiskAvailable();
+    }
+
+    /**
+     * Get the extra prescale applied while the disk is filling
+     * @return prescale factor (1 if nothing is being thinned)
+     */
+    @Override
+    public long getDiskPrescale()
+    {
+        return analysis.getDiskPrescale();
+    }
+
+    /**
+     * Get the rate at which this stream is writing data
+     * @return bytes per second (0 if the disk is not being sampled)
+     */
+    @Override
+    public long getDiskFillRate()
+    {
+        final DiskSampler.Stream stream = diskStream;
+        if (stream == null) {
+            return 0L;
+        }
+
+        return Math.round(stream.getFillRate());
     }
 
     /**
@@ -104,6 +290,37 @@ public class SecBuilderMonitor implements SecBuilderMonitorMBean
     @Override
     public long getDiskSize()
     {
-        return dispatcher.getDiskSize();
+        final DiskSampler.Stream stream = diskStream;
+        if (stream == null || !stream.isSampled()) {
+            return dispatcher.getDiskSize();
+        }
+
+        return stream.getDiskSize();
+    }
+
+    /**
+     * Get the projected number of seconds until the disk is full
+     * @return a long value (-1 if the disk is not filling or not sampled)
+     */
+    @Override
+    public long getSecondsToFull()
+    {
+        final DiskSampler.Stream stream = diskStream;
+        if (stream == null || !stream.isSampled()) {
+            return DiskSampler.NOT_FILLING;
+        }
+
+        return stream.getSecondsToFull();
+    }
+
+    /**
+     * Use values from a background disk sampler instead of checking the
+     * disk on every call
+     *
+     * @param stream sampled values for this stream
+     */
+    void setDiskStream(DiskSampler.Stream stream)
+    {
+        diskStream = stream;
     }
 }
@@ -5,6 +5,12 @@ package icecube.daq.secBuilder;
  */
 public interface SecBuilderMonitorMBean
 {
+    /**
+     * Get the number of bytes written since the data file was last synced
+     * @return a long value
+     */
+    long getBytesAtRisk();
+
     /**
      * Returns the number of units still available in the disk (measured in MB).
      * If it fails to check the disk space, then it returns -1.
@@ -13,6 +19,18 @@ public interface SecBuilderMonitorMBean
      */
     long getDiskAvailable();
 
+    /**
+     * Get the extra prescale applied while the disk is filling
+     * @return prescale factor (1 if nothing is being thinned)
+     */
+    long getDiskPrescale();
+
+    /**
+     * Get the rate at which this stream is writing data
+     * @return bytes per second
+     */
+    long getDiskFillRate();
+
     /**
      * Returns the total number of units in the disk (measured in MB).
      * If it fails to check the disk space, then it returns -1.
@@ -28,12 +46,96 @@ public interface SecBuilderMonitorMBean
      */
     long[] getEventData();
 
+    /**
+     * Get the number of microseconds dispatching was paused by the last
+     * run switch
+     * @return a long value
+     */
+    long getLastSwitchPause();
+
+    /**
+     * Get the number of microseconds the last run switch spent syncing
+     * data outside the dispatch pause
+     * @return a long value
+     */
+    long getLastSwitchSync();
+
     /**
      * Get the amount of dispatched data for the current run
      * @return a long value
      */
     long getNumDispatchedData();
 
+    /**
+     * Get the projected number of seconds until the disk is full
+     * @return a long value (-1 if the disk is not filling)
+     */
+    long getSecondsToFull();
+
+    /**
+     * Get the number of times the data file was synced to disk
+     * @return a long value
+     */
+    long getNumSyncs();
+
+    /**
+     * Get the number of alerts dropped because too many were waiting
+     * @return a long value
+     */
+    long getNumDroppedAlerts();
+
+    /**
+     * Get the number of payloads in this run which arrived too late to be
+     * included in any monitoring bin
+     * @return a long value
+     */
+    long getNumDroppedLate();
+
+    /**
+     * Get the number of payloads in this run which arrived late but were
+     * still added to their monitoring bin
+     * @return a long value
+     */
+    long getNumLate();
+
+    /**
+     * Get the number of payloads discarded by prescaling for the current run
+     * @return a long value
+     */
+    long getNumPrescaledData();
+
+    /**
+     * Get the number of bytes received by each strand
+     * @return an array of long values
+     */
+    long[] getStrandBytes();
+
+    /**
+     * Get the time each strand is behind the newest payload received by
+     * any strand (in 0.1ns)
+     * @return an array of long values
+     */
+    long[] getStrandLags();
+
+    /**
+     * Get the time of the newest payload received by each strand
+     * @return an array of long values
+     */
+    long[] getStrandLastTimes();
+
+    /**
+     * Get the number of payloads received by each strand
+     * @return an array of long values
+     */
+    long[] getStrandPayloads();
+
+    /**
+     * Get the last, average and maximum time needed to sync the data file
+     * (in microseconds)
+     * @return an array of long values
+     */
+    long[] getSyncLatency();
+
     /**
      * Get the number of Strands connected to the input channels
      * @return an int value
@@ -0,0 +1,295 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.splicer.HKN1Splicer;
+import icecube.daq.splicer.SplicedAnalysis;
+import icecube.daq.splicer.Splicer;
+import icecube.daq.splicer.SplicerChangedEvent;
+import icecube.daq.splicer.SplicerException;
+import icecube.daq.splicer.SplicerListener;
+import icecube.daq.splicer.StrandTail;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Two-level splicer.  Strands are divided into groups ("shards") which
+ * are each merged on their own thread, then the sorted output from every
+ * shard is merged into a single stream which is handed to the analysis.
+ */
+class ShardedSplicer<T>
+    implements Splicer<T>
+{
+    private static final Logger LOG = Logger.getLogger(ShardedSplicer.class);
+
+    /** Final splicer which merges the output of all shards */
+    private HKN1Splicer<T> topSplicer;
+    /** Analysis object which consumes the fully merged stream */
+    private SplicedAnalysis<T> analysis;
+    /** Per-group splicers */
+    private ArrayList<Shard> shards;
+    /** Index of the shard which will receive the next strand */
+    private int nextShard;
+
+    /**
+     * Create a sharded splicer
+     *
+     * @param analysis analysis object which consumes the merged stream
+     * @param cmp comparator used to order objects
+     * @param lastObject object which marks the end of a strand
+     * @param numShards number of strand groups
+     */
+    ShardedSplicer(SplicedAnalysis<T> analysis, Comparator<T> cmp,
+                   T lastObject, int numShards)
+    {
+        if (numShards < 1) {
+            throw new IllegalArgumentException("Bad number of shards " +
+                                               numShards);
+        }
+
+        this.analysis = analysis;
+
+        topSplicer = new HKN1Splicer<T>(analysis, cmp, lastObject);
+
+        shards = new ArrayList<Shard>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            shards.add(new Shard(i, cmp, lastObject));
+        }
+    }
+
+    @Override
+    public void addSplicerListener(SplicerListener<T> listener)
+    {
+        topSplicer.addSplicerListener(listener);
+    }
+
+    /**
+     * Add a new strand to the next shard (strands are assigned round-robin)
+     *
+     * @return new strand tail
+     */
+    @Override
+    public synchronized StrandTail<T> beginStrand()
+    {
+        Shard shard = shards.get(nextShard);
+        nextShard = (nextShard + 1) % shards.size();
+
+        return shard.beginStrand();
+    }
+
+    @Override
+    public void dispose()
+    {
+        for (Shard shard : shards) {
+            shard.splicer.dispose();
+        }
+        topSplicer.dispose();
+    }
+
+    @Override
+    public void forceStop()
+    {
+        for (Shard shard : shards) {
+            shard.splicer.forceStop();
+        }
+        topSplicer.forceStop();
+    }
+
+    @Override
+    public SplicedAnalysis<T> getAnalysis()
+    {
+        return analysis;
+    }
+
+    /**
+     * Get the number of shards
+     *
+     * @return number of shards
+     */
+    int getNumberOfShards()
+    {
+        return shards.size();
+    }
+
+    @Override
+    public State getState()
+    {
+        return topSplicer.getState();
+    }
+
+    /**
+     * Get the total number of strands across all shards
+     *
+     * @return number of strands
+     */
+    @Override
+    public int getStrandCount()
+    {
+        int total = 0;
+        for (Shard shard : shards) {
+            total += shard.splicer.getStrandCount();
+        }
+        return total;
+    }
+
+    @Override
+    public void removeSplicerListener(SplicerListener<T> listener)
+    {
+        topSplicer.removeSplicerListener(listener);
+    }
+
+    @Override
+    public void start()
+    {
+        // final merge must be running before shards start feeding it
+        topSplicer.start();
+        for (Shard shard : shards) {
+            shard.splicer.start();
+        }
+    }
+
+    @Override
+    public void stop()
+    {
+        // shards flush their final objects into the top-level strands
+        for (Shard shard : shards) {
+            shard.splicer.stop();
+        }
+        topSplicer.stop();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ShardedSplicer[" + shards.size() + " shards, " +
+            getStrandCount() + " strands]";
+    }
+
+    /**
+     * A group of strands merged on a single thread.  The shard's sorted
+     * output is forwarded to its own strand in the top-level splicer.
+     */
+    class Shard
+        implements SplicedAnalysis<T>, SplicerListener<T>
+    {
+        private int num;
+        private T lastObject;
+        private HKN1Splicer<T> splicer;
+
+        /** Top-level strand fed by this shard */
+        private StrandTail<T> tail;
+        /** Has the end-of-strand marker been forwarded? */
+        private boolean sentLast;
+
+        Shard(int num, Comparator<T> cmp, T lastObject)
+        {
+            this.num = num;
+            this.lastObject = lastObject;
+
+            splicer = new HKN1Splicer<T>(this, cmp, lastObject);
+            splicer.addSplicerListener(this);
+        }
+
+        /**
+         * Add a strand to this shard, creating the shard's top-level
+         * strand if necessary
+         *
+         * @return new strand tail
+         */
+        synchronized StrandTail<T> beginStrand()
+        {
+            if (tail == null || tail.isClosed()) {
+                tail = topSplicer.beginStrand();
+                sentLast = false;
+            }
+
+            return splicer.beginStrand();
+        }
+
+        /**
+         * Forward this shard's sorted objects to the top-level splicer
+         *
+         * @param splicedObjects sorted objects
+         */
+        @Override
+        public synchronized void analyze(List<T> splicedObjects)
+        {
+            if (tail == null || sentLast) {
+                if (splicedObjects.size() > 0) {
+                    LOG.error("Shard#" + num + " dropped " +
+                              splicedObjects.size() +
+                              " objects with no active strand");
+                }
+                return;
+            }
+
+            // the splicer may reuse its list, so push a copy
+            ArrayList<T> copy = new ArrayList<T>(splicedObjects);
+            try {
+                tail.push(copy);
+            } catch (SplicerException se) {
+                LOG.error("Shard#" + num + " cannot forward " + copy.size() +
+                          " objects", se);
+            }
+
+            if (copy.size() > 0 && copy.get(copy.size() - 1) == lastObject) {
+                sentLast = true;
+            }
+        }
+
+        /**
+         * Make sure the top-level strand is terminated when this shard stops
+         */
+        private synchronized void sendLast()
+        {
+            if (tail != null && !sentLast) {
+                try {
+                    tail.push(lastObject);
+                } catch (SplicerException se) {
+                    LOG.error("Shard#" + num + " cannot end top-level strand",
+                              se);
+                }
+                sentLast = true;
+            }
+        }
+
+        @Override
+        public void disposed(SplicerChangedEvent<T> event)
+        {
+            // do nothing
+        }
+
+        @Override
+        public void failed(SplicerChangedEvent<T> event)
+        {
+            LOG.error("Shard#" + num + " entered FAILED state");
+            sendLast();
+        }
+
+        @Override
+        public void starting(SplicerChangedEvent<T> event)
+        {
+            // do nothing
+        }
+
+        @Override
+        public void started(SplicerChangedEvent<T> event)
+        {
+            // do nothing
+        }
+
+        @Override
+        public void stopped(SplicerChangedEvent<T> event)
+        {
+            sendLast();
+        }
+
+        @Override
+        public void stopping(SplicerChangedEvent<T> event)
+        {
+            // do nothing
+        }
+    }
+}
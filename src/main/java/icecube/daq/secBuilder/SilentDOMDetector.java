@@ -0,0 +1,215 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.util.DOMInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Find deployed DOMs which sent nothing to a stream during a time interval.
+ *
+ * Each payload sets one bit (indexed by the DOM's ordinal in the
+ * {@link DOMTable}).  When an interval ends, the bits are compared against
+ * the set of DOMs expected to send data and then cleared for the next
+ * interval.
+ */
+class SilentDOMDetector
+{
+    /** Special value to indicate there is no value for this time */
+    private static final long NO_UTCTIME = Long.MIN_VALUE;
+
+    /** Length of each interval (in DAQ ticks) */
+    private long interval;
+    /** Start of the current interval */
+    private long startTime = NO_UTCTIME;
+
+    /** Table used to build the bit sets */
+    private DOMTable table;
+    /** DOMs seen during the current interval */
+    private long[] seen;
+    /** DOMs which are expected to send data */
+    private long[] expected;
+    private int numExpected;
+
+    /**
+     * Create a detector
+     *
+     * @param interval length of each interval (in DAQ ticks)
+     */
+    SilentDOMDetector(long interval)
+    {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Bad interval " + interval);
+        }
+
+        this.interval = interval;
+    }
+
+    /**
+     * Build the bit sets for a new DOM table.  DOMs which were already seen
+     * during the current interval are marked in the new set, so a table
+     * change doesn't make them look silent.
+     */
+    private void buildSets(DOMTable newTable)
+    {
+        final DOMTable oldTable = table;
+        final long[] oldSeen = seen;
+
+        table = newTable;
+
+        final int numWords = (table.size() + 63) >>> 6;
+        seen = new long[numWords];
+        expected = new long[numWords];
+
+        if (oldTable != null) {
+            for (int w = 0; w < oldSeen.length; w++) {
+                long bits = oldSeen[w];
+                while (bits != 0) {
+                    final int oldOrdinal =
+                        (w << 6) + Long.numberOfTrailingZeros(bits);
+                    final long mbid =
+                        oldTable.getDOM(oldOrdinal).getNumericMainboardId();
+
+                    final int ordinal = table.getOrdinal(mbid);
+                    if (ordinal != DOMTable.NO_DOM) {
+                        seen[ordinal >>> 6] |= 1L << ordinal;
+                    }
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        numExpected = 0;
+        for (int i = 0; i < table.size(); i++) {
+            final DOMInfo dom = table.getDOM(i);
+
+            // scintillators and IceACT don't send normal data
+            if (!dom.isScintillator() && !dom.isIceACT()) {
+                expected[i >>> 6] |= 1L << i;
+                numExpected++;
+            }
+        }
+    }
+
+    /**
+     * Finish the current interval and start the one which holds
+     * <tt>utcTime</tt>
+     *
+     * @param utcTime time of the payload which ended the interval
+     *
+     * @return OM IDs of silent DOMs (<tt>null</tt> if there are none or if
+     *         no data was seen for an entire interval)
+     */
+    String[] finishInterval(long utcTime)
+    {
+        final long endTime = startTime + interval;
+
+        String[] silent = null;
+        if (utcTime <= endTime + interval && table != null) {
+            ArrayList<String> list = null;
+            for (int w = 0; w < seen.length; w++) {
+                long bits = expected[w] & ~seen[w];
+                while (bits != 0) {
+                    final int ordinal =
+                        (w << 6) + Long.numberOfTrailingZeros(bits);
+                    if (list == null) {
+                        list = new ArrayList<String>();
+                    }
+                    list.add(table.getOmID(ordinal));
+                    bits &= bits - 1;
+                }
+            }
+
+            if (list != null) {
+                silent = list.toArray(new String[list.size()]);
+            }
+
+            startTime = endTime;
+        } else {
+            // there was a gap (probably between runs), so start over
+            startTime = utcTime;
+        }
+
+        if (seen != null) {
+            Arrays.fill(seen, 0L);
+        }
+
+        return silent;
+    }
+
+    /**
+     * Get the end of the current interval
+     *
+     * @return end time (in DAQ ticks)
+     */
+    long getEndTime()
+    {
+        return startTime + interval;
+    }
+
+    /**
+     * Get the number of DOMs which are expected to send data
+     *
+     * @return number of DOMs
+     */
+    int getNumExpected()
+    {
+        return numExpected;
+    }
+
+    /**
+     * Get the start of the current interval
+     *
+     * @return start time (in DAQ ticks)
+     */
+    long getStartTime()
+    {
+        return startTime;
+    }
+
+    /**
+     * Does this payload time fall after the end of the current interval?
+     * The first time seen starts the first interval.
+     *
+     * @param utcTime payload time
+     *
+     * @return <tt>true</tt> if <tt>finishInterval()</tt> should be called
+     */
+    boolean isFinished(long utcTime)
+    {
+        if (startTime == NO_UTCTIME) {
+            startTime = utcTime;
+            return false;
+        }
+
+        return utcTime > startTime + interval;
+    }
+
+    /**
+     * Record a payload from a DOM
+     *
+     * @param mbid mainboard ID
+     */
+    void mark(long mbid)
+    {
+        final DOMTable curTable = SBSplicedAnalysis.getDOMTable();
+        if (curTable == null) {
+            return;
+        }
+
+        if (curTable != table) {
+            buildSets(curTable);
+        }
+
+        final int ordinal = table.getOrdinal(mbid);
+        if (ordinal != DOMTable.NO_DOM) {
+            seen[ordinal >>> 6] |= 1L << ordinal;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SilentDOMDetector[" + numExpected + " expected]";
+    }
+}
@@ -0,0 +1,246 @@
+package icecube.daq.secBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Run a per-DOM reduction over every DOM in a {@link DOMTable}.
+ *
+ * Small tables are reduced in a single pass.  Once a table has at least
+ * <tt>threshold</tt> DOMs, the work is split by string and run on a
+ * fork-join pool.  Each string fills its own partial result, and the
+ * partial results are merged in ordinal order, so the merged values are
+ * added in exactly the same order as they would be by a single pass.
+ * A reduction must only touch the DOMs in the range it is given.
+ *
+ * This class is not thread-safe; callers must serialize calls to
+ * <tt>run()</tt>.
+ */
+class StringReducer
+{
+    /** Default number of DOMs needed before a reduction is split */
+    static final int DEFAULT_THRESHOLD = 2048;
+
+    /** Number of value buffers in each partial result */
+    static final int NUM_ENCODERS = 4;
+    /** Number of histogram maps in each partial result */
+    static final int NUM_HISTOGRAMS = 2;
+
+    /**
+     * Work done for a range of DOM ordinals
+     */
+    interface Reduction
+    {
+        /**
+         * Reduce the values for a range of DOMs
+         *
+         * @param first first DOM ordinal
+         * @param last ordinal after the final DOM
+         * @param part receives the per-DOM values
+         */
+        void reduce(int first, int last, Partial part);
+    }
+
+    /**
+     * Per-DOM values produced by a reduction
+     */
+    static class Partial
+    {
+        private MoniMessageEncoder[] encoders;
+        private ArrayList<HashMap<String, long[]>> histograms =
+            new ArrayList<HashMap<String, long[]>>(NUM_HISTOGRAMS);
+
+        Partial()
+        {
+            encoders = new MoniMessageEncoder[NUM_ENCODERS];
+            for (int i = 0; i < NUM_ENCODERS; i++) {
+                encoders[i] = new MoniMessageEncoder();
+            }
+
+            for (int i = 0; i < NUM_HISTOGRAMS; i++) {
+                histograms.add(null);
+            }
+        }
+
+        /**
+         * Add all values from another partial result after the values in
+         * this one
+         *
+         * @param other partial result
+         */
+        void addAll(Partial other)
+        {
+            for (int i = 0; i < NUM_ENCODERS; i++) {
+                encoders[i].addAll(other.encoders[i]);
+            }
+
+            for (int i = 0; i < NUM_HISTOGRAMS; i++) {
+                final HashMap<String, long[]> map = other.histograms.get(i);
+                if (map != null && !map.isEmpty()) {
+                    getHistograms(i).putAll(map);
+                }
+            }
+        }
+
+        /**
+         * Get one of the value buffers
+         *
+         * @param index buffer index
+         *
+         * @return value buffer
+         */
+        MoniMessageEncoder getEncoder(int index)
+        {
+            return encoders[index];
+        }
+
+        /**
+         * Get one of the histogram maps, creating it if necessary.  The
+         * maps are handed to the alert queue, so new maps are created
+         * after each <tt>reset()</tt>.
+         *
+         * @param index map index
+         *
+         * @return map of OM IDs to encoded histograms
+         */
+        HashMap<String, long[]> getHistograms(int index)
+        {
+            HashMap<String, long[]> map = histograms.get(index);
+            if (map == null) {
+                map = new HashMap<String, long[]>();
+                histograms.set(index, map);
+            }
+
+            return map;
+        }
+
+        /**
+         * Forget all values so this object can be reused
+         */
+        void reset()
+        {
+            for (int i = 0; i < NUM_ENCODERS; i++) {
+                encoders[i].reset();
+            }
+
+            for (int i = 0; i < NUM_HISTOGRAMS; i++) {
+                histograms.set(i, null);
+            }
+        }
+    }
+
+    /**
+     * Reduce a range of strings, splitting it in half until each task
+     * handles a single string
+     */
+    private class StringTask
+        extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private DOMTable table;
+        private Reduction reduction;
+        private int firstString;
+        private int lastString;
+
+        StringTask(DOMTable table, Reduction reduction, int firstString,
+                   int lastString)
+        {
+            this.table = table;
+            this.reduction = reduction;
+            this.firstString = firstString;
+            this.lastString = lastString;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (lastString - firstString == 1) {
+                reduction.reduce(table.getStringStart(firstString),
+                                 table.getStringStart(lastString),
+                                 parts[firstString]);
+                return;
+            }
+
+            final int mid = (firstString + lastString) >>> 1;
+            invokeAll(new StringTask(table, reduction, firstString, mid),
+                      new StringTask(table, reduction, mid, lastString));
+        }
+    }
+
+    private ForkJoinPool pool;
+    private int threshold;
+
+    /** Reusable per-string partial results */
+    private Partial[] parts = new Partial[0];
+
+    /**
+     * Create a reducer
+     *
+     * @param pool pool which runs split reductions
+     * @param threshold number of DOMs needed before a reduction is split
+     *                  (0 to never split)
+     */
+    StringReducer(ForkJoinPool pool, int threshold)
+    {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Get the number of DOMs needed before a reduction is split
+     *
+     * @return threshold (0 if reductions are never split)
+     */
+    int getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * Run a reduction over every DOM in the table
+     *
+     * @param table DOM table
+     * @param reduction work done for each range of DOMs
+     * @param result receives the merged values (values already in it are
+     *               kept)
+     */
+    void run(DOMTable table, Reduction reduction, Partial result)
+    {
+        final int numStrings = table.getNumStrings();
+        if (pool == null || threshold <= 0 || table.size() < threshold ||
+            numStrings < 2)
+        {
+            reduction.reduce(0, table.size(), result);
+            return;
+        }
+
+        if (parts.length < numStrings) {
+            Partial[] newParts = new Partial[numStrings];
+            System.arraycopy(parts, 0, newParts, 0, parts.length);
+            for (int i = parts.length; i < numStrings; i++) {
+                newParts[i] = new Partial();
+            }
+            parts = newParts;
+        }
+
+        for (int i = 0; i < numStrings; i++) {
+            parts[i].reset();
+        }
+
+        pool.invoke(new StringTask(table, reduction, 0, numStrings));
+
+        // merge in ordinal order
+        for (int i = 0; i < numStrings; i++) {
+            result.addAll(parts[i]);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StringReducer[threshold " + threshold + "]";
+    }
+}
@@ -5,61 +5,470 @@ import icecube.daq.io.FileDispatcher;
 import icecube.daq.payload.IByteBufferCache;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 
 /**
  * Enhanced file dispatcher which writes sentinal files so Process2ndBuild
- * knows it should save all secondary stream files for the run
+ * knows it should save all secondary stream files for the run.
+ *
+ * Sentinal files are written by a single background thread shared by all
+ * streams, so run transitions don't wait for them.  Each sentinal holds
+ * a sequence number and the time of the transition which requested it,
+ * its timestamp is set to that time, and it is moved into place with an
+ * atomic rename followed by a sync of the directory.
+ *
+ * It also controls when written data is forced to disk.  The policy is
+ * one of:
+ * <ul>
+ * <li><tt>none</tt> - leave it to the operating system
+ * <li><tt>boundary</tt> - sync when a run starts, stops or switches
+ * <li><tt>periodic</tt> - sync at boundaries, and from a background
+ *     thread once <tt>&lt;stream&gt;FsyncMillis</tt> milliseconds have
+ *     passed or <tt>&lt;stream&gt;FsyncBytes</tt> bytes have been written
+ *     since the last sync
+ * </ul>
+ * Routine runs use the <tt>&lt;stream&gt;Fsync</tt> property (default
+ * <tt>none</tt>) and SuperSaver runs use the
+ * <tt>&lt;stream&gt;SuperSaverFsync</tt> property (default
+ * <tt>periodic</tt>).  Syncs never happen on the thread writing
+ * payloads, so no payload pays for a sync.
  */
 class SuperDispatcher
     extends FileDispatcher
 {
     private static final Logger LOG = Logger.getLogger(SuperDispatcher.class);
 
+    /** Never sync data files */
+    static final String SYNC_NONE = "none";
+    /** Sync data files at run boundaries */
+    static final String SYNC_BOUNDARY = "boundary";
+    /** Sync data files periodically and at run boundaries */
+    static final String SYNC_PERIODIC = "periodic";
+
+    /** Default maximum time between periodic syncs */
+    static final long DEFAULT_SYNC_MILLIS = 1000L;
+    /** Default maximum number of bytes written between periodic syncs */
+    static final long DEFAULT_SYNC_BYTES = 16L * 1024L * 1024L;
+
+    /** Longest time the sync thread sleeps before checking bytes at risk */
+    private static final long SYNC_POLL_MILLIS = 100L;
+
+    /** Order in which sentinal files were requested */
+    private static final AtomicLong SENTINAL_SEQUENCE = new AtomicLong();
+
+    /** Writes sentinal files in the order they were requested */
+    private static final ThreadPoolExecutor SENTINAL_WRITER;
+    static {
+        SENTINAL_WRITER =
+            new ThreadPoolExecutor(1, 1, 5L, TimeUnit.SECONDS,
+                                   new LinkedBlockingQueue<Runnable>(),
+                                   new ThreadFactory() {
+                                       @Override
+                                       public Thread newThread(Runnable r)
+                                       {
+                                           return new Thread(r,
+                                                             "SentinalWriter");
+                                       }
+                                   });
+        // don't keep the JVM alive once all sentinals are written
+        SENTINAL_WRITER.allowCoreThreadTimeOut(true);
+    }
+
+    private String baseFileName;
+
     private boolean supersaver;
 
+    /** Sync policy for routine runs */
+    private String syncPolicy;
+    /** Sync policy for SuperSaver runs */
+    private String superSaverSyncPolicy;
+    private long syncMillis;
+    private long syncBytes;
+
+    /** Serializes syncs and guards the sync thread and statistics */
+    private final Object syncLock = new Object();
+    /** Background thread for periodic syncs */
+    private SyncThread syncThread;
+
+    /** Value of <tt>getNumBytesWritten()</tt> at the last sync */
+    private volatile long syncedBytes;
+    /** Most bytes which were written but not yet synced */
+    private volatile long maxBytesAtRisk;
+    /** System.currentTimeMillis() at the last sync */
+    private volatile long lastSyncMillis;
+
+    /** Set when a switch renamed a file whose directory isn't synced */
+    private volatile boolean dirSyncPending;
+
+    private volatile long numSyncs;
+    private volatile long numSyncFailures;
+    private volatile long lastSyncNanos;
+    private volatile long maxSyncNanos;
+    private long totalSyncNanos;
+
     public SuperDispatcher(String baseFileName, IByteBufferCache bufferCache) {
         super(baseFileName, bufferCache);
+
+        initSync(baseFileName);
     }
 
     public SuperDispatcher(String destDir, String baseFileName,
                            IByteBufferCache bufferCache) {
         super(destDir, baseFileName, bufferCache);
+
+        initSync(baseFileName);
     }
 
     /**
-     * Create a sentinal file which signals to Process2ndBuild that it
+     * Stop the periodic sync thread
+     */
+    @Override
+    public void close()
+        throws DispatchException
+    {
+        stopSyncThread();
+
+        super.close();
+
+        waitForSentinals();
+    }
+
+    /**
+     * Queue a sentinal file which signals to Process2ndBuild that it
      * should save the files from this run.  If the file exists and
-     * 'update' is true, update the file's timestamp
+     * 'update' is true, the file is replaced.  Errors are logged by the
+     * sentinal writer thread.
      *
-     * @param baseName base name of the sentinal file\
+     * @param baseName base name of the sentinal file
      * @param runNumber run number to use as sentinal name suffix
-     * @param update if true, update an existing sentinal file's timestamp
-     *
-     * @throws DispatchException if the sentinal file could not be created
+     * @param update if true, replace an existing sentinal file
      */
     private void createSentinalFile(String baseName, int runNumber,
                                     boolean update)
-        throws DispatchException
     {
-        File sentinal = new File(getDispatchDestStorage(),
-                                 baseName + "." + runNumber);
+        SENTINAL_WRITER.execute(new SentinalTask(getDispatchDestStorage(),
+                                                 baseName, baseFileName,
+                                                 runNumber, update));
+    }
+
+    /**
+     * Get the number of bytes written since the last sync
+     *
+     * @return number of bytes which could be lost if the host crashed
+     */
+    public long getBytesAtRisk()
+    {
+        final long atRisk = getNumBytesWritten() - syncedBytes;
+        if (atRisk < 0L) {
+            // byte count was reset for a new run
+            return getNumBytesWritten();
+        }
+
+        return atRisk;
+    }
+
+    /**
+     * Get the largest number of bytes which were written but not synced
+     * when a sync started
+     *
+     * @return maximum bytes at risk
+     */
+    public long getMaxBytesAtRisk()
+    {
+        return maxBytesAtRisk;
+    }
+
+    /**
+     * Get the sync policy used for the current run
+     *
+     * @return <tt>none</tt>, <tt>boundary</tt> or <tt>periodic</tt>
+     */
+    public String getSyncPolicy()
+    {
+        return supersaver ? superSaverSyncPolicy : syncPolicy;
+    }
+
+    /**
+     * Get the number of successful syncs
+     *
+     * @return number of syncs
+     */
+    public long getNumSyncs()
+    {
+        return numSyncs;
+    }
+
+    /**
+     * Get the number of syncs which failed
+     *
+     * @return number of failed syncs
+     */
+    public long getNumSyncFailures()
+    {
+        return numSyncFailures;
+    }
+
+    /**
+     * Get sync latency statistics
+     *
+     * @return last, average and maximum sync time (in microseconds)
+     */
+    public long[] getSyncLatency()
+    {
+        final long avg;
+        synchronized (syncLock) {
+            avg = numSyncs == 0 ? 0L : totalSyncNanos / numSyncs;
+        }
+
+        return new long[] {
+            lastSyncNanos / 1000L, avg / 1000L, maxSyncNanos / 1000L,
+        };
+    }
+
+    /**
+     * Get the file which receives data until it is moved into place.
+     * FileDispatcher doesn't expose its output channel, so the file is
+     * found by name.
+     *
+     * @return temporary data file
+     */
+    private File getTempFile()
+    {
+        final File dir = getDispatchDestStorage();
+
+        final File datFile =
+            new File(dir, TEMP_PREFIX + baseFileName + ".dat");
+        if (datFile.exists()) {
+            return datFile;
+        }
+
+        // older FileDispatchers don't add a suffix
+        final File plainFile = new File(dir, TEMP_PREFIX + baseFileName);
+        if (plainFile.exists()) {
+            return plainFile;
+        }
+
+        return datFile;
+    }
+
+    /**
+     * Read the sync policy properties for this stream
+     *
+     * @param baseFileName stream name
+     */
+    private void initSync(String baseFileName)
+    {
+        this.baseFileName = baseFileName;
+
+        setSyncPolicy(System.getProperty(baseFileName + "Fsync", SYNC_NONE),
+                      false);
+        setSyncPolicy(System.getProperty(baseFileName + "SuperSaverFsync",
+                                         SYNC_PERIODIC), true);
+        setSyncInterval(Long.getLong(baseFileName + "FsyncMillis",
+                                     DEFAULT_SYNC_MILLIS),
+                        Long.getLong(baseFileName + "FsyncBytes",
+                                     DEFAULT_SYNC_BYTES));
+    }
+
+    /**
+     * Is the current run's policy one of the specified policies?
+     *
+     * @param policy sync policy
+     *
+     * @return <tt>true</tt> if the policies match
+     */
+    private boolean isSyncPolicy(String policy)
+    {
+        return getSyncPolicy().equals(policy);
+    }
+
+    /**
+     * Set the sync policy
+     *
+     * @param policy <tt>none</tt>, <tt>boundary</tt> or <tt>periodic</tt>
+     * @param forSuperSaver <tt>true</tt> to set the SuperSaver run policy,
+     *                      <tt>false</tt> for the routine run policy
+     */
+    void setSyncPolicy(String policy, boolean forSuperSaver)
+    {
+        String value;
+        if (policy != null && (policy.equalsIgnoreCase(SYNC_NONE) ||
+                               policy.equalsIgnoreCase(SYNC_BOUNDARY) ||
+                               policy.equalsIgnoreCase(SYNC_PERIODIC)))
+        {
+            value = policy.toLowerCase();
+        } else {
+            value = forSuperSaver ? SYNC_PERIODIC : SYNC_NONE;
+            LOG.error("Unknown " + baseFileName + " sync policy \"" +
+                      policy + "\"; using \"" + value + "\"");
+        }
+
+        if (forSuperSaver) {
+            superSaverSyncPolicy = value;
+        } else {
+            syncPolicy = value;
+        }
+    }
+
+    /**
+     * Set the limits for periodic syncs
+     *
+     * @param millis maximum number of milliseconds between syncs
+     * @param bytes maximum number of bytes written between syncs
+     */
+    void setSyncInterval(long millis, long bytes)
+    {
+        if (millis <= 0L) {
+            LOG.error("Bad " + baseFileName + " sync interval " + millis +
+                      "; using " + DEFAULT_SYNC_MILLIS + " ms");
+            millis = DEFAULT_SYNC_MILLIS;
+        }
+        if (bytes <= 0L) {
+            LOG.error("Bad " + baseFileName + " sync size " + bytes +
+                      "; using " + DEFAULT_SYNC_BYTES + " bytes");
+            bytes = DEFAULT_SYNC_BYTES;
+        }
+
+        syncMillis = millis;
+        syncBytes = bytes;
+    }
+
+    /**
+     * Start the periodic sync thread if it isn't already running
+     */
+    private void startSyncThread()
+    {
+        synchronized (syncLock) {
+            if (syncThread == null) {
+                syncThread = new SyncThread();
+                syncThread.start();
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic sync thread
+     */
+    private void stopSyncThread()
+    {
+        final SyncThread thread;
+        synchronized (syncLock) {
+            thread = syncThread;
+            syncThread = null;
+        }
+
+        if (thread != null) {
+            thread.finish();
+        }
+    }
+
+    /**
+     * Force the data file to disk
+     *
+     * @return <tt>false</tt> if the sync failed
+     */
+    boolean syncData()
+    {
+        synchronized (syncLock) {
+            final long written = getNumBytesWritten();
+            final long atRisk = getBytesAtRisk();
+            if (atRisk > maxBytesAtRisk) {
+                maxBytesAtRisk = atRisk;
+            }
+
+            final long start = System.nanoTime();
+            try {
+                FileChannel chan = FileChannel.open(getTempFile().toPath(),
+                                                    StandardOpenOption.READ);
+                try {
+                    chan.force(false);
+                } finally {
+                    chan.close();
+                }
+            } catch (NoSuchFileException nsfe) {
+                if (written == 0L) {
+                    // nothing has been written yet
+                    lastSyncMillis = System.currentTimeMillis();
+                    return true;
+                }
+
+                // the file was moved before it could be synced, so the
+                //  bytes written to it are still at risk
+                numSyncFailures++;
+                LOG.error("Cannot sync " + baseFileName + " data file " +
+                          getTempFile() + "; it no longer exists");
+                return false;
+            } catch (IOException ioe) {
+                numSyncFailures++;
+                LOG.error("Cannot sync " + baseFileName + " data file " +
+                          getTempFile(), ioe);
+                return false;
+            }
+
+            final long elapsed = System.nanoTime() - start;
+
+            syncedBytes = written;
+            lastSyncMillis = System.currentTimeMillis();
+
+            numSyncs++;
+            lastSyncNanos = elapsed;
+            totalSyncNanos += elapsed;
+            if (elapsed > maxSyncNanos) {
+                maxSyncNanos = elapsed;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Force the data directory to disk so renamed files survive a crash
+     */
+    private void syncDirectory()
+    {
+        syncDirectory(getDispatchDestStorage());
+    }
+
+    /**
+     * Force a directory to disk so renamed files survive a crash
+     *
+     * @param dir directory
+     */
+    private static void syncDirectory(File dir)
+    {
+        if (dir == null) {
+            return;
+        }
+
         try {
-            if (!sentinal.exists()) {
-                sentinal.createNewFile();
-            } else if (update) {
-                sentinal.setLastModified(System.currentTimeMillis());
+            FileChannel chan = FileChannel.open(dir.toPath(),
+                                                StandardOpenOption.READ);
+            try {
+                chan.force(true);
+            } finally {
+                chan.close();
             }
         } catch (IOException ioe) {
-            throw new DispatchException("Cannot create SuperSaver sentinal" +
-                                        " file " + sentinal, ioe);
-        } catch (SecurityException sex) {
-            throw new DispatchException("Cannot write to SuperSaver sentinal" +
-                                        " file " + sentinal, sex);
+            // some filesystems cannot sync directories
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Cannot sync " + dir, ioe);
+            }
         }
-        LOG.error("Created " + sentinal.getName());
     }
 
     /**
@@ -85,32 +494,248 @@ class SuperDispatcher
             }
 
             createSentinalFile("supersaver", newNumber, false);
+        }
 
-            try {
-                Thread.sleep(20);
-            } catch (InterruptedException iex) {
-                // ignore interrupts
-            }
+        // the periodic sync must not open the file while it's being moved
+        if (switching) {
+            stopSyncThread();
+        }
+
+        // make sure the previous run's data is on disk before it's moved
+        //  (most of it was synced by prepareSwitch() and the directory is
+        //  synced by finishSwitch(), both outside the dispatcher lock)
+        if (switching && !isSyncPolicy(SYNC_NONE)) {
+            syncData();
+            super.startDispatch(runStr, switching);
+            dirSyncPending = true;
+        } else {
+            super.startDispatch(runStr, switching);
+        }
+
+        // the dispatcher's byte count may have been reset for the new run
+        if (getNumBytesWritten() < syncedBytes) {
+            syncedBytes = 0L;
+        }
+
+        if (isSyncPolicy(SYNC_PERIODIC)) {
+            startSyncThread();
+        } else {
+            stopSyncThread();
+        }
+    }
+
+    /**
+     * Sync the data file before a run switch takes the dispatcher lock, so
+     * only the last few writes are synced while dispatching is paused
+     */
+    void prepareSwitch()
+    {
+        if (!isSyncPolicy(SYNC_NONE)) {
+            syncData();
         }
+    }
 
-        super.startDispatch(runStr, switching);
+    /**
+     * Sync the directory holding the previous run's renamed data file.
+     * This is called after a run switch releases the dispatcher lock.
+     */
+    void finishSwitch()
+    {
+        if (dirSyncPending) {
+            dirSyncPending = false;
+            syncDirectory();
+        }
     }
 
     @Override
     public void stopDispatch()
         throws DispatchException
     {
-        super.stopDispatch();
+        stopSyncThread();
+
+        if (isSyncPolicy(SYNC_NONE)) {
+            super.stopDispatch();
+        } else {
+            syncData();
+            super.stopDispatch();
+            dirSyncPending = false;
+            syncDirectory();
+        }
 
         if (supersaver) {
+            // create sentinal file or replace the existing file
+            createSentinalFile("supersaved", getRunNumber(), true);
+        }
+    }
+
+    /**
+     * Wait for all queued sentinal files to be written
+     */
+    static void waitForSentinals()
+    {
+        try {
+            SENTINAL_WRITER.submit(new Runnable() {
+                    @Override
+                    public void run()
+                    {
+                        // everything queued before this has been written
+                    }
+                }).get();
+        } catch (InterruptedException iex) {
+            // ignore interrupts
+        } catch (ExecutionException eex) {
+            LOG.error("Cannot wait for sentinal files", eex);
+        }
+    }
+
+    /**
+     * Write a sentinal file
+     */
+    private static class SentinalTask
+        implements Runnable
+    {
+        private File dir;
+        private String baseName;
+        private String stream;
+        private int runNumber;
+        private boolean update;
+        private long sequence;
+        private long time;
+
+        /**
+         * Record the order and time of a sentinal request
+         *
+         * @param dir directory which holds the sentinal file
+         * @param baseName base name of the sentinal file
+         * @param stream name of the stream requesting the file
+         * @param runNumber run number to use as sentinal name suffix
+         * @param update if true, replace an existing sentinal file
+         */
+        SentinalTask(File dir, String baseName, String stream, int runNumber,
+                     boolean update)
+        {
+            this.dir = dir;
+            this.baseName = baseName;
+            this.stream = stream;
+            this.runNumber = runNumber;
+            this.update = update;
+
+            sequence = SENTINAL_SEQUENCE.incrementAndGet();
+            time = System.currentTimeMillis();
+        }
+
+        @Override
+        public void run()
+        {
+            final String name = baseName + "." + runNumber;
+
+            final File sentinal = new File(dir, name);
+            if (!update && sentinal.exists()) {
+                // another stream already started this run
+                return;
+            }
+
+            final String text = String.format("sequence %d%nrun %d%n" +
+                                              "stream %s%ntime %d%n",
+                                              sequence, runNumber, stream,
+                                              time);
+
+            final File tmpFile = new File(dir, "." + name + ".tmp");
+            try {
+                FileOutputStream out = new FileOutputStream(tmpFile);
+                try {
+                    out.write(text.getBytes(StandardCharsets.UTF_8));
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+
+                // use the transition time, not the time this ran
+                tmpFile.setLastModified(time);
+
+                Files.move(tmpFile.toPath(), sentinal.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ioe) {
+                LOG.error("Cannot create SuperSaver sentinal file " +
+                          sentinal, ioe);
+                tmpFile.delete();
+                return;
+            } catch (SecurityException sex) {
+                LOG.error("Cannot write to SuperSaver sentinal file " +
+                          sentinal, sex);
+                tmpFile.delete();
+                return;
+            }
+
+            syncDirectory(dir);
+
+            LOG.error("Created " + sentinal.getName());
+        }
+    }
+
+    /**
+     * Sync the data file whenever too much time has passed or too many
+     * bytes have been written since the last sync
+     */
+    private class SyncThread
+        extends Thread
+    {
+        private boolean stopping;
+
+        SyncThread()
+        {
+            super(baseFileName + "Sync");
+            setDaemon(true);
+        }
+
+        /**
+         * Stop the thread and wait for it to exit
+         */
+        void finish()
+        {
+            synchronized (this) {
+                stopping = true;
+                notify();
+            }
+
             try {
-                Thread.sleep(20);
+                join();
             } catch (InterruptedException iex) {
                 // ignore interrupts
             }
+        }
 
-            // create sentinal file or update the file's modification time
-            createSentinalFile("supersaved", getRunNumber(), true);
+        @Override
+        public void run()
+        {
+            final long pollMillis = Math.min(syncMillis, SYNC_POLL_MILLIS);
+
+            while (true) {
+                synchronized (this) {
+                    if (stopping) {
+                        break;
+                    }
+
+                    try {
+                        wait(pollMillis);
+                    } catch (InterruptedException iex) {
+                        // ignore interrupts
+                    }
+
+                    if (stopping) {
+                        break;
+                    }
+                }
+
+                final long atRisk = getBytesAtRisk();
+                if (atRisk > 0L &&
+                    (atRisk >= syncBytes ||
+                     System.currentTimeMillis() - lastSyncMillis >=
+                     syncMillis))
+                {
+                    syncData();
+                }
+            }
         }
     }
 }
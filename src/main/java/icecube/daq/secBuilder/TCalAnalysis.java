@@ -13,6 +13,7 @@ public class TCalAnalysis
 
     public void setAlertQueue(AlertQueue aq)
     {
-        // do nothing
+        // only used for silent DOM reports
+        super.setAlertQueue(aq);
     }
 }
@@ -0,0 +1,278 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.juggler.alert.AlertException;
+import icecube.daq.juggler.alert.AlertQueue;
+import icecube.daq.juggler.alert.Alerter;
+import icecube.daq.payload.IUTCTime;
+import icecube.daq.secBuilder.test.MockAlerter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Record pushed messages without sending them anywhere
+ */
+class RecordingQueue
+    extends AlertQueue
+{
+    private HashMap<String, List<Object>> received =
+        new HashMap<String, List<Object>>();
+    private int numFailures;
+    private volatile CountDownLatch gate;
+    private CountDownLatch entered = new CountDownLatch(1);
+
+    RecordingQueue()
+    {
+        super(new MockAlerter());
+    }
+
+    /**
+     * Hold every push until the gate is opened
+     */
+    void hold()
+    {
+        gate = new CountDownLatch(1);
+    }
+
+    /**
+     * Fail the next few pushes
+     */
+    void failNext(int num)
+    {
+        numFailures = num;
+    }
+
+    synchronized List<Object> getReceived(String varname)
+    {
+        List<Object> list = received.get(varname);
+        if (list == null) {
+            return new ArrayList<Object>();
+        }
+
+        return list;
+    }
+
+    @Override
+    public boolean isStopped()
+    {
+        return false;
+    }
+
+    void release()
+    {
+        gate.countDown();
+    }
+
+    @Override
+    public void push(String varname, Alerter.Priority prio, IUTCTime utc,
+                     Map<String, Object> map)
+        throws AlertException
+    {
+        entered.countDown();
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException ie) {
+                throw new AlertException("Interrupted");
+            }
+        }
+
+        synchronized (this) {
+            if (numFailures > 0) {
+                numFailures--;
+                throw new AlertException("Failure " + numFailures);
+            }
+
+            List<Object> list = received.get(varname);
+            if (list == null) {
+                list = new ArrayList<Object>();
+                received.put(varname, list);
+            }
+            list.add(map.get("n"));
+        }
+    }
+
+    boolean waitForPush()
+        throws InterruptedException
+    {
+        return entered.await(10, TimeUnit.SECONDS);
+    }
+}
+
+public class AlertDeliveryTest
+{
+    private AlertDelivery delivery;
+
+    private static Map<String, Object> message(int n)
+    {
+        HashMap<String, Object> map = new HashMap<String, Object>();
+        map.put("n", n);
+        return map;
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (delivery != null) {
+            delivery.shutdown();
+        }
+    }
+
+    @Test
+    public void testOrder()
+    {
+        delivery = new AlertDelivery("Order", 3, 16, 1,
+                                     AlertDelivery.WAIT_FOREVER);
+
+        RecordingQueue queue = new RecordingQueue();
+
+        final String[] names = new String[] { "a", "b", "c", "d", "e" };
+        final int numMsgs = 200;
+        for (int i = 0; i < numMsgs; i++) {
+            for (String name : names) {
+                assertTrue("Should not drop " + name + "#" + i,
+                           delivery.send(queue, name, Alerter.Priority.SCP,
+                                         i, message(i)));
+            }
+        }
+
+        assertTrue("Alerts were not sent", delivery.drain());
+        assertEquals("Bad number in flight", 0, delivery.getNumInFlight());
+
+        for (String name : names) {
+            List<Object> list = queue.getReceived(name);
+            assertEquals("Bad number of " + name + " alerts", numMsgs,
+                         list.size());
+            for (int i = 0; i < numMsgs; i++) {
+                assertEquals("Bad " + name + " alert#" + i, i, list.get(i));
+            }
+
+            AlertDelivery.VarStats vs = delivery.getStatistics().get(name);
+            assertEquals("Bad " + name + " sent count", numMsgs,
+                         vs.sent.get());
+        }
+        assertEquals("Should not drop alerts", 0L, delivery.getNumDropped());
+    }
+
+    @Test
+    public void testRetry()
+    {
+        delivery = new AlertDelivery("Retry", 1, 4, 3, 0L);
+
+        RecordingQueue queue = new RecordingQueue();
+
+        // two failures wait 10ms, then 20ms
+        queue.failNext(2);
+
+        final long start = System.nanoTime();
+        assertTrue("Should queue alert",
+                   delivery.send(queue, "retry", Alerter.Priority.SCP, 1L,
+                                 message(1)));
+        assertTrue("Alert was not sent", delivery.drain());
+        final long elapsed = System.nanoTime() - start;
+
+        assertTrue("Did not back off (" + elapsed + " ns)",
+                   elapsed >= TimeUnit.MILLISECONDS.toNanos(30L));
+
+        AlertDelivery.VarStats vs = delivery.getStatistics().get("retry");
+        assertEquals("Bad retry count", 2L, vs.retries.get());
+        assertEquals("Bad sent count", 1L, vs.sent.get());
+        assertEquals("Should not drop", 0L, vs.dropped.get());
+        assertEquals("Bad received count", 1,
+                     queue.getReceived("retry").size());
+
+        // too many failures drop the alert
+        queue.failNext(3);
+        assertTrue("Should queue alert",
+                   delivery.send(queue, "retry", Alerter.Priority.SCP, 2L,
+                                 message(2)));
+        assertTrue("Alert was not sent", delivery.drain());
+
+        assertEquals("Bad retry count", 4L, vs.retries.get());
+        assertEquals("Bad dropped count", 1L, vs.dropped.get());
+        assertEquals("Bad total dropped count", 1L, delivery.getNumDropped());
+        assertEquals("Failed alert should not be received", 1,
+                     queue.getReceived("retry").size());
+    }
+
+    @Test
+    public void testDrop()
+        throws InterruptedException
+    {
+        delivery = new AlertDelivery("Drop", 1, 1, 1, 0L);
+
+        RecordingQueue queue = new RecordingQueue();
+        queue.hold();
+
+        assertTrue("Should queue first alert",
+                   delivery.send(queue, "drop", Alerter.Priority.SCP, 1L,
+                                 message(1)));
+        assertTrue("First alert was not pushed", queue.waitForPush());
+
+        assertFalse("Second alert should be dropped",
+                    delivery.send(queue, "drop", Alerter.Priority.SCP, 2L,
+                                  message(2)));
+        assertEquals("Bad dropped count", 1L, delivery.getNumDropped());
+
+        queue.release();
+        assertTrue("Alert was not sent", delivery.drain());
+
+        assertEquals("Bad received count", 1,
+                     queue.getReceived("drop").size());
+
+        // nothing can be sent after shutdown
+        delivery.shutdown();
+        assertFalse("Alert should be dropped after shutdown",
+                    delivery.send(queue, "drop", Alerter.Priority.SCP, 3L,
+                                  message(3)));
+        assertEquals("Bad dropped count", 2L, delivery.getNumDropped());
+    }
+
+    @Test
+    public void testWait()
+        throws InterruptedException
+    {
+        delivery = new AlertDelivery("Wait", 1, 1, 1,
+                                     AlertDelivery.WAIT_FOREVER);
+
+        final RecordingQueue queue = new RecordingQueue();
+        queue.hold();
+
+        assertTrue("Should queue first alert",
+                   delivery.send(queue, "wait", Alerter.Priority.SCP, 1L,
+                                 message(1)));
+        assertTrue("First alert was not pushed", queue.waitForPush());
+
+        final boolean[] result = new boolean[1];
+        Thread sender = new Thread("WaitingSender") {
+                @Override
+                public void run()
+                {
+                    result[0] = delivery.send(queue, "wait",
+                                              Alerter.Priority.SCP, 2L,
+                                              message(2));
+                }
+            };
+        sender.start();
+
+        sender.join(100L);
+        assertTrue("Second send should wait for room", sender.isAlive());
+
+        queue.release();
+        sender.join(10000L);
+        assertFalse("Second send did not finish", sender.isAlive());
+        assertTrue("Second alert should not be dropped", result[0]);
+
+        assertTrue("Alerts were not sent", delivery.drain());
+        assertEquals("Bad received count", 2,
+                     queue.getReceived("wait").size());
+        assertEquals("Should not drop alerts", 0L, delivery.getNumDropped());
+    }
+}
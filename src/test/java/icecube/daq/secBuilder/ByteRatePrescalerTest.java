@@ -0,0 +1,111 @@
+package icecube.daq.secBuilder;
+
+import java.nio.ByteBuffer;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ByteRatePrescalerTest
+{
+    /** Number of DAQ ticks (0.1 ns) in a second */
+    private static final long ONE_SECOND = 10000000000L;
+
+    private static ByteBuffer payload(int len)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        buf.putInt(0, len);
+        return buf;
+    }
+
+    @Test
+    public void testBadRate()
+    {
+        try {
+            new ByteRatePrescaler(0L);
+            fail("Should not allow a zero byte rate");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLimit()
+    {
+        ByteRatePrescaler prescaler = new ByteRatePrescaler(1000L);
+
+        // the bucket starts full, so one second's worth of bytes is accepted
+        final long time = 5 * ONE_SECOND;
+        for (int i = 0; i < 10; i++) {
+            assertTrue("Payload#" + i + " should be accepted",
+                       prescaler.accept(payload(100), time));
+        }
+        assertFalse("Payload should be rejected once the bucket is empty",
+                    prescaler.accept(payload(100), time));
+
+        // a payload larger than the bucket is never accepted
+        ByteRatePrescaler small = new ByteRatePrescaler(50L);
+        assertFalse("Oversized payload should be rejected",
+                    small.accept(payload(100), time));
+        assertFalse("Oversized payload should be rejected",
+                    small.accept(payload(100), time + 10 * ONE_SECOND));
+        assertTrue("Small payload should be accepted",
+                   small.accept(payload(50), time + 10 * ONE_SECOND));
+    }
+
+    @Test
+    public void testRefill()
+    {
+        ByteRatePrescaler prescaler = new ByteRatePrescaler(1000L);
+
+        long time = ONE_SECOND;
+        assertTrue("First payload should be accepted",
+                   prescaler.accept(payload(1000), time));
+        assertFalse("Bucket should be empty",
+                    prescaler.accept(payload(16), time));
+
+        // a quarter second adds 250 bytes
+        time += ONE_SECOND / 4;
+        assertTrue("Refilled payload should be accepted",
+                   prescaler.accept(payload(200), time));
+        assertFalse("Payload larger than the refill should be rejected",
+                    prescaler.accept(payload(100), time));
+        assertTrue("Remaining bytes should be accepted",
+                   prescaler.accept(payload(50), time));
+
+        // late payloads don't add any bytes
+        assertFalse("Late payload should not refill the bucket",
+                    prescaler.accept(payload(16), ONE_SECOND));
+
+        // a long gap only fills the bucket to one second's worth
+        time += 100 * ONE_SECOND;
+        assertTrue("Full bucket should accept one second of bytes",
+                   prescaler.accept(payload(1000), time));
+        assertFalse("Bucket should not hold more than one second of bytes",
+                    prescaler.accept(payload(16), time));
+    }
+
+    @Test
+    public void testSteadyRate()
+    {
+        final long rate = 2000L;
+        ByteRatePrescaler prescaler = new ByteRatePrescaler(rate);
+
+        // offer twice the allowed rate for ten seconds
+        final int len = 100;
+        final int perSecond = (int) (rate * 2 / len);
+        final int seconds = 10;
+
+        long accepted = 0;
+        for (int i = 0; i < perSecond * seconds; i++) {
+            final long time = ONE_SECOND + (i * ONE_SECOND) / perSecond;
+            if (prescaler.accept(payload(len), time)) {
+                accepted += len;
+            }
+        }
+
+        // the initial full bucket allows one extra second
+        final long expected = rate * (seconds + 1);
+        assertTrue("Accepted " + accepted + " bytes, expected about " +
+                   expected, Math.abs(accepted - expected) <= len);
+    }
+}
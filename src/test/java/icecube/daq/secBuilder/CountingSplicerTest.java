@@ -0,0 +1,185 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.secBuilder.test.MockPayload;
+import icecube.daq.secBuilder.test.MockSplicer;
+import icecube.daq.secBuilder.test.MockStrandTail;
+import icecube.daq.splicer.SplicerException;
+import icecube.daq.splicer.StrandTail;
+
+import java.util.ArrayList;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+class SizedPayload
+    extends MockPayload
+{
+    private long utcTime;
+    private int length;
+
+    SizedPayload(long utcTime, int length)
+    {
+        this.utcTime = utcTime;
+        this.length = length;
+    }
+
+    @Override
+    public long getUTCTime()
+    {
+        return utcTime;
+    }
+
+    @Override
+    public int length()
+    {
+        return length;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SizedPayload@" + utcTime + "[" + length + "]";
+    }
+}
+
+public class CountingSplicerTest
+{
+    @Test
+    public void testBadMaxStrands()
+    {
+        try {
+            new CountingSplicer<Object>(new MockSplicer<Object>(), 0);
+            fail("Should not allow zero strands");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCounts()
+        throws SplicerException
+    {
+        MockSplicer<Object> mock = new MockSplicer<Object>();
+        CountingSplicer<Object> splicer = new CountingSplicer<Object>(mock);
+
+        StrandTail<Object> first = splicer.beginStrand();
+        StrandTail<Object> second = splicer.beginStrand();
+
+        first.push(new SizedPayload(100L, 10));
+        first.push(new SizedPayload(300L, 20));
+        // an older payload doesn't move the last time backward
+        first.push(new SizedPayload(200L, 30));
+        // objects which aren't payloads are passed along but not counted
+        first.push("NotAPayload");
+
+        ArrayList<Object> list = new ArrayList<Object>();
+        list.add(new SizedPayload(150L, 5));
+        list.add(new SizedPayload(250L, 7));
+        second.push(list);
+
+        assertArrayEquals("Bad payload counts", new long[] { 3L, 2L },
+                          splicer.getPayloads());
+        assertArrayEquals("Bad byte counts", new long[] { 60L, 12L },
+                          splicer.getBytes());
+        assertArrayEquals("Bad last times", new long[] { 300L, 250L },
+                          splicer.getLastTimes());
+
+        MockStrandTail<Object> firstMock = mock.getTails().get(0);
+        assertEquals("Bad number of objects in first strand", 4,
+                     firstMock.size());
+        assertEquals("Bad last object in first strand", "NotAPayload",
+                     firstMock.getPushed().get(3));
+        assertEquals("Bad first strand size", 4, first.size());
+
+        MockStrandTail<Object> secondMock = mock.getTails().get(1);
+        assertEquals("Bad second strand contents", list,
+                     secondMock.getPushed());
+    }
+
+    @Test
+    public void testLags()
+        throws SplicerException
+    {
+        CountingSplicer<Object> splicer =
+            new CountingSplicer<Object>(new MockSplicer<Object>());
+
+        StrandTail<Object> slow = splicer.beginStrand();
+        StrandTail<Object> fast = splicer.beginStrand();
+        StrandTail<Object> idle = splicer.beginStrand();
+        StrandTail<Object> middle = splicer.beginStrand();
+
+        slow.push(new SizedPayload(100L, 1));
+        fast.push(new SizedPayload(400L, 1));
+        middle.push(new SizedPayload(250L, 1));
+
+        // lags are measured from the newest payload in any strand, and
+        // strands without payloads have no lag
+        assertArrayEquals("Bad lags", new long[] { 300L, 0L, 0L, 150L },
+                          splicer.getLags());
+
+        fast.push(new SizedPayload(1000L, 1));
+        assertArrayEquals("Bad lags", new long[] { 900L, 0L, 0L, 750L },
+                          splicer.getLags());
+
+        // closed strands have no lag
+        slow.close();
+        assertArrayEquals("Bad lags", new long[] { 0L, 0L, 0L, 750L },
+                          splicer.getLags());
+
+        idle.push(new SizedPayload(900L, 1));
+        assertArrayEquals("Bad lags", new long[] { 0L, 0L, 100L, 750L },
+                          splicer.getLags());
+    }
+
+    @Test
+    public void testReuse()
+        throws SplicerException
+    {
+        MockSplicer<Object> mock = new MockSplicer<Object>();
+        CountingSplicer<Object> splicer =
+            new CountingSplicer<Object>(mock, 2);
+
+        StrandTail<Object> first = splicer.beginStrand();
+        StrandTail<Object> second = splicer.beginStrand();
+
+        first.push(new SizedPayload(100L, 10));
+        second.push(new SizedPayload(200L, 20));
+        second.push(new SizedPayload(300L, 30));
+
+        // strands beyond the maximum are passed through uncounted
+        StrandTail<Object> extra = splicer.beginStrand();
+        assertSame("Extra strand should not be counted",
+                   mock.getTails().get(2), extra);
+        extra.push(new SizedPayload(400L, 40));
+        assertArrayEquals("Bad payload counts", new long[] { 1L, 2L },
+                          splicer.getPayloads());
+
+        // a new strand takes the slot of the closed strand
+        first.close();
+        assertTrue("First strand should be closed", first.isClosed());
+
+        StrandTail<Object> third = splicer.beginStrand();
+        assertNotSame("Third strand should be counted",
+                      mock.getTails().get(3), third);
+        assertArrayEquals("Reused counters should be reset",
+                          new long[] { 0L, 2L }, splicer.getPayloads());
+        assertArrayEquals("Reused counters should be reset",
+                          new long[] { 0L, 50L }, splicer.getBytes());
+        assertArrayEquals("Reused counters should be reset",
+                          new long[] { 0L, 300L }, splicer.getLastTimes());
+
+        third.push(new SizedPayload(350L, 5));
+        assertArrayEquals("Bad payload counts", new long[] { 1L, 2L },
+                          splicer.getPayloads());
+        assertArrayEquals("Bad byte counts", new long[] { 5L, 50L },
+                          splicer.getBytes());
+        assertArrayEquals("Bad lags", new long[] { 0L, 50L },
+                          splicer.getLags());
+
+        // the slot's original payloads went to the old strand
+        assertEquals("Bad number of objects in first strand", 1,
+                     mock.getTails().get(0).size());
+        assertEquals("Bad number of objects in third strand", 1,
+                     mock.getTails().get(3).size());
+    }
+}
@@ -0,0 +1,95 @@
+package icecube.daq.secBuilder;
+
+import java.nio.ByteBuffer;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class DOMPrescalerTest
+{
+    private static ByteBuffer payload(long mbid)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(PrescalePolicy.DOM_ID_OFFSET + 8);
+        buf.putInt(0, buf.capacity());
+        buf.putLong(PrescalePolicy.DOM_ID_OFFSET, mbid);
+        return buf;
+    }
+
+    @Test
+    public void testBadPrescale()
+    {
+        final long[] bad = new long[] { 0L, -1L, Integer.MAX_VALUE + 1L };
+        for (long preScale : bad) {
+            try {
+                new DOMPrescaler(preScale);
+                fail("Should not allow prescale " + preScale);
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testOneOfN()
+    {
+        final int preScale = 3;
+        DOMPrescaler prescaler = new DOMPrescaler(preScale);
+
+        final long quiet = 0x123456789abcL;
+        final long noisy = 0xfedcba987654L;
+
+        // the first payload of each cycle is kept for every DOM
+        int quietKept = 0;
+        int noisyKept = 0;
+        for (int i = 0; i < 30; i++) {
+            final boolean kept = prescaler.accept(payload(noisy), i);
+            assertEquals("Bad noisy result for payload#" + i,
+                         i % preScale == 0, kept);
+            if (kept) {
+                noisyKept++;
+            }
+
+            // the quiet DOM only sends one payload for every five
+            if (i % 5 == 0) {
+                final int n = i / 5;
+                final boolean quietOK = prescaler.accept(payload(quiet), i);
+                assertEquals("Bad quiet result for payload#" + n,
+                             n % preScale == 0, quietOK);
+                if (quietOK) {
+                    quietKept++;
+                }
+            }
+        }
+
+        assertEquals("Bad number of noisy payloads", 10, noisyKept);
+        assertEquals("Bad number of quiet payloads", 2, quietKept);
+    }
+
+    @Test
+    public void testNoPrescale()
+    {
+        DOMPrescaler prescaler = new DOMPrescaler(1L);
+        for (int i = 0; i < 10; i++) {
+            assertTrue("Payload#" + i + " should be kept",
+                       prescaler.accept(payload(0x111L), i));
+        }
+    }
+
+    @Test
+    public void testManyDOMs()
+    {
+        final int preScale = 2;
+        DOMPrescaler prescaler = new DOMPrescaler(preScale);
+
+        // more DOMs than the counter table initially expects
+        final int numDOMs = 12000;
+        for (int pass = 0; pass < 4; pass++) {
+            for (int d = 0; d < numDOMs; d++) {
+                final long mbid = 0x100000000L + d * 7919L;
+                assertEquals("Bad result for DOM#" + d + " pass " + pass,
+                             pass % preScale == 0,
+                             prescaler.accept(payload(mbid), pass));
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.secBuilder.test.MockDOMRegistry;
+import icecube.daq.util.DOMInfo;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class DOMTableTest
+{
+    private static final int[] STRINGS = new int[] { 86, 1, 21, 2, 1001 };
+    private static final int NUM_POSITIONS = 66;
+
+    private static long mainboardID(int string, int position)
+    {
+        // scramble the IDs so they don't sort in location order
+        return ((string * 1000L + position) * 0x5DEECE66DL) & 0xffffffffffffL;
+    }
+
+    private static MockDOMRegistry createRegistry()
+    {
+        MockDOMRegistry reg = new MockDOMRegistry();
+        for (int string : STRINGS) {
+            for (int pos = NUM_POSITIONS; pos > 0; pos--) {
+                reg.addDom(mainboardID(string, pos), string, pos);
+            }
+        }
+        return reg;
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        DOMTable table = new DOMTable(new MockDOMRegistry());
+        assertEquals("Bad size", 0, table.size());
+        assertEquals("Bad number of strings", 0, table.getNumStrings());
+        assertEquals("Bad end of strings", 0, table.getStringStart(0));
+        assertEquals("Unknown DOM should not be found", DOMTable.NO_DOM,
+                     table.getOrdinal(123L));
+    }
+
+    @Test
+    public void testLookup()
+    {
+        DOMTable table = new DOMTable(createRegistry());
+        assertEquals("Bad size", STRINGS.length * NUM_POSITIONS,
+                     table.size());
+
+        for (int string : STRINGS) {
+            for (int pos = 1; pos <= NUM_POSITIONS; pos++) {
+                final long mbid = mainboardID(string, pos);
+
+                final int ordinal = table.getOrdinal(mbid);
+                assertTrue("No ordinal for " + string + "-" + pos,
+                           ordinal != DOMTable.NO_DOM);
+
+                DOMInfo dom = table.getDOM(ordinal);
+                assertEquals("Bad mainboard ID for ordinal " + ordinal,
+                             mbid, dom.getNumericMainboardId());
+                assertEquals("Bad OM ID for ordinal " + ordinal,
+                             string + "-" + pos, table.getOmID(ordinal));
+            }
+        }
+
+        // registered IDs only use the lower 48 bits
+        Random rand = new Random(1234L);
+        for (int i = 0; i < 1000; i++) {
+            final long mbid = (rand.nextLong() & 0xffffffffffffL) |
+                0x1000000000000L;
+            assertEquals("Unknown DOM " + mbid + " should not be found",
+                         DOMTable.NO_DOM, table.getOrdinal(mbid));
+        }
+        assertEquals("Unknown DOM should not be found", DOMTable.NO_DOM,
+                     table.getOrdinal(0L));
+    }
+
+    @Test
+    public void testOrder()
+    {
+        DOMTable table = new DOMTable(createRegistry());
+
+        // ordinals follow string, then position
+        for (int i = 1; i < table.size(); i++) {
+            DOMInfo prev = table.getDOM(i - 1);
+            DOMInfo dom = table.getDOM(i);
+
+            final boolean ordered =
+                prev.getStringMajor() < dom.getStringMajor() ||
+                (prev.getStringMajor() == dom.getStringMajor() &&
+                 prev.getStringMinor() < dom.getStringMinor());
+            assertTrue("DOM#" + (i - 1) + " " + table.getOmID(i - 1) +
+                       " should precede DOM#" + i + " " + table.getOmID(i),
+                       ordered);
+        }
+
+        // each string's DOMs are contiguous
+        assertEquals("Bad number of strings", STRINGS.length,
+                     table.getNumStrings());
+        assertEquals("Bad end of strings", table.size(),
+                     table.getStringStart(table.getNumStrings()));
+
+        int prevString = Integer.MIN_VALUE;
+        for (int s = 0; s < table.getNumStrings(); s++) {
+            final int start = table.getStringStart(s);
+            final int end = table.getStringStart(s + 1);
+            assertEquals("Bad number of DOMs on string index " + s,
+                         NUM_POSITIONS, end - start);
+
+            final int string = table.getDOM(start).getStringMajor();
+            assertTrue("String " + string + " should follow " + prevString,
+                       string > prevString);
+            for (int i = start; i < end; i++) {
+                assertEquals("Bad string for DOM#" + i, string,
+                             table.getDOM(i).getStringMajor());
+                assertEquals("Bad position for DOM#" + i, i - start + 1,
+                             table.getDOM(i).getStringMinor());
+            }
+            prevString = string;
+        }
+    }
+
+    @Test
+    public void testSharedLocation()
+    {
+        MockDOMRegistry reg = new MockDOMRegistry();
+        reg.addDom(0x300L, 12, 61);
+        reg.addDom(0x200L, 12, 61);
+        reg.addDom(0x100L, 12, 60);
+
+        DOMTable table = new DOMTable(reg);
+        assertEquals("Bad size", 3, table.size());
+        assertEquals("Bad number of strings", 1, table.getNumStrings());
+
+        // DOMs at one location are ordered by mainboard ID
+        assertEquals("Bad first DOM", 0, table.getOrdinal(0x100L));
+        assertEquals("Bad second DOM", 1, table.getOrdinal(0x200L));
+        assertEquals("Bad third DOM", 2, table.getOrdinal(0x300L));
+
+        // and share a single OM ID
+        assertEquals("Bad OM ID", "12-61", table.getOmID(1));
+        assertSame("OM ID should be shared", table.getOmID(1),
+                   table.getOmID(2));
+    }
+}
@@ -0,0 +1,319 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.secBuilder.test.MockDispatcher;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class DiskPressurePolicyTest
+{
+    private static final long ONE_SECOND = 1000000000L;
+
+    private String tmpDir;
+
+    private MockDispatcher createDispatcher(long size, long avail)
+    {
+        MockDispatcher disp = new MockDispatcher();
+        disp.setDispatchDestStorage(tmpDir);
+        disp.setDiskSize(size);
+        disp.setDiskAvailable(avail);
+        return disp;
+    }
+
+    @Before
+    public void setUp()
+    {
+        tmpDir = System.getProperty("java.io.tmpdir");
+    }
+
+    @Test
+    public void testStepOrder()
+    {
+        final String[] names = new String[] { "tcal", "sn", "moni" };
+        final long maxPrescale = 4L;
+
+        DiskPressurePolicy policy =
+            new DiskPressurePolicy(" tcal, sn,moni", 10, 20, 10L,
+                                   maxPrescale);
+
+        DiskSampler sampler = new DiskSampler(1);
+        sampler.addListener(policy);
+
+        MockDispatcher[] disps = new MockDispatcher[names.length];
+        SBSplicedAnalysis[] analyses = new SBSplicedAnalysis[names.length];
+        for (int i = 0; i < names.length; i++) {
+            disps[i] = createDispatcher(1000L, 500L);
+            analyses[i] = new SBSplicedAnalysis(disps[i]);
+            analyses[i].setStreamName(names[i]);
+            policy.addStream(analyses[i],
+                             sampler.addStream(names[i], disps[i]));
+        }
+
+        // every stream writes 1 MB per second
+        final long mb = DiskSampler.BYTES_PER_MB;
+
+        long now = 10 * ONE_SECOND;
+        sampleAll(sampler, disps, now, mb);
+        checkPrescales(policy, analyses, names, 1, 1, 1);
+
+        // less than 10% free
+        for (MockDispatcher disp : disps) {
+            disp.setDiskAvailable(50L);
+        }
+
+        final long[][] raised = new long[][] {
+            { 2, 1, 1 }, { 4, 1, 1 }, { 4, 2, 1 }, { 4, 4, 1 },
+            { 4, 4, 2 }, { 4, 4, 4 }, { 4, 4, 4 },
+        };
+        for (long[] exp : raised) {
+            now += ONE_SECOND;
+            sampleAll(sampler, disps, now, mb);
+            checkPrescales(policy, analyses, names, exp);
+        }
+
+        // no longer crowded, but not enough room to recover
+        for (MockDispatcher disp : disps) {
+            disp.setDiskAvailable(150L);
+        }
+
+        now += ONE_SECOND;
+        sampleAll(sampler, disps, now, mb);
+        checkPrescales(policy, analyses, names, 4, 4, 4);
+
+        for (MockDispatcher disp : disps) {
+            disp.setDiskAvailable(500L);
+        }
+
+        final long[][] restored = new long[][] {
+            { 4, 4, 2 }, { 4, 4, 1 }, { 4, 2, 1 }, { 4, 1, 1 },
+            { 2, 1, 1 }, { 1, 1, 1 }, { 1, 1, 1 },
+        };
+        for (long[] exp : restored) {
+            now += ONE_SECOND;
+            sampleAll(sampler, disps, now, mb);
+            checkPrescales(policy, analyses, names, exp);
+        }
+    }
+
+    @Test
+    public void testNotFilling()
+    {
+        DiskPressurePolicy policy =
+            new DiskPressurePolicy("tcal,moni", 10, 20, 10L, 64L);
+
+        DiskSampler sampler = new DiskSampler(1);
+        sampler.addListener(policy);
+
+        // less than 10% free
+        MockDispatcher tcalDisp = createDispatcher(1000L, 50L);
+        SBSplicedAnalysis tcal = new SBSplicedAnalysis(tcalDisp);
+        policy.addStream(tcal, sampler.addStream("tcal", tcalDisp));
+
+        MockDispatcher moniDisp = createDispatcher(1000L, 50L);
+        SBSplicedAnalysis moni = new SBSplicedAnalysis(moniDisp);
+        policy.addStream(moni, sampler.addStream("moni", moniDisp));
+
+        // thinning can't help if nothing is being written
+        long now = 10 * ONE_SECOND;
+        for (int i = 0; i < 20; i++) {
+            sampler.sample(now);
+            now += ONE_SECOND;
+
+            assertEquals("Tcal should not be thinned", 1L,
+                         tcal.getDiskPrescale());
+            assertEquals("Moni should not be thinned", 1L,
+                         moni.getDiskPrescale());
+        }
+    }
+
+    @Test
+    public void testHoldWhileImproving()
+    {
+        final String[] names = new String[] { "tcal", "sn" };
+
+        DiskPressurePolicy policy =
+            new DiskPressurePolicy("tcal,sn", 10, 20, 10L, 64L);
+
+        DiskSampler sampler = new DiskSampler(1);
+        sampler.addListener(policy);
+
+        MockDispatcher[] disps = new MockDispatcher[names.length];
+        SBSplicedAnalysis[] analyses = new SBSplicedAnalysis[names.length];
+        for (int i = 0; i < names.length; i++) {
+            disps[i] = createDispatcher(1000L, 500L);
+            analyses[i] = new SBSplicedAnalysis(disps[i]);
+            policy.addStream(analyses[i],
+                             sampler.addStream(names[i], disps[i]));
+        }
+
+        final long mb = DiskSampler.BYTES_PER_MB;
+
+        // settle the fill rate while there's plenty of room
+        long now = 10 * ONE_SECOND;
+        for (int i = 0; i < 20; i++) {
+            sampleAll(sampler, disps, now, mb);
+            now += ONE_SECOND;
+        }
+        checkPrescales(policy, analyses, names, 1, 1);
+
+        // less than 10% free
+        for (MockDispatcher disp : disps) {
+            disp.setDiskAvailable(50L);
+        }
+
+        sampleAll(sampler, disps, now, mb);
+        now += ONE_SECOND;
+        checkPrescales(policy, analyses, names, 2, 1);
+
+        // thinning slows the fill rate, so nothing else is thinned
+        for (int i = 0; i < 10; i++) {
+            sampleAll(sampler, disps, now, mb / 2L);
+            now += ONE_SECOND;
+            checkPrescales(policy, analyses, names, 2, 1);
+        }
+
+        // once the disk fills more quickly than before, thin some more
+        for (int i = 0; i < 2; i++) {
+            sampleAll(sampler, disps, now, mb * 2L);
+            now += ONE_SECOND;
+        }
+        checkPrescales(policy, analyses, names, 4, 1);
+    }
+
+    @Test
+    public void testSeparateDisks()
+    {
+        final String[] names = new String[] { "tcal", "sn" };
+
+        DiskPressurePolicy policy =
+            new DiskPressurePolicy("tcal,sn", 10, 20, 10L, 64L);
+
+        DiskSampler sampler = new DiskSampler(1);
+        sampler.addListener(policy);
+
+        // streams without a dispatch directory each get their own disk
+        MockDispatcher[] disps = new MockDispatcher[names.length];
+        SBSplicedAnalysis[] analyses = new SBSplicedAnalysis[names.length];
+        for (int i = 0; i < names.length; i++) {
+            disps[i] = new MockDispatcher();
+            disps[i].setDiskSize(1000L);
+            disps[i].setDiskAvailable(500L);
+            analyses[i] = new SBSplicedAnalysis(disps[i]);
+            policy.addStream(analyses[i],
+                             sampler.addStream(names[i], disps[i]));
+        }
+
+        final long mb = DiskSampler.BYTES_PER_MB;
+
+        // settle the fill rates while there's plenty of room
+        long now = 10 * ONE_SECOND;
+        for (int i = 0; i < 20; i++) {
+            sampleAll(sampler, disps, now, mb);
+            now += ONE_SECOND;
+        }
+        checkPrescales(policy, analyses, names, 1, 1);
+
+        // both disks have less than 10% free, so each thins a stream
+        for (MockDispatcher disp : disps) {
+            disp.setDiskAvailable(50L);
+        }
+
+        sampleAll(sampler, disps, now, mb);
+        now += ONE_SECOND;
+        checkPrescales(policy, analyses, names, 2, 2);
+
+        // tcal's disk is improving but sn's disk keeps filling faster
+        for (int i = 0; i < 2; i++) {
+            sample(sampler, disps, now, mb / 2L, mb * 2L);
+            now += ONE_SECOND;
+        }
+        checkPrescales(policy, analyses, names, 2, 8);
+
+        // sn's disk recovers while tcal's disk is still crowded
+        disps[1].setDiskAvailable(500L);
+
+        final long[] restored = new long[] { 4, 2, 1, 1 };
+        for (long exp : restored) {
+            sample(sampler, disps, now, mb / 2L, mb / 2L);
+            now += ONE_SECOND;
+            checkPrescales(policy, analyses, names, 2, exp);
+        }
+
+        // tcal's disk still remembers its own previous increase
+        for (int i = 0; i < 2; i++) {
+            sample(sampler, disps, now, mb * 4L, mb / 2L);
+            now += ONE_SECOND;
+        }
+        checkPrescales(policy, analyses, names, 8, 1);
+    }
+
+    @Test
+    public void testTimeToFull()
+    {
+        // only consider the time to full, and never thin "sn"
+        DiskPressurePolicy policy =
+            new DiskPressurePolicy("moni", 0, 0, 3600L, 8L);
+
+        DiskSampler sampler = new DiskSampler(1);
+        sampler.addListener(policy);
+
+        MockDispatcher moniDisp = createDispatcher(100000L, 1000L);
+        SBSplicedAnalysis moni = new SBSplicedAnalysis(moniDisp);
+        policy.addStream(moni, sampler.addStream("moni", moniDisp));
+
+        MockDispatcher snDisp = createDispatcher(100000L, 1000L);
+        SBSplicedAnalysis sn = new SBSplicedAnalysis(snDisp);
+        policy.addStream(sn, sampler.addStream("sn", snDisp));
+
+        long now = 10 * ONE_SECOND;
+        sampler.sample(now);
+        assertEquals("Bad initial moni prescale", 1L, moni.getDiskPrescale());
+
+        // "sn" fills the shared disk in 1000 seconds
+        snDisp.setNumBytesWritten(DiskSampler.BYTES_PER_MB);
+
+        now += ONE_SECOND;
+        sampler.sample(now);
+        assertEquals("Bad moni prescale", 2L, moni.getDiskPrescale());
+        assertEquals("Bad moni policy prescale", 2L,
+                     policy.getPrescale("moni"));
+        assertEquals("Unordered stream should not be thinned", 1L,
+                     sn.getDiskPrescale());
+        assertEquals("Unordered stream should not have a prescale", 1L,
+                     policy.getPrescale("sn"));
+    }
+
+    private static void sampleAll(DiskSampler sampler,
+                                  MockDispatcher[] disps, long now,
+                                  long bytes)
+    {
+        for (MockDispatcher disp : disps) {
+            disp.setNumBytesWritten(disp.getNumBytesWritten() + bytes);
+        }
+
+        sampler.sample(now);
+    }
+
+    private static void sample(DiskSampler sampler, MockDispatcher[] disps,
+                               long now, long ... bytes)
+    {
+        for (int i = 0; i < disps.length; i++) {
+            disps[i].setNumBytesWritten(disps[i].getNumBytesWritten() +
+                                        bytes[i]);
+        }
+
+        sampler.sample(now);
+    }
+
+    private static void checkPrescales(DiskPressurePolicy policy,
+                                       SBSplicedAnalysis[] analyses,
+                                       String[] names, long ... exp)
+    {
+        for (int i = 0; i < names.length; i++) {
+            assertEquals("Bad " + names[i] + " prescale in " + policy,
+                         exp[i], analyses[i].getDiskPrescale());
+            assertEquals("Bad " + names[i] + " policy prescale", exp[i],
+                         policy.getPrescale(names[i]));
+        }
+    }
+}
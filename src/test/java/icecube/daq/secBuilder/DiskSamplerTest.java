@@ -0,0 +1,127 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.secBuilder.test.MockDispatcher;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class DiskSamplerTest
+{
+    private static final long ONE_SECOND = 1000000000L;
+
+    @Test
+    public void testFillRate()
+    {
+        final String tmpDir = System.getProperty("java.io.tmpdir");
+
+        MockDispatcher moniDisp = new MockDispatcher();
+        moniDisp.setDispatchDestStorage(tmpDir);
+        moniDisp.setDiskSize(1000L);
+        moniDisp.setDiskAvailable(100L);
+
+        MockDispatcher snDisp = new MockDispatcher();
+        snDisp.setDispatchDestStorage(tmpDir);
+        snDisp.setDiskSize(1000L);
+        snDisp.setDiskAvailable(100L);
+
+        // no directory, so this stream is on its own
+        MockDispatcher tcalDisp = new MockDispatcher();
+        tcalDisp.setDiskAvailable(50L);
+
+        DiskSampler sampler = new DiskSampler(1);
+        DiskSampler.Stream moni = sampler.addStream("moni", moniDisp);
+        DiskSampler.Stream sn = sampler.addStream("sn", snDisp);
+        DiskSampler.Stream tcal = sampler.addStream("tcal", tcalDisp);
+
+        assertFalse("Should not be sampled yet", moni.isSampled());
+
+        long now = 10 * ONE_SECOND;
+        sampler.sample(now);
+
+        assertTrue("Should be sampled", moni.isSampled());
+        assertEquals("Bad available space", 100L, moni.getDiskAvailable());
+        assertEquals("Bad disk size", 1000L, moni.getDiskSize());
+        assertEquals("Should not be filling", DiskSampler.NOT_FILLING,
+                     moni.getSecondsToFull());
+
+        moniDisp.setNumBytesWritten(3000L);
+        snDisp.setNumBytesWritten(1000L);
+        tcalDisp.setNumBytesWritten(500L);
+
+        now += ONE_SECOND;
+        sampler.sample(now);
+
+        assertEquals("Bad moni fill rate", 3000.0, moni.getFillRate(),
+                     0.001);
+        assertEquals("Bad sn fill rate", 1000.0, sn.getFillRate(), 0.001);
+
+        // moni and sn share a filesystem
+        final long shared = (100L * DiskSampler.BYTES_PER_MB) / 4000L;
+        assertEquals("Bad moni time to full", shared,
+                     moni.getSecondsToFull());
+        assertEquals("Bad sn time to full", shared, sn.getSecondsToFull());
+        assertEquals("Bad tcal time to full",
+                     (50L * DiskSampler.BYTES_PER_MB) / 500L,
+                     tcal.getSecondsToFull());
+
+        // a new run resets the byte count
+        moniDisp.setNumBytesWritten(3000L);
+        snDisp.setNumBytesWritten(1000L);
+        tcalDisp.setNumBytesWritten(0L);
+
+        now += ONE_SECOND;
+        sampler.sample(now);
+
+        assertTrue("Moni rate should be smoothed",
+                   moni.getFillRate() > 0.0 && moni.getFillRate() < 3000.0);
+        assertTrue("Tcal rate should drop", tcal.getFillRate() < 500.0);
+    }
+
+    @Test
+    public void testAddAgain()
+    {
+        MockDispatcher disp = new MockDispatcher();
+
+        DiskSampler sampler = new DiskSampler(1);
+        DiskSampler.Stream first = sampler.addStream("moni", disp);
+        assertSame("Same stream should be returned", first,
+                   sampler.addStream("moni", disp));
+        assertEquals("Bad number of streams", 1,
+                     sampler.getStreams().size());
+
+        MockDispatcher newDisp = new MockDispatcher();
+        DiskSampler.Stream second = sampler.addStream("moni", newDisp);
+        assertNotSame("New dispatcher should replace the stream", first,
+                      second);
+        assertEquals("Bad number of streams", 1,
+                     sampler.getStreams().size());
+        assertSame("Stream was not replaced", second,
+                   sampler.getStreams().get(0));
+
+        sampler.addStream("sn", newDisp);
+        assertEquals("Bad number of streams", 2,
+                     sampler.getStreams().size());
+    }
+
+    @Test
+    public void testStartStop()
+    {
+        DiskSampler sampler = new DiskSampler(1);
+        sampler.addStream("moni", new MockDispatcher());
+
+        sampler.stop();
+        assertFalse("Should not be running", sampler.isRunning());
+
+        sampler.start();
+        sampler.start();
+        assertTrue("Should be running", sampler.isRunning());
+
+        sampler.stop();
+        assertFalse("Should be stopped", sampler.isRunning());
+        sampler.stop();
+
+        sampler.start();
+        assertTrue("Should restart", sampler.isRunning());
+        sampler.stop();
+    }
+}
@@ -0,0 +1,90 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.payload.PayloadException;
+import icecube.daq.payload.impl.ASCIIMonitor;
+import icecube.daq.payload.impl.HardwareMonitor;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class HardwareMoniViewTest
+{
+    /** Offset of the MPE scaler in the payloads built by MonitorCreator */
+    private static final int MPE_POS =
+        34 + 2 + (HardwareMonitor.NUM_DATA_ENTRIES * 2) + 4;
+
+    @Test
+    public void testMatchesLoaded()
+        throws Exception
+    {
+        Random rand = new Random(12345);
+
+        HardwareMoniView view = new HardwareMoniView();
+
+        short[] data = new short[HardwareMonitor.NUM_DATA_ENTRIES];
+        for (int n = 0; n < 100; n++) {
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (short) rand.nextInt();
+            }
+
+            final long domId = rand.nextLong() & 0xffffffffffffL;
+            final long time = 1234567890L + n;
+            final int spe = rand.nextInt(100000);
+            final int mpe = rand.nextInt(1000);
+
+            HardwareMonitor mon =
+                MonitorCreator.hardware(domId, time, data, spe, 0);
+            mon.getPayloadBacking().putInt(MPE_POS, mpe);
+
+            final ByteBuffer buf = mon.getPayloadBacking();
+            assertTrue("Cannot read payload#" + n,
+                       HardwareMoniView.canRead(buf));
+            view.wrap(buf);
+
+            mon.loadPayload();
+
+            assertEquals("Bad DOM ID", mon.getDOMID(), view.getDOMID());
+            assertEquals("Bad SPE scaler", mon.getSPEScalar(),
+                         view.getSPEScalar());
+            assertEquals("Bad MPE scaler", mon.getMPEScalar(),
+                         view.getMPEScalar());
+            assertEquals("Bad HV set value", mon.getPMTBaseHVSetValue(),
+                         view.getPMTBaseHVSetValue());
+            assertEquals("Bad HV monitor value",
+                         mon.getPMTBaseHVMonitorValue(),
+                         view.getPMTBaseHVMonitorValue());
+            assertEquals("Bad 5V power supply value",
+                         mon.getADC5VPowerSupply(),
+                         view.getADC5VPowerSupply());
+            assertEquals("Bad MB temperature", mon.getMBTemperature(),
+                         view.getMBTemperature());
+
+            assertEquals("View moved buffer position", 0, buf.position());
+        }
+    }
+
+    @Test
+    public void testCannotRead()
+        throws PayloadException
+    {
+        assertFalse("Should not read null buffer",
+                    HardwareMoniView.canRead(null));
+
+        ASCIIMonitor ascii =
+            MonitorCreator.ascii(123L, 1234567890L, 1, 2, 3, 4);
+        assertFalse("Should not read ASCII record",
+                    HardwareMoniView.canRead(ascii.getPayloadBacking()));
+
+        short[] data = new short[HardwareMonitor.NUM_DATA_ENTRIES];
+        HardwareMonitor mon =
+            MonitorCreator.hardware(123L, 1234567890L, data, 1, 2);
+
+        ByteBuffer shortBuf = mon.getPayloadBacking().duplicate();
+        shortBuf.limit(HardwareMoniView.MIN_LENGTH - 1);
+        assertFalse("Should not read truncated record",
+                    HardwareMoniView.canRead(shortBuf));
+    }
+}
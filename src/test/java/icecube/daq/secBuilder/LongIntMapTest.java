@@ -0,0 +1,79 @@
+package icecube.daq.secBuilder;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class LongIntMapTest
+{
+    @Test
+    public void testPutGet()
+    {
+        LongIntMap map = new LongIntMap(4);
+        assertEquals("Bad initial size", 0, map.size());
+        assertEquals("Missing key should return default", -1,
+                     map.get(123L, -1));
+
+        map.put(123L, 1);
+        map.put(0L, 2);
+        map.put(-456L, 3);
+        assertEquals("Bad size", 3, map.size());
+        assertEquals("Bad value", 1, map.get(123L, -1));
+        assertEquals("Bad value", 2, map.get(0L, -1));
+        assertEquals("Bad value", 3, map.get(-456L, -1));
+        assertEquals("Missing key should return default", 99,
+                     map.get(124L, 99));
+
+        // replacing a value doesn't add an entry
+        map.put(123L, 10);
+        assertEquals("Bad size", 3, map.size());
+        assertEquals("Bad replaced value", 10, map.get(123L, -1));
+
+        assertEquals("Bad incremented value", 11, map.increment(123L));
+        assertEquals("New key should start at zero", 1,
+                     map.increment(789L));
+        assertEquals("Bad size", 4, map.size());
+
+        map.clear();
+        assertEquals("Bad size after clear", 0, map.size());
+        assertEquals("Cleared key should return default", -1,
+                     map.get(123L, -1));
+    }
+
+    @Test
+    public void testEmptyKey()
+    {
+        LongIntMap map = new LongIntMap(4);
+        try {
+            map.put(Long.MIN_VALUE, 1);
+            fail("Should not allow the empty marker as a key");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testResize()
+    {
+        LongIntMap map = new LongIntMap(1);
+
+        // keys which differ only in their high bits
+        final int num = 5000;
+        for (int i = 0; i < num; i++) {
+            map.put(((long) i) << 40, i);
+            assertEquals("Bad size after put#" + i, i + 1, map.size());
+        }
+
+        for (int i = 0; i < num; i++) {
+            assertEquals("Bad value for key#" + i, i,
+                         map.get(((long) i) << 40, -1));
+            assertEquals("Bad incremented value for key#" + i, i + 1,
+                         map.increment(((long) i) << 40));
+        }
+        assertEquals("Bad size", num, map.size());
+
+        for (int i = 0; i < num; i++) {
+            assertEquals("Unexpected key#" + i, -1,
+                         map.get((((long) i) << 40) + 1L, -1));
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package icecube.daq.secBuilder;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Compare payload update and bin flush times for the old object-per-DOM
+ * monitoring totals and the parallel-array <tt>MoniAccumulators</tt>.
+ *
+ * This is not run as part of the unit tests.  Run it by hand with
+ * <tt>java -cp target/classes:target/test-classes
+ * icecube.daq.secBuilder.MoniAccumulatorsBenchmark [numDOMs]</tt>
+ */
+public class MoniAccumulatorsBenchmark
+{
+    /** Number of payloads added to each bin */
+    private static final int PAYLOADS_PER_BIN = 200000;
+    /** Number of untimed bins used to warm up the JIT */
+    private static final int WARMUP_BINS = 50;
+    /** Number of timed bins */
+    private static final int TIMED_BINS = 100;
+
+    /**
+     * Per-DOM totals stored the old way, one heap object per DOM
+     */
+    static class DOMTotals
+    {
+        long speTotal;
+        int speCount;
+        long mpeTotal;
+        int mpeCount;
+        long hvTotal;
+        int hvCount;
+        long power5VTotal;
+        int power5VCount;
+        double mbTempTotal;
+        int mbTempCount;
+    }
+
+    /** Sink which keeps the JIT from discarding the flush results */
+    private static double sink;
+
+    private long[] mbids;
+    private int[] payloadDOMs;
+    private short[] payloadValues;
+
+    MoniAccumulatorsBenchmark(int numDOMs)
+    {
+        Random rand = new Random(numDOMs);
+
+        mbids = new long[numDOMs];
+        for (int i = 0; i < numDOMs; i++) {
+            mbids[i] = rand.nextLong() & 0xffffffffffffL;
+        }
+
+        payloadDOMs = new int[PAYLOADS_PER_BIN];
+        payloadValues = new short[PAYLOADS_PER_BIN];
+        for (int i = 0; i < PAYLOADS_PER_BIN; i++) {
+            payloadDOMs[i] = rand.nextInt(numDOMs);
+            payloadValues[i] = (short) rand.nextInt(4096);
+        }
+    }
+
+    /**
+     * Fill and flush bins using one object per DOM
+     *
+     * @param numBins number of bins
+     *
+     * @return elapsed update and flush times (in nanoseconds)
+     */
+    long[] runObjects(int numBins)
+    {
+        HashMap<Long, DOMTotals> map = new HashMap<Long, DOMTotals>();
+        for (long mbid : mbids) {
+            map.put(mbid, new DOMTotals());
+        }
+
+        long updateTime = 0;
+        long flushTime = 0;
+        for (int b = 0; b < numBins; b++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < PAYLOADS_PER_BIN; i++) {
+                DOMTotals tot = map.get(mbids[payloadDOMs[i]]);
+                final short val = payloadValues[i];
+
+                tot.speTotal += val;
+                tot.speCount++;
+                tot.mpeTotal += val >> 4;
+                tot.mpeCount++;
+                tot.hvTotal += val;
+                tot.hvCount++;
+                tot.power5VTotal += val;
+                tot.power5VCount++;
+                tot.mbTempTotal += val * 0.0625;
+                tot.mbTempCount++;
+            }
+
+            final long mid = System.nanoTime();
+            double total = 0.0;
+            for (DOMTotals tot : map.values()) {
+                if (tot.speCount > 0) {
+                    total += (double) tot.speTotal / (double) tot.speCount;
+                    total += (double) tot.mpeTotal / (double) tot.mpeCount;
+                    total += (double) tot.hvTotal / (double) tot.hvCount;
+                    total += tot.mbTempTotal / (double) tot.mbTempCount;
+                }
+                tot.speTotal = 0;
+                tot.speCount = 0;
+                tot.mpeTotal = 0;
+                tot.mpeCount = 0;
+                tot.hvTotal = 0;
+                tot.hvCount = 0;
+                tot.mbTempTotal = 0.0;
+                tot.mbTempCount = 0;
+            }
+            sink += total;
+
+            final long end = System.nanoTime();
+            updateTime += mid - start;
+            flushTime += end - mid;
+        }
+
+        return new long[] { updateTime, flushTime };
+    }
+
+    /**
+     * Fill and flush bins using parallel arrays
+     *
+     * @param numBins number of bins
+     *
+     * @return elapsed update and flush times (in nanoseconds)
+     */
+    long[] runArrays(int numBins)
+    {
+        LongIntMap ordinals = new LongIntMap(mbids.length);
+        for (int i = 0; i < mbids.length; i++) {
+            ordinals.put(mbids[i], i);
+        }
+
+        MoniAccumulators tot = new MoniAccumulators(mbids.length);
+
+        long updateTime = 0;
+        long flushTime = 0;
+        for (int b = 0; b < numBins; b++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < PAYLOADS_PER_BIN; i++) {
+                final int ord = ordinals.get(mbids[payloadDOMs[i]], -1);
+                final short val = payloadValues[i];
+
+                tot.speTotal[ord] += val;
+                tot.speCount[ord]++;
+                tot.mpeTotal[ord] += val >> 4;
+                tot.mpeCount[ord]++;
+                tot.hvTotal[ord] += val;
+                tot.hvCount[ord]++;
+                tot.power5VTotal[ord] += val;
+                tot.power5VCount[ord]++;
+                tot.mbTempTotal[ord] += val * 0.0625;
+                tot.mbTempCount[ord]++;
+            }
+
+            final long mid = System.nanoTime();
+            double total = 0.0;
+            for (int i = 0; i < tot.getNumDOMs(); i++) {
+                if (tot.speCount[i] > 0) {
+                    total += (double) tot.speTotal[i] /
+                        (double) tot.speCount[i];
+                    total += (double) tot.mpeTotal[i] /
+                        (double) tot.mpeCount[i];
+                    total += (double) tot.hvTotal[i] /
+                        (double) tot.hvCount[i];
+                    total += tot.mbTempTotal[i] /
+                        (double) tot.mbTempCount[i];
+                }
+                tot.clearScalers(i);
+                tot.hvTotal[i] = 0;
+                tot.hvCount[i] = 0;
+                tot.mbTempTotal[i] = 0.0;
+                tot.mbTempCount[i] = 0;
+            }
+            sink += total;
+
+            final long end = System.nanoTime();
+            updateTime += mid - start;
+            flushTime += end - mid;
+        }
+
+        return new long[] { updateTime, flushTime };
+    }
+
+    public static void main(String[] args)
+    {
+        int numDOMs = 5160;
+        if (args.length > 0) {
+            numDOMs = Integer.parseInt(args[0]);
+        }
+
+        MoniAccumulatorsBenchmark bench =
+            new MoniAccumulatorsBenchmark(numDOMs);
+
+        // alternate the layouts so both get the same JIT treatment
+        bench.runObjects(WARMUP_BINS);
+        bench.runArrays(WARMUP_BINS);
+
+        final long[] objTimes = bench.runObjects(TIMED_BINS);
+        final long[] arrTimes = bench.runArrays(TIMED_BINS);
+
+        final double updates = (double) PAYLOADS_PER_BIN * TIMED_BINS;
+        System.out.printf("%d DOMs, %d bins of %d payloads%n", numDOMs,
+                          TIMED_BINS, PAYLOADS_PER_BIN);
+        System.out.printf("update: objects %.2f ns/payload," +
+                          " arrays %.2f ns/payload%n",
+                          objTimes[0] / updates, arrTimes[0] / updates);
+        System.out.printf("flush:  objects %.1f us/bin," +
+                          " arrays %.1f us/bin%n",
+                          objTimes[1] / (TIMED_BINS * 1000.0),
+                          arrTimes[1] / (TIMED_BINS * 1000.0));
+        System.out.println("(sink " + sink + ")");
+    }
+}
@@ -12,6 +12,7 @@ import icecube.daq.payload.PayloadRegistry;
 import icecube.daq.payload.impl.ASCIIMonitor;
 import icecube.daq.payload.impl.HardwareMonitor;
 import icecube.daq.payload.impl.Monitor;
+import icecube.daq.payload.impl.UTCTime;
 import icecube.daq.secBuilder.test.AlertData;
 import icecube.daq.secBuilder.test.MockAlerter;
 import icecube.daq.secBuilder.test.MockDOMRegistry;
@@ -375,6 +376,19 @@ public class MoniAnalysisTest
 
     private void runTest(MockDOMRegistry reg)
         throws MoniException, PayloadException
+    {
+        runTest(reg, 0);
+    }
+
+    private void runTest(MockDOMRegistry reg, int fastSeconds)
+        throws MoniException, PayloadException
+    {
+        runTest(reg, fastSeconds, StringReducer.DEFAULT_THRESHOLD);
+    }
+
+    private void runTest(MockDOMRegistry reg, int fastSeconds,
+                         int parallelDOMs)
+        throws MoniException, PayloadException
     {
         MockDispatcher disp = new MockDispatcher();
         disp.setDispatchDestStorage(tempDir);
@@ -384,6 +398,8 @@ public class MoniAnalysisTest
         MoniAnalysis ma = new MoniAnalysis(disp);
         ma.setDOMRegistry(reg);
         ma.setAlertQueue(aq);
+        ma.setBinWidths(MoniAnalysis.DEFAULT_BIN_SECONDS, fastSeconds);
+        ma.setParallelThreshold(parallelDOMs);
 
         MoniValidator validator = new MoniValidator(reg);
 
@@ -414,6 +430,20 @@ public class MoniAnalysisTest
         // save last sets of counts
         validator.endBin();
 
+        if (fastSeconds > 0) {
+            final long fastTicks = fastSeconds * MonitorCreator.ONE_SECOND;
+            final int numFast = (int) ((stopTick - startTick) / fastTicks) + 1;
+
+            assertEquals("Unexpected fast SPE alert count", numFast,
+                         alerter.countAlerts(MoniAnalysis.SPE_FAST_MONI_NAME));
+            assertEquals("Unexpected fast MPE alert count", numFast,
+                         alerter.countAlerts(MoniAnalysis.MPE_FAST_MONI_NAME));
+
+            alerter.clear(MoniAnalysis.SPE_FAST_MONI_NAME);
+            alerter.clear(MoniAnalysis.MPE_FAST_MONI_NAME);
+        }
+
+        // binned values should be the same with or without fast bins
         checkCounts(alerter, startTick, stopTick, validator);
     }
 
@@ -619,6 +649,126 @@ public class MoniAnalysisTest
         checkCounts(alerter, startTick, stopTick, null);
     }
 
+    @Test
+    public void testFastBins()
+        throws MoniException, PayloadException
+    {
+        MockDOMRegistry reg = buildDOMRegistry(false);
+
+        runTest(reg, 60);
+    }
+
+    @Test
+    public void testLatePayloads()
+        throws MoniException, PayloadException
+    {
+        MockDOMRegistry reg = buildDOMRegistry(false);
+
+        AlertQueue aq = new AlertQueue(alerter);
+
+        MoniAnalysis ma = new MoniAnalysis(new MockDispatcher());
+        ma.setDOMRegistry(reg);
+        ma.setAlertQueue(aq);
+        ma.setLateness(30);
+
+        MoniValidator validator = new MoniValidator(reg);
+
+        MoniGenerator gen = new MoniGenerator(7, 1234567890, 11, 1200);
+
+        // validate in time order
+        ArrayList<Monitor> list = new ArrayList<Monitor>();
+        for (Monitor mon : gen) {
+            validator.setTime(gen.itemNumber());
+            validator.add(mon);
+            list.add(mon);
+        }
+        validator.endBin();
+
+        // delay every seventh record (except the first, which sets the
+        //  bin boundaries) by ten seconds
+        final int delay = 10;
+        for (int i = 7; i + delay < list.size(); i += 7) {
+            list.add(i + delay, list.remove(i));
+        }
+
+        long startTick = Long.MIN_VALUE;
+        long stopTick = Long.MIN_VALUE;
+        for (Monitor mon : list) {
+            ma.gatherMonitoring(mon);
+
+            if (startTick == Long.MIN_VALUE || mon.getUTCTime() < startTick) {
+                startTick = mon.getUTCTime();
+            }
+            if (mon.getUTCTime() > stopTick) {
+                stopTick = mon.getUTCTime();
+            }
+        }
+
+        assertTrue("Should have seen late payloads", ma.getNumLate() > 0);
+        assertEquals("Should not have dropped payloads", 0L,
+                     ma.getNumDroppedLate());
+
+        ma.finishMonitoring(stopTick);
+
+        aq.stopAndWait();
+
+        checkCounts(alerter, startTick, stopTick, validator);
+    }
+
+    @Test
+    public void testStalledAlertQueue()
+        throws InterruptedException
+    {
+        MockDOMRegistry reg = buildDOMRegistry(false);
+
+        // nothing is delivered until the test releases the queue
+        RecordingQueue aq = new RecordingQueue();
+        aq.hold();
+
+        System.setProperty("moniAlertsInFlight", "1");
+        final MoniAnalysis ma;
+        try {
+            ma = new MoniAnalysis(new MockDispatcher());
+        } finally {
+            System.clearProperty("moniAlertsInFlight");
+        }
+        ma.setDOMRegistry(reg);
+        ma.setAlertQueue(aq);
+
+        final Exception[] failure = new Exception[1];
+        Thread gatherer = new Thread("StalledGatherer") {
+                @Override
+                public void run()
+                {
+                    MoniGenerator gen =
+                        new MoniGenerator(7, 1234567890, 11, 1200);
+                    try {
+                        for (Monitor mon : gen) {
+                            ma.gatherMonitoring(mon);
+                        }
+                    } catch (MoniException me) {
+                        failure[0] = me;
+                    }
+                }
+            };
+        gatherer.start();
+
+        try {
+            gatherer.join(30000L);
+            assertFalse("Monitoring is stalled behind the alert queue",
+                        gatherer.isAlive());
+            assertNull("Monitoring failed", failure[0]);
+            assertTrue("Alerts should have been dropped",
+                       ma.getNumDroppedAlerts() > 0L);
+        } finally {
+            aq.release();
+            ma.close();
+
+            // ignore the "Dropped" errors
+            appender.clear();
+        }
+    }
+
     @Test
     public void testInIce()
         throws MoniException, PayloadException
@@ -721,6 +871,172 @@ public class MoniAnalysisTest
         }
     }
 
+    @Test
+    public void testSnapshot()
+        throws MoniException, PayloadException
+    {
+        final long domId = 0x123456789ABCL;
+
+        MockDOMRegistry reg = new MockDOMRegistry();
+        reg.addDom(domId, 11, 11);
+        reg.addDom(domId + 1, 11, 12);
+
+        AlertQueue aq = new AlertQueue(alerter);
+
+        MoniAnalysis ma = new MoniAnalysis(new MockDispatcher());
+        ma.setDOMRegistry(reg);
+        ma.setAlertQueue(aq);
+        ma.setBinWidths(MoniAnalysis.DEFAULT_BIN_SECONDS, 60);
+
+        MoniBinSnapshot snap = new MoniBinSnapshot(ma);
+        assertNull("Should not have a bin before the first payload",
+                   snap.getBinStartTime());
+        assertTrue("Should not have values before the first payload",
+                   snap.getSPERate().isEmpty());
+
+        short[] data = new short[HardwareMonitor.NUM_DATA_ENTRIES];
+
+        // cross a fast bin boundary so both sets of totals are read
+        final long baseTime = 1234567890;
+        final int numPayloads = 10;
+        long scalarTotal = 0;
+        long stopTick = baseTime;
+        for (int i = 0; i < numPayloads; i++) {
+            stopTick = baseTime + ((long) i * 10 * MonitorCreator.ONE_SECOND);
+
+            // MonitorCreator writes the SPE value to both scalers
+            final int scalar = i + 10;
+            scalarTotal += scalar;
+
+            ma.gatherMonitoring(MonitorCreator.hardware(domId, stopTick,
+                                                        data, scalar,
+                                                        scalar));
+        }
+
+        final String omId = "11-11";
+
+        assertEquals("Bad bin start", UTCTime.toDateString(baseTime),
+                     snap.getBinStartTime());
+
+        Map<String, Double> spe = snap.getSPERate();
+        assertEquals("Bad number of SPE rates", 1, spe.size());
+        assertEquals("Bad SPE rate", (double) scalarTotal / numPayloads,
+                     spe.get(omId), 0.000001);
+
+        Map<String, Double> mpe = snap.getMPERate();
+        assertEquals("Bad MPE rate", (double) scalarTotal / numPayloads,
+                     mpe.get(omId), 0.000001);
+
+        assertTrue("Missing HV difference",
+                   snap.getHVDifference().containsKey(omId));
+        assertTrue("Missing temperature",
+                   snap.getMBTemperature().containsKey(omId));
+        assertTrue("Missing power",
+                   snap.getPowerSupplyVoltage().containsKey(omId));
+        assertTrue("Should not have deadtime",
+                   snap.getDeadtime().isEmpty());
+        assertEquals("Should not have failed", 0L,
+                     snap.getNumFailedSnapshots());
+
+        ma.finishMonitoring(stopTick);
+
+        aq.stopAndWait();
+
+        // only the snapshots are checked here
+        for (String name : alerter.getNames()) {
+            alerter.clear(name);
+        }
+
+        assertNull("Should not have a bin after the run",
+                   snap.getBinStartTime());
+        assertTrue("Should not have values after the run",
+                   snap.getSPERate().isEmpty());
+    }
+
+    @Test
+    public void testUnreadableHardwareView()
+        throws MoniException, PayloadException
+    {
+        final long domId = 0x123456789ABCL;
+
+        MockDOMRegistry reg = new MockDOMRegistry();
+        reg.addDom(domId, 11, 11);
+
+        AlertQueue viewQueue = new AlertQueue(alerter);
+        MoniAnalysis viewMA = new MoniAnalysis(new MockDispatcher());
+        viewMA.setDOMRegistry(reg);
+        viewMA.setAlertQueue(viewQueue);
+
+        AlertQueue loadedQueue = new AlertQueue(alerter);
+        MoniAnalysis loadedMA = new MoniAnalysis(new MockDispatcher());
+        loadedMA.setDOMRegistry(reg);
+        loadedMA.setAlertQueue(loadedQueue);
+
+        short[] data = new short[HardwareMonitor.NUM_DATA_ENTRIES];
+        for (int di = 0; di < data.length; di++) {
+            data[di] = (short) (1000 + (di * 17));
+        }
+
+        final long baseTime = 1234567890;
+        long stopTick = baseTime;
+        for (int i = 0; i < 10; i++) {
+            stopTick = baseTime + ((long) i * 10 * MonitorCreator.ONE_SECOND);
+            data[0] = (short) i;
+
+            viewMA.gatherMonitoring(MonitorCreator.hardware(domId, stopTick,
+                                                            data, i + 10,
+                                                            i + 10));
+
+            // load the payload, then break the bytes read by the view
+            HardwareMonitor hard =
+                MonitorCreator.hardware(domId, stopTick, data, i + 10,
+                                        i + 10);
+            hard.loadPayload();
+            hard.getPayloadBacking().putShort(
+                HardwareMoniView.RECORD_TYPE_OFFSET, (short) 0);
+            assertFalse("View should not read the damaged payload",
+                        HardwareMoniView.canRead(hard.getPayloadBacking()));
+
+            loadedMA.gatherMonitoring(hard);
+        }
+
+        MoniBinSnapshot viewSnap = new MoniBinSnapshot(viewMA);
+        MoniBinSnapshot loadedSnap = new MoniBinSnapshot(loadedMA);
+
+        assertFalse("Should have SPE rates", viewSnap.getSPERate().isEmpty());
+        assertEquals("Bad SPE rates", viewSnap.getSPERate(),
+                     loadedSnap.getSPERate());
+        assertEquals("Bad MPE rates", viewSnap.getMPERate(),
+                     loadedSnap.getMPERate());
+        assertEquals("Bad HV differences", viewSnap.getHVDifference(),
+                     loadedSnap.getHVDifference());
+        assertEquals("Bad temperatures", viewSnap.getMBTemperature(),
+                     loadedSnap.getMBTemperature());
+        assertEquals("Bad power", viewSnap.getPowerSupplyVoltage(),
+                     loadedSnap.getPowerSupplyVoltage());
+
+        viewMA.finishMonitoring(stopTick);
+        loadedMA.finishMonitoring(stopTick);
+
+        viewQueue.stopAndWait();
+        loadedQueue.stopAndWait();
+
+        // only the gathered values are checked here
+        for (String name : alerter.getNames()) {
+            alerter.clear(name);
+        }
+    }
+
+    @Test
+    public void testParallelFlush()
+        throws MoniException, PayloadException
+    {
+        MockDOMRegistry reg = buildDOMRegistry(false);
+
+        // split every flush by string
+        runTest(reg, 60, 1);
+    }
+
     @Test
     public void testPayloadException()
         throws MoniException, PayloadException
@@ -910,6 +1226,7 @@ class MoniValidator
                 final double diff = val - e.getValue().baseVoltage;
                 assertEquals("Bad " + omID + " HV voltage",
                              diff, valueMap.get(omID).doubleValue(), 0.001);
+                validateSpread(ad, omID, "HV");
             }
         }
     }
@@ -960,6 +1277,7 @@ class MoniValidator
                            valueMap.containsKey(omID));
                 assertEquals("Bad " + omID + " Power value",
                              val, valueMap.get(omID).doubleValue(), 0.001);
+                validateSpread(ad, omID, "Power");
             }
         }
     }
@@ -990,6 +1308,31 @@ class MoniValidator
         }
     }
 
+    private void validateSpread(AlertData ad, String omID, String name)
+    {
+        Map<String, Double> valueMap =
+            ad.getMap(MoniAnalysis.MONI_VALUE_FIELD);
+        Map<String, Double> devMap =
+            ad.getMap(MoniAnalysis.MONI_STDDEV_FIELD);
+        Map<String, Double> minMap = ad.getMap(MoniAnalysis.MONI_MIN_FIELD);
+        Map<String, Double> maxMap = ad.getMap(MoniAnalysis.MONI_MAX_FIELD);
+
+        assertTrue("Missing " + name + " stddev for " + omID,
+                   devMap.containsKey(omID));
+        assertTrue("Missing " + name + " minimum for " + omID,
+                   minMap.containsKey(omID));
+        assertTrue("Missing " + name + " maximum for " + omID,
+                   maxMap.containsKey(omID));
+
+        final double val = valueMap.get(omID).doubleValue();
+        assertTrue("Negative " + name + " stddev for " + omID,
+                   devMap.get(omID).doubleValue() >= 0.0);
+        assertTrue("Bad " + name + " minimum for " + omID,
+                   minMap.get(omID).doubleValue() <= val + 0.001);
+        assertTrue("Bad " + name + " maximum for " + omID,
+                   maxMap.get(omID).doubleValue() >= val - 0.001);
+    }
+
     private void validateTemp(AlertData ad,
                               Map<DOMInfo, MoniTotals> expMap)
     {
@@ -1010,6 +1353,7 @@ class MoniValidator
                     (double) e.getValue().hardCount;
                 assertEquals("Bad " + omID + " temperature",
                              avg, valueMap.get(omID).doubleValue(), 0.001);
+                validateSpread(ad, omID, "temperature");
             }
         }
     }
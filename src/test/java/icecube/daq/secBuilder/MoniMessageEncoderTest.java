@@ -0,0 +1,250 @@
+package icecube.daq.secBuilder;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class MoniMessageEncoderTest
+{
+    private Gson gson = new Gson();
+
+    private static ArrayList<String> buildOmIDs(int num, long seed)
+    {
+        ArrayList<String> list = new ArrayList<String>();
+        for (int str = 1; list.size() < num; str++) {
+            for (int pos = 1; pos <= 66 && list.size() < num; pos++) {
+                list.add(str + "-" + pos);
+            }
+        }
+
+        Collections.shuffle(list, new Random(seed));
+        return list;
+    }
+
+    private void compare(ArrayList<String> keys, int numDups)
+    {
+        Random rand = new Random(keys.size());
+
+        HashMap<String, Double> expMap = new HashMap<String, Double>();
+        MoniMessageEncoder enc = new MoniMessageEncoder();
+
+        for (String key : keys) {
+            final double val = rand.nextDouble() * 1000.0;
+            expMap.put(key, val);
+            enc.add(key, val);
+        }
+
+        // report some values twice
+        for (int i = 0; i < numDups; i++) {
+            final String key = keys.get(rand.nextInt(keys.size()));
+            final double val = rand.nextDouble();
+            expMap.put(key, val);
+            enc.add(key, val);
+        }
+
+        Map<String, Double> map = enc.build();
+        assertEquals("Bad map size", expMap.size(), map.size());
+        assertEquals("Bad key order for " + keys.size() + " keys",
+                     new ArrayList<String>(expMap.keySet()),
+                     new ArrayList<String>(map.keySet()));
+        assertEquals("Bad value order for " + keys.size() + " keys",
+                     new ArrayList<Double>(expMap.values()),
+                     new ArrayList<Double>(map.values()));
+        assertEquals("Bad JSON for " + keys.size() + " keys",
+                     gson.toJson(expMap), gson.toJson(map));
+
+        // compare the complete message as well
+        HashMap<String, Object> expMsg = new HashMap<String, Object>();
+        expMsg.put("version", 0);
+        expMsg.put(MoniAnalysis.MONI_VALUE_FIELD, expMap);
+
+        HashMap<String, Object> msg = new HashMap<String, Object>();
+        msg.put("version", 0);
+        msg.put(MoniAnalysis.MONI_VALUE_FIELD, map);
+
+        assertEquals("Bad message JSON for " + keys.size() + " keys",
+                     gson.toJson(expMsg), gson.toJson(msg));
+    }
+
+    /**
+     * Build a message the way <tt>MoniAnalysis</tt> does, once with
+     * <tt>HashMap</tt>s and once with encoders, and compare the JSON
+     */
+    private void compareMessage(String varname, int version,
+                                String[] fields, ArrayList<String> keys)
+    {
+        Random rand = new Random(varname.hashCode() + keys.size());
+
+        HashMap<String, Object> expMsg = new HashMap<String, Object>();
+        HashMap<String, Object> msg = new HashMap<String, Object>();
+        for (HashMap<String, Object> m : Arrays.asList(expMsg, msg)) {
+            m.put(MoniAnalysis.BIN_START_NAME, "2026-10-19 12:00:00.0000");
+            m.put(MoniAnalysis.BIN_STOP_NAME, "2026-10-19 12:10:00.0000");
+            m.put("version", version);
+            m.put("runNumber", 123456);
+        }
+
+        for (String field : fields) {
+            HashMap<String, Double> expMap = new HashMap<String, Double>();
+            MoniMessageEncoder enc = new MoniMessageEncoder();
+            for (int i = 0; i < keys.size(); i++) {
+                double val = (rand.nextDouble() - 0.25) * 1000.0;
+                if (i % 5 == 0) {
+                    // whole numbers are written differently
+                    val = Math.rint(val);
+                }
+
+                expMap.put(keys.get(i), val);
+                enc.add(keys.get(i), val);
+            }
+
+            expMsg.put(field, expMap);
+            msg.put(field, enc.build());
+        }
+
+        assertEquals("Bad " + varname + " JSON for " + keys.size() +
+                     " DOMs", gson.toJson(expMsg), gson.toJson(msg));
+    }
+
+    @Test
+    public void testMessageTypes()
+    {
+        final String[] valueFields = new String[] {
+            MoniAnalysis.MONI_VALUE_FIELD,
+        };
+        final String[] spreadFields = new String[] {
+            MoniAnalysis.MONI_VALUE_FIELD, MoniAnalysis.MONI_STDDEV_FIELD,
+            MoniAnalysis.MONI_MIN_FIELD, MoniAnalysis.MONI_MAX_FIELD,
+        };
+        final String[] rateFields = new String[] {
+            MoniAnalysis.MONI_RATE_FIELD, MoniAnalysis.MONI_ERROR_FIELD,
+        };
+
+        final String[] names = new String[] {
+            MoniAnalysis.DEADTIME_MONI_NAME, MoniAnalysis.HVDIFF_MONI_NAME,
+            MoniAnalysis.MBTEMP_MONI_NAME, MoniAnalysis.POWER_MONI_NAME,
+            MoniAnalysis.SPE_MONI_NAME, MoniAnalysis.MPE_MONI_NAME,
+            MoniAnalysis.SPE_FAST_MONI_NAME, MoniAnalysis.MPE_FAST_MONI_NAME,
+        };
+        final int[] versions = new int[] {
+            MoniAnalysis.DEADTIME_MONI_VERSION, MoniAnalysis.HV_MONI_VERSION,
+            MoniAnalysis.MBTEMP_MONI_VERSION, MoniAnalysis.POWER_MONI_VERSION,
+            MoniAnalysis.SPE_MPE_MONI_VERSION,
+            MoniAnalysis.SPE_MPE_MONI_VERSION,
+            MoniAnalysis.SPE_MPE_FAST_MONI_VERSION,
+            MoniAnalysis.SPE_MPE_FAST_MONI_VERSION,
+        };
+        final String[][] fields = new String[][] {
+            valueFields, spreadFields, spreadFields, spreadFields,
+            rateFields, rateFields, rateFields, rateFields,
+        };
+
+        final int[] sizes = new int[] { 1, 12, 13, 60, 97, 1000, 5160 };
+        for (int s = 0; s < sizes.length; s++) {
+            final ArrayList<String> keys = buildOmIDs(sizes[s], s);
+            for (int i = 0; i < names.length; i++) {
+                compareMessage(names[i], versions[i], fields[i], keys);
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        MoniMessageEncoder enc = new MoniMessageEncoder();
+        assertTrue("Encoder should be empty", enc.isEmpty());
+        assertEquals("Bad JSON", "{}", gson.toJson(enc.build()));
+    }
+
+    @Test
+    public void testSizes()
+    {
+        final int[] sizes = new int[] { 1, 12, 13, 24, 25, 100, 5160 };
+        for (int i = 0; i < sizes.length; i++) {
+            compare(buildOmIDs(sizes[i], i), 0);
+        }
+    }
+
+    @Test
+    public void testResizeThresholds()
+    {
+        // HashMap doubles its table when it holds more than 3/4 of the slots
+        long seed = 100L;
+        for (int threshold = 12; threshold < 8000; threshold *= 2) {
+            for (int num = threshold - 1; num <= threshold + 1; num++) {
+                compare(buildOmIDs(num, seed++), 0);
+
+                // replaced values push the encoder past the threshold
+                compare(buildOmIDs(num, seed++), 3);
+            }
+        }
+    }
+
+    @Test
+    public void testLookup()
+    {
+        ArrayList<String> keys = buildOmIDs(1000, 3);
+
+        MoniMessageEncoder enc = new MoniMessageEncoder();
+        for (int i = 0; i < keys.size(); i++) {
+            enc.add(keys.get(i), (double) i);
+        }
+        enc.add(keys.get(7), -1.0);
+
+        Map<String, Double> map = enc.build();
+        for (int i = 0; i < keys.size(); i++) {
+            final String key = keys.get(i);
+            assertTrue("Map should contain " + key, map.containsKey(key));
+
+            final double exp = (i == 7 ? -1.0 : (double) i);
+            assertEquals("Bad value for " + key, exp, map.get(key), 0.0);
+        }
+
+        assertFalse("Map should not contain missing key",
+                    map.containsKey("99-99"));
+        assertNull("Missing key should not have a value", map.get("99-99"));
+        assertFalse("Map should not contain non-string key",
+                    map.containsKey(Integer.valueOf(1)));
+        assertNull("Non-string key should not have a value",
+                   map.get(Integer.valueOf(1)));
+        assertNull("Null key should not have a value", map.get(null));
+
+        Map<String, Double> empty = new MoniMessageEncoder().build();
+        assertFalse("Empty map should not contain keys",
+                    empty.containsKey("1-1"));
+    }
+
+    @Test
+    public void testDuplicates()
+    {
+        compare(buildOmIDs(13, 1), 3);
+        compare(buildOmIDs(5160, 2), 40);
+    }
+
+    @Test
+    public void testReuse()
+    {
+        MoniMessageEncoder enc = new MoniMessageEncoder();
+
+        enc.add("1-1", 1.0);
+        enc.add("1-2", 2.0);
+        Map<String, Double> first = enc.build();
+
+        enc.reset();
+        enc.add("2-1", 3.0);
+        Map<String, Double> second = enc.build();
+
+        assertEquals("First map changed after reuse", 2, first.size());
+        assertEquals("Bad first value", 2.0, first.get("1-2"), 0.0);
+        assertEquals("Bad second map size", 1, second.size());
+        assertEquals("Bad second value", 3.0, second.get("2-1"), 0.0);
+    }
+}
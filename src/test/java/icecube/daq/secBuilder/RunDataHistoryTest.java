@@ -0,0 +1,142 @@
+package icecube.daq.secBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class RunDataHistoryTest
+{
+    private File histFile;
+
+    private static long[] buildValues(int runNum)
+    {
+        long[] vals = new long[RunDataHistory.NUM_VALUES];
+        for (int i = 0; i < vals.length; i++) {
+            vals[i] = ((long) runNum * 100L) + i;
+        }
+        return vals;
+    }
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        histFile = File.createTempFile("rundata", ".dat");
+        histFile.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (histFile != null && histFile.exists()) {
+            histFile.delete();
+        }
+    }
+
+    @Test
+    public void testMissing()
+    {
+        RunDataHistory hist = new RunDataHistory(10, null);
+        assertNull("Found data for unknown run", hist.get(123456));
+    }
+
+    @Test
+    public void testEviction()
+    {
+        final int capacity = 10;
+        final int firstRun = 123400;
+
+        RunDataHistory hist = new RunDataHistory(capacity, null);
+        for (int r = firstRun; r < firstRun + (capacity * 3); r++) {
+            hist.put(r, buildValues(r));
+        }
+
+        for (int r = firstRun; r < firstRun + (capacity * 2); r++) {
+            assertNull("Found evicted run " + r, hist.get(r));
+        }
+        for (int r = firstRun + (capacity * 2); r < firstRun + (capacity * 3);
+             r++)
+        {
+            assertArrayEquals("Bad data for run " + r, buildValues(r),
+                              hist.get(r));
+        }
+    }
+
+    @Test
+    public void testReload()
+    {
+        final int capacity = 5;
+        final int firstRun = 123400;
+        final int numRuns = capacity * 9;
+
+        RunDataHistory hist = new RunDataHistory(capacity, histFile);
+        for (int r = firstRun; r < firstRun + numRuns; r++) {
+            hist.put(r, buildValues(r));
+        }
+        hist.close();
+
+        assertTrue("History file was not compacted",
+                   histFile.length() <= capacity * 4 * (4 + 6 * 8));
+
+        RunDataHistory reload = new RunDataHistory(capacity, histFile);
+        for (int r = firstRun + numRuns - capacity; r < firstRun + numRuns;
+             r++)
+        {
+            assertArrayEquals("Bad reloaded data for run " + r,
+                              buildValues(r), reload.get(r));
+        }
+        reload.close();
+    }
+
+    @Test
+    public void testPutAfterClose()
+    {
+        RunDataHistory hist = new RunDataHistory(5, histFile);
+        hist.put(123400, buildValues(123400));
+        hist.close();
+
+        final long len = histFile.length();
+        assertTrue("Nothing was written", len > 0L);
+
+        // values are still remembered, but not written
+        hist.put(123401, buildValues(123401));
+        assertArrayEquals("Bad data for run 123401", buildValues(123401),
+                          hist.get(123401));
+        assertEquals("Closed history file should not grow", len,
+                     histFile.length());
+
+        // closing again is harmless
+        hist.close();
+    }
+
+    @Test
+    public void testPartialRecord()
+        throws IOException
+    {
+        final int runNum = 123456;
+
+        RunDataHistory hist = new RunDataHistory(10, histFile);
+        hist.put(runNum, buildValues(runNum));
+        hist.close();
+
+        // simulate a crash in the middle of writing a record
+        FileOutputStream out = new FileOutputStream(histFile, true);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        RunDataHistory reload = new RunDataHistory(10, histFile);
+        assertArrayEquals("Bad reloaded data", buildValues(runNum),
+                          reload.get(runNum));
+
+        reload.put(runNum + 1, buildValues(runNum + 1));
+        reload.close();
+
+        RunDataHistory third = new RunDataHistory(10, histFile);
+        assertArrayEquals("Bad data after partial record",
+                          buildValues(runNum + 1), third.get(runNum + 1));
+        third.close();
+    }
+}
@@ -0,0 +1,95 @@
+package icecube.daq.secBuilder;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class RunningStatisticsTest
+{
+    @Test
+    public void testMatchesTwoPass()
+    {
+        Random rand = new Random(98765);
+
+        RunningStatistics stats = new RunningStatistics(10, 2);
+
+        final int ordinal = 7;
+        final int kind = 1;
+
+        double[] vals = new double[1000];
+        for (int i = 0; i < vals.length; i++) {
+            vals[i] = 1200.0 + (rand.nextGaussian() * 3.0);
+            assertTrue("Could not add value#" + i,
+                       stats.add(ordinal, kind, vals[i]));
+        }
+
+        double sum = 0.0;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (double v : vals) {
+            sum += v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        final double mean = sum / vals.length;
+
+        double sumSq = 0.0;
+        for (double v : vals) {
+            sumSq += (v - mean) * (v - mean);
+        }
+        final double variance = sumSq / (vals.length - 1);
+
+        assertEquals("Bad count", vals.length, stats.getCount(ordinal, kind));
+        assertEquals("Bad mean", mean, stats.getMean(ordinal, kind), 1.0E-9);
+        assertEquals("Bad variance", variance,
+                     stats.getVariance(ordinal, kind), 1.0E-9);
+        assertEquals("Bad minimum", min, stats.getMin(ordinal, kind), 0.0);
+        assertEquals("Bad maximum", max, stats.getMax(ordinal, kind), 0.0);
+
+        assertEquals("Other quantity should be empty", 0L,
+                     stats.getCount(ordinal, 0));
+        assertEquals("Other DOM should be empty", 0L,
+                     stats.getCount(ordinal - 1, kind));
+
+        stats.clear(ordinal, kind);
+        assertEquals("Count was not cleared", 0L,
+                     stats.getCount(ordinal, kind));
+
+        stats.add(ordinal, kind, 5.0);
+        assertEquals("Bad mean after clear", 5.0,
+                     stats.getMean(ordinal, kind), 0.0);
+        assertEquals("Single value should have no spread", 0.0,
+                     stats.getStdDev(ordinal, kind), 0.0);
+        assertEquals("Bad minimum after clear", 5.0,
+                     stats.getMin(ordinal, kind), 0.0);
+    }
+
+    @Test
+    public void testLargeOffset()
+    {
+        RunningStatistics stats = new RunningStatistics(1, 1);
+
+        // a naive sum-of-squares variance loses everything here
+        final double base = 1.0E9;
+        for (int i = 0; i < 1000; i++) {
+            stats.add(0, 0, base + (i % 2));
+        }
+
+        assertEquals("Bad mean", base + 0.5, stats.getMean(0, 0), 1.0E-6);
+        assertEquals("Bad variance", 0.25 * 1000.0 / 999.0,
+                     stats.getVariance(0, 0), 1.0E-6);
+    }
+
+    @Test
+    public void testBadOrdinal()
+    {
+        RunningStatistics stats = new RunningStatistics(3, 1);
+
+        assertFalse("Should not add negative ordinal",
+                    stats.add(-1, 0, 1.0));
+        assertFalse("Should not add large ordinal", stats.add(3, 0, 1.0));
+        assertEquals("Bad ordinal should have no values", 0L,
+                     stats.getCount(3, 0));
+    }
+}
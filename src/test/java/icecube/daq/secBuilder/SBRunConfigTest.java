@@ -0,0 +1,216 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.juggler.component.DAQCompException;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class SBRunConfigTest
+{
+    private ArrayList<File> files = new ArrayList<File>();
+
+    private File createFile()
+        throws IOException
+    {
+        File file = File.createTempFile("sbRunCfg", ".xml");
+        files.add(file);
+        return file;
+    }
+
+    private static String sbComponent(String body)
+    {
+        return "  <runComponent name=\"secondaryBuilders\">\n" + body +
+            "  </runComponent>\n";
+    }
+
+    private static String stream(String name, String prescale)
+    {
+        return "    <stream name=\"" + name + "\">\n" +
+            "      " + prescale + "\n" +
+            "    </stream>\n";
+    }
+
+    private static void write(File file, String body)
+        throws IOException
+    {
+        FileWriter out = new FileWriter(file);
+        try {
+            out.write("<?xml version=\"1.0\"?>\n<runConfig>\n" + body +
+                      "</runConfig>\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertLoadFails(File file, String expMsg)
+    {
+        try {
+            SBRunConfig.load(file.getPath());
+            fail("Should not load " + file);
+        } catch (DAQCompException dce) {
+            if (expMsg != null) {
+                assertEquals("Bad error message", expMsg, dce.getMessage());
+            }
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testElements()
+        throws DAQCompException, IOException
+    {
+        File file = createFile();
+        write(file, "  <supersaver/>\n" +
+              "  <runComponent name=\"inIceTrigger\">\n" +
+              stream("tcal", "<prescale>99</prescale>") +
+              "  </runComponent>\n" +
+              sbComponent(stream("tcal", "<prescale>5</prescale>") +
+                          stream("sn", "<prescale mode=\"bytesPerSecond\">" +
+                                 "1000</prescale>") +
+                          stream("moni", "<prescale mode=\"perDOM\"/>")));
+
+        SBRunConfig cfg = SBRunConfig.load(file.getPath());
+        assertTrue("Should be a SuperSaver run", cfg.isSuperSaver());
+
+        assertEquals("Bad tcal prescale", "5", cfg.getPrescale("tcal"));
+        assertEquals("Bad tcal mode", "", cfg.getPrescaleMode("tcal"));
+
+        assertEquals("Bad sn prescale", "1000", cfg.getPrescale("sn"));
+        assertEquals("Bad sn mode", "bytesPerSecond",
+                     cfg.getPrescaleMode("sn"));
+
+        // an empty <prescale/> is the same as no prescale
+        assertEquals("Bad moni prescale", "", cfg.getPrescale("moni"));
+        assertEquals("Bad moni mode", "", cfg.getPrescaleMode("moni"));
+
+        assertEquals("Bad unknown prescale", "", cfg.getPrescale("xxx"));
+        assertEquals("Bad unknown mode", "", cfg.getPrescaleMode("xxx"));
+    }
+
+    @Test
+    public void testFirstPrescale()
+        throws DAQCompException, IOException
+    {
+        File file = createFile();
+        write(file, sbComponent(stream("tcal",
+                                       "<prescale mode=\"count\">3" +
+                                       "</prescale>\n" +
+                                       "      <prescale mode=\"perDOM\">7" +
+                                       "</prescale>")));
+
+        SBRunConfig cfg = SBRunConfig.load(file.getPath());
+        assertFalse("Should not be a SuperSaver run", cfg.isSuperSaver());
+        assertEquals("Bad tcal prescale", "3", cfg.getPrescale("tcal"));
+        assertEquals("Bad tcal mode", "count", cfg.getPrescaleMode("tcal"));
+    }
+
+    @Test
+    public void testNestedSuperSaver()
+        throws DAQCompException, IOException
+    {
+        // only a top-level <supersaver/> counts
+        File file = createFile();
+        write(file, sbComponent("    <supersaver/>\n"));
+
+        SBRunConfig cfg = SBRunConfig.load(file.getPath());
+        assertFalse("Should not be a SuperSaver run", cfg.isSuperSaver());
+    }
+
+    @Test
+    public void testTwoSuperSavers()
+        throws IOException
+    {
+        File file = createFile();
+        write(file, "  <supersaver/>\n  <supersaver/>\n" + sbComponent(""));
+
+        assertLoadFails(file, "Found 2 secondaryBuilder <supersaver/> tags" +
+                        " rather than 1 in " + file.getPath());
+    }
+
+    @Test
+    public void testNoComponent()
+        throws IOException
+    {
+        File file = createFile();
+        write(file, "  <runComponent name=\"eventBuilder\"/>\n");
+
+        assertLoadFails(file, "Found 0 secondaryBuilder runComponents" +
+                        " rather than 1 in " + file.getPath());
+    }
+
+    @Test
+    public void testTwoComponents()
+        throws IOException
+    {
+        File file = createFile();
+        write(file, sbComponent("") + sbComponent(""));
+
+        assertLoadFails(file, "Found 2 secondaryBuilder runComponents" +
+                        " rather than 1 in " + file.getPath());
+    }
+
+    @Test
+    public void testBadFiles()
+        throws IOException
+    {
+        File file = createFile();
+
+        FileWriter out = new FileWriter(file);
+        try {
+            out.write("<runConfig><runComponent>");
+        } finally {
+            out.close();
+        }
+
+        assertLoadFails(file, null);
+
+        file.delete();
+        assertLoadFails(file, null);
+    }
+
+    @Test
+    public void testCache()
+        throws DAQCompException, IOException
+    {
+        File file = createFile();
+        write(file, sbComponent(stream("sn", "<prescale>2</prescale>")));
+
+        SBRunConfig cfg = SBRunConfig.load(file.getPath());
+        assertEquals("Bad sn prescale", "2", cfg.getPrescale("sn"));
+        assertSame("Unchanged file should be cached", cfg,
+                   SBRunConfig.load(file.getPath()));
+
+        // same modification time, different length
+        final long modTime = file.lastModified();
+        write(file, sbComponent(stream("sn", "<prescale>22</prescale>")));
+        assertTrue("Cannot set modification time",
+                   file.setLastModified(modTime));
+
+        cfg = SBRunConfig.load(file.getPath());
+        assertEquals("Length change should reload", "22",
+                     cfg.getPrescale("sn"));
+
+        // same length, different modification time
+        write(file, sbComponent(stream("sn", "<prescale>33</prescale>")));
+        assertTrue("Cannot set modification time",
+                   file.setLastModified(modTime - 10000L));
+
+        cfg = SBRunConfig.load(file.getPath());
+        assertEquals("Time change should reload", "33",
+                     cfg.getPrescale("sn"));
+        assertSame("Reloaded file should be cached", cfg,
+                   SBRunConfig.load(file.getPath()));
+    }
+}
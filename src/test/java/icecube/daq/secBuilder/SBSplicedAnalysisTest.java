@@ -0,0 +1,370 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.io.DispatchException;
+import icecube.daq.payload.IPayload;
+import icecube.daq.secBuilder.test.MockDispatcher;
+import icecube.daq.secBuilder.test.MockPayload;
+import icecube.daq.splicer.Spliceable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Payload which counts the number of times it has been recycled
+ */
+class RecycledPayload
+    extends MockPayload
+    implements Spliceable
+{
+    private static final int LENGTH = 32;
+
+    private long utcTime;
+    private ByteBuffer buf;
+    private AtomicInteger numRecycled = new AtomicInteger();
+
+    RecycledPayload(long utcTime)
+    {
+        this.utcTime = utcTime;
+
+        buf = ByteBuffer.allocate(LENGTH);
+        buf.putInt(0, LENGTH);
+        buf.putLong(8, utcTime);
+        buf.putLong(PrescalePolicy.DOM_ID_OFFSET, 0x123456L);
+    }
+
+    @Override
+    public int compareSpliceable(Spliceable spl)
+    {
+        throw new Error("Unimplemented");
+    }
+
+    int getNumRecycled()
+    {
+        return numRecycled.get();
+    }
+
+    @Override
+    public ByteBuffer getPayloadBacking()
+    {
+        return buf;
+    }
+
+    @Override
+    public long getUTCTime()
+    {
+        return utcTime;
+    }
+
+    @Override
+    public int length()
+    {
+        return LENGTH;
+    }
+
+    @Override
+    public void recycle()
+    {
+        numRecycled.incrementAndGet();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RecycledPayload@" + utcTime;
+    }
+}
+
+/**
+ * Analysis which remembers every payload passed to
+ * <tt>gatherMonitoring()</tt>
+ */
+class GatheringAnalysis
+    extends SBSplicedAnalysis
+{
+    private ArrayList<IPayload> gathered = new ArrayList<IPayload>();
+    private int numEarly;
+    private volatile CountDownLatch gate;
+
+    GatheringAnalysis(MockDispatcher dispatcher)
+    {
+        super(dispatcher);
+    }
+
+    @Override
+    public void gatherMonitoring(IPayload payload)
+        throws MoniException
+    {
+        final CountDownLatch latch = gate;
+        if (latch != null) {
+            try {
+                latch.await();
+            } catch (InterruptedException ie) {
+                throw new MoniException("Interrupted");
+            }
+        }
+
+        synchronized (this) {
+            if (((RecycledPayload) payload).getNumRecycled() != 0) {
+                numEarly++;
+            }
+            gathered.add(payload);
+        }
+    }
+
+    synchronized List<IPayload> getGathered()
+    {
+        return new ArrayList<IPayload>(gathered);
+    }
+
+    /**
+     * Get the number of payloads which were recycled before they were
+     * gathered
+     */
+    synchronized int getNumEarly()
+    {
+        return numEarly;
+    }
+
+    /**
+     * Hold monitoring until <tt>release()</tt> is called
+     */
+    void hold()
+    {
+        gate = new CountDownLatch(1);
+    }
+
+    void release()
+    {
+        gate.countDown();
+        gate = null;
+    }
+}
+
+/**
+ * Remember the times of all dispatched payloads
+ */
+class TimeDispatcher
+    extends MockDispatcher
+{
+    private ArrayList<Long> times = new ArrayList<Long>();
+
+    @Override
+    public void dispatchEvent(ByteBuffer buf, long ticks)
+        throws DispatchException
+    {
+        super.dispatchEvent(buf, ticks);
+        times.add(ticks);
+    }
+
+    List<Long> getTimes()
+    {
+        return times;
+    }
+}
+
+public class SBSplicedAnalysisTest
+{
+    private GatheringAnalysis analysis;
+
+    private static List<Spliceable> createList(long firstTime, int num)
+    {
+        ArrayList<Spliceable> list = new ArrayList<Spliceable>(num);
+        for (int i = 0; i < num; i++) {
+            list.add(new RecycledPayload(firstTime + i));
+        }
+        return list;
+    }
+
+    private static void checkRecycled(List<Spliceable> list, int expected)
+    {
+        for (Spliceable spl : list) {
+            final RecycledPayload pay = (RecycledPayload) spl;
+            assertEquals("Bad recycle count for " + pay, expected,
+                         pay.getNumRecycled());
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (analysis != null) {
+            analysis.close();
+        }
+    }
+
+    @Test
+    public void testInline()
+    {
+        MockDispatcher disp = new MockDispatcher();
+        analysis = new GatheringAnalysis(disp);
+
+        List<Spliceable> list = createList(1000L, 10);
+        analysis.analyze(list);
+
+        assertEquals("Bad number dispatched", 10L,
+                     disp.getNumDispatchedEvents());
+        assertEquals("Bad gathered payloads", list, analysis.getGathered());
+        assertEquals("Payloads recycled before gathering", 0,
+                     analysis.getNumEarly());
+        checkRecycled(list, 1);
+        assertEquals("Inline analysis should not allocate batches", 0,
+                     analysis.getNumBatches());
+    }
+
+    @Test
+    public void testPipelined()
+    {
+        MockDispatcher disp = new MockDispatcher();
+        analysis = new GatheringAnalysis(disp);
+        analysis.setPipelined(true);
+
+        // monitoring falls behind dispatching
+        analysis.hold();
+
+        List<Spliceable> list = createList(1000L, 10);
+        analysis.analyze(list);
+
+        assertEquals("Bad number dispatched", 10L,
+                     disp.getNumDispatchedEvents());
+        checkRecycled(list, 0);
+
+        analysis.release();
+        analysis.drainMonitoring();
+
+        assertEquals("Bad gathered payloads", list, analysis.getGathered());
+        assertEquals("Payloads recycled before gathering", 0,
+                     analysis.getNumEarly());
+        checkRecycled(list, 1);
+    }
+
+    @Test
+    public void testBatchReuse()
+    {
+        MockDispatcher disp = new MockDispatcher();
+        analysis = new GatheringAnalysis(disp);
+        analysis.setPipelined(true);
+
+        ArrayList<Spliceable> all = new ArrayList<Spliceable>();
+
+        // vary the list sizes, including lists larger than any earlier list
+        long time = 1000L;
+        for (int i = 0; i < 200; i++) {
+            final int num = 1 + ((i * 37) % 300);
+
+            List<Spliceable> list = createList(time, num);
+            time += num;
+
+            analysis.analyze(list);
+            all.addAll(list);
+        }
+
+        analysis.drainMonitoring();
+
+        assertEquals("Bad number dispatched", (long) all.size(),
+                     disp.getNumDispatchedEvents());
+        assertEquals("Bad gathered payloads", all, analysis.getGathered());
+        assertEquals("Payloads recycled before gathering", 0,
+                     analysis.getNumEarly());
+        checkRecycled(all, 1);
+
+        // one batch may be filling while the others wait for monitoring
+        final int maxBatches = SBSplicedAnalysis.MAX_PENDING_BATCHES + 1;
+        assertTrue("Allocated " + analysis.getNumBatches() +
+                   " batches, expected at most " + maxBatches,
+                   analysis.getNumBatches() <= maxBatches);
+    }
+
+    @Test
+    public void testStopPipelining()
+    {
+        MockDispatcher disp = new MockDispatcher();
+        analysis = new GatheringAnalysis(disp);
+        analysis.setPipelined(true);
+
+        List<Spliceable> first = createList(1000L, 5);
+        analysis.analyze(first);
+
+        // turning pipelining off waits for queued monitoring
+        analysis.setPipelined(false);
+        checkRecycled(first, 1);
+
+        List<Spliceable> second = createList(2000L, 5);
+        analysis.analyze(second);
+        checkRecycled(second, 1);
+
+        ArrayList<Spliceable> all = new ArrayList<Spliceable>(first);
+        all.addAll(second);
+        assertEquals("Bad gathered payloads", all, analysis.getGathered());
+    }
+
+    /**
+     * Feed lists of different sizes to a prescaled analysis and compare
+     * the dispatched payloads with the original "count to N" prescaler,
+     * which kept the Nth, 2Nth, ... payloads regardless of list boundaries
+     */
+    private void checkPrescale(long preScale, boolean pipelined)
+    {
+        final int[] sizes = new int[] {
+            1, 2, 5, 0, 7, 1, 1, 10, 4, 3, 64, 2, 9, 300, 1, 13,
+        };
+
+        TimeDispatcher disp = new TimeDispatcher();
+        analysis = new GatheringAnalysis(disp);
+        analysis.setPreScale(preScale);
+        analysis.setPipelined(pipelined);
+
+        ArrayList<Long> expected = new ArrayList<Long>();
+
+        // original prescaler state
+        long preScaleCount = 1;
+
+        long time = 1000L;
+        int total = 0;
+        for (int size : sizes) {
+            List<Spliceable> list = createList(time, size);
+            for (int i = 0; i < size; i++) {
+                if (preScaleCount < preScale) {
+                    preScaleCount++;
+                } else {
+                    preScaleCount = 1;
+                    expected.add(time + i);
+                }
+            }
+
+            analysis.analyze(list);
+            time += size;
+            total += size;
+
+            assertEquals("Bad dispatched payloads after " + total +
+                         " payloads (prescale " + preScale + ")", expected,
+                         disp.getTimes());
+            assertEquals("Bad number prescaled after " + total +
+                         " payloads (prescale " + preScale + ")",
+                         (long) (total - expected.size()),
+                         analysis.getNumPrescaled());
+        }
+
+        analysis.drainMonitoring();
+        assertEquals("Prescaled payloads should still be gathered", total,
+                     analysis.getGathered().size());
+
+        analysis.close();
+        analysis = null;
+    }
+
+    @Test
+    public void testPrescaleAcrossLists()
+    {
+        final long[] preScales = new long[] { 1L, 2L, 3L, 7L, 100L, 1000L };
+        for (long preScale : preScales) {
+            checkPrescale(preScale, false);
+            checkPrescale(preScale, true);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package icecube.daq.secBuilder;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class ScalerHistogramsTest
+{
+    /** Number of DOMs in the full detector */
+    private static final int NUM_DOMS = 5160;
+
+    @Test
+    public void testBudget()
+    {
+        // 5160 DOMs * 2 histograms * 32 buckets * 8 bytes
+        final long expBytes = 2641920L;
+
+        assertEquals("Bad budget", expBytes,
+                     ScalerHistograms.bytesNeeded(NUM_DOMS));
+
+        ScalerHistograms hists = new ScalerHistograms(NUM_DOMS);
+        assertEquals("Bad number of DOMs", NUM_DOMS, hists.getNumDOMs());
+        assertEquals("Arena does not match budget", expBytes, hists.size());
+        assertTrue("Arena is larger than 2.6MB",
+                   hists.size() <= 2600L * 1024L);
+    }
+
+    @Test
+    public void testBuckets()
+    {
+        assertEquals("Bad bucket for -1", 0, ScalerHistograms.bucket(-1));
+        assertEquals("Bad bucket for 0", 0, ScalerHistograms.bucket(0));
+        assertEquals("Bad bucket for 1", 1, ScalerHistograms.bucket(1));
+        assertEquals("Bad bucket for 2", 2, ScalerHistograms.bucket(2));
+        assertEquals("Bad bucket for 3", 2, ScalerHistograms.bucket(3));
+        assertEquals("Bad bucket for 4", 3, ScalerHistograms.bucket(4));
+        assertEquals("Bad bucket for 1023", 10,
+                     ScalerHistograms.bucket(1023));
+        assertEquals("Bad bucket for 1024", 11,
+                     ScalerHistograms.bucket(1024));
+        assertEquals("Bad bucket for MAX_VALUE",
+                     ScalerHistograms.NUM_BUCKETS - 1,
+                     ScalerHistograms.bucket(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testDrain()
+    {
+        ScalerHistograms hists = new ScalerHistograms(3);
+
+        assertNull("Empty histogram should not be encoded",
+                   hists.drain(1, ScalerHistograms.SPE));
+
+        hists.add(1, ScalerHistograms.SPE, 5);
+        hists.add(1, ScalerHistograms.SPE, 6);
+        hists.add(1, ScalerHistograms.SPE, 40);
+        hists.add(1, ScalerHistograms.MPE, 0);
+        hists.add(2, ScalerHistograms.SPE, 1);
+
+        assertArrayEquals("Bad SPE histogram",
+                          new long[] { 3, 2, 0, 0, 1 },
+                          hists.drain(1, ScalerHistograms.SPE));
+        assertArrayEquals("Bad MPE histogram", new long[] { 0, 1 },
+                          hists.drain(1, ScalerHistograms.MPE));
+        assertArrayEquals("Bad neighbor histogram", new long[] { 1, 1 },
+                          hists.drain(2, ScalerHistograms.SPE));
+
+        assertNull("Histogram was not cleared",
+                   hists.drain(1, ScalerHistograms.SPE));
+        assertNull("Unused histogram should be empty",
+                   hists.drain(0, ScalerHistograms.MPE));
+    }
+
+    @Test
+    public void testBadOrdinal()
+    {
+        ScalerHistograms hists = new ScalerHistograms(2);
+
+        assertFalse("Should not add unknown DOM",
+                    hists.add(DOMTable.NO_DOM, ScalerHistograms.SPE, 1));
+        assertFalse("Should not add DOM past end of arena",
+                    hists.add(2, ScalerHistograms.SPE, 1));
+        assertNull("Should not drain unknown DOM",
+                   hists.drain(DOMTable.NO_DOM, ScalerHistograms.SPE));
+    }
+}
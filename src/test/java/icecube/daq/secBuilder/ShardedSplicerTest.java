@@ -0,0 +1,185 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.payload.IPayload;
+import icecube.daq.splicer.SplicedAnalysis;
+import icecube.daq.splicer.SplicerException;
+import icecube.daq.splicer.StrandTail;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Remember everything passed to <tt>analyze()</tt>
+ */
+class MergedAnalysis
+    implements SplicedAnalysis<IPayload>
+{
+    private IPayload lastObject;
+    private ArrayList<IPayload> merged = new ArrayList<IPayload>();
+    private boolean sawLast;
+
+    MergedAnalysis(IPayload lastObject)
+    {
+        this.lastObject = lastObject;
+    }
+
+    @Override
+    public synchronized void analyze(List<IPayload> splicedObjects)
+    {
+        for (IPayload pay : splicedObjects) {
+            if (sawLast) {
+                throw new Error("Received " + pay + " after last object");
+            }
+
+            if (pay == lastObject) {
+                sawLast = true;
+            } else {
+                merged.add(pay);
+            }
+        }
+
+        notifyAll();
+    }
+
+    synchronized List<IPayload> getMerged()
+    {
+        return new ArrayList<IPayload>(merged);
+    }
+
+    /**
+     * Wait for the end-of-stream marker
+     *
+     * @return <tt>true</tt> if the marker was received
+     */
+    synchronized boolean waitForLast(long millis)
+        throws InterruptedException
+    {
+        final long end = System.currentTimeMillis() + millis;
+        while (!sawLast) {
+            final long remaining = end - System.currentTimeMillis();
+            if (remaining <= 0L) {
+                break;
+            }
+            wait(remaining);
+        }
+
+        return sawLast;
+    }
+}
+
+public class ShardedSplicerTest
+{
+    private static final IPayload LAST_OBJECT =
+        new SizedPayload(Long.MAX_VALUE, 0);
+
+    private static final Comparator<IPayload> CMP =
+        new Comparator<IPayload>() {
+            @Override
+            public int compare(IPayload a, IPayload b)
+            {
+                if (a.getUTCTime() < b.getUTCTime()) {
+                    return -1;
+                } else if (a.getUTCTime() > b.getUTCTime()) {
+                    return 1;
+                }
+                return 0;
+            }
+        };
+
+    @Test
+    public void testBadShards()
+    {
+        try {
+            new ShardedSplicer<IPayload>(new MergedAnalysis(LAST_OBJECT), CMP,
+                                         LAST_OBJECT, 0);
+            fail("Should not allow zero shards");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMergedOrder()
+        throws InterruptedException, SplicerException
+    {
+        final int numShards = 3;
+        final int numStrands = 7;
+        final int numPayloads = 2000;
+
+        MergedAnalysis analysis = new MergedAnalysis(LAST_OBJECT);
+        ShardedSplicer<IPayload> splicer =
+            new ShardedSplicer<IPayload>(analysis, CMP, LAST_OBJECT,
+                                         numShards);
+        assertEquals("Bad number of shards", numShards,
+                     splicer.getNumberOfShards());
+
+        // scatter increasing times across the strands so that every shard
+        // holds payloads which must be interleaved with other shards
+        Random rand = new Random(12345L);
+
+        ArrayList<List<IPayload>> lists = new ArrayList<List<IPayload>>();
+        for (int i = 0; i < numStrands; i++) {
+            lists.add(new ArrayList<IPayload>());
+        }
+        for (int t = 1; t <= numPayloads; t++) {
+            lists.get(rand.nextInt(numStrands)).add(new SizedPayload(t, 8));
+        }
+
+        splicer.start();
+
+        ArrayList<StrandTail<IPayload>> tails =
+            new ArrayList<StrandTail<IPayload>>();
+        for (int i = 0; i < numStrands; i++) {
+            tails.add(splicer.beginStrand());
+        }
+        assertEquals("Bad number of strands", numStrands,
+                     splicer.getStrandCount());
+
+        // feed the strands a few payloads at a time, alternating between
+        // single payloads and lists
+        int[] next = new int[numStrands];
+        boolean pushed = true;
+        while (pushed) {
+            pushed = false;
+            for (int i = 0; i < numStrands; i++) {
+                final List<IPayload> list = lists.get(i);
+                if (next[i] >= list.size()) {
+                    continue;
+                }
+
+                final int num = Math.min(1 + rand.nextInt(5),
+                                         list.size() - next[i]);
+                if (num == 1) {
+                    tails.get(i).push(list.get(next[i]));
+                } else {
+                    List<IPayload> sub = list.subList(next[i], next[i] + num);
+                    tails.get(i).push(new ArrayList<IPayload>(sub));
+                }
+                next[i] += num;
+                pushed = true;
+            }
+        }
+
+        for (StrandTail<IPayload> tail : tails) {
+            tail.push(LAST_OBJECT);
+        }
+
+        assertTrue("Did not receive end of merged stream",
+                   analysis.waitForLast(10000L));
+
+        splicer.stop();
+
+        List<IPayload> merged = analysis.getMerged();
+        assertEquals("Bad number of merged payloads", numPayloads,
+                     merged.size());
+        for (int i = 0; i < merged.size(); i++) {
+            assertEquals("Bad merged payload#" + i, (long) (i + 1),
+                         merged.get(i).getUTCTime());
+        }
+    }
+}
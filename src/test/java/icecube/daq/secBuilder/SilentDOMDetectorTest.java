@@ -0,0 +1,124 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.secBuilder.test.MockDOMRegistry;
+
+import java.util.Arrays;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class SilentDOMDetectorTest
+{
+    private static final long INTERVAL = 1000L;
+
+    @Before
+    public void setUp()
+    {
+        MockDOMRegistry reg = new MockDOMRegistry();
+        for (int i = 0; i < 130; i++) {
+            reg.addDom((long) i + 1000L, (i / 60) + 1, (i % 60) + 1);
+        }
+
+        SBSplicedAnalysis.setDOMRegistry(reg);
+    }
+
+    @After
+    public void tearDown()
+    {
+        SBSplicedAnalysis.setDOMRegistry(null);
+    }
+
+    @Test
+    public void testSilent()
+    {
+        SilentDOMDetector det = new SilentDOMDetector(INTERVAL);
+
+        final long start = 5000L;
+        assertFalse("First time should start the interval",
+                    det.isFinished(start));
+
+        // all DOMs except the second, the 65th and the last send data
+        for (int i = 0; i < 130; i++) {
+            if (i != 1 && i != 64 && i != 129) {
+                det.mark((long) i + 1000L);
+            }
+        }
+        det.mark(999999L);
+
+        assertEquals("Bad number of expected DOMs", 130,
+                     det.getNumExpected());
+        assertFalse("Interval should not be finished",
+                    det.isFinished(start + INTERVAL));
+        assertTrue("Interval should be finished",
+                   det.isFinished(start + INTERVAL + 1));
+
+        String[] silent = det.finishInterval(start + INTERVAL + 1);
+        assertNotNull("Should have found silent DOMs", silent);
+
+        // silent DOMs are reported in string and position order
+        assertEquals("Bad silent DOMs", Arrays.asList("1-2", "2-5", "3-10"),
+                     Arrays.asList(silent));
+        assertEquals("Bad next interval", start + INTERVAL,
+                     det.getStartTime());
+
+        // everyone is heard in the next interval
+        for (int i = 0; i < 130; i++) {
+            det.mark((long) i + 1000L);
+        }
+        assertNull("Should not find silent DOMs",
+                   det.finishInterval(start + (INTERVAL * 2) + 1));
+    }
+
+    @Test
+    public void testGap()
+    {
+        SilentDOMDetector det = new SilentDOMDetector(INTERVAL);
+
+        final long start = 5000L;
+        det.isFinished(start);
+        det.mark(1000L);
+
+        // nothing was seen for more than an interval, so don't report
+        final long next = start + (INTERVAL * 3);
+        assertTrue("Interval should be finished", det.isFinished(next));
+        assertNull("Should not report after a gap",
+                   det.finishInterval(next));
+        assertEquals("Should restart at the new time", next,
+                     det.getStartTime());
+    }
+
+    @Test
+    public void testTableChange()
+    {
+        SilentDOMDetector det = new SilentDOMDetector(INTERVAL);
+
+        final long start = 5000L;
+        det.isFinished(start);
+
+        // the first half of the DOMs are heard before the table changes
+        for (int i = 0; i < 65; i++) {
+            det.mark((long) i + 1000L);
+        }
+
+        // a new DOM sorts first and shifts every ordinal, and the last
+        // DOM is removed
+        MockDOMRegistry reg = new MockDOMRegistry();
+        reg.addDom(5000L, 1, 0);
+        for (int i = 0; i < 129; i++) {
+            reg.addDom((long) i + 1000L, (i / 60) + 1, (i % 60) + 1);
+        }
+        SBSplicedAnalysis.setDOMRegistry(reg);
+
+        for (int i = 65; i < 129; i++) {
+            det.mark((long) i + 1000L);
+        }
+        assertEquals("Bad number of expected DOMs", 130,
+                     det.getNumExpected());
+
+        // only the new DOM was never heard
+        String[] silent = det.finishInterval(start + INTERVAL + 1);
+        assertNotNull("Should have found silent DOMs", silent);
+        assertEquals("Bad silent DOMs", Arrays.asList("1-0"),
+                     Arrays.asList(silent));
+    }
+}
@@ -0,0 +1,129 @@
+package icecube.daq.secBuilder;
+
+import icecube.daq.secBuilder.test.MockDOMRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class StringReducerTest
+{
+    private static final int NUM_STRINGS = 5;
+    private static final int DOMS_PER_STRING = 60;
+
+    private DOMTable table;
+
+    /**
+     * Add a value for every DOM in the range
+     */
+    class ValueReduction
+        implements StringReducer.Reduction
+    {
+        @Override
+        public void reduce(int first, int last, StringReducer.Partial part)
+        {
+            for (int i = first; i < last; i++) {
+                final String omId = table.getOmID(i);
+                part.getEncoder(0).add(omId, (double) i);
+                part.getEncoder(3).add(omId, i * 0.5);
+                if (i % 7 == 0) {
+                    part.getHistograms(1).put(omId, new long[] { i });
+                }
+            }
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        // add DOMs out of order so the table has to sort them
+        ArrayList<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < NUM_STRINGS * DOMS_PER_STRING; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(12345));
+
+        MockDOMRegistry reg = new MockDOMRegistry();
+        for (int i : order) {
+            reg.addDom(0x100000L + i, (i / DOMS_PER_STRING) + 1,
+                       (i % DOMS_PER_STRING) + 1);
+        }
+
+        table = new DOMTable(reg);
+    }
+
+    @Test
+    public void testStrings()
+    {
+        assertEquals("Bad number of strings", NUM_STRINGS,
+                     table.getNumStrings());
+        for (int s = 0; s <= NUM_STRINGS; s++) {
+            assertEquals("Bad start for string#" + s, s * DOMS_PER_STRING,
+                         table.getStringStart(s));
+        }
+
+        for (int i = 0; i < table.size(); i++) {
+            final String expOmId = String.format("%d-%d",
+                                                 (i / DOMS_PER_STRING) + 1,
+                                                 (i % DOMS_PER_STRING) + 1);
+            assertEquals("Bad DOM#" + i, expOmId,
+                         table.getDOM(i).getDeploymentLocation());
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSequential()
+    {
+        StringReducer seqReducer =
+            new StringReducer(ForkJoinPool.commonPool(), 0);
+        StringReducer.Partial seq = new StringReducer.Partial();
+        seqReducer.run(table, new ValueReduction(), seq);
+
+        StringReducer parReducer =
+            new StringReducer(ForkJoinPool.commonPool(), 1);
+        StringReducer.Partial par = new StringReducer.Partial();
+
+        // run twice to make sure reused partial results are reset
+        for (int n = 0; n < 2; n++) {
+            par.reset();
+            parReducer.run(table, new ValueReduction(), par);
+
+            for (int e = 0; e < StringReducer.NUM_ENCODERS; e++) {
+                assertMapsEqual("Encoder#" + e, seq.getEncoder(e).build(),
+                                par.getEncoder(e).build());
+            }
+
+            assertEquals("Bad number of histograms",
+                         seq.getHistograms(1).size(),
+                         par.getHistograms(1).size());
+            for (Map.Entry<String, long[]> entry :
+                     seq.getHistograms(1).entrySet())
+            {
+                assertTrue("Bad histogram for " + entry.getKey(),
+                           Arrays.equals(entry.getValue(),
+                                         par.getHistograms(1).
+                                         get(entry.getKey())));
+            }
+        }
+    }
+
+    private static void assertMapsEqual(String name, Map<String, Double> exp,
+                                        Map<String, Double> act)
+    {
+        assertEquals(name + " has bad size", exp.size(), act.size());
+        assertEquals(name + " has bad contents", new HashMap(exp),
+                     new HashMap(act));
+
+        // JSON is written in iteration order
+        assertEquals(name + " has bad order",
+                     new ArrayList<String>(exp.keySet()),
+                     new ArrayList<String>(act.keySet()));
+    }
+}
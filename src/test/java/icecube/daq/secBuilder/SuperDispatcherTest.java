@@ -9,6 +9,8 @@ import icecube.daq.secBuilder.test.MockPayload;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -76,6 +78,24 @@ public class SuperDispatcherTest
         }
     }
 
+    private static long getSequence(File sentinal)
+    {
+        try {
+            for (String line : Files.readAllLines(sentinal.toPath(),
+                                                  StandardCharsets.UTF_8))
+            {
+                if (line.startsWith("sequence ")) {
+                    return Long.parseLong(line.substring(9).trim());
+                }
+            }
+        } catch (IOException ioe) {
+            fail("Cannot read " + sentinal + ": " + ioe);
+        }
+
+        fail("No sequence number in " + sentinal);
+        return -1L;
+    }
+
     private static boolean clearDirectory(File dir)
     {
         if (dir.isDirectory()) {
@@ -209,6 +229,7 @@ public class SuperDispatcherTest
                     stopSentinal.exists());
 
         sdisp.startDispatch(runNumber, false);
+        SuperDispatcher.waitForSentinals();
         assertTrue("Starting sentinal file was not created by start",
                     startSentinal.exists());
         assertFalse("Stopping sentinal file was created by start",
@@ -221,17 +242,127 @@ public class SuperDispatcherTest
                     stopSentinal.exists());
 
         sdisp.stopDispatch();
+        SuperDispatcher.waitForSentinals();
         assertTrue("Starting sentinal file was destroyed by stop",
                     startSentinal.exists());
         assertTrue("Stopping sentinal file was not created by stop",
                     stopSentinal.exists());
 
+        assertTrue("Stopping sentinal was not written after starting" +
+                   " sentinal", getSequence(startSentinal) <
+                   getSequence(stopSentinal));
+        assertFalse("Stopping sentinal is older than starting sentinal",
+                    stopSentinal.lastModified() <
+                    startSentinal.lastModified());
+
         assertEquals("Total dispatched events was not incremented",
                      1, sdisp.getTotalDispatchedEvents());
 
         checkLogMessages(runNumber);
     }
 
+    public void testSyncPolicy()
+        throws DispatchException
+    {
+        final String runNumber = "123457";
+
+        try {
+            testDirectory = createTempDirectory();
+        } catch (IOException ioe) {
+            fail("Cannot create temporary directory");
+        }
+
+        IByteBufferCache bufCache = new MockBufferCache("SyncPolicy");
+
+        final String tstDir = testDirectory.getAbsolutePath();
+        SuperDispatcher sdisp =
+            new SuperDispatcher(tstDir, "physics", bufCache);
+        assertNoLogMessages();
+
+        assertEquals("Bad default routine policy", SuperDispatcher.SYNC_NONE,
+                     sdisp.getSyncPolicy());
+
+        sdisp.setSyncPolicy("bogus", false);
+        assertEquals("Bad number of log messages", 1, getNumberOfMessages());
+        clearMessages();
+        assertEquals("Bad policy was not replaced", SuperDispatcher.SYNC_NONE,
+                     sdisp.getSyncPolicy());
+
+        sdisp.setSyncPolicy("Boundary", false);
+        assertEquals("Bad routine policy", SuperDispatcher.SYNC_BOUNDARY,
+                     sdisp.getSyncPolicy());
+
+        sdisp.setSuperSaver(true);
+        assertEquals("Bad default SuperSaver policy",
+                     SuperDispatcher.SYNC_PERIODIC, sdisp.getSyncPolicy());
+        sdisp.setSuperSaver(false);
+
+        sdisp.startDispatch(runNumber, false);
+        sdisp.dispatchEvent(new DummyPayload());
+        sdisp.stopDispatch();
+
+        assertEquals("Stop should have synced all data", 0L,
+                     sdisp.getBytesAtRisk());
+        assertTrue("Stop should have synced the data file",
+                   sdisp.getNumSyncs() > 0L);
+        assertEquals("Sync should not fail", 0L,
+                     sdisp.getNumSyncFailures());
+        assertEquals("Should have three latency values", 3,
+                     sdisp.getSyncLatency().length);
+
+        assertNoLogMessages();
+    }
+
+    public void testPeriodicSync()
+        throws DispatchException
+    {
+        final String runNumber = "123458";
+
+        try {
+            testDirectory = createTempDirectory();
+        } catch (IOException ioe) {
+            fail("Cannot create temporary directory");
+        }
+
+        IByteBufferCache bufCache = new MockBufferCache("PeriodicSync");
+
+        final String tstDir = testDirectory.getAbsolutePath();
+        SuperDispatcher sdisp =
+            new SuperDispatcher(tstDir, "physics", bufCache);
+        assertNoLogMessages();
+
+        sdisp.setSyncPolicy(SuperDispatcher.SYNC_PERIODIC, false);
+        sdisp.setSyncInterval(1L, 1L);
+
+        sdisp.startDispatch(runNumber, false);
+        sdisp.dispatchEvent(new DummyPayload());
+
+        // wait for the sync thread to notice the new data
+        for (int i = 0; i < 1000 && sdisp.getNumSyncs() == 0L; i++) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ie) {
+                break;
+            }
+        }
+
+        assertTrue("Sync thread should have synced the data file",
+                   sdisp.getNumSyncs() > 0L);
+        assertEquals("Sync thread should have synced all data", 0L,
+                     sdisp.getBytesAtRisk());
+
+        sdisp.stopDispatch();
+
+        assertEquals("Sync should not fail", 0L,
+                     sdisp.getNumSyncFailures());
+        assertTrue("Bad maximum bytes at risk",
+                   sdisp.getMaxBytesAtRisk() > 0L);
+
+        sdisp.close();
+
+        assertNoLogMessages();
+    }
+
     /**
      * Main routine which runs tests in standalone mode.
      *
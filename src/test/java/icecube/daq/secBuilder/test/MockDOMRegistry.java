@@ -27,7 +27,7 @@ public class MockDOMRegistry
     @Override
     public Iterable<DOMInfo> allDOMs()
     {
-        throw new Error("Unimplemented");
+        return doms.values();
     }
 
     @Override
@@ -105,6 +105,6 @@ public class MockDOMRegistry
     @Override
     public int size()
     {
-        throw new Error("Unimplemented");
+        return doms.size();
     }
 }
@@ -21,6 +21,9 @@ public class MockDispatcher
     private boolean readOnly;
     private boolean started;
     private File dispatchDir;
+    private long diskAvailable;
+    private long diskSize;
+    private long numBytesWritten;
 
     public MockDispatcher()
     {
@@ -62,7 +65,17 @@ public class MockDispatcher
     public void dispatchEvent(ByteBuffer buf, long ticks)
         throws DispatchException
     {
-        throw new Error("Unimplemented");
+        numSeen++;
+
+        if (readOnly) {
+            IOException ioe = new IOException("Read-only file system");
+            throw new DispatchException("Could not dispatch event", ioe);
+        }
+
+        if (dispatchError) {
+            IOException ioe = new IOException("Bad file channel");
+            throw new DispatchException("Could not dispatch event", ioe);
+        }
     }
 
     @Override
@@ -95,13 +108,13 @@ public class MockDispatcher
     @Override
     public long getDiskAvailable()
     {
-        return 0;
+        return diskAvailable;
     }
 
     @Override
     public long getDiskSize()
     {
-        return 0;
+        return diskSize;
     }
 
     @Override
@@ -125,7 +138,7 @@ public class MockDispatcher
     @Override
     public long getNumBytesWritten()
     {
-        return 0;
+        return numBytesWritten;
     }
 
     @Override
@@ -163,6 +176,16 @@ public class MockDispatcher
         dispatchDir = new File(destDir);
     }
 
+    public void setDiskAvailable(long megabytes)
+    {
+        diskAvailable = megabytes;
+    }
+
+    public void setDiskSize(long megabytes)
+    {
+        diskSize = megabytes;
+    }
+
     public void setDispatchError(boolean dispatchError)
     {
         this.dispatchError = dispatchError;
@@ -174,6 +197,11 @@ public class MockDispatcher
         throw new Error("Unimplemented");
     }
 
+    public void setNumBytesWritten(long numBytes)
+    {
+        numBytesWritten = numBytes;
+    }
+
     public void setReadOnly(boolean readOnly)
     {
         this.readOnly = readOnly;
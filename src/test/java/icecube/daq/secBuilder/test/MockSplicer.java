@@ -0,0 +1,106 @@
+package icecube.daq.secBuilder.test;
+
+import icecube.daq.splicer.SplicedAnalysis;
+import icecube.daq.splicer.Splicer;
+import icecube.daq.splicer.SplicerListener;
+import icecube.daq.splicer.StrandTail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MockSplicer<T>
+    implements Splicer<T>
+{
+    private SplicedAnalysis<T> analysis;
+    private ArrayList<MockStrandTail<T>> tails =
+        new ArrayList<MockStrandTail<T>>();
+    private State state = State.STOPPED;
+
+    public MockSplicer()
+    {
+        this(null);
+    }
+
+    public MockSplicer(SplicedAnalysis<T> analysis)
+    {
+        this.analysis = analysis;
+    }
+
+    @Override
+    public void addSplicerListener(SplicerListener<T> listener)
+    {
+        throw new Error("Unimplemented");
+    }
+
+    @Override
+    public StrandTail<T> beginStrand()
+    {
+        MockStrandTail<T> tail = new MockStrandTail<T>();
+        tails.add(tail);
+        return tail;
+    }
+
+    @Override
+    public void dispose()
+    {
+        state = State.DISPOSED;
+    }
+
+    @Override
+    public void forceStop()
+    {
+        state = State.STOPPED;
+    }
+
+    @Override
+    public SplicedAnalysis<T> getAnalysis()
+    {
+        return analysis;
+    }
+
+    @Override
+    public State getState()
+    {
+        return state;
+    }
+
+    @Override
+    public int getStrandCount()
+    {
+        int num = 0;
+        for (MockStrandTail<T> tail : tails) {
+            if (!tail.isClosed()) {
+                num++;
+            }
+        }
+        return num;
+    }
+
+    /**
+     * Get all strands created by this splicer, including closed strands
+     *
+     * @return list of strands
+     */
+    public List<MockStrandTail<T>> getTails()
+    {
+        return tails;
+    }
+
+    @Override
+    public void removeSplicerListener(SplicerListener<T> listener)
+    {
+        throw new Error("Unimplemented");
+    }
+
+    @Override
+    public void start()
+    {
+        state = State.STARTED;
+    }
+
+    @Override
+    public void stop()
+    {
+        state = State.STOPPED;
+    }
+}
@@ -0,0 +1,61 @@
+package icecube.daq.secBuilder.test;
+
+import icecube.daq.splicer.SplicerException;
+import icecube.daq.splicer.StrandTail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MockStrandTail<T>
+    implements StrandTail<T>
+{
+    private ArrayList<T> pushed = new ArrayList<T>();
+    private boolean closed;
+
+    @Override
+    public void close()
+    {
+        closed = true;
+    }
+
+    public List<T> getPushed()
+    {
+        return pushed;
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    @Override
+    public StrandTail<T> push(List<T> list)
+        throws SplicerException
+    {
+        if (closed) {
+            throw new SplicerException("Strand is closed");
+        }
+
+        pushed.addAll(list);
+        return this;
+    }
+
+    @Override
+    public StrandTail<T> push(T obj)
+        throws SplicerException
+    {
+        if (closed) {
+            throw new SplicerException("Strand is closed");
+        }
+
+        pushed.add(obj);
+        return this;
+    }
+
+    @Override
+    public int size()
+    {
+        return pushed.size();
+    }
+}